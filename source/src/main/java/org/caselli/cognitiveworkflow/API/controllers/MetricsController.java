@@ -0,0 +1,94 @@
+package org.caselli.cognitiveworkflow.API.controllers;
+
+import org.caselli.cognitiveworkflow.operational.AI.AiClientRegistry;
+import org.caselli.cognitiveworkflow.operational.AI.LlmRateLimiter;
+import org.caselli.cognitiveworkflow.operational.AI.LlmResponseCache;
+import org.caselli.cognitiveworkflow.operational.AI.SemanticLlmCache;
+import org.caselli.cognitiveworkflow.operational.http.HttpClientManager;
+import org.caselli.cognitiveworkflow.operational.http.HttpResponseCache;
+import org.caselli.cognitiveworkflow.operational.http.RequestCoalescer;
+import org.caselli.cognitiveworkflow.operational.http.ResilientRequestExecutor;
+import org.caselli.cognitiveworkflow.operational.mongo.MongoClientManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/metrics")
+public class MetricsController {
+
+    private final HttpClientManager httpClientManager;
+    private final HttpResponseCache httpResponseCache;
+    private final RequestCoalescer requestCoalescer;
+    private final ResilientRequestExecutor resilientRequestExecutor;
+    private final MongoClientManager mongoClientManager;
+    private final AiClientRegistry aiClientRegistry;
+    private final LlmResponseCache llmResponseCache;
+    private final SemanticLlmCache semanticLlmCache;
+    private final LlmRateLimiter llmRateLimiter;
+
+    @Autowired
+    public MetricsController(HttpClientManager httpClientManager, HttpResponseCache httpResponseCache, RequestCoalescer requestCoalescer,
+                             ResilientRequestExecutor resilientRequestExecutor, MongoClientManager mongoClientManager,
+                             AiClientRegistry aiClientRegistry, LlmResponseCache llmResponseCache, SemanticLlmCache semanticLlmCache,
+                             LlmRateLimiter llmRateLimiter) {
+        this.httpClientManager = httpClientManager;
+        this.httpResponseCache = httpResponseCache;
+        this.requestCoalescer = requestCoalescer;
+        this.resilientRequestExecutor = resilientRequestExecutor;
+        this.mongoClientManager = mongoClientManager;
+        this.aiClientRegistry = aiClientRegistry;
+        this.llmResponseCache = llmResponseCache;
+        this.semanticLlmCache = semanticLlmCache;
+        this.llmRateLimiter = llmRateLimiter;
+    }
+
+    @GetMapping("/http-client")
+    public ResponseEntity<HttpClientManager.PoolMetrics> getHttpClientMetrics() {
+        return ResponseEntity.ok(httpClientManager.getPoolMetrics());
+    }
+
+    @GetMapping("/http-cache")
+    public ResponseEntity<HttpResponseCache.CacheMetrics> getHttpCacheMetrics() {
+        return ResponseEntity.ok(httpResponseCache.getMetrics());
+    }
+
+    @GetMapping("/http-coalescing")
+    public ResponseEntity<RequestCoalescer.CoalescingMetrics> getHttpCoalescingMetrics() {
+        return ResponseEntity.ok(requestCoalescer.getMetrics());
+    }
+
+    @GetMapping("/http-retries")
+    public ResponseEntity<ResilientRequestExecutor.RetryMetrics> getHttpRetryMetrics() {
+        return ResponseEntity.ok(resilientRequestExecutor.getMetrics());
+    }
+
+    @GetMapping("/mongo-clients")
+    public ResponseEntity<MongoClientManager.MongoMetrics> getMongoClientMetrics() {
+        return ResponseEntity.ok(mongoClientManager.getMetrics());
+    }
+
+    @GetMapping("/ai-clients")
+    public ResponseEntity<AiClientRegistry.AiMetrics> getAiClientMetrics() {
+        return ResponseEntity.ok(aiClientRegistry.getMetrics());
+    }
+
+    @GetMapping("/llm-cache")
+    public ResponseEntity<LlmResponseCache.CacheMetrics> getLlmCacheMetrics() {
+        return ResponseEntity.ok(llmResponseCache.getMetrics());
+    }
+
+    @GetMapping("/llm-semantic-cache")
+    public ResponseEntity<SemanticLlmCache.SemanticCacheMetrics> getLlmSemanticCacheMetrics() {
+        return ResponseEntity.ok(semanticLlmCache.getMetrics());
+    }
+
+    @GetMapping("/ai-rate-limits")
+    public ResponseEntity<List<LlmRateLimiter.ProviderRateMetrics>> getAiRateLimitMetrics() {
+        return ResponseEntity.ok(llmRateLimiter.getMetrics());
+    }
+}
@@ -94,6 +94,15 @@ public class NodeController {
         return ResponseEntity.status(HttpStatus.CREATED).body(result);
     }
 
+    /**
+     * Create a new Map (fan-out) node
+     */
+    @PostMapping("/map")
+    public ResponseEntity<NodeMetamodel> createMapNodeMetamodel(@Valid @RequestBody MapNodeMetamodel mapNodeMetamodel) throws BadRequestException {
+        var result = nodeMetamodelService.createNodeMetamodel(mapNodeMetamodel);
+        return ResponseEntity.status(HttpStatus.CREATED).body(result);
+    }
+
 
     /**
      * Update an existing Vector DB node metamodel
@@ -178,6 +187,23 @@ public class NodeController {
         );
     }
 
+    /**
+     * Update an existing Map node metamodel
+     */
+    @PutMapping("/map/{id}")
+    public ResponseEntity<NodeMetamodel> updateMapNodeMetamodel(
+            @PathVariable String id,
+            @Valid @RequestBody MapNodeMetamodel metamodel)  throws  BadRequestException {
+
+        return validateAndUpdateNode(
+                id,
+                metamodel,
+                node -> node.getType() == NodeMetamodel.NodeType.FLOW &&
+                        node instanceof MapNodeMetamodel &&
+                        ((MapNodeMetamodel) node).getControlType() == MapNodeMetamodel.ControlType.MAP
+        );
+    }
+
     /**
      * Helper method to validate and update node metamodels
      * @param familyId The ID of the node family to update
@@ -8,29 +8,56 @@ import org.caselli.cognitiveworkflow.config.EnvironmentHelper;
 import org.caselli.cognitiveworkflow.knowledge.MOP.WorkflowMetamodelService;
 import org.caselli.cognitiveworkflow.knowledge.model.shared.Version;
 import org.caselli.cognitiveworkflow.knowledge.model.workflow.WorkflowMetamodel;
+import org.caselli.cognitiveworkflow.operational.execution.Deadline;
+import org.caselli.cognitiveworkflow.operational.execution.ResponseStreamSink;
 import org.caselli.cognitiveworkflow.operational.execution.WorkflowOrchestrator;
+import org.caselli.cognitiveworkflow.operational.observability.ObservabilityLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Validated
 @RestController
 @RequestMapping("/api/workflows")
 public class WorkflowController {
+    private static final Logger logger = LoggerFactory.getLogger(WorkflowController.class);
+
+    /** Time left to send the outcome of a streamed execution after its deadline */
+    private static final long STREAM_GRACE_MILLIS = 5000;
 
     private final WorkflowMetamodelService workflowMetamodelService;
     private final WorkflowOrchestrator workflowOrchestrator;
 
     private final EnvironmentHelper environmentHelper;
 
+    /** Runs the streamed executions, as the request thread returns at once */
+    private final TaskExecutor taskExecutor;
+
+    /** Longest duration of a streamed execution, in milliseconds */
+    private final long streamTimeoutMillis;
+
     @Autowired
-    public WorkflowController(WorkflowMetamodelService workflowService, WorkflowOrchestrator workflowOrchestrator, EnvironmentHelper environmentHelper) {
+    public WorkflowController(WorkflowMetamodelService workflowService, WorkflowOrchestrator workflowOrchestrator, EnvironmentHelper environmentHelper,
+                              TaskExecutor taskExecutor,
+                              @Value("${workflow.executor.timeout-millis:0}") long timeoutMillis,
+                              @Value("${workflow.executor.stream-timeout-millis:600000}") long streamTimeoutMillis) {
         this.workflowMetamodelService = workflowService;
         this.workflowOrchestrator = workflowOrchestrator;
         this.environmentHelper = environmentHelper;
+        this.taskExecutor = taskExecutor;
+        // The default deadline of the workflows, if set, bounds the streams too
+        this.streamTimeoutMillis = timeoutMillis > 0 && (streamTimeoutMillis <= 0 || timeoutMillis < streamTimeoutMillis) ? timeoutMillis : streamTimeoutMillis;
     }
 
     @GetMapping
@@ -68,23 +95,108 @@ public class WorkflowController {
 
     @PostMapping("/execute")
     public ResponseEntity<Object> execute(@RequestBody ExecuteDTO request) {
+        var level = getObservabilityLevel(request);
+
         long startTime = System.nanoTime();
-        var res = workflowOrchestrator.orchestrateWorkflow(request.request);
+        var res = workflowOrchestrator.orchestrateWorkflow(request.request, level);
         long endTime = System.nanoTime();
         long duration = endTime - startTime;
         System.out.println("Execution time: " + duration + " nanoseconds");
 
-        /*
-            On dev the output always include the observability trace, unless it is explicitly disabled
-            by setting observability=false in the request body
-         */
-        var isObservabilityActive = environmentHelper.isDev();
-        if(!request.observability) isObservabilityActive = false;
-
-        if(isObservabilityActive) return ResponseEntity.ok(res);
+        if(level != ObservabilityLevel.OFF) return ResponseEntity.ok(res);
         else return ResponseEntity.ok(res.getOutput());
     }
 
+    /**
+     * Executes a workflow like {@link #execute}, sending the responses of the streaming nodes as they are generated.
+     * Events: "partial" (the next text of a response), "response" (a complete response), then "result" (the output
+     * of the workflow, as returned by {@link #execute}) or "error".
+     * <p>
+     * The execution runs with a deadline of {@code workflow.executor.stream-timeout-millis} (or the default deadline
+     * of the workflows, if shorter), and the stream is closed shortly after it. If the client disconnects, the
+     * events are dropped and the workflow completes anyway.
+     * </p>
+     */
+    @PostMapping(value = "/execute/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter executeStream(@RequestBody ExecuteDTO request) {
+        var level = getObservabilityLevel(request);
+        Deadline deadline = Deadline.afterMillis(streamTimeoutMillis);
+        SseEmitter emitter = new SseEmitter(deadline.isBounded() ? streamTimeoutMillis + STREAM_GRACE_MILLIS : 0L);
+        EmitterSink sink = new EmitterSink(emitter);
+
+        taskExecutor.execute(() -> {
+            try (Deadline.Scope ignored = deadline.activate()) {
+                var res = workflowOrchestrator.orchestrateWorkflow(request.request, level, sink);
+                sink.send("result", level != ObservabilityLevel.OFF ? res : res.getOutput());
+            } catch (Exception e) {
+                // The status of the response is already sent: the failure is an event
+                sink.send("error", new StreamError(e.getMessage()));
+            }
+            sink.complete();
+        });
+        return emitter;
+    }
+
+    /**
+     * Sends the events of a streamed execution. Once the client has disconnected (or the stream has timed out)
+     * the events are dropped: the failures of the client never fail the nodes.
+     */
+    private static class EmitterSink implements ResponseStreamSink {
+        private final SseEmitter emitter;
+        private final AtomicBoolean open = new AtomicBoolean(true);
+
+        EmitterSink(SseEmitter emitter) {
+            this.emitter = emitter;
+            emitter.onTimeout(() -> open.set(false));
+            emitter.onError(error -> open.set(false));
+            emitter.onCompletion(() -> open.set(false));
+        }
+
+        @Override
+        public void onPartial(String nodeId, String portKey, String text) {
+            send("partial", new PartialResponse(nodeId, portKey, text));
+        }
+
+        @Override
+        public void onComplete(String nodeId, String portKey, Object value) {
+            send("response", new CompleteResponse(nodeId, portKey, value));
+        }
+
+        void send(String event, Object data) {
+            if (!open.get()) return;
+            try {
+                emitter.send(SseEmitter.event().name(event).data(data));
+            } catch (IOException | IllegalStateException e) {
+                // The client is no longer listening
+                if (open.compareAndSet(true, false)) logger.info("Streamed execution: the client disconnected, dropping the events ({})", e.getMessage());
+            }
+        }
+
+        void complete() {
+            if (open.compareAndSet(true, false)) emitter.complete();
+        }
+    }
+
+    /*
+        On dev the output includes the observability trace if it is requested in the request body,
+        either with observability=true (FULL level) or with an explicit observabilityLevel.
+        When the trace is not returned the workflow runs with observability OFF, so it does not pay for it.
+     */
+    private ObservabilityLevel getObservabilityLevel(ExecuteDTO request) {
+        var level = ObservabilityLevel.OFF;
+        if (environmentHelper.isDev()) {
+            if (request.observabilityLevel != null) level = request.observabilityLevel;
+            else if (request.observability) level = ObservabilityLevel.FULL;
+        }
+        return level;
+    }
+
+    public record PartialResponse(String nodeId, String port, String text) {}
+
+    public record CompleteResponse(String nodeId, String port, Object value) {}
+
+    public record StreamError(String message) {}
+
     @Data
     public static class ExecuteDTO {
         @JsonProperty("request")
@@ -92,5 +204,8 @@ public class WorkflowController {
 
         @JsonProperty("observability")
         boolean observability;
+
+        @JsonProperty("observabilityLevel")
+        ObservabilityLevel observabilityLevel;
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package org.caselli.cognitiveworkflow.API.exception;
 
 import org.apache.coyote.BadRequestException;
+import org.caselli.cognitiveworkflow.operational.execution.DeadlineExceededException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -66,6 +67,16 @@ public class GlobalExceptionHandler {
         return ResponseEntity.badRequest().body(error);
     }
 
+    @ExceptionHandler(DeadlineExceededException.class)
+    public ResponseEntity<ErrorResponse> handleDeadlineExceeded(DeadlineExceededException ex) {
+        ErrorResponse error = new ErrorResponse(
+                "GATEWAY_TIMEOUT",
+                ex.getMessage(),
+                Instant.now()
+        );
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(error);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ErrorResponse> handleGeneralException() {
         ErrorResponse error = new ErrorResponse(
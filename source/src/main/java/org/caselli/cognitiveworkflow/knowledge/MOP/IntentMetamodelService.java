@@ -11,6 +11,7 @@ import org.springframework.stereotype.Service;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 @Service
@@ -24,6 +25,9 @@ public class IntentMetamodelService {
 
     private final EmbeddingService embeddingService;
 
+    /** Incremented at each change of the catalog */
+    private final AtomicLong catalogVersion = new AtomicLong();
+
     public IntentMetamodelService(IntentMetamodelCatalog repository, EmbeddingService embeddingService, IntentSearchService intentSearchService, WorkflowMetamodelService workflowMetamodelService) {
         this.repository = repository;
         this.embeddingService = embeddingService;
@@ -69,8 +73,9 @@ public class IntentMetamodelService {
         // Generate and set the embedding
         generateAndSetEmbedding(intent);
 
-        return repository.save(intent);
-
+        var saved = repository.save(intent);
+        catalogVersion.incrementAndGet();
+        return saved;
     }
 
     /**
@@ -88,7 +93,9 @@ public class IntentMetamodelService {
         // Generate and set the embedding
         generateAndSetEmbedding(intent);
 
-        return repository.save(intent);
+        var saved = repository.save(intent);
+        catalogVersion.incrementAndGet();
+        return saved;
     }
 
     /**
@@ -112,6 +119,16 @@ public class IntentMetamodelService {
 
         // Delete the intent from the repository
         repository.deleteById(id);
+        catalogVersion.incrementAndGet();
+    }
+
+    /**
+     * Version of the catalog, that changes when an intent is created, updated or deleted by this service.
+     * Results derived from the catalog (e.g. cached intent detections) are stale when it changes.
+     * @return The version of the catalog
+     */
+    public long getCatalogVersion() {
+        return catalogVersion.get();
     }
 
 
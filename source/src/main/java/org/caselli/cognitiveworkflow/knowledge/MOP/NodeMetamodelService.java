@@ -239,6 +239,22 @@ public class NodeMetamodelService implements ApplicationListener<ApplicationRead
         return createBaseNodeMetamodel(nodeMetamodel);
     }
 
+    /**
+     * Save in the DB a new Map Node Metamodel
+     * @param nodeMetamodel Metamodel to create
+     * @return Returns the new Metamodel
+     */
+    @CacheEvict(value = "nodeMetamodels", allEntries = true)
+    public NodeMetamodel createNodeMetamodel(MapNodeMetamodel nodeMetamodel) throws BadRequestException {
+        nodeMetamodel.setType(NodeMetamodel.NodeType.FLOW);
+        nodeMetamodel.setControlType(FlowNodeMetamodel.ControlType.MAP);
+        // Set the correct port types
+        nodeMetamodel.getInputPorts().forEach(port -> port.setPortType(Port.PortImplementationType.STANDARD));
+        nodeMetamodel.getOutputPorts().forEach(port -> port.setPortType(Port.PortImplementationType.STANDARD));
+        // Create
+        return createBaseNodeMetamodel(nodeMetamodel);
+    }
+
 
     /**
      * Helper function to create a base Node Metamodel
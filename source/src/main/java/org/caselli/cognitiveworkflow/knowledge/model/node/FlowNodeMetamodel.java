@@ -17,6 +17,7 @@ public abstract class FlowNodeMetamodel extends NodeMetamodel {
     }
 
      public enum ControlType {
-        GATEWAY
+        GATEWAY,
+        MAP
     }
 }
\ No newline at end of file
@@ -13,6 +13,9 @@ import java.util.List;
  * Represents the metamodel for a Gateway Node, a specialized type of control flow node.
  * This initial implementation provides a Transparent Gateway, which simply
  * forwards data from its input ports directly to its output ports.
+ * The {@link #joinMode} decides when the gateway fires: after all of its incoming edges (ALL, the default),
+ * or as soon as the first (ANY_OF) or the first {@link #joinCount} (FIRST_N) of them are satisfied.
+ * In the latter cases the slower branches that only lead to the gateway are cancelled (race join).
  * TODO: Future iterations can introduce specialized Gateway implementations
  * (such as Parallel Gateways, Exclusive Gateways, Inclusive Gateways, Merge and Sync Gateways)
  * to support diverse control flow patterns.
@@ -36,6 +39,12 @@ public class GatewayNodeMetamodel extends FlowNodeMetamodel {
      */
     @NotNull private List<StandardPort> inputPorts = Collections.emptyList();
 
+    /** When the gateway fires */
+    private JoinMode joinMode = JoinMode.ALL;
+
+    /** Number of incoming edges to wait for in FIRST_N mode */
+    private Integer joinCount;
+
 
     @Override
     @NotNull
@@ -54,4 +63,16 @@ public class GatewayNodeMetamodel extends FlowNodeMetamodel {
         // Use defensive copying
         this.inputPorts = inputPorts != null ? List.copyOf(inputPorts) : Collections.emptyList();
     }
-}
\ No newline at end of file
+
+    /**
+     * Join modes of the gateway
+     */
+    public enum JoinMode {
+        /** Fires when all the incoming edges are satisfied */
+        ALL,
+        /** Fires when the first incoming edge is satisfied */
+        ANY_OF,
+        /** Fires when the first joinCount incoming edges are satisfied */
+        FIRST_N
+    }
+}
@@ -23,6 +23,21 @@ public class LlmNodeMetamodel extends AiNodeMetamodel {
     /** Parameters for the LLM call */
     private LlmModelOptions parameters;
 
+    /** If the responses of the node are stored in the LLM response cache and reused for identical prompts (meant for temperature 0) */
+    private Boolean cacheResponses;
+
+    /** How long the cached responses stay valid in seconds (null for the default of the cache) */
+    private Long cacheTtlSeconds;
+
+    /** If the node reuses the response of a previous user prompt that is a paraphrase of the current one (semantic cache) */
+    private Boolean semanticCache;
+
+    /** Minimum similarity between the user prompts to reuse a response (null for the default of the semantic cache) */
+    private Double semanticCacheThreshold;
+
+    /** If the node streams its response token by token to the response stream of the execution (meant for the STRING responses of exit nodes) */
+    private Boolean streamResponse;
+
     /** Input ports of the node */
     @NotNull private List<LlmPort> inputPorts = Collections.emptyList();
 
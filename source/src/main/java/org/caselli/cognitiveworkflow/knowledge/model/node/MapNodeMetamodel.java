@@ -0,0 +1,92 @@
+package org.caselli.cognitiveworkflow.knowledge.model.node;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.StandardPort;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents the metamodel for a Map (fan-out) Node, a control flow node that applies the same processing
+ * to every element of an array.
+ * For each item of the ARRAY input port {@link #itemsPortKey}, the referenced node ({@link #itemNodeId}) or
+ * sub-workflow ({@link #itemWorkflowId}) is executed on its own instances, on a context holding a copy of their
+ * input ports, with the item stored at {@link #itemInputKey}. The values found at {@link #itemOutputKey} are gathered, in the order of the items,
+ * in the ARRAY output port {@link #resultsPortKey}.
+ * Items are processed concurrently, with at most {@link #maxParallelism} of them in flight.
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Document(collection = "meta_nodes")
+public class MapNodeMetamodel extends FlowNodeMetamodel {
+
+    public MapNodeMetamodel() {
+        super();
+
+        this.setControlType(ControlType.MAP);
+    }
+
+    @NotNull private List<StandardPort> inputPorts = Collections.emptyList();
+
+    @NotNull private List<StandardPort> outputPorts = Collections.emptyList();
+
+    /** Key of the ARRAY input port with the items */
+    @NotNull private String itemsPortKey;
+
+    /** Key of the ARRAY output port where the results are gathered */
+    @NotNull private String resultsPortKey;
+
+    /** ID of the node metamodel to execute for each item (alternative to itemWorkflowId) */
+    private String itemNodeId;
+
+    /** ID of the workflow metamodel to execute for each item (alternative to itemNodeId) */
+    private String itemWorkflowId;
+
+    /** Key where the item is stored in the context of its execution */
+    @NotNull private String itemInputKey;
+
+    /** Key of the context of the item execution holding the result of the item */
+    @NotNull private String itemOutputKey;
+
+    /** Maximum number of items processed at the same time */
+    private Integer maxParallelism = 4;
+
+    /** What to do when the processing of an item fails */
+    private ItemErrorPolicy errorPolicy = ItemErrorPolicy.FAIL;
+
+    /** Optional ARRAY output port with the errors of the failed items ({index, error}) */
+    private String errorsPortKey;
+
+    public enum ItemErrorPolicy {
+        /** The node fails: the items still in flight are cancelled */
+        FAIL,
+        /** The failed item is left out of the results */
+        SKIP,
+        /** The failed item has a null result */
+        NULL
+    }
+
+    @Override
+    @NotNull
+    public List<StandardPort> getInputPorts() {
+        return this.inputPorts;
+    }
+
+    @Override
+    @NotNull
+    public List<StandardPort> getOutputPorts() {
+        return this.outputPorts;
+    }
+
+    public void setInputPorts(List<StandardPort> inputPorts) {
+        // Use defensive copying
+        this.inputPorts = inputPorts != null ? List.copyOf(inputPorts) : Collections.emptyList();
+    }
+
+    public void setOutputPorts(List<StandardPort> outputPorts) {
+        // Use defensive copying
+        this.outputPorts = outputPorts != null ? List.copyOf(outputPorts) : Collections.emptyList();
+    }
+}
@@ -46,6 +46,9 @@ public abstract class NodeMetamodel {
     /** Quantitative descriptor (e.g., cSLAs, performance metrics, costs) */
     private org.bson.Document quantitativeDescriptor;
 
+    /** Maximum execution time of the node in milliseconds (null or 0 for no limit) */
+    private Long timeoutMillis;
+
 
     /** Embedding field for semantic search **/
     @JsonIgnore
@@ -20,6 +20,30 @@ public class RestNodeMetamodel extends ToolNodeMetamodel {
     /** Rest Method */
     @NotNull private InvocationMethod invocationMethod;
 
+    /** Maximum time to establish a connection in milliseconds (null for the default of the HTTP client) */
+    private Integer connectTimeoutMillis;
+
+    /** Maximum time to wait for data from the service in milliseconds (null for the default of the HTTP client) */
+    private Integer readTimeoutMillis;
+
+    /** Maximum size of the response bodies in bytes, after decompression (null for the default of the HTTP client, 0 for no limit) */
+    private Long maxResponseBytes;
+
+    /** If the responses of the node are stored in the HTTP cache, following their Cache-Control headers (GET only) */
+    private Boolean cacheResponses;
+
+    /**
+     * If concurrent identical requests of the node share a single request to the service
+     * (null: only for the idempotent methods)
+     */
+    private Boolean coalesceRequests;
+
+    /** Retries of the failed requests (idempotent methods only, null for no retries) */
+    private RetryPolicy retryPolicy;
+
+    /** Duplicate requests sent when a request is slower than usual (idempotent methods only, null for no hedging) */
+    private HedgingPolicy hedgingPolicy;
+
     public RestNodeMetamodel() {
         super();
         this.setType(NodeType.TOOL);
@@ -64,6 +88,61 @@ public class RestNodeMetamodel extends ToolNodeMetamodel {
         PATCH,
         DELETE,
         HEAD,
-        OPTIONS
+        OPTIONS;
+
+        /**
+         * @return True if sending the request several times has the same effect as sending it once
+         */
+        public boolean isIdempotent() {
+            return this != POST && this != PATCH;
+        }
+    }
+
+    /**
+     * When and how the failed requests of a REST node are sent again
+     */
+    @Data
+    public static class RetryPolicy {
+        /** Maximum number of attempts, the first one included */
+        private int maxAttempts = 3;
+
+        /** Response statuses that are retried */
+        private List<Integer> retryOnStatus = List.of(429, 502, 503, 504);
+
+        /**
+         * Exceptions that are retried, by simple or fully qualified class name.
+         * Their subclasses, and the exceptions they caused, are retried too.
+         */
+        private List<String> retryOnExceptions = List.of("ResourceAccessException");
+
+        /** Wait before the first retry in milliseconds */
+        private long initialBackoffMillis = 100;
+
+        /** Factor applied to the wait before each further retry */
+        private double backoffMultiplier = 2.0;
+
+        /** Maximum wait between two attempts in milliseconds */
+        private long maxBackoffMillis = 2000;
+
+        /** Fraction of each wait that is random, from 0 (fixed waits) to 1 (full jitter) */
+        private double jitter = 0.5;
+    }
+
+    /**
+     * When the duplicates of a slow request of a REST node are sent
+     */
+    @Data
+    public static class HedgingPolicy {
+        /** Percentile of the recent latencies of the node after which a duplicate is sent */
+        private double latencyPercentile = 0.95;
+
+        /** Delay before the duplicate until enough latencies are known in milliseconds (null for no hedging until then) */
+        private Long initialDelayMillis;
+
+        /** Minimum delay before a duplicate in milliseconds */
+        private long minDelayMillis = 10;
+
+        /** Maximum number of duplicates of a request */
+        private int maxHedges = 1;
     }
-}
\ No newline at end of file
+}
@@ -12,11 +12,12 @@ import jakarta.validation.constraints.NotNull;
  * Represents the metamodel for a Vector Database node within the cognitive workflow.
  * This node is specialized for performing vector search operations.
  * <p>
- * Currently, this implementation serves as a proof of concept and primarily supports
- * MongoDB Atlas Vector Search.
+ * The search runs on one of two backends, selected per node by {@link #backend}: MongoDB Atlas Vector Search
+ * (the database, collection, index and vector field identify the index), or an embedded HNSW index stored in
+ * the local file at the {@code uri} of the node (configured by {@link #embeddedIndex}).
  * </p>
  * <p>
- * TODO: Future development should include support for various vector database providers
+ * TODO: Future development should include support for other vector database providers
  * by (1) potentially introducing multiple specialized subclasses of this metamodel or
  * (2) making the implementation provider-agnostic through configuration.
  * </p>
@@ -27,17 +28,23 @@ import jakarta.validation.constraints.NotNull;
 @Document(collection = "meta_nodes")
 public class VectorDbNodeMetamodel extends ToolNodeMetamodel {
 
-    /** Database name */
-    @NotNull private String databaseName;
+    /** Backend of the vector index */
+    private Backend backend = Backend.ATLAS;
 
-    /** Collection name to search in */
-    @NotNull private String collectionName;
+    /** Database name (Atlas backend) */
+    private String databaseName;
 
-    /** Index name for vector search */
-    @NotNull private String indexName;
+    /** Collection name to search in (Atlas backend) */
+    private String collectionName;
 
-    /** Field containing vector embeddings */
-    @NotNull private String vectorField;
+    /** Index name for vector search (Atlas backend) */
+    private String indexName;
+
+    /** Field containing vector embeddings (Atlas backend) */
+    private String vectorField;
+
+    /** Configuration of the embedded index (embedded backend) */
+    private EmbeddedIndexConfig embeddedIndex;
 
     /** Parameters for the LLM call */
     private VectorSearchConfig parameters;
@@ -87,5 +94,65 @@ public class VectorDbNodeMetamodel extends ToolNodeMetamodel {
 
         /** Similarity threshold (0.0-1.0) */
         private Double threshold;
+
+        /**
+         * Number of nearest neighbors considered by the search.
+         * If null, it is derived from the limit: {@code limit * candidatesPerResult}, or
+         * {@code limit * filteredCandidatesPerResult} when the search has a filter
+         */
+        private Integer numCandidates;
+
+        /** Candidates per requested result of the unfiltered searches */
+        private Integer candidatesPerResult = 10;
+
+        /**
+         * Candidates per requested result of the filtered searches: the filter prunes the candidates before they
+         * are scored, so fewer of them give the same recall
+         */
+        private Integer filteredCandidatesPerResult = 5;
+
+        /**
+         * Metadata filter applied to every search of the node (MQL as a JSON string, e.g. {@code {"year": {"$gte": 2000}}}),
+         * combined with the INPUT_FILTER ports. The filtered fields must be indexed as filter fields of the vector index.
+         */
+        private String filter;
+    }
+
+    /**
+     * Backends of the vector search
+     */
+    public enum Backend {
+        /** MongoDB Atlas Vector Search, at the connection string in the {@code uri} of the node */
+        ATLAS,
+        /** Embedded HNSW index, stored in the local file at the {@code uri} of the node */
+        EMBEDDED
+    }
+
+    /**
+     * Similarity functions of the embedded indexes (the scores are the ones of Atlas Vector Search)
+     */
+    public enum Similarity {
+        COSINE,
+        DOT_PRODUCT,
+        EUCLIDEAN
+    }
+
+    /**
+     * Embedded index configuration parameters.
+     * The dimensions and the similarity are fixed when the index file is created.
+     */
+    @Data
+    public static class EmbeddedIndexConfig {
+        /** Dimensions of the vectors */
+        private Integer dimensions;
+
+        /** Similarity function of the vectors */
+        private Similarity similarity = Similarity.COSINE;
+
+        /** Maximum connections of a vector on each level of the graph */
+        private Integer m = 16;
+
+        /** Size of the candidate list when inserting a vector (a higher value builds a better graph, more slowly) */
+        private Integer efConstruction = 200;
     }
-}
\ No newline at end of file
+}
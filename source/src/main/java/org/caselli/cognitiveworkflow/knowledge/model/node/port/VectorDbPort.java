@@ -17,6 +17,19 @@ public class VectorDbPort extends Port {
      */
     public enum VectorDbPortRole {
         INPUT_VECTOR,
+        /** Metadata filter of the search (an object or a JSON string with MQL operators), pushed into $vectorSearch */
+        INPUT_FILTER,
+        /** Overrides the limit of the node parameters for one call */
+        INPUT_LIMIT,
+        /** Overrides the number of candidates of the node parameters for one call */
+        INPUT_NUM_CANDIDATES,
+        /** Overrides the similarity threshold of the node parameters for one call */
+        INPUT_THRESHOLD,
+        /**
+         * Document stored with the INPUT_VECTOR in an embedded index: when it has a value, the node inserts the vector
+         * instead of searching (the document {@code _id} is the id of the vector, a random one if missing)
+         */
+        INPUT_DOCUMENT,
         RESULTS,
         FIRST_RESULT
     }
@@ -49,6 +49,15 @@ public class WorkflowMetamodel {
     @NotNull private Boolean enabled;
     @NotNull private Version version;
 
+    /** Maximum execution time of the whole workflow in milliseconds (null or 0 for no limit) */
+    private Long timeoutMillis;
+
+    /**
+     * Whether the execution prunes the nodes that can no longer contribute to an exit node, and stops as soon as
+     * all exit nodes have completed (null for the default of the executor)
+     */
+    private Boolean earlyTermination;
+
     @CreatedDate private LocalDateTime createdAt;
     @LastModifiedDate private LocalDateTime updatedAt;
 
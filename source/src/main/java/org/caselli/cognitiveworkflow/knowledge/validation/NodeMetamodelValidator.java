@@ -1,13 +1,20 @@
 package org.caselli.cognitiveworkflow.knowledge.validation;
 
+import org.bson.Document;
+import org.caselli.cognitiveworkflow.knowledge.model.node.GatewayNodeMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.LlmNodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.MapNodeMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.NodeMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.RestNodeMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.ToolNodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.VectorDbNodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.LlmPort;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.Port;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortSchema;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortType;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.RestPort;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.VectorDbPort;
+import org.caselli.cognitiveworkflow.operational.vectordb.MetadataFilter;
 import org.springframework.stereotype.Service;
 import java.util.*;
 
@@ -42,12 +49,21 @@ public class NodeMetamodelValidator {
         if (node instanceof RestNodeMetamodel) {
             validateRestToolNode((RestNodeMetamodel) node, result);
 
+        } else if (node instanceof VectorDbNodeMetamodel) {
+            validateVectorDbNode((VectorDbNodeMetamodel) node, result);
+
         } else if (node instanceof ToolNodeMetamodel) {
             validateToolNode((ToolNodeMetamodel) node, result);
         }
         else if (node instanceof LlmNodeMetamodel) {
             validateLLMNode((LlmNodeMetamodel) node, result);
         }
+        else if (node instanceof MapNodeMetamodel) {
+            validateMapNode((MapNodeMetamodel) node, result);
+        }
+        else if (node instanceof GatewayNodeMetamodel) {
+            validateGatewayNode((GatewayNodeMetamodel) node, result);
+        }
 
         return result;
     }
@@ -82,6 +98,11 @@ public class NodeMetamodelValidator {
         // Check type
         if (node.getType() == null)
             result.addError("Node type cannot be null", "node");
+
+
+        // Check timeout
+        if (node.getTimeoutMillis() != null && node.getTimeoutMillis() < 0)
+            result.addError("Node timeout cannot be negative", "node.timeoutMillis");
     }
 
     /**
@@ -181,6 +202,73 @@ public class NodeMetamodelValidator {
             result.addError("Tool type cannot be null", "node.toolType");
     }
 
+    /**
+     * Validates a Vector DB tool node metamodel
+     */
+    private void validateVectorDbNode(VectorDbNodeMetamodel node, ValidationResult result) {
+        validateToolNode(node, result);
+
+        boolean embedded = node.getBackend() == VectorDbNodeMetamodel.Backend.EMBEDDED;
+        if (embedded) {
+            VectorDbNodeMetamodel.EmbeddedIndexConfig index = node.getEmbeddedIndex();
+            if (index == null) result.addError("Embedded vector index configuration cannot be null", "node.embeddedIndex");
+            else {
+                if (index.getDimensions() == null || index.getDimensions() < 1)
+                    result.addError("Embedded vector index dimensions must be at least 1", "node.embeddedIndex.dimensions");
+                if (index.getM() != null && index.getM() < 2)
+                    result.addError("Embedded vector index m must be at least 2", "node.embeddedIndex.m");
+                if (index.getEfConstruction() != null && index.getEfConstruction() < 1)
+                    result.addError("Embedded vector index efConstruction must be at least 1", "node.embeddedIndex.efConstruction");
+            }
+        } else {
+            if (node.getDatabaseName() == null || node.getDatabaseName().isBlank())
+                result.addError("Vector DB database name cannot be empty", "node.databaseName");
+            if (node.getCollectionName() == null || node.getCollectionName().isBlank())
+                result.addError("Vector DB collection name cannot be empty", "node.collectionName");
+            if (node.getIndexName() == null || node.getIndexName().isBlank())
+                result.addError("Vector DB index name cannot be empty", "node.indexName");
+            if (node.getVectorField() == null || node.getVectorField().isBlank())
+                result.addError("Vector DB vector field cannot be empty", "node.vectorField");
+        }
+
+        VectorDbNodeMetamodel.VectorSearchConfig config = node.getParameters();
+        if (config != null) {
+            if (config.getLimit() != null && config.getLimit() < 1)
+                result.addError("Vector search limit must be at least 1", "node.parameters.limit");
+
+            if (config.getNumCandidates() != null && config.getLimit() != null && config.getNumCandidates() < config.getLimit())
+                result.addError("Vector search number of candidates cannot be lower than the limit", "node.parameters.numCandidates");
+
+            if (config.getNumCandidates() != null && config.getNumCandidates() > 10_000)
+                result.addError("Vector search number of candidates cannot exceed 10000", "node.parameters.numCandidates");
+
+            if ((config.getCandidatesPerResult() != null && config.getCandidatesPerResult() < 1)
+                    || (config.getFilteredCandidatesPerResult() != null && config.getFilteredCandidatesPerResult() < 1))
+                result.addError("Vector search candidates per result must be at least 1", "node.parameters");
+
+            if (config.getFilter() != null && !config.getFilter().isBlank()) {
+                try {
+                    Document filter = Document.parse(config.getFilter());
+                    // The embedded index evaluates the filters itself, with a subset of the operators
+                    if (embedded) MetadataFilter.compile(filter);
+                } catch (Exception e) {
+                    result.addError("Vector search filter is not a valid JSON object: " + e.getMessage(), "node.parameters.filter");
+                }
+            }
+        }
+
+        List<VectorDbPort> inputPorts = node.getInputPorts();
+        for (int i = 0; inputPorts != null && i < inputPorts.size(); i++) {
+            VectorDbPort port = inputPorts.get(i);
+            if (port.getRole() == VectorDbPort.VectorDbPortRole.INPUT_FILTER && port.getSchema() != null
+                    && port.getSchema().getType() != PortType.OBJECT && port.getSchema().getType() != PortType.STRING)
+                result.addError("Vector DB filter port must be an OBJECT or a STRING", "node.inputPorts[" + i + "].schema");
+
+            if (port.getRole() == VectorDbPort.VectorDbPortRole.INPUT_DOCUMENT && !embedded)
+                result.addWarning("Vector DB document ports are only used by embedded indexes", "node.inputPorts[" + i + "]");
+        }
+    }
+
     /**
      * Validates a LLM tool node metamodel
      */
@@ -190,6 +278,112 @@ public class NodeMetamodelValidator {
         if (node.getProvider() == null)
             result.addError("LLM Node Model Provider cannot be null", "node.llmProvider");
 
+        if (Boolean.TRUE.equals(node.getCacheResponses())) {
+            Double temperature = node.getParameters() != null ? node.getParameters().getTemperature() : null;
+            if (temperature == null || temperature > 0)
+                result.addWarning("LLM Node caches its responses but its temperature is not 0: identical prompts will always get the first response", "node.cacheResponses");
+        }
+        if (node.getCacheTtlSeconds() != null && node.getCacheTtlSeconds() < 0)
+            result.addError("LLM Node cache TTL cannot be negative", "node.cacheTtlSeconds");
+        if (node.getSemanticCacheThreshold() != null && (node.getSemanticCacheThreshold() <= 0 || node.getSemanticCacheThreshold() > 1))
+            result.addError("LLM Node semantic cache threshold must be greater than 0 and at most 1", "node.semanticCacheThreshold");
+        if (Boolean.TRUE.equals(node.getSemanticCache()) && node.getInputPorts().stream().noneMatch(port -> port.getRole() == LlmPort.LlmPortRole.USER_PROMPT))
+            result.addWarning("LLM Node uses the semantic cache but has no user prompt port: the cache is never used", "node.semanticCache");
+        if (Boolean.TRUE.equals(node.getStreamResponse()) && node.getOutputPorts().stream().anyMatch(port -> port.getRole() == LlmPort.LlmPortRole.RESPONSE
+                && port.getSchema() != null && port.getSchema().getType() != PortType.STRING))
+            result.addWarning("LLM Node streams a structured response: the partial responses are the raw text of the output, parsed only at the end", "node.streamResponse");
+    }
+
+    /**
+     * Validates a Gateway node metamodel
+     */
+    private void validateGatewayNode(GatewayNodeMetamodel node, ValidationResult result) {
+        if (node.getJoinMode() == GatewayNodeMetamodel.JoinMode.FIRST_N && (node.getJoinCount() == null || node.getJoinCount() < 1))
+            result.addError("Gateway Node join count must be at least 1 in FIRST_N mode", "node.joinCount");
+    }
+
+    /**
+     * Validates a Map (fan-out) node metamodel
+     */
+    private void validateMapNode(MapNodeMetamodel node, ValidationResult result) {
+
+        validateArrayPort(node.getInputPorts(), node.getItemsPortKey(), "node.itemsPortKey", "Map Node items port", result);
+        validateArrayPort(node.getOutputPorts(), node.getResultsPortKey(), "node.resultsPortKey", "Map Node results port", result);
+
+        if (node.getErrorsPortKey() != null)
+            validateArrayPort(node.getOutputPorts(), node.getErrorsPortKey(), "node.errorsPortKey", "Map Node errors port", result);
+
+        boolean hasNode = node.getItemNodeId() != null && !node.getItemNodeId().isBlank();
+        boolean hasWorkflow = node.getItemWorkflowId() != null && !node.getItemWorkflowId().isBlank();
+        if (hasNode == hasWorkflow)
+            result.addError("Map Node must define exactly one of itemNodeId and itemWorkflowId", "node.itemNodeId");
+
+        if (node.getItemInputKey() == null || node.getItemInputKey().isBlank())
+            result.addError("Map Node item input key cannot be empty", "node.itemInputKey");
+        if (node.getItemOutputKey() == null || node.getItemOutputKey().isBlank())
+            result.addError("Map Node item output key cannot be empty", "node.itemOutputKey");
+
+        if (node.getMaxParallelism() == null || node.getMaxParallelism() < 1)
+            result.addError("Map Node max parallelism must be at least 1", "node.maxParallelism");
+    }
+
+    /**
+     * Checks that a port with the given key exists and is an ARRAY
+     */
+    private void validateArrayPort(List<? extends Port> ports, String key, String component, String description, ValidationResult result) {
+        if (key == null || key.isBlank()) {
+            result.addError(description + " cannot be empty", component);
+            return;
+        }
+
+        Port port = ports == null ? null : ports.stream().filter(p -> key.equals(p.getKey())).findFirst().orElse(null);
+        if (port == null)
+            result.addError(description + " '" + key + "' is not a port of the node", component);
+        else if (port.getSchema() == null || port.getSchema().getType() != PortType.ARRAY)
+            result.addError(description + " '" + key + "' must be an ARRAY", component);
+    }
+
+    /**
+     * Validates the retry policy of a REST tool node
+     */
+    private void validateRetryPolicy(RestNodeMetamodel node, ValidationResult result) {
+        RestNodeMetamodel.RetryPolicy policy = node.getRetryPolicy();
+        if (policy == null) return;
+
+        if (node.getInvocationMethod() != null && !node.getInvocationMethod().isIdempotent())
+            result.addWarning("Only the requests of idempotent methods are retried", "node.retryPolicy");
+
+        if (policy.getMaxAttempts() < 1)
+            result.addError("REST retry policy must allow at least one attempt", "node.retryPolicy.maxAttempts");
+
+        if (policy.getInitialBackoffMillis() < 0 || policy.getMaxBackoffMillis() < 0)
+            result.addError("REST retry backoff cannot be negative", "node.retryPolicy");
+
+        if (policy.getBackoffMultiplier() < 1)
+            result.addError("REST retry backoff multiplier must be at least 1", "node.retryPolicy.backoffMultiplier");
+
+        if (policy.getJitter() < 0 || policy.getJitter() > 1)
+            result.addError("REST retry jitter must be between 0 and 1", "node.retryPolicy.jitter");
+    }
+
+    /**
+     * Validates the hedging policy of a REST tool node
+     */
+    private void validateHedgingPolicy(RestNodeMetamodel node, ValidationResult result) {
+        RestNodeMetamodel.HedgingPolicy policy = node.getHedgingPolicy();
+        if (policy == null) return;
+
+        if (node.getInvocationMethod() != null && !node.getInvocationMethod().isIdempotent())
+            result.addWarning("Only the requests of idempotent methods are hedged", "node.hedgingPolicy");
+
+        if (policy.getLatencyPercentile() <= 0 || policy.getLatencyPercentile() >= 1)
+            result.addError("REST hedging percentile must be between 0 and 1", "node.hedgingPolicy.latencyPercentile");
+
+        if (policy.getMaxHedges() < 1)
+            result.addError("REST hedging must allow at least one duplicate", "node.hedgingPolicy.maxHedges");
+
+        if (policy.getMinDelayMillis() < 0 || (policy.getInitialDelayMillis() != null && policy.getInitialDelayMillis() < 0))
+            result.addError("REST hedging delay cannot be negative", "node.hedgingPolicy");
     }
 
     /**
@@ -201,6 +395,22 @@ public class NodeMetamodelValidator {
         if (node.getInvocationMethod() == null)
             result.addError("REST tool invocation method cannot be null", "node.invocationMethod");
 
+        if (node.getConnectTimeoutMillis() != null && node.getConnectTimeoutMillis() < 0)
+            result.addError("REST connect timeout cannot be negative", "node.connectTimeoutMillis");
+
+        if (node.getReadTimeoutMillis() != null && node.getReadTimeoutMillis() < 0)
+            result.addError("REST read timeout cannot be negative", "node.readTimeoutMillis");
+
+        if (node.getMaxResponseBytes() != null && node.getMaxResponseBytes() < 0)
+            result.addError("REST maximum response size cannot be negative", "node.maxResponseBytes");
+
+        if (Boolean.TRUE.equals(node.getCacheResponses()) && node.getInvocationMethod() != RestNodeMetamodel.InvocationMethod.GET)
+            result.addWarning("Only the responses of GET requests are cached", "node.cacheResponses");
+
+        validateRetryPolicy(node, result);
+        validateHedgingPolicy(node, result);
+        validateRestBodyFieldPorts(node, result);
+
 
         // Validate service URI format
         String serviceUri = node.getUri();
@@ -213,6 +423,24 @@ public class NodeMetamodelValidator {
         }
     }
 
+    /**
+     * Validates the RES_BODY_FIELD output ports: their key names a top-level field of the response body, so nested
+     * fields addressed with a JSON pointer (e.g., /data/name) are rejected rather than silently left empty
+     * @param node RestNodeMetamodel to validate
+     * @param result ValidationResult to store errors and warnings
+     */
+    private void validateRestBodyFieldPorts(RestNodeMetamodel node, ValidationResult result) {
+        List<RestPort> outputPorts = node.getOutputPorts();
+        if (outputPorts == null) return;
+
+        for (int i = 0; i < outputPorts.size(); i++) {
+            RestPort port = outputPorts.get(i);
+            if (port == null || port.getRole() != RestPort.RestPortRole.RES_BODY_FIELD || port.getKey() == null) continue;
+            if (port.getKey().startsWith("/"))
+                result.addError("REST body field port '" + port.getKey() + "' must name a top-level field of the response body, JSON pointers are not supported", "node.outputPorts[" + i + "].key");
+        }
+    }
+
     /**
      * Validates that URI template variables are mapped to input ports (e.g., /users/{userId})
      * @param node RestNodeMetamodel to validate
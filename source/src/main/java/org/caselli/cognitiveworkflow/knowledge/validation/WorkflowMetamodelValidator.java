@@ -134,6 +134,10 @@ public class WorkflowMetamodelValidator {
                 }
             }
         }
+
+
+        if (workflow.getTimeoutMillis() != null && workflow.getTimeoutMillis() < 0)
+            result.addError("Workflow timeout cannot be negative", "workflow.timeoutMillis");
     }
 
     /**
@@ -0,0 +1,365 @@
+package org.caselli.cognitiveworkflow.operational.AI;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.anthropic.api.AnthropicApi;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.retry.RetryUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.reactive.JdkClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Shared clients of the LLM and embedding providers.
+ * <p>
+ * All the provider calls go through one pooled HTTP stack (a blocking client for the calls, a non-blocking one for
+ * the streams), so the nodes and services calling the same provider reuse the same connections. The API client of
+ * a provider is built once per API key on top of it.
+ * </p>
+ * <p>
+ * Nodes and services {@link #acquire} the model clients (ChatClient, EmbeddingModel, ...) by provider, model,
+ * API key and options: clients with the same configuration are built once and shared, and dropped as soon as the
+ * last holder releases its {@link Lease}.
+ * </p>
+ */
+@Component
+public class AiClientRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(AiClientRegistry.class);
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final HttpComponentsClientHttpRequestFactory requestFactory;
+    private final int maxConnections;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final LlmRateLimiter rateLimiter;
+    private JdkClientHttpConnector streamingConnector;
+
+    /** API clients by provider and API key */
+    private final Map<ApiKey, ApiEntry> apis = new HashMap<>();
+    /** Model clients by configuration */
+    private final Map<ClientKey, ClientEntry> clients = new HashMap<>();
+    private boolean closed;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+
+    public AiClientRegistry(@Value("${ai.client.max-connections:100}") int maxConnections,
+                            @Value("${ai.client.max-connections-per-host:50}") int maxConnectionsPerHost,
+                            @Value("${ai.client.connect-timeout-millis:10000}") int connectTimeoutMillis,
+                            @Value("${ai.client.read-timeout-millis:120000}") int readTimeoutMillis,
+                            @Value("${ai.client.connection-request-timeout-millis:10000}") int connectionRequestTimeoutMillis,
+                            @Value("${ai.client.idle-eviction-seconds:60}") long idleEvictionSeconds,
+                            LlmRateLimiter rateLimiter) {
+        this.maxConnections = maxConnections;
+        this.rateLimiter = rateLimiter;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+
+        this.connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerHost)
+                .build();
+
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectionRequestTimeoutMillis))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(idleEvictionSeconds))
+                .build();
+
+        this.requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        this.requestFactory.setConnectTimeout(connectTimeoutMillis);
+        this.requestFactory.setReadTimeout(readTimeoutMillis);
+    }
+
+    /**
+     * Creates a registry with the default settings and no rate limits, for use outside of the Spring context
+     * @return A new registry
+     */
+    public static AiClientRegistry withDefaults() {
+        return new AiClientRegistry(100, 50, 10000, 120000, 10000, 60, LlmRateLimiter.withDefaults());
+    }
+
+    /**
+     * Gets the shared OpenAI API client of an API key
+     * @param apiKey The API key
+     * @return The API client
+     */
+    public OpenAiApi openAiApi(String apiKey) {
+        return (OpenAiApi) api("openai", apiKey, usage -> OpenAiApi.builder()
+                .apiKey(apiKey)
+                .restClientBuilder(restClientBuilder("openai", usage))
+                .webClientBuilder(webClientBuilder("openai", usage))
+                .build());
+    }
+
+    /**
+     * Gets the shared Anthropic API client of an API key
+     * @param apiKey The API key
+     * @return The API client
+     */
+    public AnthropicApi anthropicApi(String apiKey) {
+        return (AnthropicApi) api("anthropic", apiKey, usage -> new AnthropicApi(AnthropicApi.DEFAULT_BASE_URL, apiKey,
+                AnthropicApi.DEFAULT_ANTHROPIC_VERSION, restClientBuilder("anthropic", usage), webClientBuilder("anthropic", usage),
+                RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER));
+    }
+
+    private synchronized Object api(String provider, String apiKey, Function<Usage, Object> builder) {
+        if (closed) throw new IllegalStateException("The AI client registry has been closed");
+
+        ApiKey key = new ApiKey(provider, apiKey);
+        ApiEntry entry = apis.get(key);
+        if (entry == null) {
+            Usage usage = new Usage();
+            entry = new ApiEntry(provider, builder.apply(usage), usage);
+            apis.put(key, entry);
+            logger.info("Created the shared {} API client ({} API clients)", provider, apis.size());
+        }
+        return entry.api;
+    }
+
+    /**
+     * A new RestClient builder on the shared blocking pool (the API clients configure their own copy),
+     * with the rate limits of the provider
+     */
+    private RestClient.Builder restClientBuilder(String provider, Usage usage) {
+        ClientHttpRequestInterceptor counter = (request, body, execution) -> {
+            usage.requests.incrementAndGet();
+            try {
+                var response = execution.execute(request, body);
+                if (response.getStatusCode().isError()) usage.failures.incrementAndGet();
+                return response;
+            } catch (IOException | RuntimeException e) {
+                usage.failures.incrementAndGet();
+                throw e;
+            }
+        };
+        return RestClient.builder().requestFactory(requestFactory).requestInterceptor(counter).requestInterceptor(rateLimiter.interceptor(provider));
+    }
+
+    /**
+     * A new WebClient builder on the shared non-blocking client, used by the streaming calls,
+     * with the rate limits of the provider
+     */
+    private WebClient.Builder webClientBuilder(String provider, Usage usage) {
+        if (streamingConnector == null) {
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(connectTimeoutMillis)).build();
+            streamingConnector = new JdkClientHttpConnector(client);
+            streamingConnector.setReadTimeout(Duration.ofMillis(readTimeoutMillis));
+        }
+
+        ExchangeFilterFunction counter = (request, next) -> {
+            usage.requests.incrementAndGet();
+            return next.exchange(request)
+                    .doOnNext(response -> { if (response.statusCode().isError()) usage.failures.incrementAndGet(); })
+                    .doOnError(e -> usage.failures.incrementAndGet());
+        };
+        return WebClient.builder().clientConnector(streamingConnector).filter(counter).filter(rateLimiter.filter(provider));
+    }
+
+    /**
+     * Gets the shared model client of a configuration, building it if nobody holds it
+     * @param kind Kind of client (e.g. "chat", "embedding"): clients of different kinds never share an entry
+     * @param provider The provider
+     * @param model The model name
+     * @param apiKey The API key
+     * @param options The options of the client, as a canonical string (null for none)
+     * @param builder Builds the client (through the API clients of this registry)
+     * @return The lease of the client, to be closed when the holder no longer needs it
+     * @throws IllegalStateException if the registry has been closed
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Lease<T> acquire(String kind, String provider, String model, String apiKey, String options, Supplier<T> builder) {
+        ClientKey key = new ClientKey(kind, provider.toLowerCase(), model, apiKey, options);
+
+        // Building the client does not call the provider, so it is cheap enough to hold the lock
+        synchronized (this) {
+            if (closed) throw new IllegalStateException("The AI client registry has been closed");
+
+            ClientEntry entry = clients.get(key);
+            if (entry == null) {
+                entry = new ClientEntry(key, builder.get());
+                clients.put(key, entry);
+                created.incrementAndGet();
+                logger.info("Created the shared {} client of {} model {}", kind, provider, model);
+            }
+            entry.references++;
+            entry.acquisitions++;
+            return new Lease<>(entry, (T) entry.client);
+        }
+    }
+
+    private synchronized void release(ClientEntry entry) {
+        if (--entry.references > 0 || clients.get(entry.key) != entry) return;
+
+        clients.remove(entry.key);
+        released.incrementAndGet();
+        logger.info("Released the {} client of {} model {}", entry.key.kind(), entry.key.provider(), entry.key.model());
+
+        // The API client of a key nobody uses any more is dropped too (it holds no connection of its own)
+        ApiKey apiKey = new ApiKey(entry.key.provider(), entry.key.apiKey());
+        if (clients.keySet().stream().noneMatch(key -> key.provider().equals(apiKey.provider()) && Objects.equals(key.apiKey(), apiKey.apiKey())))
+            apis.remove(apiKey);
+    }
+
+    /**
+     * @return The pool and usage metrics of the shared clients
+     */
+    public synchronized AiMetrics getMetrics() {
+        PoolStats pool = connectionManager.getTotalStats();
+
+        Map<String, ProviderMetrics> providers = new TreeMap<>();
+        for (ApiEntry api : apis.values()) {
+            ProviderMetrics current = providers.get(api.provider);
+            long requests = api.usage.requests.get() + (current != null ? current.requests() : 0);
+            long failures = api.usage.failures.get() + (current != null ? current.failures() : 0);
+            int apiClients = 1 + (current != null ? current.apiClients() : 0);
+            providers.put(api.provider, new ProviderMetrics(api.provider, apiClients, requests, failures));
+        }
+
+        // API keys are never reported
+        List<ClientMetrics> entries = new ArrayList<>();
+        for (ClientEntry entry : clients.values())
+            entries.add(new ClientMetrics(entry.key.kind(), entry.key.provider(), entry.key.model(),
+                    entry.key.options(), entry.references, entry.acquisitions));
+        entries.sort(Comparator.comparing(ClientMetrics::provider).thenComparing(ClientMetrics::model, Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        return new AiMetrics(pool.getLeased(), pool.getAvailable(), pool.getPending(), maxConnections,
+                created.get(), released.get(), new ArrayList<>(providers.values()), entries);
+    }
+
+    /**
+     * Drops all the clients and closes the connection pool
+     */
+    @PreDestroy
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            clients.clear();
+            apis.clear();
+        }
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close the AI HTTP client: {}", e.getMessage());
+        }
+    }
+
+    private record ApiKey(String provider, String apiKey) {}
+
+    private record ClientKey(String kind, String provider, String model, String apiKey, String options) {}
+
+    private static class Usage {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+    }
+
+    private record ApiEntry(String provider, Object api, Usage usage) {}
+
+    private static class ClientEntry {
+        final ClientKey key;
+        final Object client;
+        int references;
+        long acquisitions;
+
+        ClientEntry(ClientKey key, Object client) {
+            this.key = key;
+            this.client = client;
+        }
+    }
+
+    /**
+     * Hold on a shared model client. Closing it releases the client (once).
+     */
+    public final class Lease<T> implements AutoCloseable {
+        private final ClientEntry entry;
+        private final T client;
+        private boolean released;
+
+        private Lease(ClientEntry entry, T client) {
+            this.entry = entry;
+            this.client = client;
+        }
+
+        /**
+         * @return The shared client
+         * @throws IllegalStateException if the lease has been released
+         */
+        public synchronized T get() {
+            if (released) throw new IllegalStateException("The AI client lease has been released");
+            return client;
+        }
+
+        /**
+         * @return Whether this lease holds the client of the given configuration
+         */
+        public boolean matches(String kind, String provider, String model, String apiKey, String options) {
+            return entry.key.equals(new ClientKey(kind, provider.toLowerCase(), model, apiKey, options));
+        }
+
+        @Override
+        public synchronized void close() {
+            if (released) return;
+            released = true;
+            release(entry);
+        }
+    }
+
+    /**
+     * Metrics of the AI clients
+     * @param leasedConnections Connections of the pool in use
+     * @param availableConnections Idle connections of the pool
+     * @param pendingConnections Requests waiting for a connection
+     * @param maxConnections Maximum connections of the pool
+     * @param created Model clients created
+     * @param released Model clients released by all their holders
+     * @param providers Usage of each provider
+     * @param clients The shared model clients
+     */
+    public record AiMetrics(int leasedConnections, int availableConnections, int pendingConnections, int maxConnections,
+                            long created, long released, List<ProviderMetrics> providers, List<ClientMetrics> clients) {}
+
+    /**
+     * @param provider The provider
+     * @param apiClients API clients of the provider (one per API key)
+     * @param requests HTTP requests sent to the provider
+     * @param failures Requests that failed or got an error status
+     */
+    public record ProviderMetrics(String provider, int apiClients, long requests, long failures) {}
+
+    /**
+     * @param kind Kind of client
+     * @param provider The provider
+     * @param model The model name
+     * @param options The options of the client
+     * @param references Holders of the client
+     * @param acquisitions Times the client was acquired
+     */
+    public record ClientMetrics(String kind, String provider, String model, String options, int references, long acquisitions) {}
+}
@@ -0,0 +1,551 @@
+package org.caselli.cognitiveworkflow.operational.AI;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.caselli.cognitiveworkflow.operational.execution.Deadline;
+import org.caselli.cognitiveworkflow.operational.execution.DeadlineExceededException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Client-side admission control of the requests to the LLM and embedding providers.
+ * <p>
+ * Each provider has two token buckets, refilled continuously: one of requests per minute and one of tokens per
+ * minute ({@code ai.rate-limit.<provider>.requests-per-minute} and {@code tokens-per-minute}, 0 for no limit).
+ * A request is admitted when both buckets can pay for it: the tokens are estimated from the request before the call
+ * (prompt size and maximum completion), and reconciled with the usage reported by the provider after it.
+ * </p>
+ * <p>
+ * Requests that cannot be admitted wait in a queue: higher priorities are admitted first, and within a priority
+ * the flows (see {@link LlmRequestOrigin}) share the capacity equally (weighted fair queueing on the estimated
+ * tokens). The wait is bounded by the deadline of the caller and by {@code ai.rate-limit.max-wait-millis}.
+ * </p>
+ * <p>
+ * A 429 response pauses the provider for its {@code Retry-After} (or an exponential backoff) and the request is
+ * queued again, up to {@code ai.rate-limit.max-retries} times, instead of failing the caller.
+ * </p>
+ */
+@Component
+public class LlmRateLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(LlmRateLimiter.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    /** Backoff after a 429 without Retry-After, doubled at each retry */
+    private static final Duration DEFAULT_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(60);
+
+    private final Map<String, ProviderQueue> queues = new HashMap<>();
+    private final long maxWaitMillis;
+    private final int maxRetries;
+    private final int defaultCompletionTokens;
+
+    public LlmRateLimiter(@Value("${ai.rate-limit.openai.requests-per-minute:0}") long openAiRequestsPerMinute,
+                          @Value("${ai.rate-limit.openai.tokens-per-minute:0}") long openAiTokensPerMinute,
+                          @Value("${ai.rate-limit.anthropic.requests-per-minute:0}") long anthropicRequestsPerMinute,
+                          @Value("${ai.rate-limit.anthropic.tokens-per-minute:0}") long anthropicTokensPerMinute,
+                          @Value("${ai.rate-limit.max-wait-millis:60000}") long maxWaitMillis,
+                          @Value("${ai.rate-limit.max-retries:3}") int maxRetries,
+                          @Value("${ai.rate-limit.default-completion-tokens:256}") int defaultCompletionTokens) {
+        this.maxWaitMillis = maxWaitMillis;
+        this.maxRetries = maxRetries;
+        this.defaultCompletionTokens = defaultCompletionTokens;
+        addProvider("openai", openAiRequestsPerMinute, openAiTokensPerMinute);
+        addProvider("anthropic", anthropicRequestsPerMinute, anthropicTokensPerMinute);
+    }
+
+    /**
+     * Creates a rate limiter without limits, for use outside of the Spring context
+     * @return A new rate limiter
+     */
+    public static LlmRateLimiter withDefaults() {
+        return new LlmRateLimiter(0, 0, 0, 0, 60000, 3, 256);
+    }
+
+    private void addProvider(String provider, long requestsPerMinute, long tokensPerMinute) {
+        if (requestsPerMinute < 0 || tokensPerMinute < 0)
+            throw new IllegalArgumentException("The rate limits of " + provider + " cannot be negative");
+        if (requestsPerMinute > 0 || tokensPerMinute > 0) {
+            queues.put(provider, new ProviderQueue(provider, requestsPerMinute, tokensPerMinute));
+            logger.info("Rate limits of {}: {} requests/min, {} tokens/min", provider,
+                    requestsPerMinute > 0 ? requestsPerMinute : "unlimited", tokensPerMinute > 0 ? tokensPerMinute : "unlimited");
+        }
+    }
+
+    /**
+     * Waits until a request can be sent to a provider
+     * @param provider The provider
+     * @param origin The origin of the request, for the fair queueing
+     * @param deadline The deadline of the caller, which bounds the wait
+     * @param estimatedTokens Estimated tokens of the request (prompt and completion)
+     * @return The permit of the request, to be completed with the tokens reported by the provider
+     * @throws DeadlineExceededException if the deadline passes before the request is admitted
+     * @throws IllegalStateException if the request is not admitted within {@code ai.rate-limit.max-wait-millis}
+     */
+    public Permit acquire(String provider, LlmRequestOrigin origin, Deadline deadline, long estimatedTokens) {
+        ProviderQueue queue = queues.get(provider.toLowerCase());
+        if (queue == null) return Permit.NONE;
+        return queue.acquire(origin, deadline, estimatedTokens);
+    }
+
+    /**
+     * Pauses the admissions to a provider after it throttled a request
+     * @param provider The provider
+     * @param retryAfter How long to pause
+     */
+    public void throttled(String provider, Duration retryAfter) {
+        ProviderQueue queue = queues.get(provider.toLowerCase());
+        if (queue != null) queue.pause(retryAfter);
+    }
+
+    /**
+     * An interceptor that applies the limits of a provider to the blocking calls
+     * @param provider The provider
+     * @return The interceptor
+     */
+    public ClientHttpRequestInterceptor interceptor(String provider) {
+        String name = provider.toLowerCase();
+        return (request, body, execution) -> {
+            ProviderQueue queue = queues.get(name);
+            if (queue == null) return execution.execute(request, body);
+
+            long estimatedTokens = estimateTokens(body, defaultCompletionTokens);
+            for (int attempt = 0; ; attempt++) {
+                Permit permit = queue.acquire(LlmRequestOrigin.current(), Deadline.current(), estimatedTokens);
+
+                ClientHttpResponse response;
+                try {
+                    response = execution.execute(request, body);
+                } catch (IOException | RuntimeException e) {
+                    permit.complete(null);
+                    throw e;
+                }
+
+                if (response.getStatusCode().value() == 429) {
+                    // A throttled request does not use tokens
+                    permit.complete(0L);
+                    Duration retryAfter = retryAfter(response.getHeaders(), attempt);
+                    queue.pause(retryAfter);
+                    if (attempt >= maxRetries) return response;
+
+                    logger.warn("{} throttled a request, retrying in {} ms (attempt {} of {})", name, retryAfter.toMillis(), attempt + 1, maxRetries);
+                    queue.recordRetry();
+                    response.close();
+                    continue;
+                }
+
+                if (!response.getStatusCode().is2xxSuccessful()) {
+                    permit.complete(null);
+                    return response;
+                }
+
+                // The response is buffered to read the reported usage
+                byte[] responseBody;
+                try (InputStream stream = response.getBody()) {
+                    responseBody = stream.readAllBytes();
+                } catch (IOException | RuntimeException e) {
+                    permit.complete(null);
+                    response.close();
+                    throw e;
+                }
+                permit.complete(reportedTokens(responseBody));
+                return new BufferedResponse(response, responseBody);
+            }
+        };
+    }
+
+    /**
+     * A filter that applies the limits of a provider to the streaming calls. The tokens of a stream are estimated
+     * with {@code ai.rate-limit.default-completion-tokens}, as neither its prompt nor its usage can be read here.
+     * @param provider The provider
+     * @return The filter
+     */
+    public ExchangeFilterFunction filter(String provider) {
+        String name = provider.toLowerCase();
+        return (request, next) -> {
+            ProviderQueue queue = queues.get(name);
+            if (queue == null) return next.exchange(request);
+
+            LlmRequestOrigin origin = LlmRequestOrigin.current();
+            Deadline deadline = Deadline.current();
+            // The wait blocks, so it does not run on the event loop
+            return Mono.fromCallable(() -> queue.acquire(origin, deadline, defaultCompletionTokens))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMap(permit -> next.exchange(request)
+                            .doOnNext(response -> {
+                                if (response.statusCode().value() == 429) {
+                                    permit.complete(0L);
+                                    queue.pause(retryAfter(response.headers().asHttpHeaders(), 0));
+                                }
+                            })
+                            .doFinally(signal -> permit.complete(null)));
+        };
+    }
+
+    /**
+     * @return The metrics of the rate limited providers
+     */
+    public List<ProviderRateMetrics> getMetrics() {
+        return queues.values().stream().map(ProviderQueue::getMetrics)
+                .sorted(Comparator.comparing(ProviderRateMetrics::provider)).toList();
+    }
+
+    /**
+     * Estimates the tokens of a request from its JSON body: about 4 bytes per prompt token, plus the maximum
+     * completion of the request (or the default one)
+     * @param body The body of the request
+     * @param defaultCompletionTokens Completion tokens of the requests without a maximum
+     * @return The estimated tokens
+     */
+    static long estimateTokens(byte[] body, int defaultCompletionTokens) {
+        long promptTokens = (body.length + 3) / 4;
+        try {
+            JsonNode json = objectMapper.readTree(body);
+            // Embedding requests have no completion
+            if (json != null && json.has("input") && !json.has("messages")) return promptTokens;
+            for (String field : List.of("max_completion_tokens", "max_tokens"))
+                if (json != null && json.path(field).isNumber()) return promptTokens + json.path(field).asLong();
+        } catch (IOException e) {
+            // Not JSON: only the prompt is estimated
+        }
+        return promptTokens + defaultCompletionTokens;
+    }
+
+    /**
+     * Reads the tokens reported in the usage of a response (OpenAI and Anthropic formats)
+     * @param body The body of the response
+     * @return The tokens, or null if the response does not report them
+     */
+    static Long reportedTokens(byte[] body) {
+        try {
+            JsonNode usage = objectMapper.readTree(body).path("usage");
+            if (usage.path("total_tokens").isNumber()) return usage.path("total_tokens").asLong();
+            if (usage.path("input_tokens").isNumber() || usage.path("output_tokens").isNumber())
+                return usage.path("input_tokens").asLong() + usage.path("output_tokens").asLong();
+        } catch (IOException | RuntimeException e) {
+            // Not JSON: the estimate is kept
+        }
+        return null;
+    }
+
+    /**
+     * Reads how long to wait after a 429: {@code retry-after-ms}, then {@code Retry-After} (seconds or HTTP date),
+     * then an exponential backoff
+     * @param headers The headers of the response
+     * @param attempt The attempt that was throttled, starting from 0
+     * @return The wait
+     */
+    static Duration retryAfter(HttpHeaders headers, int attempt) {
+        try {
+            String millis = headers.getFirst("retry-after-ms");
+            if (millis != null) return clamp(Duration.ofMillis((long) Double.parseDouble(millis.trim())));
+
+            String value = headers.getFirst(HttpHeaders.RETRY_AFTER);
+            if (value != null) {
+                value = value.trim();
+                if (value.matches("\\d+(\\.\\d+)?")) return clamp(Duration.ofMillis((long) (Double.parseDouble(value) * 1000)));
+                ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return clamp(Duration.between(ZonedDateTime.now(date.getZone()), date));
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            // Invalid header: the backoff is used
+        }
+        return clamp(DEFAULT_BACKOFF.multipliedBy(1L << Math.min(attempt, 16)));
+    }
+
+    private static Duration clamp(Duration duration) {
+        if (duration.isNegative()) return Duration.ZERO;
+        return duration.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : duration;
+    }
+
+    /**
+     * The admission of a request, completed once the provider answered
+     */
+    public static class Permit {
+        /** Permit of the providers without limits */
+        static final Permit NONE = new Permit(null, 0);
+
+        private final ProviderQueue queue;
+        private final long estimatedTokens;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private Permit(ProviderQueue queue, long estimatedTokens) {
+            this.queue = queue;
+            this.estimatedTokens = estimatedTokens;
+        }
+
+        /**
+         * Reconciles the estimated tokens with the ones reported by the provider (only the first call has an effect)
+         * @param reportedTokens The tokens used by the request, or null if unknown (the estimate is kept)
+         */
+        public void complete(Long reportedTokens) {
+            if (queue == null || !completed.compareAndSet(false, true)) return;
+            queue.reconcile(estimatedTokens, reportedTokens);
+        }
+    }
+
+    /**
+     * The buckets and the queue of a provider
+     */
+    private final class ProviderQueue {
+        private final String provider;
+        private final long requestsPerMinute;
+        private final long tokensPerMinute;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+
+        /** Waiting requests, in admission order */
+        private final TreeSet<Waiter> waiting = new TreeSet<>(Comparator.comparing(Waiter::priority).reversed()
+                .thenComparingDouble(Waiter::finishTag)
+                .thenComparingLong(Waiter::sequence));
+        /** Virtual finish tag of the last request of each flow, for the fair queueing */
+        private final Map<String, Double> lastFinishTags = new HashMap<>();
+        private double virtualTime;
+        private long sequence;
+
+        private double availableRequests;
+        private double availableTokens;
+        private long refilledAtNanos = System.nanoTime();
+        private long pausedUntilNanos = System.nanoTime();
+
+        private long admitted;
+        private long throttled;
+        private long retries;
+        private long timeouts;
+        private long estimatedTokens;
+        private long reportedTokens;
+        private long reportedEstimates;
+        private long totalWaitNanos;
+        private long maxWaitNanos;
+
+        ProviderQueue(String provider, long requestsPerMinute, long tokensPerMinute) {
+            this.provider = provider;
+            this.requestsPerMinute = requestsPerMinute;
+            this.tokensPerMinute = tokensPerMinute;
+            this.availableRequests = requestsPerMinute;
+            this.availableTokens = tokensPerMinute;
+        }
+
+        Permit acquire(LlmRequestOrigin origin, Deadline deadline, long tokens) {
+            long startNanos = System.nanoTime();
+            long maxWaitDeadline = startNanos + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+
+            lock.lock();
+            try {
+                double startTag = Math.max(virtualTime, lastFinishTags.getOrDefault(origin.flow(), 0.0));
+                Waiter waiter = new Waiter(origin.priority(), startTag, startTag + Math.max(1, tokens), sequence++);
+                lastFinishTags.put(origin.flow(), waiter.finishTag());
+                waiting.add(waiter);
+
+                try {
+                    while (true) {
+                        long now = System.nanoTime();
+                        refill(now);
+
+                        // Only the head of the queue can be admitted, so large requests are not starved
+                        long waitNanos = Long.MAX_VALUE;
+                        if (waiting.first() == waiter) {
+                            waitNanos = nanosUntilAvailable(tokens, now);
+                            if (waitNanos == 0) {
+                                admit(waiter, tokens, now - startNanos);
+                                return new Permit(this, tokens);
+                            }
+                        }
+
+                        Duration remaining = deadline.remaining();
+                        if (remaining != null && remaining.isZero())
+                            throw new DeadlineExceededException("Deadline exceeded while waiting for the rate limit of " + provider);
+                        if (now - maxWaitDeadline >= 0) {
+                            timeouts++;
+                            throw new IllegalStateException("Request to " + provider + " not admitted by the rate limiter within " + maxWaitMillis + " ms");
+                        }
+
+                        long limit = maxWaitDeadline - now;
+                        if (remaining != null) limit = Math.min(limit, remaining.toNanos());
+                        changed.awaitNanos(Math.min(waitNanos, limit));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the rate limit of " + provider, e);
+                } finally {
+                    // The next request may now be at the head of the queue
+                    if (waiting.remove(waiter)) changed.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void admit(Waiter waiter, long tokens, long waitNanos) {
+            waiting.remove(waiter);
+            if (requestsPerMinute > 0) availableRequests -= 1;
+            if (tokensPerMinute > 0) availableTokens -= Math.min(tokens, tokensPerMinute);
+
+            virtualTime = waiter.startTag();
+            lastFinishTags.values().removeIf(tag -> tag <= virtualTime);
+
+            admitted++;
+            estimatedTokens += tokens;
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+            changed.signalAll();
+        }
+
+        /**
+         * @return The nanoseconds until the buckets can pay for a request (0 if they can now)
+         */
+        private long nanosUntilAvailable(long tokens, long now) {
+            long wait = Math.max(0, pausedUntilNanos - now);
+            if (requestsPerMinute > 0 && availableRequests < 1)
+                wait = Math.max(wait, nanosToRefill(1 - availableRequests, requestsPerMinute));
+            // A request larger than the bucket is admitted once the bucket is full
+            double needed = Math.min(tokens, tokensPerMinute);
+            if (tokensPerMinute > 0 && availableTokens < needed)
+                wait = Math.max(wait, nanosToRefill(needed - availableTokens, tokensPerMinute));
+            return wait;
+        }
+
+        private long nanosToRefill(double missing, long perMinute) {
+            return Math.max(1, (long) Math.ceil(missing * TimeUnit.MINUTES.toNanos(1) / perMinute));
+        }
+
+        private void refill(long now) {
+            double minutes = (now - refilledAtNanos) / (double) TimeUnit.MINUTES.toNanos(1);
+            refilledAtNanos = now;
+            availableRequests = Math.min(requestsPerMinute, availableRequests + minutes * requestsPerMinute);
+            availableTokens = Math.min(tokensPerMinute, availableTokens + minutes * tokensPerMinute);
+        }
+
+        void reconcile(long estimate, Long reported) {
+            lock.lock();
+            try {
+                if (reported != null) {
+                    reportedTokens += reported;
+                    reportedEstimates += estimate;
+                    // Refunds an overestimate, charges an underestimate (the bucket can go into debt)
+                    if (tokensPerMinute > 0) {
+                        refill(System.nanoTime());
+                        availableTokens = Math.max(-tokensPerMinute, availableTokens + estimate - reported);
+                    }
+                    changed.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void pause(Duration retryAfter) {
+            lock.lock();
+            try {
+                throttled++;
+                pausedUntilNanos = Math.max(pausedUntilNanos, System.nanoTime() + retryAfter.toNanos());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void recordRetry() {
+            lock.lock();
+            try {
+                retries++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        ProviderRateMetrics getMetrics() {
+            lock.lock();
+            try {
+                refill(System.nanoTime());
+                return new ProviderRateMetrics(provider, requestsPerMinute, tokensPerMinute,
+                        requestsPerMinute > 0 ? (long) availableRequests : null, tokensPerMinute > 0 ? (long) availableTokens : null,
+                        waiting.size(), admitted, throttled, retries, timeouts, estimatedTokens, reportedTokens,
+                        reportedEstimates == 0 ? null : (double) reportedTokens / reportedEstimates,
+                        admitted == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos / admitted), TimeUnit.NANOSECONDS.toMillis(maxWaitNanos));
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * A request waiting to be admitted
+     */
+    private record Waiter(LlmRequestOrigin.Priority priority, double startTag, double finishTag, long sequence) {}
+
+    /**
+     * A response whose body has already been read
+     */
+    private record BufferedResponse(ClientHttpResponse response, byte[] body) implements ClientHttpResponse {
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+    }
+
+    /**
+     * Metrics of the rate limits of a provider
+     * @param provider The provider
+     * @param requestsPerMinute Limit of requests per minute (0 for none)
+     * @param tokensPerMinute Limit of tokens per minute (0 for none)
+     * @param availableRequests Requests that can be admitted now (null without limit)
+     * @param availableTokens Tokens that can be admitted now (null without limit, negative after underestimates)
+     * @param queued Requests waiting to be admitted
+     * @param admitted Requests admitted
+     * @param throttled 429 responses of the provider
+     * @param retries Throttled requests sent again
+     * @param timeouts Requests not admitted within the maximum wait
+     * @param estimatedTokens Tokens estimated before the calls
+     * @param reportedTokens Tokens reported by the provider
+     * @param reportedToEstimatedRatio Reported tokens over their estimate (above 1 when the estimates are too low)
+     * @param averageWaitMillis Average wait in the queue
+     * @param maxWaitMillis Longest wait in the queue
+     */
+    public record ProviderRateMetrics(String provider, long requestsPerMinute, long tokensPerMinute, Long availableRequests,
+                                      Long availableTokens, int queued, long admitted, long throttled, long retries, long timeouts,
+                                      long estimatedTokens, long reportedTokens, Double reportedToEstimatedRatio,
+                                      long averageWaitMillis, long maxWaitMillis) {}
+}
@@ -0,0 +1,82 @@
+package org.caselli.cognitiveworkflow.operational.AI;
+
+/**
+ * Origin of the LLM and embedding requests made on a thread, used by the {@link LlmRateLimiter} to share the
+ * provider capacity fairly.
+ * <p>
+ * The executor activates the origin of a workflow on the thread that runs its nodes, and the services activate
+ * their own: requests of higher priority are admitted first, and the flows of the same priority get an equal share.
+ * Work that a node hands to other threads carries the origin with its other execution scopes
+ * (see {@link org.caselli.cognitiveworkflow.operational.execution.ExecutionScopes}).
+ * </p>
+ * @param flow The flow the requests belong to (e.g. the workflow id, or the name of a service)
+ * @param priority The priority of the requests
+ */
+public record LlmRequestOrigin(String flow, Priority priority) {
+
+    /** Origin of the requests made outside of any flow */
+    public static final LlmRequestOrigin DEFAULT = new LlmRequestOrigin("default", Priority.NORMAL);
+
+    private static final ThreadLocal<LlmRequestOrigin> CURRENT = new ThreadLocal<>();
+
+    public LlmRequestOrigin {
+        if (flow == null) flow = "default";
+        if (priority == null) priority = Priority.NORMAL;
+    }
+
+    /**
+     * Origin of the requests of a workflow
+     * @param workflowId The id of the workflow
+     * @return The origin
+     */
+    public static LlmRequestOrigin workflow(String workflowId) {
+        return new LlmRequestOrigin("workflow:" + workflowId, Priority.NORMAL);
+    }
+
+    /**
+     * Origin of the requests of a service on the path of every user request (e.g. the intent detector):
+     * they run before any workflow can start, so they have a higher priority
+     * @param service The name of the service
+     * @return The origin
+     */
+    public static LlmRequestOrigin service(String service) {
+        return new LlmRequestOrigin("service:" + service, Priority.HIGH);
+    }
+
+    /**
+     * @return The origin active on the current thread, or {@link #DEFAULT}
+     */
+    public static LlmRequestOrigin current() {
+        LlmRequestOrigin origin = CURRENT.get();
+        return origin != null ? origin : DEFAULT;
+    }
+
+    /**
+     * Activates this origin on the current thread, until the returned scope is closed
+     * @return The scope, which restores the previous origin when closed
+     */
+    public Scope activate() {
+        LlmRequestOrigin previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous != null) CURRENT.set(previous);
+            else CURRENT.remove();
+        };
+    }
+
+    /**
+     * Priority of the requests: higher priorities are always admitted first
+     */
+    public enum Priority {
+        LOW, NORMAL, HIGH
+    }
+
+    /**
+     * Scope of an activated origin
+     */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,298 @@
+package org.caselli.cognitiveworkflow.operational.AI;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Exact-match cache of the LLM responses of the nodes that opt in ({@code cacheResponses} of the LLM metamodel).
+ * <p>
+ * Responses are keyed by a hash of the model, its options, the rendered messages and the schema of the response
+ * port, so a hit is only possible for the very same request. Entries expire after their TTL, and the cache is
+ * bounded both by number of entries ({@code llm.cache.max-entries}) and by size ({@code llm.cache.max-bytes}):
+ * the least recently used entries are evicted first.
+ * </p>
+ * <p>
+ * Concurrent misses of the same key are coalesced: one caller calls the provider, the others wait for its
+ * response. Failed calls are not stored.
+ * </p>
+ * <p>
+ * If {@code llm.cache.file} is set, the entries are saved to that file on shutdown and loaded at startup.
+ * </p>
+ */
+@Component
+public class LlmResponseCache {
+    private static final Logger logger = LoggerFactory.getLogger(LlmResponseCache.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final Duration defaultTtl;
+    private final Path file;
+
+    /** Entries in access order, for the LRU eviction */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /** Calls in progress by key */
+    private final Map<String, CompletableFuture<String>> inFlight = new HashMap<>();
+
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long coalesced;
+    private long evictions;
+
+    public LlmResponseCache(@Value("${llm.cache.max-entries:1000}") int maxEntries,
+                            @Value("${llm.cache.max-bytes:10485760}") long maxBytes,
+                            @Value("${llm.cache.ttl-seconds:86400}") long defaultTtlSeconds,
+                            @Value("${llm.cache.file:}") String file) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.defaultTtl = Duration.ofSeconds(defaultTtlSeconds);
+        this.file = file == null || file.isBlank() ? null : Path.of(file);
+        load();
+    }
+
+    /**
+     * Creates a response cache with the default bounds and no persistence, for use outside of the Spring context
+     * @return A new response cache
+     */
+    public static LlmResponseCache withDefaults() {
+        return new LlmResponseCache(1000, 10_485_760L, 86400, null);
+    }
+
+    /**
+     * Computes the key of a request
+     * @param model Identifies the model and its options (e.g. provider, model name, temperature)
+     * @param messages The rendered messages, format instructions included
+     * @param schema The schema of the response port
+     * @return The key (a SHA-256 hash)
+     */
+    public static String key(String model, List<Message> messages, PortSchema schema) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, model);
+            for (Message message : messages) {
+                update(digest, message.getMessageType().name());
+                update(digest, message.getText());
+            }
+            update(digest, schema != null ? schema.toJson() : null);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Adds a length-prefixed value to the hash, so different splits of the same text never collide
+     */
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(value != null ? bytes.length : -1).array());
+        digest.update(bytes);
+    }
+
+    /**
+     * Gets the stored response of a key, or calls the provider and stores its response.
+     * If the same key is already being called, waits for that call instead.
+     * @param key The key of the request (see {@link #key})
+     * @param ttl How long the response stays valid (null for {@code llm.cache.ttl-seconds})
+     * @param call Calls the provider; it may throw to reject a response, which is then not stored
+     * @return The response
+     */
+    public String getOrCall(String key, Duration ttl, Supplier<String> call) {
+        CompletableFuture<String> pending;
+        boolean leader = false;
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+                hits++;
+                return entry.response;
+            }
+            if (entry != null) remove(key);
+
+            pending = inFlight.get(key);
+            if (pending != null) coalesced++;
+            else {
+                misses++;
+                pending = new CompletableFuture<>();
+                inFlight.put(key, pending);
+                leader = true;
+            }
+        }
+
+        if (!leader) {
+            try {
+                return pending.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) throw cause;
+                throw e;
+            }
+        }
+
+        try {
+            String response = call.get();
+            synchronized (this) {
+                if (response != null) {
+                    long expiresAt = System.currentTimeMillis() + (ttl != null ? ttl : defaultTtl).toMillis();
+                    put(key, new Entry(response, expiresAt));
+                }
+                inFlight.remove(key);
+            }
+            pending.complete(response);
+            return response;
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                inFlight.remove(key);
+            }
+            pending.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return The metrics of the cache
+     */
+    public synchronized CacheMetrics getMetrics() {
+        long lookups = hits + misses + coalesced;
+        return new CacheMetrics(hits, misses, coalesced, evictions, entries.size(), bytes,
+                lookups == 0 ? 0 : (double) (hits + coalesced) / lookups);
+    }
+
+    /**
+     * Removes all the stored responses
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    private void put(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) bytes -= previous.size;
+        bytes += entry.size;
+
+        // Evict the least recently used entries
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().size;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) bytes -= removed.size;
+    }
+
+    /**
+     * Loads the entries saved by a previous run, skipping the expired ones
+     */
+    private void load() {
+        if (file == null || !Files.exists(file)) return;
+
+        long now = System.currentTimeMillis();
+        int loaded = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.isBlank()) continue;
+                StoredEntry stored = objectMapper.readValue(line, StoredEntry.class);
+                if (stored.key() == null || stored.response() == null || stored.expiresAt() <= now) continue;
+                put(stored.key(), new Entry(stored.response(), stored.expiresAt()));
+                loaded++;
+            }
+            logger.info("Loaded {} LLM responses from {}", loaded, file);
+        } catch (IOException e) {
+            // A damaged file only costs the cached responses
+            logger.warn("Failed to load the LLM responses from {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the valid entries to {@code llm.cache.file}, least recently used first (so they are evicted first
+     * when loaded into a smaller cache)
+     */
+    @PreDestroy
+    public void save() {
+        if (file == null) return;
+
+        List<StoredEntry> stored = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            entries.forEach((key, entry) -> {
+                if (entry.expiresAt > now) stored.add(new StoredEntry(key, entry.response, entry.expiresAt));
+            });
+        }
+
+        try {
+            if (file.toAbsolutePath().getParent() != null) Files.createDirectories(file.toAbsolutePath().getParent());
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                for (StoredEntry entry : stored) {
+                    writer.write(objectMapper.writeValueAsString(entry));
+                    writer.newLine();
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Saved {} LLM responses to {}", stored.size(), file);
+        } catch (IOException e) {
+            logger.warn("Failed to save the LLM responses to {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * A stored response
+     */
+    private static final class Entry {
+        final String response;
+        final long expiresAt;
+        /** Approximate size in bytes */
+        final long size;
+
+        Entry(String response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+            this.size = 2L * response.length();
+        }
+    }
+
+    /**
+     * A response as saved to the file
+     */
+    private record StoredEntry(String key, String response, long expiresAt) {}
+
+    /**
+     * Metrics of the cache
+     * @param hits Responses served from the cache
+     * @param misses Calls to the provider
+     * @param coalesced Lookups that waited for the call of an identical request
+     * @param evictions Entries evicted to respect the bounds
+     * @param entries Stored responses
+     * @param bytes Approximate size of the stored responses
+     * @param hitRate Share of the lookups that did not call the provider
+     */
+    public record CacheMetrics(long hits, long misses, long coalesced, long evictions, int entries, long bytes, double hitRate) {}
+}
@@ -13,8 +13,11 @@ import org.springframework.ai.converter.StructuredOutputConverter;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.ai.chat.client.ChatClient;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * A utility class for handling structured output from LLM responses based on port schemas.
@@ -212,20 +215,98 @@ public class PortStructuredOutputConverter {
      * @return The processed response
      */
     public static Object processWithChatClient(ChatClient chatClient, List<Message> messages, Port port) {
-        addFormatInstructions(messages, port);
-        Prompt prompt = new Prompt(messages);
+        return processWithChatClient(chatClient, messages, port, null, null, null);
+    }
+
+    /**
+     * Helper method to process the response directly with ChatClient, reusing the cached response of an identical request
+     * @param chatClient The chat client to use for response processing
+     * @param messages The messages to send to the chat client
+     * @param port The port containing the schema
+     * @param cache The response cache (null to always call the model)
+     * @param model Identifies the model and its options in the cache key
+     * @param ttl How long the response is cached (null for the default of the cache)
+     * @return The processed response
+     */
+    public static Object processWithChatClient(ChatClient chatClient, List<Message> messages, Port port,
+                                               LlmResponseCache cache, String model, Duration ttl) {
+        String responseText = callWithChatClient(chatClient, messages, port, cache, model, ttl);
+
+        var res = processResponse(responseText, port);
+
+        logger.info("Converted response: {}", res);
+
+        return res;
+    }
+
+    /**
+     * Calls the ChatClient with the format instructions of the port, without converting the response
+     * @param chatClient The chat client to call
+     * @param messages The messages to send to the chat client (not modified)
+     * @param port The port containing the schema
+     * @param cache The response cache (null to always call the model)
+     * @param model Identifies the model and its options in the cache key
+     * @param ttl How long the response is cached (null for the default of the cache)
+     * @return The raw text of the response (see {@link #processResponse})
+     */
+    public static String callWithChatClient(ChatClient chatClient, List<Message> messages, Port port,
+                                            LlmResponseCache cache, String model, Duration ttl) {
+        return callWithChatClient(chatClient, messages, port, cache, model, ttl, null);
+    }
+
+    /**
+     * Calls the ChatClient with the format instructions of the port, streaming the response if a consumer of its
+     * tokens is given. The response is returned only once complete, so it is parsed as a whole (see {@link #processResponse}).
+     * @param chatClient The chat client to call
+     * @param messages The messages to send to the chat client (not modified)
+     * @param port The port containing the schema
+     * @param cache The response cache (null to always call the model): a cached response is not streamed
+     * @param model Identifies the model and its options in the cache key
+     * @param ttl How long the response is cached (null for the default of the cache)
+     * @param onToken Receives the tokens of the response while it is generated (null to wait for the whole response)
+     * @return The raw text of the response
+     */
+    public static String callWithChatClient(ChatClient chatClient, List<Message> messages, Port port,
+                                            LlmResponseCache cache, String model, Duration ttl, Consumer<String> onToken) {
+        List<Message> instructedMessages = new ArrayList<>(messages);
+        addFormatInstructions(instructedMessages, port);
+        Prompt prompt = new Prompt(instructedMessages);
 
         logger.info("Prompt contents: {}", prompt.getContents());
 
-        String responseText = chatClient.prompt(prompt).call().content();
+        String responseText;
+        if (cache == null) responseText = call(chatClient, prompt, onToken);
+        else {
+            String key = LlmResponseCache.key(model, instructedMessages, port.getSchema());
+            responseText = cache.getOrCall(key, ttl, () -> {
+                String text = call(chatClient, prompt, onToken);
+                // Responses that do not match the schema are not cached
+                processResponse(text, port);
+                return text;
+            });
+        }
 
         logger.info("Raw LLM response: {}", responseText);
 
-        var res = processResponse(responseText, port);
+        return responseText;
+    }
 
-        logger.info("Converted response: {}", res);
+    /**
+     * Calls the model, or streams its response to a consumer of the tokens
+     * @return The whole text of the response
+     */
+    private static String call(ChatClient chatClient, Prompt prompt, Consumer<String> onToken) {
+        if (onToken == null) return chatClient.prompt(prompt).call().content();
 
-        return res;
+        StringBuilder text = new StringBuilder();
+        // Blocking on the stream cancels it if the caller is interrupted (e.g. by its deadline)
+        chatClient.prompt(prompt).stream().content()
+                .doOnNext(token -> {
+                    text.append(token);
+                    onToken.accept(token);
+                })
+                .blockLast();
+        return text.toString();
     }
 
 }
\ No newline at end of file
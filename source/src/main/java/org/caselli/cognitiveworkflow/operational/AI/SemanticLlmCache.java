@@ -0,0 +1,294 @@
+package org.caselli.cognitiveworkflow.operational.AI;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.caselli.cognitiveworkflow.operational.AI.services.EmbeddingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Semantic cache of LLM answers: a prompt that is a paraphrase of a previously answered prompt gets the same answer.
+ * <p>
+ * Prompts are normalized and embedded; the answer of the most similar previous prompt is reused if their cosine
+ * similarity reaches the threshold ({@code llm.semantic-cache.threshold}, or the one of the caller). Answers are
+ * grouped by scope (e.g. a node) and tagged with a version of everything else the answer depends on (e.g. the
+ * metamodel version, the system prompt, the output schema): answers of another version are never reused.
+ * </p>
+ * <p>
+ * A share of the hits ({@code llm.semantic-cache.verify-rate}) is answered by the model anyway, to count the false
+ * positives (paraphrases that got another answer) and tune the threshold. The index is kept in memory, bounded by
+ * number of entries with LRU eviction, and entries expire after {@code llm.semantic-cache.ttl-seconds}.
+ * </p>
+ */
+@Component
+public class SemanticLlmCache {
+    private static final Logger logger = LoggerFactory.getLogger(SemanticLlmCache.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Function<String, List<Double>> embedder;
+    private final double defaultThreshold;
+    private final int maxEntries;
+    private final Duration ttl;
+    private final double verifyRate;
+
+    /** Entries in access order, for the LRU eviction */
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long nextId;
+
+    private long hits;
+    private long misses;
+    private long stale;
+    private long verifications;
+    private long falsePositives;
+    private double highestFalsePositiveSimilarity;
+    private long embeddingFailures;
+
+    public SemanticLlmCache(EmbeddingService embeddingService,
+                            @Value("${llm.semantic-cache.threshold:0.95}") double defaultThreshold,
+                            @Value("${llm.semantic-cache.max-entries:1000}") int maxEntries,
+                            @Value("${llm.semantic-cache.ttl-seconds:86400}") long ttlSeconds,
+                            @Value("${llm.semantic-cache.verify-rate:0.05}") double verifyRate) {
+        this(embeddingService::generateEmbedding, defaultThreshold, maxEntries, Duration.ofSeconds(ttlSeconds), verifyRate);
+    }
+
+    SemanticLlmCache(Function<String, List<Double>> embedder, double defaultThreshold, int maxEntries, Duration ttl, double verifyRate) {
+        if (defaultThreshold <= 0 || defaultThreshold > 1)
+            throw new IllegalArgumentException("The similarity threshold must be in (0, 1]");
+        this.embedder = embedder;
+        this.defaultThreshold = defaultThreshold;
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.verifyRate = verifyRate;
+    }
+
+    /**
+     * Gets the answer of the most similar previous prompt, or calls the model and stores its answer
+     * @param scope Group of the comparable prompts (e.g. "llm-node:" and the id of the node)
+     * @param version Everything else the answer depends on; answers of other versions are not reused
+     * @param prompt The prompt that may be paraphrased
+     * @param threshold Minimum cosine similarity of a hit (null for {@code llm.semantic-cache.threshold})
+     * @param type Type of the answer (answers are stored as JSON, so each caller gets its own copy)
+     * @param call Calls the model
+     * @param sameAnswer Tells if two answers are equivalent, to detect the false positives
+     * @return The answer, with the similarity of the reused prompt if it was a hit
+     */
+    public <T> Answer<T> getOrCall(String scope, String version, String prompt, Double threshold, Class<T> type,
+                                   Supplier<T> call, BiPredicate<T, T> sameAnswer) {
+        String normalized = normalize(prompt);
+        float[] vector = embed(normalized);
+        if (vector == null) return new Answer<>(call.get(), null);
+
+        double minSimilarity = threshold != null ? threshold : defaultThreshold;
+        Entry match = null;
+        double similarity = 0;
+        boolean verify;
+
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            Entry staleMatch = null;
+            for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+                Entry entry = iterator.next();
+                if (entry.expiresAt <= now) {
+                    iterator.remove();
+                    continue;
+                }
+                if (!entry.scope.equals(scope)) continue;
+
+                double candidate = dot(vector, entry.vector);
+                if (candidate < minSimilarity) continue;
+                if (!entry.version.equals(version)) {
+                    staleMatch = entry;
+                    continue;
+                }
+                if (match == null || candidate > similarity) {
+                    match = entry;
+                    similarity = candidate;
+                }
+            }
+
+            if (match == null) {
+                misses++;
+                // The answer of an older version is dropped to make room for the new one
+                if (staleMatch != null) {
+                    stale++;
+                    entries.remove(staleMatch.id);
+                }
+            } else {
+                hits++;
+                entries.get(match.id); // Most recently used
+            }
+            verify = match != null && verifyRate > 0 && ThreadLocalRandom.current().nextDouble() < verifyRate;
+        }
+
+        if (match != null && !verify) {
+            logger.debug("Semantic cache hit in {} with similarity {}", scope, similarity);
+            return new Answer<>(read(match.answer, type), similarity);
+        }
+
+        T answer = call.get();
+
+        // A failed verification does not tell anything about the reused answer
+        if (verify && answer == null) return new Answer<>(read(match.answer, type), similarity);
+
+        if (verify) {
+            boolean same = sameAnswer.test(read(match.answer, type), answer);
+            synchronized (this) {
+                verifications++;
+                if (!same) {
+                    falsePositives++;
+                    highestFalsePositiveSimilarity = Math.max(highestFalsePositiveSimilarity, similarity);
+                    entries.remove(match.id);
+                }
+            }
+            if (same) return new Answer<>(answer, null);
+            logger.info("Semantic cache false positive in {} with similarity {}: \"{}\" and \"{}\" have different answers",
+                    scope, similarity, match.prompt, normalized);
+        }
+
+        if (answer != null) store(new Entry(scope, version, normalized, vector, write(answer)));
+        return new Answer<>(answer, null);
+    }
+
+    /**
+     * @return The metrics of the cache
+     */
+    public synchronized SemanticCacheMetrics getMetrics() {
+        long lookups = hits + misses;
+        return new SemanticCacheMetrics(defaultThreshold, hits, misses, stale, verifications, falsePositives,
+                verifications == 0 ? 0 : (double) falsePositives / verifications, highestFalsePositiveSimilarity,
+                embeddingFailures, entries.size(), lookups == 0 ? 0 : (double) hits / lookups);
+    }
+
+    /**
+     * Normalizes a prompt, so that the case and the spacing do not change its embedding
+     * @param prompt The prompt
+     * @return The normalized prompt
+     */
+    static String normalize(String prompt) {
+        return prompt.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Embeds a prompt as a unit vector, so the dot product is the cosine similarity
+     * @return The vector, or null if the embedding failed (the cache is then skipped)
+     */
+    private float[] embed(String prompt) {
+        try {
+            List<Double> embedding = embedder.apply(prompt);
+            if (embedding == null || embedding.isEmpty()) throw new IllegalStateException("Empty embedding");
+
+            float[] vector = new float[embedding.size()];
+            double norm = 0;
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = embedding.get(i).floatValue();
+                norm += vector[i] * vector[i];
+            }
+            if (norm == 0) throw new IllegalStateException("Zero embedding");
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) vector[i] *= scale;
+            return vector;
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                embeddingFailures++;
+            }
+            logger.warn("Semantic cache skipped, the prompt could not be embedded: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) return -1; // Embedded by another model
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) dot += a[i] * b[i];
+        return dot;
+    }
+
+    private synchronized void store(Entry entry) {
+        entry.id = nextId++;
+        entry.expiresAt = System.currentTimeMillis() + ttl.toMillis();
+        entries.put(entry.id, entry);
+
+        // Evict the least recently used entries
+        Iterator<Long> eldest = entries.keySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private String write(Object answer) {
+        try {
+            return objectMapper.writeValueAsString(answer);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("The answer cannot be cached: " + e.getMessage(), e);
+        }
+    }
+
+    private <T> T read(String answer, Class<T> type) {
+        try {
+            return objectMapper.readValue(answer, type);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("The cached answer cannot be read: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * A previously answered prompt
+     */
+    private static final class Entry {
+        final String scope;
+        final String version;
+        final String prompt;
+        final float[] vector;
+        final String answer;
+        long id;
+        long expiresAt;
+
+        Entry(String scope, String version, String prompt, float[] vector, String answer) {
+            this.scope = scope;
+            this.version = version;
+            this.prompt = prompt;
+            this.vector = vector;
+            this.answer = answer;
+        }
+    }
+
+    /**
+     * An answer of the cache or of the model
+     * @param value The answer
+     * @param similarity Similarity of the prompt whose answer was reused (null if the model was called)
+     */
+    public record Answer<T>(T value, Double similarity) {
+        public boolean isHit() {
+            return similarity != null;
+        }
+    }
+
+    /**
+     * Metrics of the semantic cache
+     * @param threshold Default similarity threshold
+     * @param hits Answers reused
+     * @param misses Prompts answered by the model
+     * @param stale Misses that matched only the answer of another version
+     * @param verifications Hits answered by the model anyway, to detect the false positives
+     * @param falsePositives Verified hits whose answer was different
+     * @param falsePositiveRate Share of the verified hits that were false positives
+     * @param highestFalsePositiveSimilarity Highest similarity of a false positive (the threshold should be above it)
+     * @param embeddingFailures Lookups skipped because the prompt could not be embedded
+     * @param entries Stored answers
+     * @param hitRate Share of the lookups that reused an answer
+     */
+    public record SemanticCacheMetrics(double threshold, long hits, long misses, long stale, long verifications,
+                                       long falsePositives, double falsePositiveRate, double highestFalsePositiveSimilarity,
+                                       long embeddingFailures, int entries, double hitRate) {}
+}
@@ -1,12 +1,12 @@
 package org.caselli.cognitiveworkflow.operational.AI.factories;
 
+import org.caselli.cognitiveworkflow.operational.AI.AiClientRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.document.MetadataMode;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.openai.OpenAiEmbeddingModel;
 import org.springframework.ai.openai.OpenAiEmbeddingOptions;
-import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.ai.retry.RetryUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
@@ -20,6 +20,12 @@ public class EmbeddingModelFactory {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    private final AiClientRegistry aiClientRegistry;
+
+    public EmbeddingModelFactory(AiClientRegistry aiClientRegistry) {
+        this.aiClientRegistry = aiClientRegistry;
+    }
+
     /**
      * Creates an EmbeddingModel based on the specified provider.
      * @param provider The provider name (e.g., "openai", "vertex").
@@ -35,6 +41,28 @@ public class EmbeddingModelFactory {
         };
     }
 
+    /**
+     * Gets the shared EmbeddingModel of a provider, model and API key, building it if nobody holds it.
+     * The lease must be closed when the model is no longer needed.
+     * @param provider The provider name (e.g., "openai", "vertex").
+     * @param modelName The Embeddings Model
+     * @param apiKey The API key (Optional). If null a default API Key will be used if existing
+     * @return The lease of the EmbeddingModel.
+     */
+    public AiClientRegistry.Lease<EmbeddingModel> acquireEmbeddingModel(String provider, String modelName, String apiKey) {
+        String resolvedApiKey = getApiKeyOrDefault(provider, apiKey);
+        return aiClientRegistry.acquire("embedding", provider, modelName, resolvedApiKey, null,
+                () -> createEmbeddingModel(provider, modelName, resolvedApiKey));
+    }
+
+    /**
+     * Checks whether a lease holds the EmbeddingModel of a provider, model and API key
+     * @return true if the lease can be kept for this configuration
+     */
+    public boolean isLeaseOf(AiClientRegistry.Lease<EmbeddingModel> lease, String provider, String modelName, String apiKey) {
+        return lease.matches("embedding", provider, modelName, getApiKeyOrDefault(provider, apiKey), null);
+    }
+
     /**
      * Creates an EmbeddingModel based on the specified provider. Using Default API key
      * @param provider The provider name (e.g., "openai", "vertex").
@@ -48,7 +76,7 @@ public class EmbeddingModelFactory {
 
 
     /**
-     * Builds a configured OpenAI EmbeddingModel instance.
+     * Builds a configured OpenAI EmbeddingModel instance, on the shared OpenAI API client of the key.
      * @param apiKey The OpenAI API key
      * @param modelName The specific OpenAI model name
      * @throws IllegalArgumentException if the API key is missing
@@ -57,10 +85,8 @@ public class EmbeddingModelFactory {
         if (!StringUtils.hasText(apiKey)) throw new IllegalArgumentException("OpenAI API key is required");
         if (!StringUtils.hasText(modelName)) throw new IllegalArgumentException("Model name is required");
 
-        OpenAiApi openAiApi = OpenAiApi.builder().apiKey(apiKey).build();
-
         var openAiEmbeddingModel = new OpenAiEmbeddingModel(
-                openAiApi,
+                aiClientRegistry.openAiApi(apiKey),
                 MetadataMode.EMBED,
                 OpenAiEmbeddingOptions.builder().model(modelName).build(),
                 RetryUtils.DEFAULT_RETRY_TEMPLATE
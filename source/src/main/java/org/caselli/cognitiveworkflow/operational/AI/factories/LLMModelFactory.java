@@ -1,13 +1,12 @@
 package org.caselli.cognitiveworkflow.operational.AI.factories;
 
 import org.caselli.cognitiveworkflow.knowledge.model.node.LlmNodeMetamodel;
+import org.caselli.cognitiveworkflow.operational.AI.AiClientRegistry;
 import org.springframework.ai.anthropic.AnthropicChatModel;
 import org.springframework.ai.anthropic.AnthropicChatOptions;
-import org.springframework.ai.anthropic.api.AnthropicApi;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiChatOptions;
-import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
@@ -18,6 +17,7 @@ import java.util.logging.Logger;
 @Component
 public class LLMModelFactory {
 
+    private final AiClientRegistry aiClientRegistry;
 
     @Value("${llm.openai.api-key:}")
     private String defaultOpenAiApiKey;
@@ -27,8 +27,12 @@ public class LLMModelFactory {
 
     Logger logger = Logger.getLogger(LLMModelFactory.class.getName());
 
+    public LLMModelFactory(AiClientRegistry aiClientRegistry) {
+        this.aiClientRegistry = aiClientRegistry;
+    }
+
     /**
-     * Builds a configured OpenAI ChatModel instance.
+     * Builds a configured OpenAI ChatModel instance, on the shared OpenAI API client of the key.
      * @param apiKey The OpenAI API key
      * @param modelName The specific OpenAI model name
      * @param options Provider-specific options
@@ -57,7 +61,7 @@ public class LLMModelFactory {
         var openaiOptions = optionsBuilder.build();
 
         var model = OpenAiChatModel.builder()
-                .openAiApi(OpenAiApi.builder().apiKey(apiKey).build())
+                .openAiApi(aiClientRegistry.openAiApi(apiKey))
                 .defaultOptions(openaiOptions)
                 .build();
 
@@ -68,7 +72,7 @@ public class LLMModelFactory {
 
 
     /**
-     * Builds a configured Anthropic ChatModel instance.
+     * Builds a configured Anthropic ChatModel instance, on the shared Anthropic API client of the key.
      * @param apiKey The Anthropic API key
      * @param modelName The specific Anthropic model name
      * @param options Provider-specific options
@@ -100,7 +104,7 @@ public class LLMModelFactory {
         var anthropicOptions = optionsBuilder.build();
 
         var model = AnthropicChatModel.builder()
-                .anthropicApi(new AnthropicApi(apiKey))
+                .anthropicApi(aiClientRegistry.anthropicApi(apiKey))
                 .defaultOptions(anthropicOptions)
                 .build();
 
@@ -157,6 +161,41 @@ public class LLMModelFactory {
         return ChatClient.create(chatModel);
     }
 
+    /**
+     * Gets the shared ChatClient of a provider, model, Api Key and options, building it if nobody holds it.
+     * The lease must be closed when the client is no longer needed.
+     *
+     * @param provider  The LLM provider.
+     * @param modelName The specific model name.
+     * @param apiKey    The API key (Optional). If null a default API Key will be used if existing
+     * @param options   Provider-specific options object (Optional).
+     * @return The lease of the ChatClient.
+     * @throws IllegalArgumentException if inputs are invalid.
+     */
+    public AiClientRegistry.Lease<ChatClient> acquireChatClient(String provider, String modelName, String apiKey, LlmNodeMetamodel.LlmModelOptions options) {
+        if (!StringUtils.hasText(provider)) throw new IllegalArgumentException("LLM provider is required.");
+
+        String resolvedApiKey = getApiKeyOrDefault(provider, apiKey);
+        return aiClientRegistry.acquire("chat", provider, modelName, resolvedApiKey, optionsKey(options),
+                () -> createChatClient(provider, modelName, resolvedApiKey, options));
+    }
+
+    /**
+     * Checks whether a lease holds the ChatClient of a provider, model, Api Key and options
+     * @return true if the lease can be kept for this configuration
+     */
+    public boolean isLeaseOf(AiClientRegistry.Lease<ChatClient> lease, String provider, String modelName, String apiKey, LlmNodeMetamodel.LlmModelOptions options) {
+        return lease.matches("chat", provider, modelName, getApiKeyOrDefault(provider, apiKey), optionsKey(options));
+    }
+
+    /**
+     * Canonical form of the options, so clients with equal options are shared
+     */
+    private static String optionsKey(LlmNodeMetamodel.LlmModelOptions options) {
+        if (options == null) return null;
+        return "temperature=" + options.getTemperature() + ", topP=" + options.getTopP() + ", maxTokens=" + options.getMaxTokens();
+    }
+
     /**
      * Creates a ChatClient based on provider and model (Using default API key if it exists)
      *
@@ -78,7 +78,8 @@ public class EmbeddingService {
            throw new IllegalStateException("Embedding provider, model name and API key must be set before using the service.");
 
 
-        this.embeddingModel = embeddingModelFactory.createEmbeddingModel(embeddingProvider, embeddingModelName, embeddingApiKey);
+        // The service lives as long as the application: the shared model is never released
+        this.embeddingModel = embeddingModelFactory.acquireEmbeddingModel(embeddingProvider, embeddingModelName, embeddingApiKey).get();
        return embeddingModel;
     }
 
@@ -8,6 +8,7 @@ import org.caselli.cognitiveworkflow.knowledge.model.node.NodeMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.Port;
 import org.caselli.cognitiveworkflow.operational.execution.ExecutionContext;
 import org.caselli.cognitiveworkflow.operational.AI.LLMAbstractService;
+import org.caselli.cognitiveworkflow.operational.AI.LlmRequestOrigin;
 import org.caselli.cognitiveworkflow.operational.AI.factories.LLMModelFactory;
 import org.caselli.cognitiveworkflow.operational.observability.InputMapperObservabilityReport;
 import org.caselli.cognitiveworkflow.operational.observability.ResultWithObservability;
@@ -96,10 +97,13 @@ public class InputMapperService extends LLMAbstractService {
             ));
 
             // Call the LLM
-            InputMapperLLMResult result = getChatClient()
-                    .prompt(prompt)
-                    .call()
-                    .entity(InputMapperLLMResult.class);
+            InputMapperLLMResult result;
+            try (LlmRequestOrigin.Scope ignored = LlmRequestOrigin.service("input-mapper").activate()) {
+                result = getChatClient()
+                        .prompt(prompt)
+                        .call()
+                        .entity(InputMapperLLMResult.class);
+            }
 
 
             logger.info("LLM returned {}", result != null ? result.getBindings() : "null");
@@ -196,7 +200,8 @@ public class InputMapperService extends LLMAbstractService {
 
         var options = new LlmNodeMetamodel.LlmModelOptions();
         options.setTemperature(temperature);
-        return llmModelFactory.createChatClient(provider, model, apiKey, options);
+        // The service lives as long as the application: the shared client is never released
+        return llmModelFactory.acquireChatClient(provider, model, apiKey, options).get();
     }
 
 
@@ -7,6 +7,8 @@ import org.caselli.cognitiveworkflow.knowledge.MOP.IntentMetamodelService;
 import org.caselli.cognitiveworkflow.knowledge.model.intent.IntentMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.LlmNodeMetamodel;
 import org.caselli.cognitiveworkflow.operational.AI.LLMAbstractService;
+import org.caselli.cognitiveworkflow.operational.AI.LlmRequestOrigin;
+import org.caselli.cognitiveworkflow.operational.AI.SemanticLlmCache;
 import org.caselli.cognitiveworkflow.operational.AI.factories.LLMModelFactory;
 import org.caselli.cognitiveworkflow.operational.observability.IntentDetectionObservabilityReport;
 import org.caselli.cognitiveworkflow.operational.observability.ResultWithObservability;
@@ -21,6 +23,7 @@ import org.springframework.stereotype.Service;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 /**
@@ -43,11 +46,21 @@ public class IntentDetectionService extends LLMAbstractService {
     @Value("${intent-detector.llm.temperature}")
     private double temperature;
 
+    /** If requests that are paraphrases of a previous one reuse its detection */
+    @Value("${intent-detector.semantic-cache.enabled:false}")
+    private boolean semanticCacheEnabled;
+
+    /** Minimum similarity between the requests to reuse a detection (null for the default of the semantic cache) */
+    @Value("${intent-detector.semantic-cache.threshold:#{null}}")
+    private Double semanticCacheThreshold;
+
     private final IntentMetamodelService intentMetamodelService;
+    private final SemanticLlmCache semanticLlmCache;
 
-    public IntentDetectionService(LLMModelFactory llmModelFactory, IntentMetamodelService intentMetamodelService) {
+    public IntentDetectionService(LLMModelFactory llmModelFactory, IntentMetamodelService intentMetamodelService, SemanticLlmCache semanticLlmCache) {
         this.llmModelFactory = llmModelFactory;
         this.intentMetamodelService = intentMetamodelService;
+        this.semanticLlmCache = semanticLlmCache;
     }
 
     /**
@@ -65,6 +78,37 @@ public class IntentDetectionService extends LLMAbstractService {
 
         IntentDetectionObservabilityReport observabilityReport = new IntentDetectionObservabilityReport(userInput);
 
+        IntentDetectionResponse.IntentDetectorResult result;
+        if (semanticCacheEnabled && userInput != null && !userInput.isBlank()) {
+            // The detections are valid as long as the model and the intent catalog do not change
+            String version = intentProvider + "|" + intentModel + "|" + temperature + "|" + intentMetamodelService.getCatalogVersion();
+            SemanticLlmCache.Answer<IntentDetectionResponse.IntentDetectorResult> answer = semanticLlmCache.getOrCall("intent-detector",
+                    version, userInput, semanticCacheThreshold, IntentDetectionResponse.IntentDetectorResult.class,
+                    () -> detectWithModel(userInput, observabilityReport), IntentDetectionService::isSameIntent);
+
+            result = answer.value();
+            observabilityReport.setSemanticCacheSimilarity(answer.similarity());
+            if (answer.isHit()) logger.info("Reused the intent detected for a similar request (similarity {})", answer.similarity());
+        }
+        else result = detectWithModel(userInput, observabilityReport);
+
+        if (result == null) return new ResultWithObservability<>(null, observabilityReport);
+
+        // Observability
+        observabilityReport.setIntentDetectorResult(result);
+        observabilityReport.markCompleted(true,  null, null );
+
+
+        return new ResultWithObservability<>(result, observabilityReport);
+    }
+
+    /**
+     * Detects the intent with the LLM
+     * @param userInput The text input from the user
+     * @param observabilityReport The report of the detection
+     * @return The determined intent, or null if the intent is not clear (the report is then completed with the error)
+     */
+    private IntentDetectionResponse.IntentDetectorResult detectWithModel(String userInput, IntentDetectionObservabilityReport observabilityReport) {
         // Search top-matching intents
         var intents = intentMetamodelService.findMostSimilarIntent(userInput);
 
@@ -93,7 +137,10 @@ public class IntentDetectionService extends LLMAbstractService {
         logger.debug("Prompt: {}", prompt.getContents());
 
         // Call the LLM
-        IntentDetectionResponse modelAnswer = getChatClient().prompt(prompt).call().entity(IntentDetectionResponse.class);
+        IntentDetectionResponse modelAnswer;
+        try (LlmRequestOrigin.Scope ignored = LlmRequestOrigin.service("intent-detector").activate()) {
+            modelAnswer = getChatClient().prompt(prompt).call().entity(IntentDetectionResponse.class);
+        }
 
         logger.debug("Model answer: {}", modelAnswer);
 
@@ -101,9 +148,9 @@ public class IntentDetectionService extends LLMAbstractService {
         if (modelAnswer == null || modelAnswer.getData() == null || (modelAnswer.getError() != null && !modelAnswer.getError().isEmpty()) ) {
             logger.error("Error in intent detection: {}", modelAnswer != null ? modelAnswer.getError() : "Unknown error");
 
-            observabilityReport.markCompleted(false,  modelAnswer.getError(), null );
+            observabilityReport.markCompleted(false,  modelAnswer != null ? modelAnswer.getError() : "Unknown error", null );
 
-            return new ResultWithObservability<>(null, observabilityReport);
+            return null;
         }
 
         var result = modelAnswer.getData();
@@ -154,19 +201,22 @@ public class IntentDetectionService extends LLMAbstractService {
         }
         result.setUserVariables(newVariables);
 
-        // Observability
-        observabilityReport.setIntentDetectorResult(result);
-        observabilityReport.markCompleted(true,  null, null );
-
+        return result;
+    }
 
-        return new ResultWithObservability<>(result, observabilityReport);
+    /**
+     * Two detections are the same if they have the same intent and the same user variables
+     */
+    private static boolean isSameIntent(IntentDetectionResponse.IntentDetectorResult a, IntentDetectionResponse.IntentDetectorResult b) {
+        return Objects.equals(a.getIntentName(), b.getIntentName()) && Objects.equals(a.getUserVariables(), b.getUserVariables());
     }
 
     @Override
     protected ChatClient buildChatClient() {
         var options = new LlmNodeMetamodel.LlmModelOptions();
         options.setTemperature(temperature);
-        return llmModelFactory.createChatClient(intentProvider, intentModel, intentApiKey, options);
+        // The service lives as long as the application: the shared client is never released
+        return llmModelFactory.acquireChatClient(intentProvider, intentModel, intentApiKey, options).get();
     }
 
 
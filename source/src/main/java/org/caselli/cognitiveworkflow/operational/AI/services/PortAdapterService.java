@@ -4,6 +4,7 @@ import lombok.Data;
 import org.caselli.cognitiveworkflow.knowledge.model.node.LlmNodeMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.Port;
 import org.caselli.cognitiveworkflow.operational.AI.LLMAbstractService;
+import org.caselli.cognitiveworkflow.operational.AI.LlmRequestOrigin;
 import org.caselli.cognitiveworkflow.operational.AI.factories.LLMModelFactory;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.SystemMessage;
@@ -137,7 +138,10 @@ public class PortAdapterService extends LLMAbstractService {
 
             // Call the LLM with the prompt
             // Use structured output
-            PortAdaptation adaptationResult = getChatClient().prompt(prompt).call().entity(PortAdaptation.class);
+            PortAdaptation adaptationResult;
+            try (LlmRequestOrigin.Scope ignored = LlmRequestOrigin.service("port-adapter").activate()) {
+                adaptationResult = getChatClient().prompt(prompt).call().entity(PortAdaptation.class);
+            }
 
             if (adaptationResult != null && adaptationResult.getBindings() != null) {
 
@@ -169,7 +173,8 @@ public class PortAdapterService extends LLMAbstractService {
     protected ChatClient buildChatClient() {
         var options = new LlmNodeMetamodel.LlmModelOptions();
         options.setTemperature(temperature);
-        return llmModelFactory.createChatClient(provider, model, apiKey, options);
+        // The service lives as long as the application: the shared client is never released
+        return llmModelFactory.acquireChatClient(provider, model, apiKey, options).get();
     }
 
     /**
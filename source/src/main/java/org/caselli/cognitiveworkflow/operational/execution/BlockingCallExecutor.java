@@ -0,0 +1,80 @@
+package org.caselli.cognitiveworkflow.operational.execution;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the blocking calls of the nodes (LLM, embeddings, MongoDB) that do not react to the deadline on their own,
+ * so the caller can stop waiting for them when the deadline passes.
+ * <p>
+ * Calls run on a bounded pool of {@code workflow.executor.blocking-call-threads} threads, with the
+ * {@link ExecutionScopes} of the caller active. Calls with an unbounded deadline run on the current thread.
+ * </p>
+ */
+@Component
+public class BlockingCallExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    public BlockingCallExecutor(@Value("${workflow.executor.blocking-call-threads:64}") int maxThreads) {
+        int threads = maxThreads > 0 ? maxThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "deadline-call-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Idle threads are released
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Creates an executor with the default pool size, for use outside of the Spring context
+     * @return A new executor
+     */
+    public static BlockingCallExecutor withDefaults() {
+        return new BlockingCallExecutor(64);
+    }
+
+    /**
+     * Runs a blocking call, waiting for it at most until the deadline.
+     * When the deadline passes the call is interrupted and the caller is released, even if the call does not
+     * react to the interruption.
+     * @param deadline The deadline
+     * @param operation Description of the call, for the error message
+     * @param call The call
+     * @return The result of the call
+     * @throws DeadlineExceededException if the deadline passes before the call completes
+     * @throws Exception the exception thrown by the call
+     */
+    public <T> T callWithin(Deadline deadline, String operation, Callable<T> call) throws Exception {
+        if (!deadline.isBounded()) return call.call();
+        deadline.check(operation);
+
+        // The call runs with the scopes of the caller, and the same deadline so the nested calls are bounded too
+        Future<T> future = executor.submit(ExecutionScopes.capture().withDeadline(deadline).wrap(call));
+
+        try {
+            return future.get(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new DeadlineExceededException("Deadline exceeded during " + operation, e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,345 @@
+package org.caselli.cognitiveworkflow.operational.execution;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe ExecutionContext, for nodes that write to the same context from different threads.
+ * <p>
+ * Every top-level key is guarded by one of a fixed set of striped read-write locks: a dot-notation
+ * put, remove or read holds the lock of its root key for the whole navigation, so nested puts are atomic
+ * (intermediate Maps and Lists are created and filled under the same lock) and writers of different
+ * top-level keys do not block each other.
+ * Adding or removing a top-level key changes the structure of the underlying map, so it takes an
+ * exclusive structure lock instead.
+ * </p>
+ * <p>
+ * Reads are consistent: Maps and Lists are returned as deep copies taken under the lock, so they never
+ * expose a container that another thread is modifying. Views and bulk operations (entrySet, forEach,
+ * equals, ...) work on a snapshot of the whole context.
+ * </p>
+ */
+public class ConcurrentExecutionContext extends ExecutionContext {
+
+    private static final int DEFAULT_STRIPES = 16;
+
+    /** Guards the structure of the top-level map (shared for path operations, exclusive for the others) */
+    private final ReadWriteLock structureLock = new ReentrantReadWriteLock();
+
+    /** Striped locks of the top-level keys */
+    private final ReadWriteLock[] stripes;
+
+    public ConcurrentExecutionContext() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes Number of lock stripes (rounded up to a power of two)
+     */
+    public ConcurrentExecutionContext(int stripes) {
+        super();
+        if (stripes <= 0) throw new IllegalArgumentException("The number of stripes must be positive");
+
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) size <<= 1;
+
+        this.stripes = new ReadWriteLock[size];
+        for (int i = 0; i < size; i++) this.stripes[i] = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Creates a thread-safe context with a deep copy of another context
+     * @param other The context to copy from
+     */
+    public ConcurrentExecutionContext(ExecutionContext other) {
+        this();
+        if (other != null) deepCopyFrom(other.entrySet());
+    }
+
+    /**
+     * Returns an independent thread-safe copy of this context
+     * @return The copy
+     */
+    @Override
+    public ConcurrentExecutionContext copy() {
+        ConcurrentExecutionContext copy = new ConcurrentExecutionContext(stripes.length);
+        structureLock.writeLock().lock();
+        try {
+            copy.deepCopyFrom(super.entrySet());
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+        return copy;
+    }
+
+
+    // ------------------------------------------------------------------------------------------------
+    // Dot-notation access
+    // ------------------------------------------------------------------------------------------------
+
+    @Override
+    public Object put(String key, Object value) {
+        if (key == null) return putExclusive(null, value);
+        return put(ContextPath.of(key), value);
+    }
+
+    @Override
+    public Object put(ContextPath path, Object value) {
+        if (path.size() == 0) return null;
+
+        // The root key already exists: only its subtree changes
+        if (withRootLock(path, true, () -> {
+            if (!super.containsKey(path.root())) return false;
+            super.put(path, value);
+            return true;
+        })) return null;
+
+        // New top-level key: the structure of the map changes
+        structureLock.writeLock().lock();
+        try {
+            super.put(path, value);
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+        return null;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (key instanceof String keyStr) return get(ContextPath.of(keyStr));
+        if (key instanceof ContextPath path) return get(path);
+        return readShared(() -> deepCopyValue(super.get(key)));
+    }
+
+    @Override
+    public Object get(ContextPath path) {
+        if (path.size() == 0) return null;
+        return withRootLock(path, false, () -> deepCopyValue(super.get(path)));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (key instanceof String keyStr) return containsKey(ContextPath.of(keyStr));
+        if (key instanceof ContextPath path) return path.size() > 0 && withRootLock(path, false, () -> super.containsKey(path));
+        return readShared(() -> super.containsKey(key));
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (key instanceof String keyStr) return remove(ContextPath.of(keyStr));
+        if (key instanceof ContextPath path && path.size() == 0) return null;
+
+        if (key instanceof ContextPath path && !path.isSimple()) {
+            // Removing a nested value never removes a top-level key
+            return withRootLock(path, true, () -> super.remove(path));
+        }
+
+        structureLock.writeLock().lock();
+        try {
+            return super.remove(key);
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Object getOrDefault(Object key, Object defaultValue) {
+        Object value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+
+    // ------------------------------------------------------------------------------------------------
+    // Map API (top-level keys)
+    // ------------------------------------------------------------------------------------------------
+
+    @Override
+    public int size() {
+        return readShared(super::size);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return readShared(super::isEmpty);
+    }
+
+    @Override
+    public void clear() {
+        structureLock.writeLock().lock();
+        try {
+            super.clear();
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return snapshot().containsValue(value);
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return Collections.unmodifiableMap(snapshot()).entrySet();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(snapshot().keySet());
+    }
+
+    @Override
+    public Collection<Object> values() {
+        return Collections.unmodifiableCollection(snapshot().values());
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Object> action) {
+        snapshot().forEach(action);
+    }
+
+    @Override
+    public Object putIfAbsent(String key, Object value) {
+        return writeExclusive(() -> super.putIfAbsent(key, value));
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return writeExclusive(() -> super.remove(key, value));
+    }
+
+    @Override
+    public boolean replace(String key, Object oldValue, Object newValue) {
+        return writeExclusive(() -> super.replace(key, oldValue, newValue));
+    }
+
+    @Override
+    public Object replace(String key, Object value) {
+        return writeExclusive(() -> super.replace(key, value));
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super Object, ?> function) {
+        writeExclusive(() -> {
+            super.replaceAll(function);
+            return null;
+        });
+    }
+
+    @Override
+    public Object computeIfAbsent(String key, Function<? super String, ?> mappingFunction) {
+        return writeExclusive(() -> super.computeIfAbsent(key, mappingFunction));
+    }
+
+    @Override
+    public Object computeIfPresent(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        return writeExclusive(() -> super.computeIfPresent(key, remappingFunction));
+    }
+
+    @Override
+    public Object compute(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        return writeExclusive(() -> super.compute(key, remappingFunction));
+    }
+
+    @Override
+    public Object merge(String key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        return writeExclusive(() -> super.merge(key, value, remappingFunction));
+    }
+
+    @Override
+    public Object clone() {
+        return copy();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        return snapshot().equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return snapshot().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+
+    // ------------------------------------------------------------------------------------------------
+    // Helpers
+    // ------------------------------------------------------------------------------------------------
+
+    /**
+     * @return A plain deep copy of the whole context, taken atomically
+     */
+    private ExecutionContext snapshot() {
+        ExecutionContext snapshot = new ExecutionContext();
+        structureLock.writeLock().lock();
+        try {
+            snapshot.deepCopyFrom(super.entrySet());
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+        return snapshot;
+    }
+
+    private ReadWriteLock stripeFor(String rootKey) {
+        int h = Objects.hashCode(rootKey);
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * Runs an action under the shared structure lock and the lock of the root key of the path
+     * @param path The path the action works on
+     * @param write True to take the write lock of the root key, false for the read lock
+     * @param action The action
+     * @return The result of the action
+     */
+    private <T> T withRootLock(ContextPath path, boolean write, Supplier<T> action) {
+        ReadWriteLock stripe = stripeFor(path.root());
+        Lock rootLock = write ? stripe.writeLock() : stripe.readLock();
+
+        structureLock.readLock().lock();
+        try {
+            rootLock.lock();
+            try {
+                return action.get();
+            } finally {
+                rootLock.unlock();
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    private <T> T readShared(Supplier<T> action) {
+        structureLock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    private <T> T writeExclusive(Supplier<T> action) {
+        structureLock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    private Object putExclusive(String key, Object value) {
+        return writeExclusive(() -> super.put(key, value));
+    }
+}
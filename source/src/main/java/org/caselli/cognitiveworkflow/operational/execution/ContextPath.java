@@ -0,0 +1,138 @@
+package org.caselli.cognitiveworkflow.operational.execution;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled dot-notation path of the {@link ExecutionContext} (e.g. "data.users.0.name").
+ * <p>
+ * The path is parsed once: segments are pre-split and numeric segments are pre-decoded as list indices,
+ * so accessing the context does not split the key or parse integers on every call.
+ * Paths are interned, therefore {@link #of(String)} returns the same instance for the same key.
+ * </p>
+ */
+public final class ContextPath {
+
+    /** Maximum number of interned paths. Beyond this limit paths are still compiled but no longer cached. */
+    private static final int MAX_INTERNED_PATHS = 50_000;
+
+    private static final ConcurrentHashMap<String, ContextPath> INTERNED = new ConcurrentHashMap<>();
+
+    private final String key;
+    private final String[] segments;
+    private final int[] indices;
+    private final boolean[] numeric;
+
+    private ContextPath(String key) {
+        this.key = key;
+        // Same semantics of the previous String#split based implementation
+        this.segments = key.split("\\.");
+        this.indices = new int[segments.length];
+        this.numeric = new boolean[segments.length];
+
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.isEmpty()) continue;
+            try {
+                indices[i] = Integer.parseInt(segment);
+                numeric[i] = true;
+            } catch (NumberFormatException ignored) {
+                // Not a list index
+            }
+        }
+    }
+
+    /**
+     * Returns the compiled (interned) path of a key
+     * @param key The key, potentially using dot notation
+     * @return The compiled path
+     * @throws IllegalArgumentException if the key is null
+     */
+    public static ContextPath of(String key) {
+        if (key == null) throw new IllegalArgumentException("Context path cannot be null");
+
+        ContextPath path = INTERNED.get(key);
+        if (path != null) return path;
+
+        path = new ContextPath(key);
+        if (INTERNED.size() >= MAX_INTERNED_PATHS) return path;
+
+        ContextPath existing = INTERNED.putIfAbsent(key, path);
+        return existing != null ? existing : path;
+    }
+
+    /**
+     * @return The original dot-notation key
+     */
+    public String key() {
+        return key;
+    }
+
+    /**
+     * @return The number of segments of the path
+     */
+    public int size() {
+        return segments.length;
+    }
+
+    /**
+     * @return True if the path is a plain top-level key
+     */
+    public boolean isSimple() {
+        return segments.length == 1;
+    }
+
+    /**
+     * @return The top-level key of the path (e.g. "data" for "data.users.0.name")
+     */
+    public String root() {
+        return segments[0];
+    }
+
+    /**
+     * @param i Index of the segment
+     * @return The i-th segment of the path
+     */
+    public String segment(int i) {
+        return segments[i];
+    }
+
+    /**
+     * @param i Index of the segment
+     * @return True if the i-th segment is a numeric list index
+     */
+    public boolean isIndex(int i) {
+        return numeric[i];
+    }
+
+    /**
+     * @param i Index of the segment
+     * @return The pre-decoded list index of the i-th segment (only meaningful if {@link #isIndex(int)})
+     */
+    public int index(int i) {
+        return indices[i];
+    }
+
+    /**
+     * @return A copy of the segments of the path
+     */
+    public String[] segments() {
+        return Arrays.copyOf(segments, segments.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        return o instanceof ContextPath other && key.equals(other.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+}
@@ -0,0 +1,127 @@
+package org.caselli.cognitiveworkflow.operational.execution;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An absolute point in time by which a workflow, or one of its nodes, has to complete.
+ * <p>
+ * The executor activates the deadline of a node on the thread that runs it, so the blocking calls made by the
+ * node (HTTP, LLM, MongoDB) can read it with {@link #current()} and bound their waits to the remaining time.
+ * Cancellation is cooperative: a call that notices the deadline has passed throws a {@link DeadlineExceededException}.
+ * Calls that cannot be bounded otherwise run on the {@link BlockingCallExecutor}.
+ * </p>
+ */
+public final class Deadline {
+
+    /** A deadline that never expires */
+    public static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    /** System.nanoTime() at which the deadline expires */
+    private final long expiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * Creates a deadline that expires after the given timeout
+     * @param timeout The timeout. Null, zero or negative timeouts mean no deadline.
+     * @return The deadline
+     */
+    public static Deadline after(Duration timeout) {
+        if (timeout == null || timeout.isZero() || timeout.isNegative()) return NONE;
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    /**
+     * Creates a deadline that expires after the given number of milliseconds
+     * @param timeoutMillis The timeout in milliseconds. Null, zero or negative values mean no deadline.
+     * @return The deadline
+     */
+    public static Deadline afterMillis(Long timeoutMillis) {
+        return timeoutMillis == null ? NONE : after(Duration.ofMillis(timeoutMillis));
+    }
+
+    /**
+     * @return The deadline active on the current thread, or {@link #NONE}
+     */
+    public static Deadline current() {
+        Deadline deadline = CURRENT.get();
+        return deadline != null ? deadline : NONE;
+    }
+
+    /**
+     * Activates this deadline on the current thread, until the returned scope is closed
+     * @return The scope, which restores the previous deadline when closed
+     */
+    public Scope activate() {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous != null) CURRENT.set(previous);
+            else CURRENT.remove();
+        };
+    }
+
+    /**
+     * @return True if the deadline can expire
+     */
+    public boolean isBounded() {
+        return this != NONE && expiresAtNanos != Long.MAX_VALUE;
+    }
+
+    /**
+     * @return True if the deadline has passed
+     */
+    public boolean isExpired() {
+        return isBounded() && System.nanoTime() - expiresAtNanos >= 0;
+    }
+
+    /**
+     * @return The time left before the deadline (zero if it has passed), or null if the deadline is not bounded
+     */
+    public Duration remaining() {
+        if (!isBounded()) return null;
+        return Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime()));
+    }
+
+    /**
+     * @return The milliseconds left before the deadline (at least 1 until it has passed), or 0 if it is not bounded
+     */
+    public int remainingMillisOrZero() {
+        if (!isBounded()) return 0;
+        long millis = TimeUnit.NANOSECONDS.toMillis(expiresAtNanos - System.nanoTime());
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, millis));
+    }
+
+    /**
+     * @param other Another deadline
+     * @return The deadline that expires first
+     */
+    public Deadline earliest(Deadline other) {
+        if (other == null || !other.isBounded()) return this;
+        if (!isBounded()) return other;
+        return expiresAtNanos - other.expiresAtNanos <= 0 ? this : other;
+    }
+
+    /**
+     * Throws if the deadline has passed
+     * @param operation Description of the operation that is about to start, for the error message
+     * @throws DeadlineExceededException if the deadline has passed
+     */
+    public void check(String operation) {
+        if (isExpired()) throw new DeadlineExceededException("Deadline exceeded before " + operation);
+    }
+
+    /**
+     * Scope of an activated deadline
+     */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,15 @@
+package org.caselli.cognitiveworkflow.operational.execution;
+
+/**
+ * Thrown when a workflow or a node does not complete before its {@link Deadline}
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+
+    public DeadlineExceededException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
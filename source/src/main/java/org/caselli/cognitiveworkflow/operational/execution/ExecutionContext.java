@@ -1,6 +1,7 @@
 package org.caselli.cognitiveworkflow.operational.execution;
 
 import lombok.NoArgsConstructor;
+import org.caselli.cognitiveworkflow.operational.observability.ContextJournal;
 
 import java.util.*;
 
@@ -8,10 +9,14 @@ import java.util.*;
  * ExecutionContext extends HashMap to provide enhanced put and get operations
  * that support dot notation for accessing and manipulating nested Map structures
  * and List/array elements using numeric indices.
+ * String keys are compiled to interned {@link ContextPath}s; callers on hot paths can pass a
+ * {@link ContextPath} directly.
  */
 @NoArgsConstructor
 public class ExecutionContext extends HashMap<String, Object> {
 
+    /** Optional journal of the changes made to the context (not part of the content of the context) */
+    private transient ContextJournal journal;
 
     /**
      * Put a value in the context.
@@ -26,7 +31,19 @@ public class ExecutionContext extends HashMap<String, Object> {
     @Override
     public Object put(String key, Object value) {
         if (key == null) return super.put(null, value);
-        putByDotNotation(key, value);
+        return put(ContextPath.of(key), value);
+    }
+
+    /**
+     * Put a value in the context at a compiled path.
+     * Same semantics of {@link #put(String, Object)}.
+     * @param path The compiled path
+     * @param value The value to associate with the path.
+     * @return Always returns null.
+     */
+    public Object put(ContextPath path, Object value) {
+        journalPut(path, value);
+        putByPath(path, value);
         return null;
     }
 
@@ -40,13 +57,24 @@ public class ExecutionContext extends HashMap<String, Object> {
     public Object get(Object key) {
         // Apply dot notation logic only if the key is a non-null String
         if (key instanceof String) {
-            return getByDotNotation((String) key);
+            return getByPath(ContextPath.of((String) key));
+        } else if (key instanceof ContextPath) {
+            return getByPath((ContextPath) key);
         } else {
             // For null keys or non-String keys, delegate to the super class's get method
             return super.get(key);
         }
     }
 
+    /**
+     * Retrieves the value located at a compiled path.
+     * @param path The compiled path
+     * @return The value found at the specified path.
+     */
+    public Object get(ContextPath path) {
+        return getByPath(path);
+    }
+
     /**
      * Overrides the standard putAll method to support dot notation in the keys of the provided map.
      * Each entry in the map is processed through the put method to ensure dot notation is handled.
@@ -70,8 +98,10 @@ public class ExecutionContext extends HashMap<String, Object> {
     public boolean containsKey(Object key) {
         // Apply dot notation logic only if the key is a non-null String
         if (key instanceof String) {
-            var value = getByDotNotation((String) key);
+            var value = getByPath(ContextPath.of((String) key));
             return value != null;
+        } else if (key instanceof ContextPath) {
+            return getByPath((ContextPath) key) != null;
         } else {
             // For null keys or non-String keys, delegate to the super class's get method
             return super.containsKey(key);
@@ -86,19 +116,9 @@ public class ExecutionContext extends HashMap<String, Object> {
      */
     @Override
     public Object remove(Object key) {
-        if (!(key instanceof String keyStr)) return super.remove(key);
-
-        String[] keys = keyStr.split("\\.");
-
-        if (keys.length == 1) return super.remove(keyStr);
-
-        // For nested keys we have to navigate to the parent container
-        NavigationResult parentResult = navigateToParentContainer(keys);
-        if (parentResult == null) return null;
-
-        // Remove the key from the parent container
-        String lastKey = keys[keys.length - 1];
-        return removeFromContainer(parentResult.container, lastKey);
+        if (key instanceof String keyStr) return removeAndJournal(ContextPath.of(keyStr));
+        if (key instanceof ContextPath path) return removeAndJournal(path);
+        return super.remove(key);
     }
 
     /**
@@ -109,9 +129,9 @@ public class ExecutionContext extends HashMap<String, Object> {
      */
     @Override
     public Object getOrDefault(Object key, Object defaultValue) {
-        if (!(key instanceof String)) return super.getOrDefault(key, defaultValue);
+        if (!(key instanceof String) && !(key instanceof ContextPath)) return super.getOrDefault(key, defaultValue);
 
-        Object value = getByDotNotation((String) key);
+        Object value = get(key);
         return value != null ? value : defaultValue;
     }
 
@@ -125,17 +145,41 @@ public class ExecutionContext extends HashMap<String, Object> {
      */
     public ExecutionContext(ExecutionContext other) {
         super();
-        if (other != null) deepCopyFrom(other);
+        if (other != null) deepCopyFrom(other.entrySet());
+    }
+
+    /**
+     * Returns an independent copy of this context.
+     * The default implementation is a deep copy; persistent contexts return an O(1) snapshot.
+     * @return A copy of the context
+     */
+    public ExecutionContext copy() {
+        return new ExecutionContext(this);
+    }
+
+    /**
+     * Returns a new context with a deep copy of the values at the given keys only, e.g. the inputs of a node
+     * that runs on its own context. Keys without a value are skipped.
+     * @param keys The (dot-notation) keys to copy
+     * @return A new context
+     */
+    public ExecutionContext copyKeys(Collection<String> keys) {
+        ExecutionContext copy = new ExecutionContext();
+        for (String key : keys) {
+            Object value = get(key);
+            if (value != null) copy.put(key, deepCopyValue(value));
+        }
+        return copy;
     }
 
     /**
      * Helper method to perform deep copy of the context structure.
      * Recursively copies all nested Maps and Lists to ensure complete isolation.
      *
-     * @param source The source context to copy from
+     * @param entries The top-level entries of the source context
      */
-    private void deepCopyFrom(ExecutionContext source) {
-        for (Map.Entry<String, Object> entry : source.entrySet()) {
+    void deepCopyFrom(Set<Map.Entry<String, Object>> entries) {
+        for (Map.Entry<String, Object> entry : entries) {
             String key = entry.getKey();
             Object value = entry.getValue();
             super.put(key, deepCopyValue(value));
@@ -147,7 +191,7 @@ public class ExecutionContext extends HashMap<String, Object> {
      * @param value The value to copy
      * @return A deep copy of the value
      */
-    private Object deepCopyValue(Object value) {
+    static Object deepCopyValue(Object value) {
         if (value == null) {
             return null;
         }
@@ -183,6 +227,46 @@ public class ExecutionContext extends HashMap<String, Object> {
 
 
 
+    /**
+     * Attaches a journal that records the changes made to the context
+     * @param journal The journal, or null to stop recording
+     */
+    public void setJournal(ContextJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * @return The journal attached to the context, or null
+     */
+    public ContextJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Records a put in the journal, if one is attached and is recording on the current thread.
+     * Must be called before the value is stored, to capture the previous value.
+     * @param path The path being written
+     * @param value The new value
+     */
+    protected void journalPut(ContextPath path, Object value) {
+        if (journal != null && journal.isRecording() && path.size() > 0) journal.recordPut(path.key(), get(path), value);
+    }
+
+    /**
+     * Records a removal in the journal, if one is attached and is recording on the current thread
+     * @param path The removed path
+     * @param previous The removed value
+     */
+    protected void journalRemove(ContextPath path, Object previous) {
+        if (journal != null && previous != null && journal.isRecording()) journal.recordRemove(path.key(), previous);
+    }
+
+    private Object removeAndJournal(ContextPath path) {
+        Object previous = removeByPath(path);
+        journalRemove(path, previous);
+        return previous;
+    }
+
     /**
      * Prints the entire context structure in a readable format with indentation
      * to show nesting levels.
@@ -207,16 +291,15 @@ public class ExecutionContext extends HashMap<String, Object> {
     /**
      * Helper: navigates to the parent container for the given key path.
      * Example: with a path like "user.profiles.0.name" the method navigates to the list at "profiles.0".
-     * @param keys Array of keys representing the path. Example [user, profiles, 0, name]
+     * @param path The compiled path. Example [user, profiles, 0, name]
      * @return NavigationResult containing the parent container, or null if path doesn't exist
      */
-    private NavigationResult navigateToParentContainer(String[] keys) {
+    private NavigationResult navigateToParentContainer(ContextPath path) {
         Object currentContainer = this;
         boolean isMap = true;
 
-        for (int i = 0; i < keys.length - 1; i++) {
-            String currentKey = keys[i];
-            Object nextLevel = getFromContainer(currentContainer, currentKey, isMap);
+        for (int i = 0; i < path.size() - 1; i++) {
+            Object nextLevel = getFromContainer(currentContainer, path, i, isMap);
 
             if (nextLevel == null) return null;
 
@@ -235,22 +318,23 @@ public class ExecutionContext extends HashMap<String, Object> {
     }
 
     /**
-     * Helper method to get a value from the context using a key which may use dot notation with array indices.
-     * @param key The key in dot notation
+     * Helper method to get a value from the context using a compiled path.
+     * @param path The compiled path
      * @return The retrieved value
      */
-    private Object getByDotNotation(String key) {
-        String[] keys = key.split("\\.");
+    private Object getByPath(ContextPath path) {
+        // Fast path for plain top-level keys
+        if (path.isSimple()) return super.get(path.root());
+
         Object currentContainer = this;
         boolean isMap = true;
 
-        for (int i = 0; i < keys.length; i++) {
-            String currentKey = keys[i];
+        for (int i = 0; i < path.size(); i++) {
             if (currentContainer == null) return null;
 
-            Object currentValue = getFromContainer(currentContainer, currentKey, isMap);
+            Object currentValue = getFromContainer(currentContainer, path, i, isMap);
 
-            if (i < keys.length - 1) {
+            if (i < path.size() - 1) {
                 // If it's an intermediate key, the value must be a Map or List to continue the path
                 if (currentValue instanceof Map) {
                     currentContainer = currentValue;
@@ -271,28 +355,30 @@ public class ExecutionContext extends HashMap<String, Object> {
     }
 
     /**
-     * Helper method to put a value in the context using a key which may use dot notation with array indices.
-     * @param key The key in dot notation
+     * Helper method to put a value in the context using a compiled path.
+     * @param path The compiled path
      * @param value The value to insert
      */
-    private void putByDotNotation(String key, Object value) {
-        String[] keys = key.split("\\.");
+    private void putByPath(ContextPath path, Object value) {
+        // Fast path for plain top-level keys
+        if (path.isSimple()) {
+            super.put(path.root(), value);
+            return;
+        }
+
         Object currentContainer = this;
         boolean isMap = true;
 
-        for (int i = 0; i < keys.length; i++) {
-            String currentKey = keys[i];
-
-            if (i < keys.length - 1) {
-                Object nextLevel = getFromContainer(currentContainer, currentKey, isMap);
+        for (int i = 0; i < path.size(); i++) {
+            if (i < path.size() - 1) {
+                Object nextLevel = getFromContainer(currentContainer, path, i, isMap);
 
                 if ((!isContainer(nextLevel))) {
                     // Determine what type of container to create based on the next key
-                    String nextKey = keys[i + 1];
-                    boolean createList = isNumeric(nextKey);
+                    boolean createList = path.isIndex(i + 1);
 
                     nextLevel = createList ? new ArrayList<>() : new HashMap<String, Object>();
-                    putInContainer(currentContainer, currentKey, nextLevel, isMap);
+                    putInContainer(currentContainer, path, i, nextLevel, isMap);
                 }
 
                 // Update current container reference
@@ -300,30 +386,47 @@ public class ExecutionContext extends HashMap<String, Object> {
                 isMap = nextLevel instanceof Map;
             } else {
                 // Final key - put the value
-                putInContainer(currentContainer, currentKey, value, isMap);
+                putInContainer(currentContainer, path, i, value, isMap);
             }
         }
     }
 
     /**
-     * Helper method to get a value from either a Map or List container
+     * Helper method to remove the value at a compiled path.
+     * @param path The compiled path
+     * @return The removed value, or null if there was no mapping
      */
-    private Object getFromContainer(Object container, String key, boolean isMap) {
+    private Object removeByPath(ContextPath path) {
+        if (path.size() == 0) return null;
+        if (path.isSimple()) return super.remove(path.root());
+
+        // For nested keys we have to navigate to the parent container
+        NavigationResult parentResult = navigateToParentContainer(path);
+        if (parentResult == null) return null;
+
+        // Remove the key from the parent container
+        return removeFromContainer(parentResult.container, path, path.size() - 1);
+    }
+
+    /**
+     * Helper method to get the value of the i-th segment of a path from either a Map or List container
+     */
+    private Object getFromContainer(Object container, ContextPath path, int i, boolean isMap) {
         if (isMap) {
             if (container == this) {
-                return super.get(key); // Avoid recursion
+                return super.get(path.segment(i)); // Avoid recursion
             } else {
                 @SuppressWarnings("unchecked")
                 Map<String, Object> map = (Map<String, Object>) container;
-                return map.get(key);
+                return map.get(path.segment(i));
             }
         } else {
             // List access
-            if (!isNumeric(key)) return null;
+            if (!path.isIndex(i)) return null;
 
             @SuppressWarnings("unchecked")
             List<Object> list = (List<Object>) container;
-            int index = Integer.parseInt(key);
+            int index = path.index(i);
 
             if (index < 0 || index >= list.size()) return null;
             return list.get(index);
@@ -331,24 +434,24 @@ public class ExecutionContext extends HashMap<String, Object> {
     }
 
     /**
-     * Helper method to put a value into either a Map or List container
+     * Helper method to put the value of the i-th segment of a path into either a Map or List container
      */
-    private void putInContainer(Object container, String key, Object value, boolean isMap) {
+    private void putInContainer(Object container, ContextPath path, int i, Object value, boolean isMap) {
         if (isMap) {
             if (container == this) {
-                super.put(key, value); // Avoid recursion
+                super.put(path.segment(i), value); // Avoid recursion
             } else {
                 @SuppressWarnings("unchecked")
                 Map<String, Object> map = (Map<String, Object>) container;
-                map.put(key, value);
+                map.put(path.segment(i), value);
             }
         } else {
             // List access
-            if (!isNumeric(key)) return;
+            if (!path.isIndex(i)) return;
 
             @SuppressWarnings("unchecked")
             List<Object> list = (List<Object>) container;
-            int index = Integer.parseInt(key);
+            int index = path.index(i);
 
             // Expand list if necessary
             while (list.size() <= index) {
@@ -360,19 +463,19 @@ public class ExecutionContext extends HashMap<String, Object> {
     }
 
     /**
-     * Helper method to remove a value from either a Map or List container
+     * Helper method to remove the value of the i-th segment of a path from either a Map or List container
      */
-    private Object removeFromContainer(Object container, String key) {
+    private Object removeFromContainer(Object container, ContextPath path, int i) {
         if (container instanceof Map) {
             @SuppressWarnings("unchecked")
             Map<String, Object> map = (Map<String, Object>) container;
-            return map.remove(key);
+            return map.remove(path.segment(i));
         } else if (container instanceof List) {
-            if (!isNumeric(key)) return null;
+            if (!path.isIndex(i)) return null;
 
             @SuppressWarnings("unchecked")
             List<Object> list = (List<Object>) container;
-            int index = Integer.parseInt(key);
+            int index = path.index(i);
 
             if (index < 0 || index >= list.size()) return null;
             return list.remove(index);
@@ -380,19 +483,6 @@ public class ExecutionContext extends HashMap<String, Object> {
         return null;
     }
 
-    /**
-     * Check if a string represents a valid numeric index
-     */
-    private boolean isNumeric(String str) {
-        if (str == null || str.isEmpty()) return false;
-        try {
-            Integer.parseInt(str);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
-        }
-    }
-
     /**
      * Check if an object is a container (Map or List)
      */
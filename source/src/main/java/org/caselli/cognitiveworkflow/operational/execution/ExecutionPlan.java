@@ -0,0 +1,535 @@
+package org.caselli.cognitiveworkflow.operational.execution;
+
+import org.caselli.cognitiveworkflow.knowledge.model.node.GatewayNodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.NodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.Port;
+import org.caselli.cognitiveworkflow.knowledge.model.workflow.WorkflowEdge;
+import org.caselli.cognitiveworkflow.knowledge.model.workflow.WorkflowMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.workflow.WorkflowNode;
+import org.caselli.cognitiveworkflow.operational.instances.NodeInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Immutable, precompiled execution plan of a workflow instance.
+ * <p>
+ * The plan is compiled once, when the workflow instance is created or hot-swapped, and holds everything the
+ * executor needs to walk the DAG without rebuilding maps on every execution: int-indexed nodes and node instances,
+ * edge arrays, the outgoing edges of each node, the initial in-degree of each node, the entry and exit nodes,
+ * the pre-resolved port lists of each node and the compiled context paths of the edge bindings and conditions.
+ * Each execution only has to copy the initial in-degree array.
+ * </p>
+ * <p>
+ * The in-degree of a race join (a gateway in ANY_OF or FIRST_N join mode) is the number of incoming edges it waits
+ * for, and the plan holds its race branches: the nodes whose every path leads to the join, which are no longer
+ * needed once the join has fired.
+ * </p>
+ * <p>
+ * For the reachability analysis of each execution, the plan also holds the number of incoming edges of each node
+ * and a topological order of the nodes.
+ * </p>
+ */
+public final class ExecutionPlan {
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionPlan.class);
+
+    private static final int[] NO_EDGES = new int[0];
+    private static final int[] NO_NODES = new int[0];
+
+    /** Plan of a workflow without nodes */
+    public static final ExecutionPlan EMPTY = emptyPlan();
+
+    // Nodes
+    private final String[] nodeIds;
+    private final NodeInstance[] nodeInstances;
+    private final Map<String, Integer> nodeIndex;
+
+    // Edges
+    private final WorkflowEdge[] edges;
+    private final int[] edgeSources;
+    private final int[] edgeTargets;
+    private final int[][] outgoingEdges;
+    private final int[][] incomingEdges;
+
+    // Topology
+    private final int[] initialInDegree;
+    private final int[] entryNodes;
+    private final int[] exitNodes;
+    private final Set<String> entryNodeIds;
+    private final Set<String> exitNodeIds;
+
+    // Ports and their context paths, resolved against the metamodel the node had at compile time
+    private final NodeMetamodel[] compiledMetamodels;
+    private final List<List<CompiledPort>> inputPorts;
+    private final List<List<CompiledPort>> outputPorts;
+
+    // Compiled context paths of the edges
+    private final CompiledBinding[][] edgeBindings;
+    private final ContextPath[] conditionPaths;
+
+    // Race joins
+    private final int[][] raceBranches;
+
+    // Reachability
+    private final int[] incomingEdgeCounts;
+    private final int[] topologicalOrder;
+
+    private ExecutionPlan(String[] nodeIds, NodeInstance[] nodeInstances, Map<String, Integer> nodeIndex,
+                          WorkflowEdge[] edges, int[] edgeSources, int[] edgeTargets, int[][] outgoingEdges, int[][] incomingEdges,
+                          int[] initialInDegree, int[] entryNodes, int[] exitNodes,
+                          NodeMetamodel[] compiledMetamodels, List<List<CompiledPort>> inputPorts, List<List<CompiledPort>> outputPorts,
+                          CompiledBinding[][] edgeBindings, ContextPath[] conditionPaths, int[][] raceBranches,
+                          int[] incomingEdgeCounts, int[] topologicalOrder) {
+        this.nodeIds = nodeIds;
+        this.nodeInstances = nodeInstances;
+        this.nodeIndex = nodeIndex;
+        this.edges = edges;
+        this.edgeSources = edgeSources;
+        this.edgeTargets = edgeTargets;
+        this.outgoingEdges = outgoingEdges;
+        this.incomingEdges = incomingEdges;
+        this.initialInDegree = initialInDegree;
+        this.entryNodes = entryNodes;
+        this.exitNodes = exitNodes;
+        this.entryNodeIds = toIdSet(nodeIds, entryNodes);
+        this.exitNodeIds = toIdSet(nodeIds, exitNodes);
+        this.compiledMetamodels = compiledMetamodels;
+        this.inputPorts = inputPorts;
+        this.outputPorts = outputPorts;
+        this.edgeBindings = edgeBindings;
+        this.conditionPaths = conditionPaths;
+        this.raceBranches = raceBranches;
+        this.incomingEdgeCounts = incomingEdgeCounts;
+        this.topologicalOrder = topologicalOrder;
+    }
+
+    private static ExecutionPlan emptyPlan() {
+        return new ExecutionPlan(
+                new String[0], new NodeInstance[0], Map.of(), new WorkflowEdge[0], new int[0], new int[0],
+                new int[0][], new int[0][], new int[0], new int[0], new int[0], new NodeMetamodel[0], List.of(), List.of(),
+                new CompiledBinding[0][], new ContextPath[0], new int[0][], new int[0], new int[0]
+        );
+    }
+
+    /**
+     * Compiles the execution plan of a workflow
+     * @param metamodel The workflow metamodel
+     * @param instanceResolver Resolves the node instance of a workflow node (may return null)
+     * @return The compiled plan
+     */
+    public static ExecutionPlan compile(WorkflowMetamodel metamodel, Function<WorkflowNode, NodeInstance> instanceResolver) {
+        if (metamodel == null || metamodel.getNodes() == null) return EMPTY;
+
+        // Index the nodes
+        List<WorkflowNode> workflowNodes = metamodel.getNodes().stream()
+                .filter(node -> node != null && node.getId() != null)
+                .toList();
+
+        int n = workflowNodes.size();
+        String[] nodeIds = new String[n];
+        NodeInstance[] nodeInstances = new NodeInstance[n];
+        Map<String, Integer> nodeIndex = new HashMap<>();
+        NodeMetamodel[] compiledMetamodels = new NodeMetamodel[n];
+        List<List<CompiledPort>> inputPorts = new ArrayList<>(n);
+        List<List<CompiledPort>> outputPorts = new ArrayList<>(n);
+
+        for (int i = 0; i < n; i++) {
+            WorkflowNode node = workflowNodes.get(i);
+            nodeIds[i] = node.getId();
+            nodeIndex.put(node.getId(), i);
+            nodeInstances[i] = instanceResolver.apply(node);
+
+            if (nodeInstances[i] != null && nodeInstances[i].getMetamodel() != null) {
+                compiledMetamodels[i] = nodeInstances[i].getMetamodel();
+                inputPorts.add(resolvePorts(compiledMetamodels[i].getInputPorts()));
+                outputPorts.add(resolvePorts(compiledMetamodels[i].getOutputPorts()));
+            } else {
+                inputPorts.add(List.of());
+                outputPorts.add(List.of());
+            }
+        }
+
+        // Index the edges
+        List<WorkflowEdge> edgeList = metamodel.getEdges() != null ? metamodel.getEdges() : List.of();
+        List<WorkflowEdge> validEdges = new ArrayList<>(edgeList.size());
+        int[] initialInDegree = new int[n];
+        boolean[] hasOutgoing = new boolean[n];
+        boolean[] hasIncoming = new boolean[n];
+
+        for (WorkflowEdge edge : edgeList) {
+            Integer source = nodeIndex.get(edge.getSourceNodeId());
+            Integer target = nodeIndex.get(edge.getTargetNodeId());
+
+            if (source == null || nodeInstances[source] == null)
+                logger.warn("Edge references non-existent source node ID: {}", edge.getSourceNodeId());
+            if (target == null || nodeInstances[target] == null)
+                logger.warn("Edge references non-existent target node ID: {}", edge.getTargetNodeId());
+
+            if (source != null) hasOutgoing[source] = true;
+            if (target == null) continue;
+
+            // An edge from an unknown source still blocks its target, as it can never be satisfied
+            hasIncoming[target] = true;
+            initialInDegree[target]++;
+            if (source != null) validEdges.add(edge);
+        }
+
+        int m = validEdges.size();
+        WorkflowEdge[] edges = validEdges.toArray(new WorkflowEdge[0]);
+        int[] edgeSources = new int[m];
+        int[] edgeTargets = new int[m];
+        int[] outgoingCount = new int[n];
+        int[] incomingEdgeCounts = new int[n];
+        CompiledBinding[][] edgeBindings = new CompiledBinding[m][];
+        ContextPath[] conditionPaths = new ContextPath[m];
+
+        for (int e = 0; e < m; e++) {
+            edgeSources[e] = nodeIndex.get(edges[e].getSourceNodeId());
+            edgeTargets[e] = nodeIndex.get(edges[e].getTargetNodeId());
+            outgoingCount[edgeSources[e]]++;
+            incomingEdgeCounts[edgeTargets[e]]++;
+            edgeBindings[e] = compileBindings(edges[e].getBindings());
+            if (edges[e].getCondition() != null && edges[e].getCondition().getPort() != null)
+                conditionPaths[e] = ContextPath.of(edges[e].getCondition().getPort());
+        }
+
+        // Outgoing edges of each node, in declaration order
+        int[][] outgoingEdges = new int[n][];
+        for (int i = 0; i < n; i++) outgoingEdges[i] = outgoingCount[i] == 0 ? NO_EDGES : new int[outgoingCount[i]];
+        int[] fill = new int[n];
+        for (int e = 0; e < m; e++) outgoingEdges[edgeSources[e]][fill[edgeSources[e]]++] = e;
+
+        // Incoming edges of each node, in declaration order
+        int[][] incomingEdges = new int[n][];
+        for (int i = 0; i < n; i++) incomingEdges[i] = incomingEdgeCounts[i] == 0 ? NO_EDGES : new int[incomingEdgeCounts[i]];
+        fill = new int[n];
+        for (int e = 0; e < m; e++) incomingEdges[edgeTargets[e]][fill[edgeTargets[e]]++] = e;
+
+        // Entry and exit nodes (none if the workflow has no edge list, as for the metamodel)
+        boolean noEdgeList = metamodel.getEdges() == null;
+        int[] entryNodes = noEdgeList ? NO_NODES : Arrays.stream(range(n)).filter(i -> !hasIncoming[i]).toArray();
+        int[] exitNodes = noEdgeList ? NO_NODES : Arrays.stream(range(n)).filter(i -> !hasOutgoing[i]).toArray();
+
+        // Race joins: wait only for the required incoming edges
+        int[][] raceBranches = new int[n][];
+        for (int i = 0; i < n; i++) {
+            int required = requiredIncomingEdges(compiledMetamodels[i], initialInDegree[i]);
+            if (required < initialInDegree[i]) {
+                initialInDegree[i] = required;
+                raceBranches[i] = findRaceBranches(i, n, edgeSources, edgeTargets, outgoingEdges);
+            } else {
+                raceBranches[i] = NO_NODES;
+            }
+        }
+
+        int[] topologicalOrder = topologicalOrder(n, edgeTargets, outgoingEdges, incomingEdgeCounts);
+
+        return new ExecutionPlan(nodeIds, nodeInstances, Collections.unmodifiableMap(nodeIndex), edges, edgeSources,
+                edgeTargets, outgoingEdges, incomingEdges, initialInDegree, entryNodes, exitNodes, compiledMetamodels, inputPorts, outputPorts,
+                edgeBindings, conditionPaths, raceBranches, incomingEdgeCounts, topologicalOrder);
+    }
+
+    /**
+     * Returns a fresh copy of the initial in-degree array, to be consumed by a single execution
+     * @return The in-degree of each node, indexed by node index
+     */
+    public int[] newInDegreeCounters() {
+        return initialInDegree.clone();
+    }
+
+    /**
+     * Returns a fresh copy of the number of incoming edges of each node, to be consumed by a single execution
+     * @return The number of incoming edges of each node, indexed by node index
+     */
+    public int[] newIncomingEdgeCounters() {
+        return incomingEdgeCounts.clone();
+    }
+
+    /**
+     * @return The indexes of the nodes in topological order (the nodes on a cycle, if any, come last)
+     */
+    public int[] getTopologicalOrder() {
+        return topologicalOrder;
+    }
+
+    /**
+     * @return Number of nodes in the plan
+     */
+    public int getNodeCount() {
+        return nodeIds.length;
+    }
+
+    /**
+     * @param nodeIndex Index of the node
+     * @return The workflow node ID of the node
+     */
+    public String getNodeId(int nodeIndex) {
+        return nodeIds[nodeIndex];
+    }
+
+    /**
+     * @param nodeIndex Index of the node
+     * @return The node instance of the node, or null if it could not be resolved
+     */
+    public NodeInstance getNodeInstance(int nodeIndex) {
+        return nodeInstances[nodeIndex];
+    }
+
+    /**
+     * @param nodeId The workflow node ID
+     * @return The index of the node, or -1 if the node is not part of the plan
+     */
+    public int indexOf(String nodeId) {
+        Integer index = nodeIndex.get(nodeId);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * @param nodeIndex Index of the node
+     * @return The indexes of the outgoing edges of the node
+     */
+    public int[] getOutgoingEdges(int nodeIndex) {
+        return outgoingEdges[nodeIndex];
+    }
+
+    /**
+     * @param nodeIndex Index of the node
+     * @return The indexes of the incoming edges of the node
+     */
+    public int[] getIncomingEdges(int nodeIndex) {
+        return incomingEdges[nodeIndex];
+    }
+
+    /**
+     * @param edgeIndex Index of the edge
+     * @return The edge
+     */
+    public WorkflowEdge getEdge(int edgeIndex) {
+        return edges[edgeIndex];
+    }
+
+    /**
+     * @param edgeIndex Index of the edge
+     * @return The index of the target node of the edge
+     */
+    public int getEdgeTarget(int edgeIndex) {
+        return edgeTargets[edgeIndex];
+    }
+
+    /**
+     * @param edgeIndex Index of the edge
+     * @return The index of the source node of the edge
+     */
+    public int getEdgeSource(int edgeIndex) {
+        return edgeSources[edgeIndex];
+    }
+
+    /**
+     * @param edgeIndex Index of the edge
+     * @return The compiled bindings of the edge, or null if the edge declares no bindings
+     */
+    public CompiledBinding[] getBindings(int edgeIndex) {
+        return edgeBindings[edgeIndex];
+    }
+
+    /**
+     * @param edgeIndex Index of the edge
+     * @return The compiled path of the port tested by the edge condition, or null if the edge has no condition
+     */
+    public ContextPath getConditionPath(int edgeIndex) {
+        return conditionPaths[edgeIndex];
+    }
+
+    /**
+     * Returns the race branches of a node: if the node is a race join, the nodes whose every path leads to it,
+     * which can be cancelled once the join has fired
+     * @param nodeIndex Index of the node
+     * @return The indexes of the nodes of the race branches (empty if the node is not a race join)
+     */
+    public int[] getRaceBranches(int nodeIndex) {
+        return raceBranches[nodeIndex];
+    }
+
+    /**
+     * @return Indexes of the nodes with no incoming edges
+     */
+    public int[] getEntryNodes() {
+        return entryNodes.clone();
+    }
+
+    /**
+     * @return Indexes of the nodes with no outgoing edges
+     */
+    public int[] getExitNodes() {
+        return exitNodes.clone();
+    }
+
+    /**
+     * @return IDs of the workflow nodes with no incoming edges
+     */
+    public Set<String> getEntryNodeIds() {
+        return entryNodeIds;
+    }
+
+    /**
+     * @return IDs of the workflow nodes with no outgoing edges
+     */
+    public Set<String> getExitNodeIds() {
+        return exitNodeIds;
+    }
+
+    /**
+     * Returns the input ports of a node, with their context paths.
+     * The pre-resolved list is returned unless the node metamodel was hot-swapped after compilation.
+     * @param nodeIndex Index of the node
+     * @return The input ports of the node
+     */
+    public List<CompiledPort> getInputPorts(int nodeIndex) {
+        NodeInstance node = nodeInstances[nodeIndex];
+        if (node == null || node.getMetamodel() == compiledMetamodels[nodeIndex]) return inputPorts.get(nodeIndex);
+        return resolvePorts(node.getMetamodel().getInputPorts());
+    }
+
+    /**
+     * Returns the output ports of a node, with their context paths.
+     * The pre-resolved list is returned unless the node metamodel was hot-swapped after compilation.
+     * @param nodeIndex Index of the node
+     * @return The output ports of the node
+     */
+    public List<CompiledPort> getOutputPorts(int nodeIndex) {
+        NodeInstance node = nodeInstances[nodeIndex];
+        if (node == null || node.getMetamodel() == compiledMetamodels[nodeIndex]) return outputPorts.get(nodeIndex);
+        return resolvePorts(node.getMetamodel().getOutputPorts());
+    }
+
+    /**
+     * Number of incoming edges a node waits for before it is ready
+     * @param metamodel The metamodel of the node
+     * @param inDegree The number of incoming edges of the node
+     * @return The number of incoming edges to wait for
+     */
+    private static int requiredIncomingEdges(NodeMetamodel metamodel, int inDegree) {
+        if (!(metamodel instanceof GatewayNodeMetamodel gateway) || gateway.getJoinMode() == null) return inDegree;
+
+        return switch (gateway.getJoinMode()) {
+            case ALL -> inDegree;
+            case ANY_OF -> Math.min(1, inDegree);
+            case FIRST_N -> gateway.getJoinCount() != null && gateway.getJoinCount() > 0
+                    ? Math.min(gateway.getJoinCount(), inDegree)
+                    : inDegree;
+        };
+    }
+
+    /**
+     * Finds the race branches of a join: the ancestors of the join whose successors are all either the join
+     * or other race branch nodes. Nodes with other successors (or none, as exit nodes) are needed regardless of the
+     * join and are never part of a race branch.
+     * @param join Index of the join
+     * @return The indexes of the race branch nodes
+     */
+    private static int[] findRaceBranches(int join, int n, int[] edgeSources, int[] edgeTargets, int[][] outgoingEdges) {
+        // Ancestors of the join
+        boolean[] candidate = new boolean[n];
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        stack.push(join);
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            for (int e = 0; e < edgeTargets.length; e++) {
+                int source = edgeSources[e];
+                if (edgeTargets[e] == node && source != join && !candidate[source]) {
+                    candidate[source] = true;
+                    stack.push(source);
+                }
+            }
+        }
+
+        // Drop the ancestors that lead somewhere else, until no more changes
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < n; i++) {
+                if (!candidate[i]) continue;
+                boolean exclusive = outgoingEdges[i].length > 0;
+                for (int e : outgoingEdges[i]) {
+                    int target = edgeTargets[e];
+                    if (target != join && !candidate[target]) {
+                        exclusive = false;
+                        break;
+                    }
+                }
+                if (!exclusive) {
+                    candidate[i] = false;
+                    changed = true;
+                }
+            }
+        }
+
+        return Arrays.stream(range(n)).filter(i -> candidate[i]).toArray();
+    }
+
+    /**
+     * Sorts the nodes topologically (Kahn's algorithm). Nodes on a cycle are appended at the end.
+     */
+    private static int[] topologicalOrder(int n, int[] edgeTargets, int[][] outgoingEdges, int[] incomingEdgeCounts) {
+        int[] remaining = incomingEdgeCounts.clone();
+        int[] order = new int[n];
+        boolean[] placed = new boolean[n];
+        int size = 0;
+
+        ArrayDeque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) if (remaining[i] == 0) ready.add(i);
+
+        while (!ready.isEmpty()) {
+            int node = ready.poll();
+            order[size++] = node;
+            placed[node] = true;
+            for (int e : outgoingEdges[node]) if (--remaining[edgeTargets[e]] == 0) ready.add(edgeTargets[e]);
+        }
+
+        for (int i = 0; i < n && size < n; i++) if (!placed[i]) order[size++] = i;
+        return order;
+    }
+
+    private static CompiledBinding[] compileBindings(Map<String, String> bindings) {
+        if (bindings == null) return null;
+        return bindings.entrySet().stream()
+                .filter(b -> b.getKey() != null && b.getValue() != null)
+                .map(b -> new CompiledBinding(ContextPath.of(b.getKey()), ContextPath.of(b.getValue())))
+                .toArray(CompiledBinding[]::new);
+    }
+
+    private static List<CompiledPort> resolvePorts(List<? extends Port> ports) {
+        if (ports == null) return List.of();
+        return ports.stream()
+                .filter(p -> p != null && p.getKey() != null)
+                .map(p -> new CompiledPort(p, ContextPath.of(p.getKey())))
+                .toList();
+    }
+
+    private static int[] range(int n) {
+        int[] res = new int[n];
+        for (int i = 0; i < n; i++) res[i] = i;
+        return res;
+    }
+
+    private static Set<String> toIdSet(String[] nodeIds, int[] indexes) {
+        Set<String> res = new LinkedHashSet<>();
+        for (int i : indexes) res.add(nodeIds[i]);
+        return Collections.unmodifiableSet(res);
+    }
+
+    /**
+     * An edge binding with pre-compiled source and target paths
+     * @param source Path of the source value (output of the source node)
+     * @param target Path of the target value (input of the target node)
+     */
+    public record CompiledBinding(ContextPath source, ContextPath target) {}
+
+    /**
+     * A node port with its pre-compiled context path
+     * @param port The port
+     * @param path Path of the port value in the execution context
+     */
+    public record CompiledPort(Port port, ContextPath path) {}
+}
@@ -0,0 +1,83 @@
+package org.caselli.cognitiveworkflow.operational.execution;
+
+import org.caselli.cognitiveworkflow.operational.AI.LlmRequestOrigin;
+import org.caselli.cognitiveworkflow.operational.observability.RequestAttemptRecorder;
+import org.caselli.cognitiveworkflow.operational.observability.ResponseStream;
+
+import java.util.concurrent.Callable;
+
+/**
+ * The state bound to the thread that runs a node: its deadline, the recorder of its request attempts, the origin of
+ * its LLM requests and the stream of its response.
+ * <p>
+ * The executor activates the scopes of a node on the thread that runs it. Work that a node hands to another thread
+ * captures them with {@link #capture()} and activates them there (see {@link #wrap(Callable)}), so they all travel
+ * together.
+ * </p>
+ * @param deadline The deadline
+ * @param recorder The recorder of the request attempts
+ * @param origin The origin of the LLM requests
+ * @param stream The stream of the response
+ */
+public record ExecutionScopes(Deadline deadline, RequestAttemptRecorder recorder, LlmRequestOrigin origin, ResponseStream stream) {
+
+    public ExecutionScopes {
+        if (deadline == null) deadline = Deadline.NONE;
+        if (recorder == null) recorder = RequestAttemptRecorder.NONE;
+        if (origin == null) origin = LlmRequestOrigin.DEFAULT;
+        if (stream == null) stream = ResponseStream.NONE;
+    }
+
+    /**
+     * @return The scopes active on the current thread
+     */
+    public static ExecutionScopes capture() {
+        return new ExecutionScopes(Deadline.current(), RequestAttemptRecorder.current(), LlmRequestOrigin.current(), ResponseStream.current());
+    }
+
+    /**
+     * @param deadline Another deadline
+     * @return The same scopes with the given deadline
+     */
+    public ExecutionScopes withDeadline(Deadline deadline) {
+        return new ExecutionScopes(deadline, recorder, origin, stream);
+    }
+
+    /**
+     * Activates all the scopes on the current thread, until the returned scope is closed
+     * @return The scope, which restores the previous ones when closed
+     */
+    public Scope activate() {
+        Deadline.Scope deadlineScope = deadline.activate();
+        RequestAttemptRecorder.Scope recorderScope = recorder.activate();
+        LlmRequestOrigin.Scope originScope = origin.activate();
+        ResponseStream.Scope streamScope = stream.activate();
+        return () -> {
+            streamScope.close();
+            originScope.close();
+            recorderScope.close();
+            deadlineScope.close();
+        };
+    }
+
+    /**
+     * @param call A call to run on another thread
+     * @return The call, running with these scopes active
+     */
+    public <T> Callable<T> wrap(Callable<T> call) {
+        return () -> {
+            try (Scope ignored = activate()) {
+                return call.call();
+            }
+        };
+    }
+
+    /**
+     * Scope of activated execution scopes
+     */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,145 @@
+package org.caselli.cognitiveworkflow.operational.execution;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Runs batches of independent tasks (e.g. the items of a fan-out node) with a cap on the number of tasks
+ * in flight, collecting the outcomes in the order of the tasks.
+ * <p>
+ * Tasks run on a dedicated bounded pool of {@code workflow.fan-out.max-threads} threads, separate from the pool
+ * of the workflow executor: a node that waits for its items never blocks a thread the items need.
+ * Batches started by a task of another batch (e.g. a map node inside the sub-workflow of an item) run on the
+ * thread of that task, one task at a time, so that nested batches cannot exhaust the pool and wait on each other.
+ * </p>
+ */
+@Component
+public class FanOutExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(FanOutExecutor.class);
+
+    /** Set on the threads of the pool while they run a task */
+    private static final ThreadLocal<Boolean> IN_TASK = new ThreadLocal<>();
+
+    private final ExecutorService executor;
+
+    public FanOutExecutor(@Value("${workflow.fan-out.max-threads:32}") int maxThreads) {
+        int threads = maxThreads > 0 ? maxThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "fan-out-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates a fan-out executor with the default pool size, for use outside of the Spring context
+     * @return A new fan-out executor
+     */
+    public static FanOutExecutor withDefaults() {
+        return new FanOutExecutor(32);
+    }
+
+    /**
+     * Outcome of a task: either a result or an error
+     * @param result The result of the task
+     * @param error The error thrown by the task, or null if it succeeded
+     */
+    public record Outcome<T>(T result, Throwable error) {
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    /**
+     * Runs the tasks keeping at most maxParallelism of them in flight (one at a time if called by a task of
+     * another batch)
+     * @param tasks The tasks
+     * @param maxParallelism Maximum number of tasks running at the same time
+     * @param stopOnFailure If true, the first failure cancels the tasks in flight and skips the pending ones
+     * @return The outcomes, in the order of the tasks. The outcome of a task that was skipped or cancelled is null.
+     * @throws InterruptedException if the calling thread is interrupted (the tasks in flight are cancelled)
+     */
+    public <T> List<Outcome<T>> invokeAll(List<? extends Callable<T>> tasks, int maxParallelism, boolean stopOnFailure) throws InterruptedException {
+        if (Boolean.TRUE.equals(IN_TASK.get())) return invokeInline(tasks, stopOnFailure);
+
+        int limit = Math.max(1, maxParallelism);
+        AtomicReferenceArray<Outcome<T>> outcomes = new AtomicReferenceArray<>(tasks.size());
+
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(executor);
+        Map<Integer, Future<Integer>> inFlight = new HashMap<>();
+        int next = 0;
+
+        try {
+            while (next < tasks.size() || !inFlight.isEmpty()) {
+
+                // Fill the free slots
+                while (next < tasks.size() && inFlight.size() < limit) {
+                    int index = next++;
+                    Callable<T> task = tasks.get(index);
+                    inFlight.put(index, completionService.submit(() -> {
+                        IN_TASK.set(true);
+                        try {
+                            outcomes.set(index, call(task));
+                        } finally {
+                            IN_TASK.remove();
+                        }
+                        return index;
+                    }));
+                }
+
+                int completed = completionService.take().get();
+                inFlight.remove(completed);
+
+                if (stopOnFailure && !outcomes.get(completed).isSuccess()) {
+                    logger.debug("Task {} failed: cancelling {} tasks in flight", completed, inFlight.size());
+                    break;
+                }
+            }
+        } catch (ExecutionException e) {
+            // Not expected: the tasks catch their own errors
+            throw new IllegalStateException("Fan-out task failed unexpectedly", e.getCause());
+        } finally {
+            for (Future<Integer> future : inFlight.values()) future.cancel(true);
+        }
+
+        List<Outcome<T>> result = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) result.add(inFlight.containsKey(i) ? null : outcomes.get(i));
+        return result;
+    }
+
+    /**
+     * Runs the tasks of a nested batch on the current thread
+     */
+    private <T> List<Outcome<T>> invokeInline(List<? extends Callable<T>> tasks, boolean stopOnFailure) throws InterruptedException {
+        List<Outcome<T>> result = new ArrayList<>(Collections.nCopies(tasks.size(), null));
+        for (int i = 0; i < tasks.size(); i++) {
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+            Outcome<T> outcome = call(tasks.get(i));
+            result.set(i, outcome);
+            if (stopOnFailure && !outcome.isSuccess()) break;
+        }
+        return result;
+    }
+
+    private static <T> Outcome<T> call(Callable<T> task) {
+        try {
+            return new Outcome<>(task.call(), null);
+        } catch (Throwable e) {
+            return new Outcome<>(null, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -47,6 +47,9 @@ public class NodeFactory {
         else if (metamodel instanceof GatewayNodeMetamodel) {
             return GatewayNodeInstance.class;
         }
+        else if (metamodel instanceof MapNodeMetamodel) {
+            return MapNodeInstance.class;
+        }
         else {
             throw new IllegalArgumentException("Unsupported NodeMetamodel type: " + metamodel.getClass().getName());
         }
@@ -58,6 +58,7 @@ public class NodeInstanceManager {
 
             // Therefore, we can safely remove it from the registry
             nodesRegistry.remove(nodeMetamodel.getId());
+            existing.get().handleRemoveNode();
             // Then we can proceed as it was not found
         }
 
@@ -89,6 +90,18 @@ public class NodeInstanceManager {
     }
 
 
+    /**
+     * Creates a node instance that is not registered, for the exclusive use of the caller: node instances are not
+     * thread-safe, so e.g. the items of a map node that run concurrently each need their own.
+     * The caller releases it with {@link NodeInstance#handleRemoveNode()} once done.
+     * @param nodeMetamodel The metamodel of the node
+     * @return The new NodeInstance
+     */
+    public NodeInstance createDetached(NodeMetamodel nodeMetamodel) {
+        return nodeFactory.create(nodeMetamodel);
+    }
+
+
     /**
      * Mark a node as in execution
      * @param nodeId Node ID
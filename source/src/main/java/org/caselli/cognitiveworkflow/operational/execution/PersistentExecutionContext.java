@@ -0,0 +1,477 @@
+package org.caselli.cognitiveworkflow.operational.execution;
+
+import org.caselli.cognitiveworkflow.operational.execution.persistent.PersistentHashMap;
+import org.caselli.cognitiveworkflow.operational.execution.persistent.PersistentValues;
+import org.caselli.cognitiveworkflow.operational.execution.persistent.PersistentVector;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * ExecutionContext backed by a persistent (structurally shared) hash-array-mapped trie.
+ * <p>
+ * It keeps the dot-notation semantics of {@link ExecutionContext}, but nested Maps and Lists are stored as
+ * persistent maps and vectors: updates are path-copying and {@link #copy()} returns an O(1) snapshot that
+ * shares the whole structure with this context, instead of deep-copying it.
+ * </p>
+ * <p>
+ * Values are captured when they are put: Maps and Lists are frozen, later changes to the original objects
+ * are not reflected in the context. Nested Maps and Lists returned by the context are copy-on-write views:
+ * as in {@link ExecutionContext}, changes made to them are written back to the context (by path copying, so
+ * the snapshots taken before are not affected). Unlike {@link #put}, such changes are not journaled.
+ * </p>
+ */
+public class PersistentExecutionContext extends ExecutionContext {
+
+    private PersistentHashMap<Object, Object> root;
+
+    public PersistentExecutionContext() {
+        super();
+        this.root = PersistentHashMap.empty();
+    }
+
+    private PersistentExecutionContext(PersistentHashMap<Object, Object> root) {
+        super();
+        this.root = root;
+    }
+
+    /**
+     * Creates a persistent context with the content of a map
+     * @param source The source map (e.g. another ExecutionContext)
+     * @return A new persistent context
+     */
+    public static PersistentExecutionContext from(Map<String, ?> source) {
+        if (source instanceof PersistentExecutionContext persistent) return persistent.copy();
+
+        PersistentExecutionContext context = new PersistentExecutionContext();
+        if (source != null)
+            for (Map.Entry<String, ?> entry : source.entrySet())
+                context.root = context.root.put(entry.getKey(), PersistentValues.freeze(entry.getValue()));
+        return context;
+    }
+
+    /**
+     * Returns an O(1) snapshot of this context. Later changes to either context are not visible in the other.
+     * @return The snapshot
+     */
+    @Override
+    public PersistentExecutionContext copy() {
+        return new PersistentExecutionContext(root);
+    }
+
+
+    // ------------------------------------------------------------------------------------------------
+    // Dot-notation access
+    // ------------------------------------------------------------------------------------------------
+
+    @Override
+    public Object get(Object key) {
+        if (key instanceof String keyStr) return getByPath(ContextPath.of(keyStr));
+        if (key instanceof ContextPath path) return getByPath(path);
+        return topLevelView(key, root.get(key));
+    }
+
+    @Override
+    public Object get(ContextPath path) {
+        return getByPath(path);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        if (key == null) {
+            root = root.put(null, PersistentValues.freeze(value));
+            return null;
+        }
+        return put(ContextPath.of(key), value);
+    }
+
+    @Override
+    public Object put(ContextPath path, Object value) {
+        journalPut(path, value);
+        if (path.size() > 0) root = assoc(root, path, PersistentValues.freeze(value));
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (key instanceof String || key instanceof ContextPath) return get(key) != null;
+        return root.containsKey(key);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (!(key instanceof String) && !(key instanceof ContextPath)) {
+            Object previous = PersistentValues.thaw(root.get(key));
+            root = root.remove(key);
+            return previous;
+        }
+
+        ContextPath path = key instanceof ContextPath p ? p : ContextPath.of((String) key);
+        if (path.size() == 0) return null;
+
+        Object previous = PersistentValues.thaw(find(path));
+        root = dissoc(root, path);
+        journalRemove(path, previous);
+        return previous;
+    }
+
+    @Override
+    public Object getOrDefault(Object key, Object defaultValue) {
+        Object value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+
+    // ------------------------------------------------------------------------------------------------
+    // Map API (top-level keys)
+    // ------------------------------------------------------------------------------------------------
+
+    @Override
+    public int size() {
+        return root.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return root.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        root = PersistentHashMap.empty();
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (Map.Entry<String, Object> entry : entrySet())
+            if (Objects.equals(entry.getValue(), value)) return true;
+        return false;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        PersistentHashMap<Object, Object> snapshot = root;
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                Iterator<Map.Entry<Object, Object>> it = snapshot.iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<String, Object> next() {
+                        Map.Entry<Object, Object> entry = it.next();
+                        return new AbstractMap.SimpleImmutableEntry<>((String) entry.getKey(), topLevelView(entry.getKey(), entry.getValue()));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return snapshot.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<String> keySet() {
+        Set<Map.Entry<String, Object>> entries = entrySet();
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<String> iterator() {
+                Iterator<Map.Entry<String, Object>> it = entries.iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+                        return it.next().getKey();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    @Override
+    public Collection<Object> values() {
+        Set<Map.Entry<String, Object>> entries = entrySet();
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Object> iterator() {
+                Iterator<Map.Entry<String, Object>> it = entries.iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Object next() {
+                        return it.next().getValue();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Object> action) {
+        for (Map.Entry<String, Object> entry : entrySet()) action.accept(entry.getKey(), entry.getValue());
+    }
+
+    @Override
+    public Object putIfAbsent(String key, Object value) {
+        Object current = topLevelView(key, root.get(key));
+        if (current == null) root = root.put(key, PersistentValues.freeze(value));
+        return current;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (!root.containsKey(key) || !Objects.equals(PersistentValues.thaw(root.get(key)), value)) return false;
+        root = root.remove(key);
+        return true;
+    }
+
+    @Override
+    public boolean replace(String key, Object oldValue, Object newValue) {
+        if (!root.containsKey(key) || !Objects.equals(PersistentValues.thaw(root.get(key)), oldValue)) return false;
+        root = root.put(key, PersistentValues.freeze(newValue));
+        return true;
+    }
+
+    @Override
+    public Object replace(String key, Object value) {
+        if (!root.containsKey(key)) return null;
+        Object previous = PersistentValues.thaw(root.get(key));
+        root = root.put(key, PersistentValues.freeze(value));
+        return previous;
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super Object, ?> function) {
+        for (Map.Entry<String, Object> entry : entrySet())
+            root = root.put(entry.getKey(), PersistentValues.freeze(function.apply(entry.getKey(), entry.getValue())));
+    }
+
+    @Override
+    public Object computeIfAbsent(String key, Function<? super String, ?> mappingFunction) {
+        Object current = topLevelView(key, root.get(key));
+        if (current != null) return current;
+
+        Object value = mappingFunction.apply(key);
+        if (value != null) {
+            root = root.put(key, PersistentValues.freeze(value));
+            return topLevelView(key, root.get(key));
+        }
+        return null;
+    }
+
+    @Override
+    public Object computeIfPresent(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        Object current = PersistentValues.thaw(root.get(key));
+        if (current == null) return null;
+        return storeComputed(key, remappingFunction.apply(key, current));
+    }
+
+    @Override
+    public Object compute(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        Object current = PersistentValues.thaw(root.get(key));
+        return storeComputed(key, remappingFunction.apply(key, current));
+    }
+
+    @Override
+    public Object merge(String key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        Object current = PersistentValues.thaw(root.get(key));
+        return storeComputed(key, current == null ? value : remappingFunction.apply(current, value));
+    }
+
+    @Override
+    public Object clone() {
+        return copy();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Map<?, ?> other) || other.size() != size()) return false;
+        for (Map.Entry<String, Object> entry : entrySet())
+            if (!Objects.equals(entry.getValue(), other.get(entry.getKey()))) return false;
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (Map.Entry<String, Object> entry : entrySet()) h += entry.hashCode();
+        return h;
+    }
+
+
+    // ------------------------------------------------------------------------------------------------
+    // Helpers
+    // ------------------------------------------------------------------------------------------------
+
+    private Object storeComputed(String key, Object value) {
+        if (value == null) {
+            root = root.remove(key);
+            return null;
+        }
+        root = root.put(key, PersistentValues.freeze(value));
+        return topLevelView(key, root.get(key));
+    }
+
+    /**
+     * @return The view of a top-level value, whose changes are written back to the context
+     */
+    private Object topLevelView(Object key, Object value) {
+        return PersistentValues.thaw(value, PersistentValues.isContainer(value) ? newValue -> root = root.put(key, newValue) : null);
+    }
+
+    /**
+     * @return The view of the value at a path, whose changes are written back to the context
+     */
+    private Object pathView(ContextPath path, Object value) {
+        return PersistentValues.thaw(value, PersistentValues.isContainer(value)
+                ? newValue -> root = assoc(root, path, newValue)
+                : null);
+    }
+
+    /**
+     * @param path The compiled path
+     * @return A view of the value, or null if the path does not exist
+     */
+    private Object getByPath(ContextPath path) {
+        return pathView(path, find(path));
+    }
+
+    /**
+     * Navigates the persistent structure along a path
+     * @param path The compiled path
+     * @return The persistent value, or null if the path does not exist
+     */
+    private Object find(ContextPath path) {
+        if (path.size() == 0) return null;
+
+        Object current = root;
+        for (int i = 0; i < path.size(); i++) {
+            if (!PersistentValues.isContainer(current)) return null;
+            current = getFromContainer(current, path, i);
+        }
+        return current;
+    }
+
+    private static Object getFromContainer(Object container, ContextPath path, int i) {
+        if (container instanceof PersistentHashMap<?, ?> map) return map.get(path.segment(i));
+
+        PersistentVector<?> vector = (PersistentVector<?>) container;
+        if (!path.isIndex(i)) return null;
+        int index = path.index(i);
+        return index >= 0 && index < vector.size() ? vector.get(index) : null;
+    }
+
+    /**
+     * Returns a copy of the root map with the value set at a non-empty path (path copying)
+     */
+    private static PersistentHashMap<Object, Object> assoc(PersistentHashMap<Object, Object> root, ContextPath path, Object value) {
+        String segment = path.segment(0);
+        if (path.size() == 1) return root.put(segment, value);
+        return root.put(segment, assoc(nextContainer(root.get(segment), path, 0), path, 1, value));
+    }
+
+    /**
+     * Returns a copy of the container with the value set at the path (path copying).
+     * Missing or non-container intermediate values are replaced with a new map, or a new vector if the
+     * next segment is a numeric index.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object assoc(Object container, ContextPath path, int i, Object value) {
+        boolean last = i == path.size() - 1;
+
+        if (container instanceof PersistentHashMap<?, ?> rawMap) {
+            PersistentHashMap<Object, Object> map = (PersistentHashMap<Object, Object>) rawMap;
+            String segment = path.segment(i);
+            if (last) return map.put(segment, value);
+            return map.put(segment, assoc(nextContainer(map.get(segment), path, i), path, i + 1, value));
+        }
+
+        PersistentVector<Object> vector = (PersistentVector<Object>) container;
+        // Non-numeric segments cannot address a list element
+        if (!path.isIndex(i)) return vector;
+
+        int index = path.index(i);
+        if (last) return vector.setPadded(index, value);
+
+        Object child = index >= 0 && index < vector.size() ? vector.get(index) : null;
+        return vector.setPadded(index, assoc(nextContainer(child, path, i), path, i + 1, value));
+    }
+
+    private static Object nextContainer(Object child, ContextPath path, int i) {
+        if (PersistentValues.isContainer(child)) return child;
+        return path.isIndex(i + 1) ? PersistentVector.empty() : PersistentHashMap.empty();
+    }
+
+    /**
+     * Returns a copy of the root map without the value at a non-empty path (path copying),
+     * or the root itself if the path does not exist
+     */
+    private static PersistentHashMap<Object, Object> dissoc(PersistentHashMap<Object, Object> root, ContextPath path) {
+        String segment = path.segment(0);
+        if (path.size() == 1) return root.remove(segment);
+
+        Object child = root.get(segment);
+        if (!PersistentValues.isContainer(child)) return root;
+        Object newChild = dissoc(child, path, 1);
+        return newChild == child ? root : root.put(segment, newChild);
+    }
+
+    /**
+     * Returns a copy of the container without the value at the path (path copying),
+     * or the container itself if the path does not exist.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object dissoc(Object container, ContextPath path, int i) {
+        boolean last = i == path.size() - 1;
+
+        if (container instanceof PersistentHashMap<?, ?> rawMap) {
+            PersistentHashMap<Object, Object> map = (PersistentHashMap<Object, Object>) rawMap;
+            String segment = path.segment(i);
+            if (last) return map.remove(segment);
+
+            Object child = map.get(segment);
+            if (!PersistentValues.isContainer(child)) return map;
+            Object newChild = dissoc(child, path, i + 1);
+            return newChild == child ? map : map.put(segment, newChild);
+        }
+
+        PersistentVector<Object> vector = (PersistentVector<Object>) container;
+        if (!path.isIndex(i)) return vector;
+
+        int index = path.index(i);
+        if (index < 0 || index >= vector.size()) return vector;
+        if (last) return vector.remove(index);
+
+        Object child = vector.get(index);
+        if (!PersistentValues.isContainer(child)) return vector;
+        Object newChild = dissoc(child, path, i + 1);
+        return newChild == child ? vector : vector.set(index, newChild);
+    }
+}
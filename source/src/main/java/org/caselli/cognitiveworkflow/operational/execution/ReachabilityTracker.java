@@ -0,0 +1,152 @@
+package org.caselli.cognitiveworkflow.operational.execution;
+
+import java.util.ArrayDeque;
+
+/**
+ * Reachability analysis of a single workflow execution.
+ * <p>
+ * A node is <i>dead</i> when it can no longer become ready: too many of its incoming edges failed their condition
+ * (or come from dead or stopped nodes) for its remaining in-degree to ever reach zero. Dead nodes propagate: all
+ * their outgoing edges are dead too.
+ * </p>
+ * <p>
+ * A node is <i>needed</i> when it has not completed yet and can still contribute to an exit node that has not
+ * completed: it is an exit node itself, or one of its successors is needed and still waiting for its incoming edges.
+ * Every node without successors is an exit node, so once all exit nodes have completed or are dead, nothing is needed
+ * and the execution can stop.
+ * </p>
+ * Not thread-safe: it is only used by the thread that coordinates the execution.
+ */
+final class ReachabilityTracker {
+
+    private final ExecutionPlan plan;
+
+    /** Remaining in-degree of each node, shared with the executor */
+    private final int[] inDegree;
+
+    /** Incoming edges of each node that have not been evaluated yet */
+    private final int[] undecidedIncoming;
+
+    private final boolean[] dead;
+    private final boolean[] settled;
+
+    /**
+     * @param plan The execution plan of the workflow
+     * @param inDegree The in-degree counters of the execution, decremented by the executor as edges pass
+     */
+    ReachabilityTracker(ExecutionPlan plan, int[] inDegree) {
+        this.plan = plan;
+        this.inDegree = inDegree;
+        this.undecidedIncoming = plan.newIncomingEdgeCounters();
+        this.dead = new boolean[plan.getNodeCount()];
+        this.settled = new boolean[plan.getNodeCount()];
+
+        // Nodes waiting for edges from unknown sources can never become ready
+        for (int node : plan.getTopologicalOrder()) {
+            if (!dead[node] && inDegree[node] > undecidedIncoming[node]) kill(node);
+        }
+    }
+
+    /**
+     * Records an edge whose condition passed (after its target's in-degree was decremented)
+     * @param edge Index of the edge
+     */
+    void edgePassed(int edge) {
+        undecidedIncoming[plan.getEdgeTarget(edge)]--;
+    }
+
+    /**
+     * Records an edge whose condition failed, killing its target if it can no longer become ready
+     * @param edge Index of the edge
+     */
+    void edgeFailed(int edge) {
+        int target = plan.getEdgeTarget(edge);
+        undecidedIncoming[target]--;
+        if (!dead[target] && !settled[target] && inDegree[target] > undecidedIncoming[target]) kill(target);
+    }
+
+    /**
+     * Records a node that will not complete (e.g. cancelled): its outgoing edges will never pass
+     * @param node Index of the node
+     */
+    void stop(int node) {
+        if (!dead[node] && !settled[node]) kill(node);
+    }
+
+    /**
+     * Records a node that completed
+     * @param node Index of the node
+     */
+    void settle(int node) {
+        settled[node] = true;
+    }
+
+    /**
+     * @param node Index of the node
+     * @return True if the node can no longer become ready
+     */
+    boolean isDead(int node) {
+        return dead[node];
+    }
+
+    /**
+     * Computes the nodes that can still contribute to an exit node that has not completed
+     * @return For each node, true if it is needed
+     */
+    boolean[] neededNodes() {
+        boolean[] needed = new boolean[plan.getNodeCount()];
+        int[] order = plan.getTopologicalOrder();
+
+        for (int i = order.length - 1; i >= 0; i--) {
+            int node = order[i];
+            if (dead[node] || settled[node]) continue;
+
+            int[] outgoing = plan.getOutgoingEdges(node);
+            if (outgoing.length == 0) {
+                needed[node] = true;
+                continue;
+            }
+
+            for (int e : outgoing) {
+                int target = plan.getEdgeTarget(e);
+                // A target that is already ready no longer waits for this edge
+                if (needed[target] && inDegree[target] > 0) {
+                    needed[node] = true;
+                    break;
+                }
+            }
+        }
+        return needed;
+    }
+
+    /**
+     * @return True if every exit node has completed or is dead
+     */
+    boolean exitNodesResolved() {
+        for (int node = 0; node < plan.getNodeCount(); node++) {
+            if (plan.getOutgoingEdges(node).length == 0 && !dead[node] && !settled[node]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Marks a node as dead, and then the successors that can no longer become ready without it
+     */
+    private void kill(int node) {
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        dead[node] = true;
+        stack.push(node);
+
+        while (!stack.isEmpty()) {
+            int current = stack.pop();
+            for (int e : plan.getOutgoingEdges(current)) {
+                int target = plan.getEdgeTarget(e);
+                undecidedIncoming[target]--;
+                if (!dead[target] && !settled[target] && inDegree[target] > undecidedIncoming[target]) {
+                    dead[target] = true;
+                    stack.push(target);
+                }
+            }
+        }
+    }
+}
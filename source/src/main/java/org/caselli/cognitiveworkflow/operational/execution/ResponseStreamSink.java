@@ -0,0 +1,28 @@
+package org.caselli.cognitiveworkflow.operational.execution;
+
+/**
+ * Receives the responses of the nodes that stream them (e.g. the LLM nodes with {@code streamResponse}) while a
+ * workflow runs, before the workflow completes.
+ * <p>
+ * A sink belongs to one execution of a workflow (it is passed to the {@link WorkflowExecutor}): the nodes that run
+ * in parallel can call it concurrently, and its failures do not fail the nodes.
+ * </p>
+ */
+public interface ResponseStreamSink {
+
+    /**
+     * Receives the next part of a response
+     * @param nodeId The ID of the node in the workflow
+     * @param portKey The key of the port of the response
+     * @param text The text that follows the parts already received
+     */
+    void onPartial(String nodeId, String portKey, String text);
+
+    /**
+     * Receives the complete response, once it has been parsed according to the schema of the port
+     * @param nodeId The ID of the node in the workflow
+     * @param portKey The key of the port of the response
+     * @param value The value stored in the port
+     */
+    default void onComplete(String nodeId, String portKey, Object value) {}
+}
@@ -3,18 +3,62 @@ package org.caselli.cognitiveworkflow.operational.execution;
 import org.caselli.cognitiveworkflow.knowledge.MOP.WorkflowMetamodelService;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.Port;
 import org.caselli.cognitiveworkflow.knowledge.model.workflow.WorkflowEdge;
+import org.caselli.cognitiveworkflow.operational.AI.LlmRequestOrigin;
 import org.caselli.cognitiveworkflow.operational.AI.services.PortAdapterService;
+import org.caselli.cognitiveworkflow.operational.instances.AsyncNodeInstance;
 import org.caselli.cognitiveworkflow.operational.instances.NodeInstance;
 import org.caselli.cognitiveworkflow.operational.instances.WorkflowInstance;
+import org.caselli.cognitiveworkflow.operational.observability.ObservabilityLevel;
 import org.caselli.cognitiveworkflow.operational.observability.WorkflowObservabilityReport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import jakarta.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Class for executing workflows with comprehensive observability.
  * Execution progresses in a topological order.
+ * By default nodes are processed one at a time; when {@code workflow.executor.parallel} is enabled, independent
+ * nodes are processed concurrently on a bounded thread pool of {@code workflow.executor.parallelism} threads.
+ * When a race join (a gateway in ANY_OF or FIRST_N join mode) fires, its slower branches are cancelled if they are
+ * running and skipped if they are not, and the cancellations are recorded in the report.
+ * <p>
+ * Workflows and nodes can have a deadline ({@code timeoutMillis} of their metamodels, or the default
+ * {@code workflow.executor.timeout-millis} for workflows). The deadline of a node is activated on the thread that runs
+ * it, so its HTTP, LLM and MongoDB calls are bounded by it; in parallel mode the coordinator also stops waiting for
+ * the nodes that exceed their deadline and interrupts them. Timeouts are reported separately from failures.
+ * In sequential mode a node that completes after its deadline fails with a timeout, but the outputs it already
+ * wrote are left in the context (see {@link #runNode}).
+ * </p>
+ * <p>
+ * With early termination ({@code earlyTermination} of the workflow metamodel, or the default
+ * {@code workflow.executor.early-termination}) the executor analyses the reachability of the nodes after each
+ * completed node: the nodes that the edge conditions made unreachable, and the ones that can no longer contribute to
+ * an exit node that has not completed, are pruned (running nodes are cancelled, the others skipped). Once all exit
+ * nodes have completed or were pruned, the execution stops.
+ * </p>
+ * <p>
+ * In parallel mode, nodes doing non-blocking I/O ({@link AsyncNodeInstance}, e.g. the REST nodes) only use a node
+ * thread to start their I/O, unless {@code workflow.executor.async-io} is disabled: any number of them can wait for
+ * their responses at the same time without holding a thread of the bounded pool.
+ * </p>
+ * <p>
+ * Unless the context is a {@link ConcurrentExecutionContext}, in parallel mode each node runs on a private context
+ * holding only what it can read (its input ports and the output ports of its predecessors, for port adaptation), and
+ * only the values of its own input and output ports are merged back, in completion order. This differs from
+ * sequential mode, where the nodes share the context:
+ * <ul>
+ *     <li>keys that are not ports of the node are not visible to it, and its writes to them are discarded;</li>
+ *     <li>keys removed by the node are not removed from the shared context;</li>
+ *     <li>when concurrent nodes write the same port, the value of the node that completes last is kept, while in
+ *     sequential mode it is the value of the node that runs last.</li>
+ * </ul>
+ * </p>
  */
 @Service
 public class WorkflowExecutor {
@@ -25,6 +69,23 @@ public class WorkflowExecutor {
     private final WorkflowInstanceManager workflowInstanceManager;
     private final NodeInstanceManager nodeInstanceManager;
 
+    @Value("${workflow.executor.parallel:false}")
+    private boolean parallelExecution;
+
+    @Value("${workflow.executor.parallelism:8}")
+    private int parallelism;
+
+    @Value("${workflow.executor.timeout-millis:0}")
+    private long defaultTimeoutMillis;
+
+    @Value("${workflow.executor.early-termination:true}")
+    private boolean earlyTermination;
+
+    @Value("${workflow.executor.async-io:true}")
+    private boolean asyncIo;
+
+    private ExecutorService nodeExecutor;
+
     public WorkflowExecutor(WorkflowMetamodelService workflowMetamodelService,
                             PortAdapterService portAdapterService,
                             WorkflowInstanceManager workflowInstanceManager,
@@ -42,12 +103,38 @@ public class WorkflowExecutor {
      * @return Detailed execution result with performance metrics and observability data
      */
     public WorkflowObservabilityReport execute(WorkflowInstance workflow, ExecutionContext context) {
+        return execute(workflow, context, ObservabilityLevel.FULL);
+    }
+
+    /**
+     * Executes a workflow
+     * @param workflow The workflow instance to execute
+     * @param context The execution context
+     * @param observabilityLevel The detail level of the execution report
+     * @return Execution result with the observability data of the requested level
+     */
+    public WorkflowObservabilityReport execute(WorkflowInstance workflow, ExecutionContext context, ObservabilityLevel observabilityLevel) {
+        return execute(workflow, context, observabilityLevel, null);
+    }
+
+    /**
+     * Executes a workflow, publishing the responses of the streaming nodes while they are generated
+     * @param workflow The workflow instance to execute
+     * @param context The execution context
+     * @param observabilityLevel The detail level of the execution report
+     * @param responseStreamSink Receives the responses of the streaming nodes (null if nobody listens)
+     * @return Execution result with the observability data of the requested level
+     */
+    public WorkflowObservabilityReport execute(WorkflowInstance workflow, ExecutionContext context, ObservabilityLevel observabilityLevel,
+                                               ResponseStreamSink responseStreamSink) {
         // Observability
         WorkflowObservabilityReport executionRecord = new WorkflowObservabilityReport(
                 workflow.getId(),
                 workflow.getMetamodel().getName(),
-                context
+                context,
+                observabilityLevel
         );
+        executionRecord.setResponseStreamSink(responseStreamSink);
 
         try {
             logger.info("-------------------------------------------");
@@ -63,173 +150,782 @@ public class WorkflowExecutor {
                 throw new RuntimeException(errorMsg);
             }
 
-            // Validate that all nodes referenced in edges exist
-            List<WorkflowEdge> edges = workflow.getMetamodel().getEdges();
-            validateEdges(workflow, edges);
+            // The precompiled plan of the workflow: each execution only needs a fresh copy of the in-degree counters
+            ExecutionPlan plan = workflow.getExecutionPlan();
+            int[] inDegree = plan.newInDegreeCounters();
 
-            // Build adjacency list and in-degree map
-            Map<String, List<WorkflowEdge>> outgoing = new HashMap<>();
-            Map<String, Integer> inDegree = new HashMap<>();
+            // The starting nodes are all nodes with in-degree 0
+            int[] entryNodes = plan.getEntryNodes();
 
-            for (String nodeId : workflow.getWorkflowNodesMap().keySet())
-                inDegree.put(nodeId, 0);
+            // The deadline of the workflow, bounded by the one of the caller (e.g. the node running a sub-workflow)
+            Long timeoutMillis = workflow.getMetamodel().getTimeoutMillis() != null ? workflow.getMetamodel().getTimeoutMillis() : defaultTimeoutMillis;
+            Deadline deadline = Deadline.current().earliest(Deadline.afterMillis(timeoutMillis));
 
-            for (WorkflowEdge edge : edges) {
-                outgoing.computeIfAbsent(edge.getSourceNodeId(), k -> new ArrayList<>()).add(edge);
-                inDegree.compute(edge.getTargetNodeId(), (k, v) -> v == null ? 1 : v + 1);
-            }
+            // Reachability analysis, for pruning and early termination
+            boolean prune = workflow.getMetamodel().getEarlyTermination() != null ? workflow.getMetamodel().getEarlyTermination() : earlyTermination;
+            ReachabilityTracker reachability = prune ? new ReachabilityTracker(plan, inDegree) : null;
 
-            // Starting Queue
-            Queue<String> queue = new LinkedList<>();
-            // The starting nodes are all nodes with in-degree 0
-            for (Map.Entry<String, Integer> entry : inDegree.entrySet())
-                if (entry.getValue() == 0)
-                    queue.add(workflow.getWorkflowNodesMap().get(entry.getKey()).getId());
+            logger.info("Starting workflow execution from {} entry nodes (parallel={})", entryNodes.length, parallelExecution);
+            Set<String> processedNodeIds = new LinkedHashSet<>();
 
-            logger.info("Starting workflow execution from {} entry nodes", queue.size());
-            Set<String> processedNodeIds = new HashSet<>();
+            if (parallelExecution) executeParallel(workflow, plan, context, entryNodes, inDegree, deadline, reachability, processedNodeIds, executionRecord);
+            else executeSequential(workflow, plan, context, entryNodes, inDegree, deadline, reachability, processedNodeIds, executionRecord);
 
-            // Process nodes in topological order
-            while (!queue.isEmpty()) {
-                String currentId = queue.poll();
-                NodeInstance current = workflow.getInstanceByWorkflowNodeId(currentId);
+            // Mark workflow as successfully completed
+            executionRecord.markCompleted(true, null, null);
 
-                logger.info("*******************************************");
-                logger.info("Processing node: {}", currentId);
+            logger.info("-------------------------------------------");
+            logger.info("Workflow execution completed successfully. Metrics: ");
+            logger.info("Processed nodes={}", processedNodeIds);
+            logger.info("Total execution time: {} ms", executionRecord.getTotalExecutionTime().toMillis());
+            logger.info("{} total nodes, {} successful, {} failed",
+                    executionRecord.getMetrics().getTotalNodes(),
+                    executionRecord.getMetrics().getSuccessfulNodes(),
+                    executionRecord.getMetrics().getFailedNodes());
+            logger.info("-------------------------------------------");
 
-                if (current == null) {
-                    logger.error("Node instance not found for ID: {}", currentId);
-                    continue;
-                }
+            return executionRecord;
 
-                // Record node execution start
-                executionRecord.recordNodeStart(
-                        currentId,
-                        current.getMetamodel().getName() != null ? current.getMetamodel().getName() : "Unnamed Node",
-                        current.getMetamodel().getClass().getSimpleName(),
-                        context
-                );
+        } catch (DeadlineExceededException e) {
+            if (!executionRecord.isTimedOut()) executionRecord.markTimedOut(e.getMessage(), e);
+            throw e;
 
-                String nodeErrorMessage = null;
-                Throwable nodeException = null;
+        } catch (Exception e) {
+            if (executionRecord.isSuccess()) executionRecord.markCompleted(false, e.getMessage(), e);
+            throw e;
 
-                try {
-                    // Apply default values for any missing inputs
-                    prepareNodeInputs(current, context);
+        } finally {
+            // Mark the workflow as no longer in execution
+            workflowInstanceManager.markFinished(workflow.getId());
+        }
+    }
 
-                    // Check if all required input ports are present
-                    ensureRequiredInputsSatisfied(workflow, currentId, context, executionRecord);
+    /**
+     * Processes the nodes one after another on the calling thread, in topological order.
+     * @param workflow The workflow instance to execute
+     * @param plan The execution plan of the workflow
+     * @param context The shared execution context
+     * @param entryNodes Indexes of the nodes with no incoming edges
+     * @param inDegree Remaining in-degree of each node (mutated)
+     * @param deadline The deadline of the workflow
+     * @param reachability The reachability analysis of the execution, or null if pruning is disabled
+     * @param processedNodeIds Collects the nodes that completed successfully
+     * @param executionRecord The execution report
+     */
+    private void executeSequential(WorkflowInstance workflow, ExecutionPlan plan, ExecutionContext context, int[] entryNodes,
+                                   int[] inDegree, Deadline deadline, ReachabilityTracker reachability,
+                                   Set<String> processedNodeIds, WorkflowObservabilityReport executionRecord) {
 
-                    logger.info("Current context keys: {}", context.keySet());
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int entry : entryNodes) queue.add(entry);
 
-                    // Mark the node as in execution
-                    nodeInstanceManager.markRunning(current.getId());
+        boolean[] settled = new boolean[plan.getNodeCount()];
+        Map<Integer, String> cancelled = new HashMap<>();
 
-                    // Process the node
-                    current.process(context);
-                    processedNodeIds.add(currentId);
+        // Process nodes in topological order
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            String currentId = plan.getNodeId(current);
 
-                    logger.info("Node {} executed successfully", currentId);
-                    executionRecord.recordNodeCompletion(currentId, true, nodeErrorMessage, nodeException, context);
+            if (plan.getNodeInstance(current) == null) {
+                logger.error("Node instance not found for ID: {}", currentId);
+                continue;
+            }
 
+            if (cancelled.containsKey(current)) {
+                recordCancellation(plan, current, cancelled.get(current), executionRecord);
+                continue;
+            }
 
-                } catch (Exception e) {
-                    nodeErrorMessage = e.getMessage();
-                    nodeException = e;
+            runNode(workflow, plan, current, context, nodeDeadline(plan, current, deadline), cancelled, executionRecord);
+            processedNodeIds.add(currentId);
+            settled[current] = true;
+            if (reachability != null) reachability.settle(current);
 
-                    logger.error("Error processing node {}: {}", currentId, e.getMessage(), e);
-                    executionRecord.recordNodeCompletion(currentId, false, nodeErrorMessage, nodeException, context);
-                    executionRecord.markCompleted(false, "Node execution failed: " + currentId, e);
-                    throw new RuntimeException("Error processing node " + currentId, e);
+            // Apply default values for any missing outputs
+            applyDefaultOutputValues(plan, current, context);
 
-                } finally {
-                    // Mark the node as no longer in execution
-                    nodeInstanceManager.markFinished(current.getId());
-                }
+            // Propagate outputs to all the outgoing edges
+            List<Integer> readyNodes = propagateOutputs(plan, current, inDegree, reachability, context, executionRecord);
+            queue.addAll(readyNodes);
 
-                // Apply default values for any missing outputs
-                applyDefaultOutputValues(current, context);
+            // Race joins that fired no longer need their other branches
+            for (int ready : readyNodes) {
+                for (int branch : cancelRaceBranches(plan, ready, settled, cancelled, queue, null, executionRecord))
+                    if (reachability != null) reachability.stop(branch);
+            }
 
-                // Propagate outputs to all the outgoing edges
-                List<WorkflowEdge> outs = outgoing.getOrDefault(currentId, Collections.emptyList());
+            // Nodes that can no longer contribute to an exit node are not run
+            pruneUnneededNodes(plan, reachability, settled, cancelled, queue, null, executionRecord);
+        }
+    }
 
-                // Consider all the outgoing edges of the current node
-                for (WorkflowEdge edge : outs) {
-                    String targetId = edge.getTargetNodeId();
-                    NodeInstance targetNode = workflow.getInstanceByWorkflowNodeId(targetId);
+    /**
+     * Processes the nodes concurrently. Every node whose in-degree drops to zero is dispatched at once to the
+     * bounded node executor, so independent branches overlap instead of adding up their latencies.
+     * <p>
+     * The calling thread acts as coordinator and is the only one that mutates the shared context:
+     * each node runs on a private copy of the keys it can read, taken when it is dispatched (all of its predecessors
+     * have completed at that point), and its port values are merged back into the shared context when it completes
+     * (see the class documentation for how this differs from sequential mode).
+     * Edge conditions and bindings are then evaluated on the coordinator, exactly as in sequential mode.
+     * </p>
+     * <p>
+     * If the context is a {@link ConcurrentExecutionContext} the nodes write to it directly, with no copy and merge.
+     * </p>
+     * <p>
+     * The coordinator waits for the nodes at most until the earliest of their deadlines: the nodes that exceed it
+     * are interrupted and the workflow fails with a {@link DeadlineExceededException}.
+     * </p>
+     * @param workflow The workflow instance to execute
+     * @param plan The execution plan of the workflow
+     * @param context The shared execution context
+     * @param entryNodes Indexes of the nodes with no incoming edges
+     * @param inDegree Remaining in-degree of each node (mutated)
+     * @param deadline The deadline of the workflow
+     * @param reachability The reachability analysis of the execution, or null if pruning is disabled
+     * @param processedNodeIds Collects the nodes that completed successfully
+     * @param executionRecord The execution report
+     */
+    private void executeParallel(WorkflowInstance workflow, ExecutionPlan plan, ExecutionContext context, int[] entryNodes,
+                                 int[] inDegree, Deadline deadline, ReachabilityTracker reachability,
+                                 Set<String> processedNodeIds, WorkflowObservabilityReport executionRecord) {
 
-                    if (targetNode == null) {
-                        logger.warn("Edge references non-existent target node ID: {}", targetId);
+        // Non-blocking nodes are added to the queue of the completion service when their I/O completes
+        BlockingQueue<Future<Integer>> completionQueue = new LinkedBlockingQueue<>();
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(getNodeExecutor(), completionQueue);
+        Map<Integer, Future<Integer>> inFlight = new HashMap<>();
+        ExecutionContext[] nodeContexts = new ExecutionContext[plan.getNodeCount()];
+        boolean sharedContext = context instanceof ConcurrentExecutionContext;
+
+        boolean[] settled = new boolean[plan.getNodeCount()];
+        Map<Integer, String> cancelled = new ConcurrentHashMap<>();
+        Deadline[] nodeDeadlines = new Deadline[plan.getNodeCount()];
+
+        ArrayDeque<Integer> ready = new ArrayDeque<>();
+        for (int entry : entryNodes) ready.add(entry);
+
+        try {
+            while (!ready.isEmpty() || !inFlight.isEmpty()) {
+
+                // Dispatch all the ready nodes
+                while (!ready.isEmpty()) {
+                    int node = ready.poll();
+
+                    if (plan.getNodeInstance(node) == null) {
+                        logger.error("Node instance not found for ID: {}", plan.getNodeId(node));
+                        continue;
+                    }
+
+                    if (cancelled.containsKey(node)) {
+                        recordCancellation(plan, node, cancelled.get(node), executionRecord);
                         continue;
                     }
 
-                    // Evaluate the edge condition with tracking
-                    boolean pass = evaluateEdgeCondition(edge, context);
+                    ExecutionContext nodeContext = sharedContext ? context : context.copyKeys(readableKeys(plan, node));
+                    if (!sharedContext) nodeContexts[node] = nodeContext;
+                    Deadline nodeDeadline = nodeDeadline(plan, node, deadline);
+                    nodeDeadlines[node] = nodeDeadline;
+                    if (asyncIo && plan.getNodeInstance(node) instanceof AsyncNodeInstance<?> asyncNode) {
+                        inFlight.put(node, runNodeAsync(workflow, plan, node, asyncNode, nodeContext, nodeDeadline, cancelled, executionRecord, completionQueue));
+                    } else {
+                        inFlight.put(node, completionService.submit(() -> {
+                            try {
+                                runNode(workflow, plan, node, nodeContext, nodeDeadline, cancelled, executionRecord);
+                            } catch (RuntimeException e) {
+                                // The failure of a cancelled node does not fail the workflow
+                                if (!cancelled.containsKey(node)) throw e;
+                            }
+                            return node;
+                        }));
+                    }
+                    logger.info("Node {} dispatched ({} nodes in flight)", plan.getNodeId(node), inFlight.size());
+                }
+
+                if (inFlight.isEmpty()) break;
 
-                    if (pass) {
-                        // Apply bindings with tracking
-                        Map<String, String> appliedBindings = null;
-                        if (edge.getBindings() != null) {
-                            appliedBindings = new HashMap<>(edge.getBindings());
-                            applyEdgeBindings(workflow, edge, context);
-                        }
+                // Join on the first node that completes, or on the first deadline
+                Deadline earliest = deadline;
+                for (int node : inFlight.keySet()) earliest = earliest.earliest(nodeDeadlines[node]);
 
-                        // Record edge evaluation
-                        executionRecord.recordEdgeEvaluation(currentId, targetId, edge.getId(), true, "Condition passed", appliedBindings);
+                int completed = awaitNextNode(completionService, cancelled, earliest);
+                if (completed < 0) {
+                    timeOutExpiredNodes(plan, inFlight, nodeDeadlines, cancelled, executionRecord);
+                    continue;
+                }
+                inFlight.remove(completed);
+                processedNodeIds.add(plan.getNodeId(completed));
+                settled[completed] = true;
+                if (reachability != null) reachability.settle(completed);
 
-                        // Decrement in-degree
-                        inDegree.compute(targetId, (k, v) -> (v == null ? 0 : v) - 1);
+                mergeNodeContext(plan, completed, nodeContexts[completed], context);
+                nodeContexts[completed] = null;
 
-                        // Enqueue target node if ready
-                        if (inDegree.get(targetId) == 0) {
-                            queue.add(targetId);
-                            logger.info("Node {} is now ready for execution", targetId);
-                        }
-                    } else {
-                        // Record failed edge evaluation
-                        executionRecord.recordEdgeEvaluation(currentId, targetId, edge.getId(), false, "Condition not met", null);
-                        logger.info("Edge condition from {} to {} is not met", currentId, targetId);
+                // Apply default values for any missing outputs
+                applyDefaultOutputValues(plan, completed, context);
+
+                // Propagate outputs to all the outgoing edges
+                List<Integer> readyNodes = propagateOutputs(plan, completed, inDegree, reachability, context, executionRecord);
+                ready.addAll(readyNodes);
+
+                // Race joins that fired no longer need their other branches
+                for (int readyNode : readyNodes) {
+                    for (int branch : cancelRaceBranches(plan, readyNode, settled, cancelled, ready, inFlight, executionRecord)) {
+                        nodeContexts[branch] = null;
+                        if (reachability != null) reachability.stop(branch);
                     }
                 }
+
+                // Nodes that can no longer contribute to an exit node are cancelled or not run
+                for (int node : pruneUnneededNodes(plan, reachability, settled, cancelled, ready, inFlight, executionRecord))
+                    nodeContexts[node] = null;
             }
+        } finally {
+            // On failure, stop the branches that are still running
+            for (Future<Integer> future : inFlight.values()) future.cancel(true);
+        }
+    }
 
-            // Mark workflow as successfully completed
-            executionRecord.markCompleted(true, null, null);
+    /**
+     * Waits for the next node dispatched in parallel mode to complete.
+     * Cancelled nodes are ignored, even if they complete.
+     * @param completionService The completion service the nodes were submitted to
+     * @param cancelled The cancelled nodes
+     * @param deadline When to stop waiting
+     * @return The index of the completed node, or -1 if the deadline passed first
+     * @throws RuntimeException if the node failed or the coordinator was interrupted
+     */
+    private int awaitNextNode(CompletionService<Integer> completionService, Map<Integer, String> cancelled, Deadline deadline) {
+        try {
+            while (true) {
+                Future<Integer> future;
+                if (deadline.isBounded()) {
+                    future = completionService.poll(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+                    if (future == null) return -1;
+                } else {
+                    future = completionService.take();
+                }
+                if (future.isCancelled()) continue;
 
-            logger.info("-------------------------------------------");
-            logger.info("Workflow execution completed successfully. Metrics: ");
-            logger.info("Processed nodes={}", processedNodeIds);
-            logger.info("Total execution time: {} ms", executionRecord.getTotalExecutionTime().toMillis());
-            logger.info("{} total nodes, {} successful, {} failed",
-                    executionRecord.getMetrics().getTotalNodes(),
-                    executionRecord.getMetrics().getSuccessfulNodes(),
-                    executionRecord.getMetrics().getFailedNodes());
-            logger.info("-------------------------------------------");
+                int node = future.get();
+                if (!cancelled.containsKey(node)) return node;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Workflow execution interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new RuntimeException(e.getCause());
+        }
+    }
 
-            return executionRecord;
+    /**
+     * Cancels the race branches of a node that became ready, if it is a race join: the branch nodes that are
+     * running are interrupted, the ones waiting to be dispatched are skipped, and the ones that are not ready yet
+     * will be skipped if they ever become ready. Completed nodes are left untouched.
+     * @param plan The execution plan of the workflow
+     * @param join Index of the node that became ready
+     * @param settled The nodes that already completed
+     * @param cancelled The cancelled nodes, with the reason to record if they are skipped (mutated)
+     * @param queued The nodes waiting to be dispatched (mutated)
+     * @param inFlight The running nodes, or null in sequential mode (mutated)
+     * @param executionRecord The execution report
+     * @return The indexes of the nodes that were cancelled
+     */
+    private List<Integer> cancelRaceBranches(ExecutionPlan plan, int join, boolean[] settled, Map<Integer, String> cancelled,
+                                             Collection<Integer> queued, Map<Integer, Future<Integer>> inFlight,
+                                             WorkflowObservabilityReport executionRecord) {
+        int[] branches = plan.getRaceBranches(join);
+        if (branches.length == 0) return List.of();
+
+        String joinId = plan.getNodeId(join);
+        List<Integer> cancelledNow = new ArrayList<>();
+
+        for (int node : branches) {
+            if (settled[node] || cancelled.putIfAbsent(node, "Skipped: join gateway " + joinId + " already fired") != null) continue;
+            cancelledNow.add(node);
+
+            Future<Integer> future = inFlight != null ? inFlight.remove(node) : null;
+            if (future != null) {
+                future.cancel(true);
+                logger.info("Node {} cancelled: join gateway {} already fired", plan.getNodeId(node), joinId);
+                recordCancellation(plan, node, "Cancelled: join gateway " + joinId + " already fired", executionRecord);
+            } else if (queued.remove(node)) {
+                logger.info("Node {} skipped: join gateway {} already fired", plan.getNodeId(node), joinId);
+                recordCancellation(plan, node, "Skipped: join gateway " + joinId + " already fired", executionRecord);
+            }
+        }
+
+        return cancelledNow;
+    }
+
+    /**
+     * Prunes the nodes that can no longer contribute to an exit node that has not completed: the nodes the edge
+     * conditions made unreachable, and the ones whose successors no longer wait for them. Running nodes are
+     * interrupted, the ones waiting to be dispatched are skipped, and the ones that are not ready yet will be skipped
+     * if they ever become ready. Completed nodes are left untouched.
+     * @param plan The execution plan of the workflow
+     * @param reachability The reachability analysis of the execution, or null if pruning is disabled
+     * @param settled The nodes that already completed
+     * @param cancelled The cancelled nodes, with the reason to record if they are skipped (mutated)
+     * @param queued The nodes waiting to be dispatched (mutated)
+     * @param inFlight The running nodes, or null in sequential mode (mutated)
+     * @param executionRecord The execution report
+     * @return The indexes of the nodes that were pruned
+     */
+    private List<Integer> pruneUnneededNodes(ExecutionPlan plan, ReachabilityTracker reachability, boolean[] settled,
+                                             Map<Integer, String> cancelled, Collection<Integer> queued,
+                                             Map<Integer, Future<Integer>> inFlight, WorkflowObservabilityReport executionRecord) {
+        if (reachability == null) return List.of();
+
+        boolean[] needed = reachability.neededNodes();
+        List<Integer> pruned = new ArrayList<>();
+
+        for (int node = 0; node < plan.getNodeCount(); node++) {
+            if (needed[node] || settled[node] || cancelled.containsKey(node) || plan.getNodeInstance(node) == null) continue;
+
+            String reason = reachability.isDead(node)
+                    ? "Pruned: unreachable after the edge conditions"
+                    : "Pruned: no pending exit node depends on it";
+            cancelled.put(node, reason);
+            pruned.add(node);
+
+            Future<Integer> future = inFlight != null ? inFlight.remove(node) : null;
+            if (future != null) {
+                future.cancel(true);
+                logger.info("Node {} cancelled: {}", plan.getNodeId(node), reason);
+                recordCancellation(plan, node, "Cancelled while running. " + reason, executionRecord);
+            } else {
+                queued.remove(node);
+                logger.info("Node {} skipped: {}", plan.getNodeId(node), reason);
+                recordCancellation(plan, node, reason, executionRecord);
+            }
+        }
+
+        for (int node : pruned) reachability.stop(node);
+
+        if (!pruned.isEmpty() && reachability.exitNodesResolved())
+            logger.info("All exit nodes completed or were pruned: stopping the execution early");
+
+        return pruned;
+    }
+
+    /**
+     * Interrupts the running nodes that exceeded their deadline and fails the workflow
+     * @param plan The execution plan of the workflow
+     * @param inFlight The running nodes (mutated)
+     * @param nodeDeadlines The deadline of each node
+     * @param cancelled The cancelled nodes (mutated): the interrupted nodes are no longer waited for
+     * @param executionRecord The execution report
+     * @throws DeadlineExceededException always
+     */
+    private void timeOutExpiredNodes(ExecutionPlan plan, Map<Integer, Future<Integer>> inFlight, Deadline[] nodeDeadlines,
+                                     Map<Integer, String> cancelled, WorkflowObservabilityReport executionRecord) {
+        List<String> expired = new ArrayList<>();
+        for (int node : new ArrayList<>(inFlight.keySet())) {
+            if (nodeDeadlines[node] == null || !nodeDeadlines[node].isExpired()) continue;
+
+            String nodeId = plan.getNodeId(node);
+            expired.add(nodeId);
+            cancelled.put(node, "Timed out");
+            inFlight.remove(node).cancel(true);
+            executionRecord.recordNodeTimeout(nodeId, "Node " + nodeId + " exceeded its deadline", null);
+        }
+
+        String message = expired.isEmpty() ? "Workflow exceeded its deadline" : "Nodes " + expired + " exceeded their deadline";
+        logger.error(message);
+        DeadlineExceededException exception = new DeadlineExceededException(message);
+        executionRecord.markTimedOut(message, exception);
+        throw exception;
+    }
+
+    /**
+     * Computes the deadline of a node: its own timeout, bounded by the deadline of the workflow
+     * @param plan The execution plan of the workflow
+     * @param node Index of the node
+     * @param deadline The deadline of the workflow
+     * @return The deadline of the node
+     */
+    private Deadline nodeDeadline(ExecutionPlan plan, int node, Deadline deadline) {
+        NodeInstance instance = plan.getNodeInstance(node);
+        if (instance == null || instance.getMetamodel() == null) return deadline;
+        return deadline.earliest(Deadline.afterMillis(instance.getMetamodel().getTimeoutMillis()));
+    }
+
+    /**
+     * Records the cancellation of a node in the report
+     */
+    private void recordCancellation(ExecutionPlan plan, int node, String reason, WorkflowObservabilityReport executionRecord) {
+        NodeInstance instance = plan.getNodeInstance(node);
+        if (instance == null) return;
+        executionRecord.recordNodeCancellation(
+                plan.getNodeId(node),
+                instance.getMetamodel().getName() != null ? instance.getMetamodel().getName() : "Unnamed Node",
+                instance.getMetamodel().getClass().getSimpleName(),
+                reason
+        );
+    }
+
+    /**
+     * Returns the keys a node can read: its input ports, and the output ports of its predecessors, which port
+     * adaptation binds to the missing inputs
+     * @param plan The execution plan of the workflow
+     * @param node Index of the node
+     * @return The keys to copy into the private context of the node
+     */
+    private Set<String> readableKeys(ExecutionPlan plan, int node) {
+        Set<String> keys = new HashSet<>();
+        for (ExecutionPlan.CompiledPort port : plan.getInputPorts(node)) keys.add(port.port().getKey());
+        for (int edge : plan.getIncomingEdges(node))
+            for (ExecutionPlan.CompiledPort port : plan.getOutputPorts(plan.getEdgeSource(edge))) keys.add(port.port().getKey());
+        return keys;
+    }
+
+    /**
+     * Copies the port values of a node that ran on a private context back into the shared context.
+     * Both input ports (which may have been filled with defaults or by port adaptation) and output ports are merged.
+     * @param plan The execution plan of the workflow
+     * @param node Index of the completed node
+     * @param nodeContext The private context the node ran on
+     * @param context The shared execution context
+     */
+    private void mergeNodeContext(ExecutionPlan plan, int node, ExecutionContext nodeContext, ExecutionContext context) {
+        if (nodeContext == null) return;
+
+        for (ExecutionPlan.CompiledPort port : plan.getInputPorts(node)) {
+            if (nodeContext.containsKey(port.path())) context.put(port.path(), nodeContext.get(port.path()));
+        }
+
+        for (ExecutionPlan.CompiledPort port : plan.getOutputPorts(node)) {
+            if (nodeContext.containsKey(port.path())) context.put(port.path(), nodeContext.get(port.path()));
+        }
+    }
+
+    /**
+     * Runs a single node: applies input defaults, satisfies the required inputs and processes the node,
+     * recording the execution in the report.
+     * <p>
+     * The deadline is checked when the node returns. In sequential mode the node writes to the context of the
+     * workflow directly, so the outputs of a node that completes after its deadline stay in the context: the node
+     * and the workflow still fail with a timeout, and no edge is evaluated on those outputs. The same holds in
+     * parallel mode on a {@link ConcurrentExecutionContext}; otherwise the node runs on a private copy, which is
+     * not merged back.
+     * </p>
+     * @param workflow The workflow instance
+     * @param plan The execution plan of the workflow
+     * @param node Index of the node to run
+     * @param context The context the node runs on
+     * @param deadline The deadline of the node, activated while the node runs
+     * @param cancelled The cancelled nodes
+     * @param executionRecord The execution report
+     * @throws RuntimeException if the node fails
+     * @throws DeadlineExceededException if the node does not complete before its deadline
+     * @throws CancellationException if the node fails after it was cancelled
+     */
+    private void runNode(WorkflowInstance workflow, ExecutionPlan plan, int node, ExecutionContext context,
+                         Deadline deadline, Map<Integer, String> cancelled, WorkflowObservabilityReport executionRecord) {
+        NodeInstance current = plan.getNodeInstance(node);
+
+        recordNodeStart(plan, node, context, executionRecord);
+
+        try (ExecutionScopes.Scope ignored = nodeScopes(workflow, plan.getNodeId(node), deadline, executionRecord).activate()) {
+            prepareNode(workflow, plan, node, context, deadline, executionRecord);
+
+            // Process the node
+            current.process(context);
+
+            recordNodeSuccess(plan, node, context, deadline, executionRecord);
 
         } catch (Exception e) {
-            if (executionRecord.isSuccess()) executionRecord.markCompleted(false, e.getMessage(), e);
-            throw e;
+            throw nodeFailure(plan, node, context, deadline, cancelled, executionRecord, e);
 
         } finally {
-            // Mark the workflow as no longer in execution
-            workflowInstanceManager.markFinished(workflow.getId());
+            // Mark the node as no longer in execution
+            nodeInstanceManager.markFinished(current.getId());
+        }
+    }
+
+    /**
+     * Runs a node that does non-blocking I/O, in parallel mode. The node executor only prepares the node and starts
+     * its I/O: no thread is held while the I/O is pending, and the node completes on the thread that receives the
+     * result. Inputs, outputs, failures, timeouts and cancellations are handled exactly as in {@link #runNode}.
+     * @param workflow The workflow instance
+     * @param plan The execution plan of the workflow
+     * @param node Index of the node to run
+     * @param asyncNode The node
+     * @param context The context the node runs on
+     * @param deadline The deadline of the node, active while its I/O is started
+     * @param cancelled The cancelled nodes
+     * @param executionRecord The execution report
+     * @param completionQueue The queue of the completion service of the coordinator, which receives the node once it completes
+     * @return The pending node, completed with its index. Cancelling it aborts the I/O.
+     */
+    private <T> Future<Integer> runNodeAsync(WorkflowInstance workflow, ExecutionPlan plan, int node, AsyncNodeInstance<T> asyncNode,
+                                             ExecutionContext context, Deadline deadline, Map<Integer, String> cancelled,
+                                             WorkflowObservabilityReport executionRecord, BlockingQueue<Future<Integer>> completionQueue) {
+        String currentId = plan.getNodeId(node);
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<T>> pendingIo = new AtomicReference<>();
+
+        // Cancelling the node aborts its I/O
+        result.whenComplete((completed, error) -> {
+            CompletableFuture<T> io = pendingIo.get();
+            if (result.isCancelled() && io != null) io.cancel(true);
+        });
+
+        getNodeExecutor().execute(() -> {
+            // Cancelled before it started
+            if (result.isCancelled()) return;
+
+            recordNodeStart(plan, node, context, executionRecord);
+
+            CompletableFuture<T> io;
+            try (ExecutionScopes.Scope ignored = nodeScopes(workflow, currentId, deadline, executionRecord).activate()) {
+                prepareNode(workflow, plan, node, context, deadline, executionRecord);
+                io = asyncNode.startAsync(context);
+            } catch (Exception e) {
+                completeAsyncNode(plan, node, context, deadline, cancelled, executionRecord, result, completionQueue, e);
+                return;
+            }
+
+            // The thread goes back to the pool while the I/O is pending
+            executionRecord.suspendNode();
+            pendingIo.set(io);
+            if (result.isCancelled()) io.cancel(true);
+
+            io.whenComplete((value, error) -> {
+                Exception failure = error != null ? asException(error) : null;
+                if (failure == null) {
+                    executionRecord.resumeNode(currentId);
+                    try {
+                        asyncNode.complete(context, value);
+                        recordNodeSuccess(plan, node, context, deadline, executionRecord);
+                    } catch (Exception e) {
+                        failure = e;
+                    }
+                }
+                completeAsyncNode(plan, node, context, deadline, cancelled, executionRecord, result, completionQueue, failure);
+            });
+        });
+
+        return result;
+    }
+
+    /**
+     * @return The execution scopes of a node, activated on the thread that runs it
+     */
+    private static ExecutionScopes nodeScopes(WorkflowInstance workflow, String nodeId, Deadline deadline,
+                                              WorkflowObservabilityReport executionRecord) {
+        return new ExecutionScopes(deadline, executionRecord.attemptRecorder(nodeId), LlmRequestOrigin.workflow(workflow.getId()),
+                executionRecord.responseStream(nodeId));
+    }
+
+    /**
+     * Completes a node run by {@link #runNodeAsync} and hands it to the coordinator
+     * @param failure The failure of the node, or null if it succeeded
+     */
+    private void completeAsyncNode(ExecutionPlan plan, int node, ExecutionContext context, Deadline deadline,
+                                   Map<Integer, String> cancelled, WorkflowObservabilityReport executionRecord,
+                                   CompletableFuture<Integer> result, BlockingQueue<Future<Integer>> completionQueue,
+                                   Exception failure) {
+        try {
+            if (failure == null) result.complete(node);
+            else result.completeExceptionally(nodeFailure(plan, node, context, deadline, cancelled, executionRecord, failure));
+        } finally {
+            // Mark the node as no longer in execution
+            nodeInstanceManager.markFinished(plan.getNodeInstance(node).getId());
+            completionQueue.add(result);
+        }
+    }
+
+    /**
+     * @param error The error a future completed with
+     * @return The exception that caused it
+     */
+    private static Exception asException(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof Exception exception ? exception : new RuntimeException(cause);
+    }
+
+    /**
+     * Records the start of a node in the report
+     */
+    private void recordNodeStart(ExecutionPlan plan, int node, ExecutionContext context, WorkflowObservabilityReport executionRecord) {
+        NodeInstance current = plan.getNodeInstance(node);
+
+        logger.info("*******************************************");
+        logger.info("Processing node: {}", plan.getNodeId(node));
+
+        // Record node execution start
+        executionRecord.recordNodeStart(
+                plan.getNodeId(node),
+                current.getMetamodel().getName() != null ? current.getMetamodel().getName() : "Unnamed Node",
+                current.getMetamodel().getClass().getSimpleName(),
+                context
+        );
+    }
+
+    /**
+     * Prepares a node to be processed: applies the input defaults, satisfies the required inputs and marks the node
+     * as running. Must be called with the deadline of the node active.
+     */
+    private void prepareNode(WorkflowInstance workflow, ExecutionPlan plan, int node, ExecutionContext context,
+                             Deadline deadline, WorkflowObservabilityReport executionRecord) {
+        String currentId = plan.getNodeId(node);
+        deadline.check("node " + currentId);
+
+        // Apply default values for any missing inputs
+        prepareNodeInputs(plan, node, context);
+
+        // Check if all required input ports are present
+        ensureRequiredInputsSatisfied(workflow, plan, node, context, executionRecord);
+
+        logger.info("Current context keys: {}", context.keySet());
+
+        // Mark the node as in execution
+        nodeInstanceManager.markRunning(plan.getNodeInstance(node).getId());
+    }
+
+    /**
+     * Records the successful completion of a node in the report
+     * @throws DeadlineExceededException if the node completed after its deadline
+     */
+    private void recordNodeSuccess(ExecutionPlan plan, int node, ExecutionContext context, Deadline deadline,
+                                   WorkflowObservabilityReport executionRecord) {
+        String currentId = plan.getNodeId(node);
+
+        // The outputs of a node that completes after its deadline are not used
+        if (deadline.isExpired()) throw new DeadlineExceededException("Node " + currentId + " completed after its deadline");
+
+        logger.info("Node {} executed successfully", currentId);
+        executionRecord.recordNodeCompletion(currentId, true, null, null, context);
+    }
+
+    /**
+     * Records the failure of a node in the report: a timeout if it exceeded its deadline, nothing more than its
+     * completion if it was cancelled, a failure of the workflow otherwise.
+     * @param e The exception thrown by the node
+     * @return The exception to propagate to the coordinator
+     */
+    private RuntimeException nodeFailure(ExecutionPlan plan, int node, ExecutionContext context, Deadline deadline,
+                                         Map<Integer, String> cancelled, WorkflowObservabilityReport executionRecord, Exception e) {
+        String currentId = plan.getNodeId(node);
+
+        if (cancelled.containsKey(node)) {
+            // Interrupted by the cancellation: not a failure of the workflow
+            logger.info("Node {} stopped after its cancellation: {}", currentId, e.getMessage());
+            executionRecord.recordNodeCompletion(currentId, false, e.getMessage(), e, context);
+            return new CancellationException("Node " + currentId + " was cancelled");
+        }
+
+        if (e instanceof DeadlineExceededException || deadline.isExpired()) {
+            logger.error("Node {} exceeded its deadline: {}", currentId, e.getMessage());
+            executionRecord.recordNodeTimeout(currentId, e.getMessage(), e);
+            executionRecord.markTimedOut("Node execution timed out: " + currentId, e);
+            if (e instanceof DeadlineExceededException deadlineExceeded) return deadlineExceeded;
+            return new DeadlineExceededException("Node " + currentId + " exceeded its deadline", e);
+        }
+
+        logger.error("Error processing node {}: {}", currentId, e.getMessage(), e);
+        executionRecord.recordNodeCompletion(currentId, false, e.getMessage(), e, context);
+        executionRecord.markCompleted(false, "Node execution failed: " + currentId, e);
+        return new RuntimeException("Error processing node " + currentId, e);
+    }
+
+    /**
+     * Evaluates the outgoing edges of a completed node, applying the bindings of the edges whose condition passes
+     * and decrementing the in-degree of their targets.
+     * @param plan The execution plan of the workflow
+     * @param current Index of the completed node
+     * @param inDegree Remaining in-degree of each node (mutated)
+     * @param reachability The reachability analysis of the execution, informed of the evaluated edges (may be null)
+     * @param context The shared execution context
+     * @param executionRecord The execution report
+     * @return The indexes of the nodes that became ready for execution
+     */
+    private List<Integer> propagateOutputs(ExecutionPlan plan, int current, int[] inDegree, ReachabilityTracker reachability,
+                                           ExecutionContext context, WorkflowObservabilityReport executionRecord) {
+        List<Integer> readyNodes = new ArrayList<>();
+        String currentId = plan.getNodeId(current);
+
+        // Consider all the outgoing edges of the current node
+        for (int e : plan.getOutgoingEdges(current)) {
+            WorkflowEdge edge = plan.getEdge(e);
+            int target = plan.getEdgeTarget(e);
+            String targetId = plan.getNodeId(target);
+
+            if (plan.getNodeInstance(target) == null) {
+                logger.warn("Edge references non-existent target node ID: {}", targetId);
+                continue;
+            }
+
+            // Evaluate the edge condition with tracking
+            boolean pass = evaluateEdgeCondition(edge, plan.getConditionPath(e), context);
+
+            if (pass) {
+                // Apply bindings with tracking
+                Map<String, String> appliedBindings = null;
+                if (plan.getBindings(e) != null) {
+                    appliedBindings = new HashMap<>(edge.getBindings());
+                    applyEdgeBindings(plan, e, context);
+                }
+
+                // Record edge evaluation
+                executionRecord.recordEdgeEvaluation(currentId, targetId, edge.getId(), true, "Condition passed", appliedBindings);
+
+                // Decrement in-degree and enqueue target node if ready
+                if (--inDegree[target] == 0) {
+                    readyNodes.add(target);
+                    logger.info("Node {} is now ready for execution", targetId);
+                }
+                if (reachability != null) reachability.edgePassed(e);
+            } else {
+                // Record failed edge evaluation
+                executionRecord.recordEdgeEvaluation(currentId, targetId, edge.getId(), false, "Condition not met", null);
+                logger.info("Edge condition from {} to {} is not met", currentId, targetId);
+                if (reachability != null) reachability.edgeFailed(e);
+            }
         }
+
+        return readyNodes;
+    }
+
+    /**
+     * Returns the bounded executor used by the parallel mode, creating it on first use
+     * @return The node executor
+     */
+    private synchronized ExecutorService getNodeExecutor() {
+        if (nodeExecutor == null) {
+            int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+            AtomicInteger counter = new AtomicInteger();
+            nodeExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "workflow-node-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            logger.info("Created workflow node executor with {} threads", threads);
+        }
+        return nodeExecutor;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (nodeExecutor != null) nodeExecutor.shutdownNow();
     }
 
     /**
      * Evaluates the condition on an edge to determine if execution should proceed.
      * @param edge The edge
+     * @param conditionPath The compiled path of the port tested by the condition
      * @param context The current context
      * @return true if the condition passes or there is no condition, false otherwise
      */
-    private boolean evaluateEdgeCondition(WorkflowEdge edge, ExecutionContext context) {
+    private boolean evaluateEdgeCondition(WorkflowEdge edge, ContextPath conditionPath, ExecutionContext context) {
         WorkflowEdge.Condition cond = edge.getCondition();
         if (cond == null) return true;
 
         String portKey = cond.getPort();
-        Object val = context.get(portKey);
+        Object val = conditionPath != null ? context.get(conditionPath) : null;
 
         if (val == null) {
             logger.info("Edge condition failed: port '{}' has null value", portKey);
@@ -253,21 +949,22 @@ public class WorkflowExecutor {
      * to the workflow metamodel for future use.
      *
      * @param workflowInstance The workflow instance containing the node and its metamodel
-     * @param currentId The ID of the node being prepared for execution
+     * @param plan The execution plan of the workflow
+     * @param node Index of the node being prepared for execution
      * @param context The execution context containing available port values
      * @param executionResult the execution result for observability
      * @throws RuntimeException if required inputs cannot be satisfied through port adaptation
      */
-    private void ensureRequiredInputsSatisfied(WorkflowInstance workflowInstance, String currentId,
+    private void ensureRequiredInputsSatisfied(WorkflowInstance workflowInstance, ExecutionPlan plan, int node,
                                                ExecutionContext context, WorkflowObservabilityReport executionResult) {
-        NodeInstance node = workflowInstance.getInstanceByWorkflowNodeId(currentId);
-        List<String> missingRequiredInputs = getUnsatisfiedInputs(node, context);
+        String currentId = plan.getNodeId(node);
+        List<String> missingRequiredInputs = getUnsatisfiedInputs(plan, node, context);
 
         if (missingRequiredInputs.isEmpty()) return;
 
         logger.info("Node '{}' has missing required inputs: {}. Attempting port adaptation.", currentId, missingRequiredInputs);
 
-        boolean success = attemptPortAdaptationWithTracking(workflowInstance, currentId, context, missingRequiredInputs, executionResult);
+        boolean success = attemptPortAdaptationWithTracking(workflowInstance, plan, node, context, missingRequiredInputs, executionResult);
         if (!success) throw new RuntimeException("No compatible port adaptations found for node '" + currentId + "'. Missing required inputs: " + missingRequiredInputs);
 
     }
@@ -276,16 +973,18 @@ public class WorkflowExecutor {
      * Attempts to satisfy missing required inputs through dynamic port adaptation.
      * If successful, updates the workflow metamodel with the new bindings.
      * @param workflowInstance The instance of the workflow
-     * @param currentId The id of the current node to be executed
+     * @param plan The execution plan of the workflow
+     * @param nodeIndex Index of the current node to be executed
      * @param context The execution context
      * @param missingRequiredInputs The list of inputs that the node is missing in order to start its execution
      * @param executionResult the execution result for observability
      * @return Returns true if the adaption was successfully
      */
-    private boolean attemptPortAdaptationWithTracking(WorkflowInstance workflowInstance, String currentId,
+    private boolean attemptPortAdaptationWithTracking(WorkflowInstance workflowInstance, ExecutionPlan plan, int nodeIndex,
                                                       ExecutionContext context, List<String> missingRequiredInputs,
                                                       WorkflowObservabilityReport executionResult) {
 
+        String currentId = plan.getNodeId(nodeIndex);
         NodeInstance node = workflowInstance.getInstanceByWorkflowNodeId(currentId);
         Map<WorkflowEdge, Map<String, String>> newBindingsPerEdge = new HashMap<>();
 
@@ -358,7 +1057,7 @@ public class WorkflowExecutor {
         logger.info("Port adaptation completed for node '{}'. Applied bindings: {}", currentId, res.getBindings());
 
         // Test if the required inputs are now satisfied
-        var unsatisfiedInputs = getUnsatisfiedInputs(node, context);
+        var unsatisfiedInputs = getUnsatisfiedInputs(plan, nodeIndex, context);
         boolean adaptationSuccessful = unsatisfiedInputs.isEmpty();
 
 
@@ -374,47 +1073,38 @@ public class WorkflowExecutor {
         }
     }
 
-    /**
-     * Validates that all nodes referenced in edges exist in the node map.
-     */
-    private void validateEdges(WorkflowInstance workflow, List<WorkflowEdge> edges) {
-        for (WorkflowEdge edge : edges) {
-            String sourceId = edge.getSourceNodeId();
-            String targetId = edge.getTargetNodeId();
-
-            if (workflow.getInstanceByWorkflowNodeId(sourceId) == null)
-                logger.warn("Edge references non-existent source node ID: {}", sourceId);
-            if (workflow.getInstanceByWorkflowNodeId(targetId) == null)
-                logger.warn("Edge references non-existent target node ID: {}", targetId);
-        }
-    }
-
     /**
      * Applies the bindings from an edge to copy data in the execution context.
-     * Bindings map source port keys to target port keys
+     * Bindings map source port keys to target port keys; their paths are precompiled in the execution plan.
+     * @param plan The execution plan of the workflow
+     * @param edgeIndex Index of the edge
+     * @param context The execution context
      */
-    private void applyEdgeBindings(WorkflowInstance workflow, WorkflowEdge edge, ExecutionContext context) {
-        for (Map.Entry<String, String> bind : edge.getBindings().entrySet()) {
-            String sourceKey = bind.getKey();
-            String targetKey = bind.getValue();
+    private void applyEdgeBindings(ExecutionPlan plan, int edgeIndex, ExecutionContext context) {
+        WorkflowEdge edge = plan.getEdge(edgeIndex);
+        int target = plan.getEdgeTarget(edgeIndex);
+
+        for (ExecutionPlan.CompiledBinding bind : plan.getBindings(edgeIndex)) {
+            String sourceKey = bind.source().key();
+            String targetKey = bind.target().key();
 
             // Attempt to get the source value using dot notation
-            Object value = context.get(sourceKey);
+            Object value = context.get(bind.source());
 
             if (value != null) {
                 // Source value found, set it at the target using dot notation
-                context.put(targetKey, value);
+                context.put(bind.target(), value);
                 logger.info("Applied binding: {} -> {} (value: {})", sourceKey, targetKey, value);
             } else {
                 // Source key (or path) not found in context, check if the target port has a default value
-                String rootTargetKey = targetKey.split("\\.")[0];
-                NodeInstance targetNode = workflow.getInstanceByWorkflowNodeId(edge.getTargetNodeId());
+                String rootTargetKey = bind.target().root();
+                NodeInstance targetNode = plan.getNodeInstance(target);
 
                 if (targetNode != null) {
-                    Port targetPort = findInputPort(targetNode, rootTargetKey);
+                    Port targetPort = findInputPort(plan, target, rootTargetKey);
 
                     if (targetPort != null && targetPort.getDefaultValue() != null) {
-                        context.put(targetKey, targetPort.getDefaultValue());
+                        context.put(bind.target(), targetPort.getDefaultValue());
                         logger.debug("Used default value for target path '{}' (from root port '{}'): {}",
                                 targetKey, rootTargetKey, targetPort.getDefaultValue());
                     } else {
@@ -432,16 +1122,17 @@ public class WorkflowExecutor {
      * Prepares inputs for a node by applying default values where needed
      * (only for ports that don't already have values in the context)
      *
-     * @param node    the node instance
+     * @param plan    the execution plan of the workflow
+     * @param node    index of the node
      * @param context the execution context
      */
-    private void prepareNodeInputs(NodeInstance node, ExecutionContext context) {
-        for (Port port : node.getMetamodel().getInputPorts()) {
-            String portKey = port.getKey();
+    private void prepareNodeInputs(ExecutionPlan plan, int node, ExecutionContext context) {
+        for (ExecutionPlan.CompiledPort compiled : plan.getInputPorts(node)) {
+            Port port = compiled.port();
             // Only apply default if the port doesn't have a value in context
-            if (!context.containsKey(portKey) && port.getDefaultValue() != null) {
-                context.put(portKey, port.getDefaultValue());
-                logger.debug("Applied default value for input port '{}' on node '{}': {}", portKey, node.getId(), port.getDefaultValue());
+            if (!context.containsKey(compiled.path()) && port.getDefaultValue() != null) {
+                context.put(compiled.path(), port.getDefaultValue());
+                logger.debug("Applied default value for input port '{}' on node '{}': {}", port.getKey(), plan.getNodeId(node), port.getDefaultValue());
             }
         }
     }
@@ -449,28 +1140,30 @@ public class WorkflowExecutor {
     /**
      * Helper method to find an input port on a node by key
      *
-     * @param node    the node instance
+     * @param plan    the execution plan of the workflow
+     * @param node    index of the node
      * @param portKey the key of the port to find
      */
-    private Port findInputPort(NodeInstance node, String portKey) {
-        for (Port port : node.getMetamodel().getInputPorts()) {
-            if (port.getKey().equals(portKey)) return port;
+    private Port findInputPort(ExecutionPlan plan, int node, String portKey) {
+        for (ExecutionPlan.CompiledPort compiled : plan.getInputPorts(node)) {
+            if (compiled.port().getKey().equals(portKey)) return compiled.port();
         }
         return null;
     }
 
     /**
      * Applies default values for output ports that weren't set during node processing.
-     * @param node    the node instance that was just processed
+     * @param plan    the execution plan of the workflow
+     * @param node    index of the node that was just processed
      * @param context the execution context
      */
-    private void applyDefaultOutputValues(NodeInstance node, ExecutionContext context) {
-        for (Port port : node.getMetamodel().getOutputPorts()) {
-            String portKey = port.getKey();
+    private void applyDefaultOutputValues(ExecutionPlan plan, int node, ExecutionContext context) {
+        for (ExecutionPlan.CompiledPort compiled : plan.getOutputPorts(node)) {
+            Port port = compiled.port();
             // Only apply default if the port doesn't have a value in context after execution
-            if (!context.containsKey(portKey) && port.getDefaultValue() != null) {
-                context.put(portKey, port.getDefaultValue());
-                logger.debug("Applied default value for output port '{}' on node '{}': {}", portKey, node.getId(), port.getDefaultValue());
+            if (!context.containsKey(compiled.path()) && port.getDefaultValue() != null) {
+                context.put(compiled.path(), port.getDefaultValue());
+                logger.debug("Applied default value for output port '{}' on node '{}': {}", port.getKey(), plan.getNodeId(node), port.getDefaultValue());
             }
         }
     }
@@ -525,15 +1218,17 @@ public class WorkflowExecutor {
     }
 
     /**
-     * Get a list of unsatisfied required inputs for a node instance.
-     * @param node the node instance to check
+     * Get a list of unsatisfied required inputs for a node.
+     * @param plan the execution plan of the workflow
+     * @param node index of the node to check
      * @param context the execution context to check against
      * @return a list of keys for unsatisfied required input ports
      */
-    private List<String> getUnsatisfiedInputs(NodeInstance node, ExecutionContext context) {
+    private List<String> getUnsatisfiedInputs(ExecutionPlan plan, int node, ExecutionContext context) {
         List<String> unsatisfied = new ArrayList<>();
-        for (Port port : node.getMetamodel().getInputPorts()) {
-            if (port.getSchema() != null && port.getSchema().getRequired() != null && port.getSchema().getRequired() && !context.containsKey(port.getKey()))
+        for (ExecutionPlan.CompiledPort compiled : plan.getInputPorts(node)) {
+            Port port = compiled.port();
+            if (port.getSchema() != null && port.getSchema().getRequired() != null && port.getSchema().getRequired() && !context.containsKey(compiled.path()))
                 unsatisfied.add(port.getKey());
         }
         return unsatisfied;
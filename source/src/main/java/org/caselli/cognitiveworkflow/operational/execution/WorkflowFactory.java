@@ -47,6 +47,22 @@ public class WorkflowFactory {
         return bean;
     }
 
+    /**
+     * Creates a copy of a workflow instance running on its own node instances, which are not registered
+     * (see {@link NodeInstanceManager#createDetached})
+     * @param workflowInstance The workflow instance to copy
+     * @return Returns a new Workflow Instance
+     */
+    public WorkflowInstance createDetachedInstance(WorkflowInstance workflowInstance) {
+        WorkflowInstance bean = context.getBean(WorkflowInstance.class);
+        bean.setId(workflowInstance.getId());
+        bean.setMetamodel(workflowInstance.getMetamodel());
+        bean.setNodeInstances(workflowInstance.getNodeInstances().stream()
+                .map(node -> nodeInstanceManager.createDetached(node.getMetamodel()))
+                .toList());
+        return bean;
+    }
+
     /**
      * Refreshes deprecated nodes in the workflow instance by attempting to re-create them.
      * @param workflowInstance The workflow instance to refresh
@@ -97,6 +97,16 @@ public class WorkflowInstanceManager {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Creates a copy of a workflow instance running on its own, unregistered, node instances,
+     * for the exclusive use of the caller (e.g. one item of a map node)
+     * @param workflowInstance The workflow instance to copy
+     * @return The new WorkflowInstance
+     */
+    public WorkflowInstance createDetached(WorkflowInstance workflowInstance) {
+        return workflowFactory.createDetachedInstance(workflowInstance);
+    }
+
     /**
      * Mark a workflow as in execution
      * @param workflowId Workflow ID
@@ -8,9 +8,11 @@ import org.caselli.cognitiveworkflow.operational.AI.services.InputMapperService;
 import org.caselli.cognitiveworkflow.operational.AI.services.IntentDetectionService;
 import org.caselli.cognitiveworkflow.operational.observability.RoutingObservabilityReport;
 import org.caselli.cognitiveworkflow.operational.instances.WorkflowInstance;
+import org.caselli.cognitiveworkflow.operational.observability.ObservabilityLevel;
 import org.caselli.cognitiveworkflow.operational.observability.ObservabilityReport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -25,6 +27,14 @@ public class WorkflowOrchestrator {
     private final RoutingManager routingManager;
     private final IntentMetamodelService intentMetamodelService;
 
+    /** If true, workflows run on a PersistentExecutionContext (O(1) copies and snapshots) */
+    @Value("${workflow.context.persistent:false}")
+    private boolean persistentContext;
+
+    /** If true, workflows run on a thread-safe ConcurrentExecutionContext shared by the parallel branches */
+    @Value("${workflow.context.concurrent:false}")
+    private boolean concurrentContext;
+
     public WorkflowOrchestrator(WorkflowExecutor workflowExecutor, InputMapperService inputMapperService, IntentDetectionService intentDetectionService, RoutingManager routingManager, IntentMetamodelService intentMetamodelService) {
         this.workflowExecutor = workflowExecutor;
         this.inputMapperService = inputMapperService;
@@ -47,6 +57,29 @@ public class WorkflowOrchestrator {
      * @throws RuntimeException if intent cannot be satisfied or no workflow is available
      */
     public OrchestrationResult orchestrateWorkflow(String request){
+        return orchestrateWorkflow(request, ObservabilityLevel.FULL);
+    }
+
+    /**
+     * Orchestrates the complete workflow execution process for a given user request,
+     * tracing the workflow execution at the given observability level.
+     * @param request The user request to be processed
+     * @param observabilityLevel The detail level of the workflow execution report
+     * @throws RuntimeException if intent cannot be satisfied or no workflow is available
+     */
+    public OrchestrationResult orchestrateWorkflow(String request, ObservabilityLevel observabilityLevel){
+        return orchestrateWorkflow(request, observabilityLevel, null);
+    }
+
+    /**
+     * Orchestrates the complete workflow execution process for a given user request,
+     * publishing the responses of the streaming nodes while the workflow runs.
+     * @param request The user request to be processed
+     * @param observabilityLevel The detail level of the workflow execution report
+     * @param responseStreamSink Receives the responses of the streaming nodes (null if nobody listens)
+     * @throws RuntimeException if intent cannot be satisfied or no workflow is available
+     */
+    public OrchestrationResult orchestrateWorkflow(String request, ObservabilityLevel observabilityLevel, ResponseStreamSink responseStreamSink){
         logger.info("Starting workflow orchestration for request: {}", request);
         var result = new OrchestrationResult();
         var observability = new OrchestrationObservability();
@@ -62,7 +95,7 @@ public class WorkflowOrchestrator {
         ExecutionContext initialContext = runInputMapper(workflowInstance, intentRes.getUserVariables(), request, observability);
 
         // EXECUTION
-        var finalContext = runWorkflow(workflowInstance, initialContext, observability);
+        var finalContext = runWorkflow(workflowInstance, initialContext, observabilityLevel, responseStreamSink, observability);
 
         logger.debug("Workflow execution completed for request: {}", request);
 
@@ -158,8 +191,8 @@ public class WorkflowOrchestrator {
 
         logger.info("Starting workflow with variables: {}", variables);
 
-        // Get the entry points of the workflow
-        Set<String> entryPointIDs = workflowInstance.getMetamodel().getEntryNodes();
+        // Get the entry points of the workflow from the precompiled plan
+        Set<String> entryPointIDs = workflowInstance.getExecutionPlan().getEntryNodeIds();
         logger.debug("Found {} entry points for workflow", entryPointIDs.size());
 
         List<NodeMetamodel> entryPointMetamodels = entryPointIDs.stream()
@@ -185,13 +218,19 @@ public class WorkflowOrchestrator {
      * Run a workflow
      * @param workflowInstance The instance of the workflow to execute
      * @param context The initial execution context
+     * @param observabilityLevel The detail level of the workflow execution report
+     * @param responseStreamSink Receives the responses of the streaming nodes (null if nobody listens)
      * @param orchestrationObservability Orchestration Observability object to track comprehensive observability
      * @return Returns the final execution context
      */
-    private ExecutionContext runWorkflow(WorkflowInstance workflowInstance, ExecutionContext context, OrchestrationObservability orchestrationObservability) {
+    private ExecutionContext runWorkflow(WorkflowInstance workflowInstance, ExecutionContext context, ObservabilityLevel observabilityLevel,
+                                         ResponseStreamSink responseStreamSink, OrchestrationObservability orchestrationObservability) {
         logger.debug("Obtained workflow executor for instance: {}", workflowInstance.getId());
-        ExecutionContext clonedContext = new ExecutionContext(context);
-        var ob = workflowExecutor.execute(workflowInstance, clonedContext);
+        ExecutionContext clonedContext;
+        if (concurrentContext) clonedContext = new ConcurrentExecutionContext(context);
+        else if (persistentContext) clonedContext = PersistentExecutionContext.from(context);
+        else clonedContext = context.copy();
+        var ob = workflowExecutor.execute(workflowInstance, clonedContext, observabilityLevel, responseStreamSink);
         orchestrationObservability.setWorkflowExecution(ob);
         return clonedContext;
     }
@@ -206,7 +245,7 @@ public class WorkflowOrchestrator {
 
         Map<String, Object> res = new HashMap<>();
 
-        var exitPointIDs = workflowInstance.getMetamodel().getExitNodes();
+        var exitPointIDs = workflowInstance.getExecutionPlan().getExitNodeIds();
         List<NodeMetamodel> exitPointMetamodels = exitPointIDs.stream()
                 .map(id -> workflowInstance.getInstanceByWorkflowNodeId(id).getMetamodel())
                 .toList();
@@ -0,0 +1,387 @@
+package org.caselli.cognitiveworkflow.operational.execution.persistent;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable hash-array-mapped trie (HAMT).
+ * <p>
+ * Every update returns a new map that shares all the untouched sub-tries with the previous one
+ * (path copying), so copies are O(1) and updates are O(log32 n).
+ * Null keys and null values are supported.
+ * </p>
+ * @param <K> Type of the keys
+ * @param <V> Type of the values
+ */
+public final class PersistentHashMap<K, V> implements Iterable<Map.Entry<K, V>> {
+
+    private static final int BITS = 5;
+    private static final int MASK = 0x1f;
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentHashMap EMPTY = new PersistentHashMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @return The empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * @return Number of entries in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return True if the map has no entries
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param key The key
+     * @return The value associated with the key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (root == null) return null;
+        Leaf leaf = root.find(0, hash(key), key);
+        return leaf != null ? (V) leaf.value : null;
+    }
+
+    /**
+     * @param key The key
+     * @return True if the map contains an entry for the key (even with a null value)
+     */
+    public boolean containsKey(Object key) {
+        return root != null && root.find(0, hash(key), key) != null;
+    }
+
+    /**
+     * Returns a map with the given entry added or replaced
+     * @param key The key
+     * @param value The value
+     * @return The updated map (this map if nothing changed)
+     */
+    public PersistentHashMap<K, V> put(K key, V value) {
+        int hash = hash(key);
+        if (root == null) return new PersistentHashMap<>(BitmapNode.EMPTY.put(0, new Leaf(hash, key, value), new boolean[1]), 1);
+
+        boolean[] added = new boolean[1];
+        Node newRoot = root.put(0, new Leaf(hash, key, value), added);
+        if (newRoot == root) return this;
+        return new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Returns a map without the entry of the given key
+     * @param key The key
+     * @return The updated map (this map if the key was not present)
+     */
+    public PersistentHashMap<K, V> remove(Object key) {
+        if (root == null) return this;
+        Object newRoot = root.remove(0, hash(key), key);
+        if (newRoot == root) return this;
+        if (newRoot == null) return empty();
+
+        // The root must always be a node
+        Node rootNode = newRoot instanceof Leaf leaf ? BitmapNode.EMPTY.put(0, leaf, new boolean[1]) : (Node) newRoot;
+        return new PersistentHashMap<>(rootNode, size - 1);
+    }
+
+    /**
+     * Performs an action on each entry of the map
+     * @param action The action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (Map.Entry<K, V> entry : this) action.accept(entry.getKey(), entry.getValue());
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator<>(root);
+    }
+
+    private static int hash(Object key) {
+        int h = Objects.hashCode(key);
+        // Spread the bits, as HashMap does
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Merges two leaves with different keys in a new sub-trie
+     */
+    private static Object mergeLeaves(int shift, Leaf a, Leaf b) {
+        if (a.hash == b.hash || shift >= 32) return new CollisionNode(a.hash, new Leaf[]{a, b});
+
+        int bitA = 1 << ((a.hash >>> shift) & MASK);
+        int bitB = 1 << ((b.hash >>> shift) & MASK);
+
+        if (bitA == bitB) return new BitmapNode(bitA, new Object[]{mergeLeaves(shift + BITS, a, b)});
+
+        // Unsigned comparison: bit 31 is the highest slot
+        return Integer.compareUnsigned(bitA, bitB) < 0
+                ? new BitmapNode(bitA | bitB, new Object[]{a, b})
+                : new BitmapNode(bitA | bitB, new Object[]{b, a});
+    }
+
+
+    /**
+     * A key-value entry of the trie
+     */
+    private static final class Leaf extends AbstractMap.SimpleImmutableEntry<Object, Object> {
+        final int hash;
+        final Object value;
+
+        Leaf(int hash, Object key, Object value) {
+            super(key, value);
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Internal node of the trie
+     */
+    private abstract static class Node {
+        abstract Leaf find(int shift, int hash, Object key);
+
+        abstract Node put(int shift, Leaf leaf, boolean[] added);
+
+        /**
+         * @return The same node if nothing changed, null if the node became empty,
+         * a Leaf if the node collapsed to a single entry, or the new node
+         */
+        abstract Object remove(int shift, int hash, Object key);
+    }
+
+    /**
+     * Node indexed by a 32-bit bitmap: each slot is either a Leaf or a sub-Node
+     */
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] slots;
+
+        BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        @Override
+        Leaf find(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) return null;
+
+            Object slot = slots[Integer.bitCount(bitmap & (bit - 1))];
+            if (slot instanceof Leaf leaf) return leaf.hash == hash && Objects.equals(leaf.getKey(), key) ? leaf : null;
+            return ((Node) slot).find(shift + BITS, hash, key);
+        }
+
+        @Override
+        Node put(int shift, Leaf leaf, boolean[] added) {
+            int bit = 1 << ((leaf.hash >>> shift) & MASK);
+            int idx = Integer.bitCount(bitmap & (bit - 1));
+
+            if ((bitmap & bit) == 0) {
+                Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, idx);
+                newSlots[idx] = leaf;
+                System.arraycopy(slots, idx, newSlots, idx + 1, slots.length - idx);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newSlots);
+            }
+
+            Object slot = slots[idx];
+            Object newSlot;
+
+            if (slot instanceof Leaf existing) {
+                if (existing.hash == leaf.hash && Objects.equals(existing.getKey(), leaf.getKey())) {
+                    if (existing.value == leaf.value) return this;
+                    newSlot = leaf;
+                } else {
+                    newSlot = mergeLeaves(shift + BITS, existing, leaf);
+                    added[0] = true;
+                }
+            } else {
+                Node child = (Node) slot;
+                newSlot = child.put(shift + BITS, leaf, added);
+                if (newSlot == child) return this;
+            }
+
+            Object[] newSlots = slots.clone();
+            newSlots[idx] = newSlot;
+            return new BitmapNode(bitmap, newSlots);
+        }
+
+        @Override
+        Object remove(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) return this;
+
+            int idx = Integer.bitCount(bitmap & (bit - 1));
+            Object slot = slots[idx];
+            Object newSlot;
+
+            if (slot instanceof Leaf leaf) {
+                if (leaf.hash != hash || !Objects.equals(leaf.getKey(), key)) return this;
+                newSlot = null;
+            } else {
+                Node child = (Node) slot;
+                newSlot = child.remove(shift + BITS, hash, key);
+                if (newSlot == child) return this;
+            }
+
+            if (newSlot == null) {
+                if (slots.length == 1) return null;
+
+                Object[] newSlots = new Object[slots.length - 1];
+                System.arraycopy(slots, 0, newSlots, 0, idx);
+                System.arraycopy(slots, idx + 1, newSlots, idx, slots.length - idx - 1);
+
+                // Collapse a node left with a single entry
+                if (newSlots.length == 1 && newSlots[0] instanceof Leaf) return newSlots[0];
+                return new BitmapNode(bitmap & ~bit, newSlots);
+            }
+
+            // Collapse a node left with a single entry
+            if (slots.length == 1 && newSlot instanceof Leaf) return newSlot;
+
+            Object[] newSlots = slots.clone();
+            newSlots[idx] = newSlot;
+            return new BitmapNode(bitmap, newSlots);
+        }
+    }
+
+    /**
+     * Node holding the entries whose keys have the same hash
+     */
+    private static final class CollisionNode extends Node {
+        final int hash;
+        final Leaf[] leaves;
+
+        CollisionNode(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < leaves.length; i++)
+                if (Objects.equals(leaves[i].getKey(), key)) return i;
+            return -1;
+        }
+
+        @Override
+        Leaf find(int shift, int hash, Object key) {
+            if (hash != this.hash) return null;
+            int idx = indexOf(key);
+            return idx >= 0 ? leaves[idx] : null;
+        }
+
+        @Override
+        Node put(int shift, Leaf leaf, boolean[] added) {
+            if (leaf.hash != hash) {
+                // Push this node one level down, next to the new leaf
+                int bitThis = 1 << ((hash >>> shift) & MASK);
+                BitmapNode wrapper = new BitmapNode(bitThis, new Object[]{this});
+                return wrapper.put(shift, leaf, added);
+            }
+
+            int idx = indexOf(leaf.getKey());
+            if (idx >= 0) {
+                if (leaves[idx].value == leaf.value) return this;
+                Leaf[] newLeaves = leaves.clone();
+                newLeaves[idx] = leaf;
+                return new CollisionNode(hash, newLeaves);
+            }
+
+            Leaf[] newLeaves = Arrays.copyOf(leaves, leaves.length + 1);
+            newLeaves[leaves.length] = leaf;
+            added[0] = true;
+            return new CollisionNode(hash, newLeaves);
+        }
+
+        @Override
+        Object remove(int shift, int hash, Object key) {
+            if (hash != this.hash) return this;
+            int idx = indexOf(key);
+            if (idx < 0) return this;
+            if (leaves.length == 2) return leaves[1 - idx];
+
+            Leaf[] newLeaves = new Leaf[leaves.length - 1];
+            System.arraycopy(leaves, 0, newLeaves, 0, idx);
+            System.arraycopy(leaves, idx + 1, newLeaves, idx, leaves.length - idx - 1);
+            return new CollisionNode(hash, newLeaves);
+        }
+    }
+
+    /**
+     * Depth-first iterator over the leaves of the trie
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Deque<Object[]> stack = new ArrayDeque<>();
+        private final Deque<Integer> positions = new ArrayDeque<>();
+        private Leaf next;
+
+        EntryIterator(Node root) {
+            if (root != null) push(root);
+            advance();
+        }
+
+        private void push(Node node) {
+            stack.push(node instanceof BitmapNode bitmapNode ? bitmapNode.slots : ((CollisionNode) node).leaves);
+            positions.push(0);
+        }
+
+        private void advance() {
+            next = null;
+            while (!stack.isEmpty()) {
+                Object[] slots = stack.peek();
+                int pos = positions.pop();
+
+                if (pos >= slots.length) {
+                    stack.pop();
+                    continue;
+                }
+
+                positions.push(pos + 1);
+                Object slot = slots[pos];
+
+                if (slot instanceof Leaf leaf) {
+                    next = leaf;
+                    return;
+                }
+                push((Node) slot);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (next == null) throw new NoSuchElementException();
+            Leaf current = next;
+            advance();
+            return (Map.Entry<K, V>) (Map.Entry<?, ?>) current;
+        }
+    }
+}
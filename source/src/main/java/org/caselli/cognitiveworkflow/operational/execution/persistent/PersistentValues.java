@@ -0,0 +1,237 @@
+package org.caselli.cognitiveworkflow.operational.execution.persistent;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Conversion between plain Java values and their persistent representation.
+ * <p>
+ * Maps and Lists are frozen into {@link PersistentHashMap}s and {@link PersistentVector}s (recursively),
+ * and thawed back as copy-on-write {@link Map} and {@link List} views that share the persistent structure.
+ * A view can be modified: it then holds an updated version of the structure (path copying), and hands it to its
+ * write-back, if any, so that the changes reach the container it was read from.
+ * All the other values are stored as they are.
+ * </p>
+ */
+public final class PersistentValues {
+
+    private PersistentValues() {
+    }
+
+    /**
+     * Converts a value to its persistent representation
+     * @param value The value
+     * @return A PersistentHashMap for Maps, a PersistentVector for Lists, the value itself otherwise
+     */
+    public static Object freeze(Object value) {
+        if (value instanceof MapView view) return view.map;
+        if (value instanceof ListView view) return view.vector;
+
+        if (value instanceof Map<?, ?> map) {
+            PersistentHashMap<Object, Object> frozen = PersistentHashMap.empty();
+            for (Map.Entry<?, ?> entry : map.entrySet()) frozen = frozen.put(entry.getKey(), freeze(entry.getValue()));
+            return frozen;
+        }
+
+        if (value instanceof List<?> list) {
+            PersistentVector<Object> frozen = PersistentVector.empty();
+            for (Object item : list) frozen = frozen.append(freeze(item));
+            return frozen;
+        }
+
+        return value;
+    }
+
+    /**
+     * Converts a persistent value to a detached view: changes to the view are not written anywhere
+     * @param value The persistent value
+     * @return A Map view for PersistentHashMaps, a List view for PersistentVectors, the value itself otherwise
+     */
+    public static Object thaw(Object value) {
+        return thaw(value, null);
+    }
+
+    /**
+     * Converts a persistent value to a view
+     * @param value The persistent value
+     * @param writeBack Receives the new persistent value every time the view is changed, or null
+     * @return A Map view for PersistentHashMaps, a List view for PersistentVectors, the value itself otherwise
+     */
+    @SuppressWarnings("unchecked")
+    public static Object thaw(Object value, Consumer<Object> writeBack) {
+        if (value instanceof PersistentHashMap<?, ?> map) return new MapView((PersistentHashMap<Object, Object>) map, writeBack);
+        if (value instanceof PersistentVector<?> vector) return new ListView((PersistentVector<Object>) vector, writeBack);
+        return value;
+    }
+
+    /**
+     * @param value A persistent value
+     * @return True if the value is a persistent container
+     */
+    public static boolean isContainer(Object value) {
+        return value instanceof PersistentHashMap || value instanceof PersistentVector;
+    }
+
+
+    /**
+     * Copy-on-write Map view of a PersistentHashMap
+     */
+    public static final class MapView extends AbstractMap<Object, Object> {
+        private PersistentHashMap<Object, Object> map;
+        private final Consumer<Object> writeBack;
+
+        MapView(PersistentHashMap<Object, Object> map, Consumer<Object> writeBack) {
+            this.map = map;
+            this.writeBack = writeBack;
+        }
+
+        @Override
+        public Object get(Object key) {
+            return child(key, map.get(key));
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public Object put(Object key, Object value) {
+            Object previous = thaw(map.get(key));
+            update(map.put(key, freeze(value)));
+            return previous;
+        }
+
+        @Override
+        public Object remove(Object key) {
+            if (!map.containsKey(key)) return null;
+            Object previous = thaw(map.get(key));
+            update(map.remove(key));
+            return previous;
+        }
+
+        @Override
+        public void clear() {
+            update(PersistentHashMap.empty());
+        }
+
+        @Override
+        public Set<Entry<Object, Object>> entrySet() {
+            PersistentHashMap<Object, Object> snapshot = map;
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<Object, Object>> iterator() {
+                    Iterator<Entry<Object, Object>> it = snapshot.iterator();
+                    return new Iterator<>() {
+                        private Object last;
+                        private boolean canRemove;
+
+                        @Override
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        @Override
+                        public Entry<Object, Object> next() {
+                            Entry<Object, Object> entry = it.next();
+                            last = entry.getKey();
+                            canRemove = true;
+                            return new SimpleEntry<>(entry.getKey(), child(entry.getKey(), entry.getValue())) {
+                                @Override
+                                public Object setValue(Object value) {
+                                    super.setValue(value);
+                                    return MapView.this.put(getKey(), value);
+                                }
+                            };
+                        }
+
+                        @Override
+                        public void remove() {
+                            if (!canRemove) throw new IllegalStateException();
+                            canRemove = false;
+                            MapView.this.remove(last);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return snapshot.size();
+                }
+            };
+        }
+
+        /**
+         * @return The view of a value of the map, whose changes are written to this map
+         */
+        private Object child(Object key, Object value) {
+            return thaw(value, isContainer(value) ? newValue -> update(map.put(key, newValue)) : null);
+        }
+
+        private void update(PersistentHashMap<Object, Object> newMap) {
+            map = newMap;
+            if (writeBack != null) writeBack.accept(newMap);
+        }
+    }
+
+    /**
+     * Copy-on-write List view of a PersistentVector
+     */
+    public static final class ListView extends AbstractList<Object> implements RandomAccess {
+        private PersistentVector<Object> vector;
+        private final Consumer<Object> writeBack;
+
+        ListView(PersistentVector<Object> vector, Consumer<Object> writeBack) {
+            this.vector = vector;
+            this.writeBack = writeBack;
+        }
+
+        @Override
+        public Object get(int index) {
+            Object value = vector.get(index);
+            return thaw(value, isContainer(value) ? newValue -> update(vector.set(index, newValue)) : null);
+        }
+
+        @Override
+        public int size() {
+            return vector.size();
+        }
+
+        @Override
+        public Object set(int index, Object value) {
+            Object previous = thaw(vector.get(index));
+            update(vector.set(index, freeze(value)));
+            return previous;
+        }
+
+        @Override
+        public void add(int index, Object value) {
+            update(vector.add(index, freeze(value)));
+            modCount++;
+        }
+
+        @Override
+        public Object remove(int index) {
+            Object previous = thaw(vector.get(index));
+            update(vector.remove(index));
+            modCount++;
+            return previous;
+        }
+
+        @Override
+        public void clear() {
+            update(PersistentVector.empty());
+            modCount++;
+        }
+
+        private void update(PersistentVector<Object> newVector) {
+            vector = newVector;
+            if (writeBack != null) writeBack.accept(newVector);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package org.caselli.cognitiveworkflow.operational.execution.persistent;
+
+import java.util.*;
+
+/**
+ * Immutable vector backed by a 32-way trie.
+ * <p>
+ * Every update returns a new vector that shares all the untouched nodes with the previous one
+ * (path copying), so copies are O(1) and indexed reads, writes and appends are O(log32 n).
+ * Removing an element other than the last one rebuilds the vector.
+ * </p>
+ * @param <E> Type of the elements
+ */
+public final class PersistentVector<E> implements Iterable<E> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentVector EMPTY = new PersistentVector<>(0, BITS, new Object[WIDTH]);
+
+    private final int size;
+    private final int shift;
+    private final Object[] root;
+
+    private PersistentVector(int size, int shift, Object[] root) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+    }
+
+    /**
+     * @return The empty vector
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    /**
+     * Builds a vector from the elements of a collection
+     * @param elements The elements
+     * @return The vector
+     */
+    public static <E> PersistentVector<E> of(Collection<? extends E> elements) {
+        PersistentVector<E> vector = empty();
+        for (E element : elements) vector = vector.append(element);
+        return vector;
+    }
+
+    /**
+     * @return Number of elements
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return True if the vector has no elements
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param index Index of the element
+     * @return The element at the index
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, size);
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS)
+            node = (Object[]) node[(index >>> level) & MASK];
+        return (E) node[index & MASK];
+    }
+
+    /**
+     * Returns a vector with the element at the index replaced
+     * @param index Index of the element
+     * @param value The new element
+     * @return The updated vector
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public PersistentVector<E> set(int index, E value) {
+        Objects.checkIndex(index, size);
+        if (get(index) == value) return this;
+        return new PersistentVector<>(size, shift, assoc(shift, root, index, value));
+    }
+
+    /**
+     * Returns a vector with the element at the index replaced.
+     * If the index is beyond the end of the vector, the vector is first padded with nulls.
+     * @param index Index of the element
+     * @param value The new element
+     * @return The updated vector
+     * @throws IndexOutOfBoundsException if the index is negative
+     */
+    public PersistentVector<E> setPadded(int index, E value) {
+        if (index < 0) throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        if (index < size) return set(index, value);
+
+        PersistentVector<E> vector = this;
+        while (vector.size < index) vector = vector.append(null);
+        return vector.append(value);
+    }
+
+    /**
+     * Returns a vector with the element appended at the end
+     * @param value The element
+     * @return The updated vector
+     */
+    public PersistentVector<E> append(E value) {
+        // Root overflow: add a level
+        if (size == 1 << (shift + BITS)) {
+            Object[] newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = newPath(shift, value);
+            return new PersistentVector<>(size + 1, shift + BITS, newRoot);
+        }
+        return new PersistentVector<>(size + 1, shift, insert(shift, root, size, value));
+    }
+
+    /**
+     * Returns a vector with the element inserted at the index. Later elements are shifted to the right.
+     * @param index Index of the element, at most the size of the vector
+     * @param value The element
+     * @return The updated vector
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public PersistentVector<E> add(int index, E value) {
+        if (index == size) return append(value);
+        Objects.checkIndex(index, size);
+
+        PersistentVector<E> vector = empty();
+        for (int i = 0; i < size; i++) {
+            if (i == index) vector = vector.append(value);
+            vector = vector.append(get(i));
+        }
+        return vector;
+    }
+
+    /**
+     * Returns a vector without the element at the index. Later elements are shifted to the left.
+     * @param index Index of the element
+     * @return The updated vector
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public PersistentVector<E> remove(int index) {
+        Objects.checkIndex(index, size);
+
+        PersistentVector<E> vector = empty();
+        for (int i = 0; i < size; i++)
+            if (i != index) vector = vector.append(get(i));
+        return vector;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public E next() {
+                if (next >= size) throw new NoSuchElementException();
+                return get(next++);
+            }
+        };
+    }
+
+    private static Object[] assoc(int level, Object[] node, int index, Object value) {
+        Object[] copy = node.clone();
+        if (level == 0) {
+            copy[index & MASK] = value;
+        } else {
+            int slot = (index >>> level) & MASK;
+            copy[slot] = assoc(level - BITS, (Object[]) node[slot], index, value);
+        }
+        return copy;
+    }
+
+    private static Object[] insert(int level, Object[] node, int index, Object value) {
+        Object[] copy = node.clone();
+        if (level == 0) {
+            copy[index & MASK] = value;
+        } else {
+            int slot = (index >>> level) & MASK;
+            Object[] child = (Object[]) node[slot];
+            copy[slot] = child == null ? newPath(level - BITS, value) : insert(level - BITS, child, index, value);
+        }
+        return copy;
+    }
+
+    private static Object[] newPath(int level, Object value) {
+        Object[] node = new Object[WIDTH];
+        if (level == 0) node[0] = value;
+        else node[0] = newPath(level - BITS, value);
+        return node;
+    }
+}
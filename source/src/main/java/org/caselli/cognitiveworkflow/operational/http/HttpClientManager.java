@@ -0,0 +1,613 @@
+package org.caselli.cognitiveworkflow.operational.http;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.async.methods.AbstractBinResponseConsumer;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.DefaultHttpRequestRetryStrategy;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.caselli.cognitiveworkflow.knowledge.model.node.RestNodeMetamodel;
+import org.caselli.cognitiveworkflow.operational.execution.Deadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Shared HTTP client of the REST nodes.
+ * <p>
+ * All REST node instances send their requests through a single Apache HttpClient backed by a pooling connection
+ * manager: connections are kept alive and reused across nodes and executions, with a pool per host. Responses
+ * compressed with gzip or deflate are decompressed transparently.
+ * </p>
+ * <p>
+ * The connect and read timeouts of each request come from the metamodel of the node sending it (falling back to
+ * the defaults of the client), and are bounded by the {@link Deadline} of the node.
+ * </p>
+ * <p>
+ * Response bodies larger than the {@code maxResponseBytes} of the node (or {@code http.client.max-response-bytes})
+ * fail the request with a {@link ResponseTooLargeException} as soon as the limit is crossed, after decompression.
+ * </p>
+ * <p>
+ * Requests can also be sent without blocking ({@link #executeAsync}): they go through a second, non-blocking client
+ * with its own pools, started on first use, whose I/O reactor waits for any number of responses on a few threads.
+ * Over TLS it negotiates HTTP/2 when the server supports it, multiplexing the requests to a host on one connection.
+ * </p>
+ */
+@Component
+public class HttpClientManager {
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientManager.class);
+
+    /** Value of the Accept header RestTemplate sends when reading a String */
+    private static final String STRING_ACCEPT = "text/plain, application/json, application/*+json, */*";
+
+    /**
+     * The clients only resend the requests that failed on a stale pooled connection: error statuses are retried
+     * by the retry policies of the nodes (see {@link ResilientRequestExecutor})
+     */
+    private static final DefaultHttpRequestRetryStrategy RETRY_STRATEGY = new DefaultHttpRequestRetryStrategy(1, TimeValue.ofSeconds(1)) {
+        @Override
+        public boolean retryRequest(HttpResponse response, int execCount, HttpContext context) {
+            return false;
+        }
+    };
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+
+    private final int maxConnections;
+    private final int maxConnectionsPerHost;
+    private final long idleEvictionSeconds;
+    private PoolingAsyncClientConnectionManager asyncConnectionManager;
+    private CloseableHttpAsyncClient asyncClient;
+
+    private final StringHttpMessageConverter stringConverter = new StringHttpMessageConverter();
+    private final DefaultResponseErrorHandler errorHandler = new DefaultResponseErrorHandler();
+
+    private final int defaultConnectTimeoutMillis;
+    private final int defaultReadTimeoutMillis;
+    private final int connectionRequestTimeoutMillis;
+    private final TimeValue keepAlive;
+    private final long defaultMaxResponseBytes;
+
+    public HttpClientManager(@Value("${http.client.max-connections:200}") int maxConnections,
+                             @Value("${http.client.max-connections-per-host:20}") int maxConnectionsPerHost,
+                             @Value("${http.client.connect-timeout-millis:5000}") int defaultConnectTimeoutMillis,
+                             @Value("${http.client.read-timeout-millis:30000}") int defaultReadTimeoutMillis,
+                             @Value("${http.client.connection-request-timeout-millis:5000}") int connectionRequestTimeoutMillis,
+                             @Value("${http.client.keep-alive-seconds:30}") long keepAliveSeconds,
+                             @Value("${http.client.idle-eviction-seconds:60}") long idleEvictionSeconds,
+                             @Value("${http.client.max-response-bytes:33554432}") long defaultMaxResponseBytes) {
+        this.defaultConnectTimeoutMillis = defaultConnectTimeoutMillis;
+        this.defaultReadTimeoutMillis = defaultReadTimeoutMillis;
+        this.connectionRequestTimeoutMillis = connectionRequestTimeoutMillis;
+        this.keepAlive = TimeValue.ofSeconds(keepAliveSeconds);
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.idleEvictionSeconds = idleEvictionSeconds;
+        this.defaultMaxResponseBytes = defaultMaxResponseBytes;
+
+        this.connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerHost)
+                .build();
+
+        // Connections are kept alive for the time announced by the server, or keepAlive if it announces none
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom().setConnectionKeepAlive(keepAlive).build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(idleEvictionSeconds))
+                .setRetryStrategy(RETRY_STRATEGY)
+                .build();
+
+        logger.info("HTTP client initialized: {} max connections, {} per host, keep-alive {}s",
+                maxConnections, maxConnectionsPerHost, keepAliveSeconds);
+    }
+
+    /**
+     * Creates an HTTP client manager with the default settings, for use outside of the Spring context
+     * @return A new HTTP client manager
+     */
+    public static HttpClientManager withDefaults() {
+        return new HttpClientManager(200, 20, 5000, 30000, 5000, 30, 60, 33_554_432L);
+    }
+
+    /**
+     * Creates an interceptor enforcing the maximum response size of a REST node on the blocking client
+     * @param metamodel Supplies the current metamodel of the node, read on every request
+     * @return The interceptor
+     */
+    public ClientHttpRequestInterceptor responseSizeGuard(Supplier<RestNodeMetamodel> metamodel) {
+        return (request, body, execution) -> {
+            ClientHttpResponse response = execution.execute(request, body);
+            long maxBytes = maxResponseBytes(metamodel.get());
+            return maxBytes > 0 ? new LimitedResponse(response, maxBytes) : response;
+        };
+    }
+
+    /**
+     * @param metamodel The metamodel of the node (may be null)
+     * @return The maximum size of the response bodies of the node in bytes (0 for no limit)
+     */
+    long maxResponseBytes(RestNodeMetamodel metamodel) {
+        return metamodel != null && metamodel.getMaxResponseBytes() != null ? metamodel.getMaxResponseBytes() : defaultMaxResponseBytes;
+    }
+
+    /**
+     * Creates a request factory sending the requests of a REST node through the shared client
+     * @param metamodel Supplies the current metamodel of the node, read on every request (it may be hot-swapped)
+     * @return The request factory
+     */
+    public ClientHttpRequestFactory requestFactory(Supplier<RestNodeMetamodel> metamodel) {
+        return new NodeRequestFactory(metamodel);
+    }
+
+    /**
+     * Sends a request of a REST node without blocking.
+     * The response is read as a String exactly as the blocking client does: compressed bodies are decompressed,
+     * the charset comes from the Content-Type, and error statuses complete the future with the same
+     * {@link org.springframework.web.client.RestClientResponseException}s.
+     * <p>
+     * The timeouts are computed from the node and its deadline when the request is sent, so this must be called
+     * with the deadline of the node active.
+     * </p>
+     * @param metamodel The metamodel of the node sending the request (may be null)
+     * @param method The HTTP method
+     * @param uri The URI of the request
+     * @param headers The request headers
+     * @param body The serialized request body, or null
+     * @return The pending response. Cancelling it aborts the request.
+     */
+    public CompletableFuture<ResponseEntity<String>> executeAsync(RestNodeMetamodel metamodel, HttpMethod method, URI uri,
+                                                                  HttpHeaders headers, byte[] body) {
+        SimpleRequestBuilder builder = SimpleRequestBuilder.create(method.name())
+                .setUri(uri)
+                .setRequestConfig(requestConfig(metamodel));
+        headers.forEach((name, values) -> values.forEach(value -> builder.addHeader(name, value)));
+        if (!headers.containsKey(HttpHeaders.ACCEPT)) builder.addHeader(HttpHeaders.ACCEPT, STRING_ACCEPT);
+        builder.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+        if (body != null) {
+            MediaType contentType = headers.getContentType() != null ? headers.getContentType() : MediaType.APPLICATION_JSON;
+            builder.setBody(body, ContentType.parse(contentType.toString()));
+        }
+        SimpleHttpRequest request = builder.build();
+        long maxBytes = maxResponseBytes(metamodel);
+
+        CompletableFuture<ResponseEntity<String>> result = new CompletableFuture<>();
+        Future<SimpleHttpResponse> exchange = getAsyncClient().execute(
+                SimpleRequestProducer.create(request),
+                new LimitedResponseConsumer(maxBytes),
+                new FutureCallback<>() {
+                    @Override
+                    public void completed(SimpleHttpResponse response) {
+                        try {
+                            result.complete(toResponseEntity(method, uri, response, maxBytes));
+                        } catch (IOException e) {
+                            failed(e);
+                        } catch (Exception e) {
+                            result.completeExceptionally(e);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        // I/O errors are wrapped as the RestTemplate does
+                        if (e instanceof IOException) e = new ResourceAccessException(
+                                "I/O error on " + method.name() + " request for \"" + uri + "\": " + e.getMessage(), (IOException) e);
+                        result.completeExceptionally(e);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        result.cancel(false);
+                    }
+                });
+
+        // Cancelling the response aborts the exchange and releases its connection
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) exchange.cancel(true);
+        });
+        return result;
+    }
+
+    /**
+     * Converts a response of the non-blocking client, as RestTemplate would for a String body
+     * @throws org.springframework.web.client.RestClientResponseException if the status is an error
+     */
+    private ResponseEntity<String> toResponseEntity(HttpMethod method, URI uri, SimpleHttpResponse response, long maxBytes) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        for (Header header : response.getHeaders()) headers.add(header.getName(), header.getValue());
+
+        byte[] body = response.getBodyBytes();
+        String encoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (body != null && body.length > 0 && encoding != null) {
+            body = decompress(body, encoding.trim().toLowerCase(), maxBytes);
+            // The blocking client drops the headers describing the compressed entity
+            headers.remove(HttpHeaders.CONTENT_ENCODING);
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            headers.remove("Content-MD5");
+        }
+
+        BufferedResponse bufferedResponse = new BufferedResponse(response.getCode(), response.getReasonPhrase(), headers, body);
+        if (errorHandler.hasError(bufferedResponse)) errorHandler.handleError(uri, method, bufferedResponse);
+
+        String text = body == null || body.length == 0 ? null : stringConverter.read(String.class, bufferedResponse);
+        return new ResponseEntity<>(text, headers, HttpStatusCode.valueOf(response.getCode()));
+    }
+
+    /**
+     * @param body A compressed body
+     * @param encoding The Content-Encoding of the body
+     * @param maxBytes The maximum size of the decompressed body (0 for no limit)
+     * @return The decompressed body, or the body itself if the encoding is not supported
+     * @throws ResponseTooLargeException if the decompressed body exceeds the limit
+     */
+    private static byte[] decompress(byte[] body, String encoding, long maxBytes) throws IOException {
+        InputStream input = switch (encoding) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(new ByteArrayInputStream(body));
+            case "deflate" -> new InflaterInputStream(new ByteArrayInputStream(body));
+            default -> null;
+        };
+        if (input == null) return body;
+        try (InputStream limited = maxBytes > 0 ? new LimitedInputStream(input, maxBytes) : input) {
+            return limited.readAllBytes();
+        }
+    }
+
+    /**
+     * Returns the non-blocking client, starting it on first use
+     * @return The non-blocking client
+     */
+    private synchronized CloseableHttpAsyncClient getAsyncClient() {
+        if (asyncClient == null) {
+            asyncConnectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                    .setMaxConnTotal(maxConnections)
+                    .setMaxConnPerRoute(maxConnectionsPerHost)
+                    .build();
+
+            asyncClient = HttpAsyncClients.custom()
+                    .setConnectionManager(asyncConnectionManager)
+                    .setDefaultRequestConfig(RequestConfig.custom().setConnectionKeepAlive(keepAlive).build())
+                    .evictExpiredConnections()
+                    .evictIdleConnections(TimeValue.ofSeconds(idleEvictionSeconds))
+                    .setRetryStrategy(RETRY_STRATEGY)
+                    .build();
+            asyncClient.start();
+            logger.info("Non-blocking HTTP client started");
+        }
+        return asyncClient;
+    }
+
+    /**
+     * Builds the configuration of a request: the timeouts of the node, bounded by its deadline
+     * @param metamodel The metamodel of the node sending the request (may be null)
+     * @return The request configuration
+     */
+    @SuppressWarnings("deprecation")
+    RequestConfig requestConfig(RestNodeMetamodel metamodel) {
+        int connectTimeout = metamodel != null && metamodel.getConnectTimeoutMillis() != null
+                ? metamodel.getConnectTimeoutMillis() : defaultConnectTimeoutMillis;
+        int readTimeout = metamodel != null && metamodel.getReadTimeoutMillis() != null
+                ? metamodel.getReadTimeoutMillis() : defaultReadTimeoutMillis;
+        int requestTimeout = connectionRequestTimeoutMillis;
+
+        int remaining = Deadline.current().remainingMillisOrZero();
+        if (remaining > 0) {
+            connectTimeout = boundedBy(connectTimeout, remaining);
+            readTimeout = boundedBy(readTimeout, remaining);
+            requestTimeout = boundedBy(requestTimeout, remaining);
+        }
+
+        return RequestConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout))
+                .setResponseTimeout(Timeout.ofMilliseconds(readTimeout))
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(requestTimeout))
+                .setConnectionKeepAlive(keepAlive)
+                .build();
+    }
+
+    /**
+     * @param timeoutMillis A timeout (0 means none)
+     * @param limitMillis The upper bound
+     * @return The timeout, bounded by the limit
+     */
+    private static int boundedBy(int timeoutMillis, int limitMillis) {
+        return timeoutMillis <= 0 ? limitMillis : Math.min(timeoutMillis, limitMillis);
+    }
+
+    /**
+     * Returns the statistics of the connection pools
+     * @return The statistics of all the pools and of the pool of each host
+     */
+    public PoolMetrics getPoolMetrics() {
+        Map<String, PoolStatistics> hosts = new TreeMap<>();
+        for (HttpRoute route : connectionManager.getRoutes())
+            hosts.put(route.getTargetHost().toURI(), PoolStatistics.of(connectionManager.getStats(route)));
+
+        PoolStatistics asyncTotal = new PoolStatistics(0, 0, 0, maxConnections);
+        Map<String, PoolStatistics> asyncHosts = new TreeMap<>();
+        synchronized (this) {
+            if (asyncConnectionManager != null) {
+                asyncTotal = PoolStatistics.of(asyncConnectionManager.getTotalStats());
+                for (HttpRoute route : asyncConnectionManager.getRoutes())
+                    asyncHosts.put(route.getTargetHost().toURI(), PoolStatistics.of(asyncConnectionManager.getStats(route)));
+            }
+        }
+
+        return new PoolMetrics(PoolStatistics.of(connectionManager.getTotalStats()), hosts, asyncTotal, asyncHosts);
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("Error while closing the HTTP client: {}", e.getMessage());
+        }
+
+        synchronized (this) {
+            if (asyncClient != null) asyncClient.close(CloseMode.GRACEFUL);
+        }
+    }
+
+    /**
+     * Statistics of a connection pool
+     * @param leased Connections in use by a request
+     * @param idle Connections kept alive, available for the next request
+     * @param pending Requests waiting for a connection
+     * @param max Maximum number of connections
+     */
+    public record PoolStatistics(int leased, int idle, int pending, int max) {
+        static PoolStatistics of(PoolStats stats) {
+            return new PoolStatistics(stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax());
+        }
+    }
+
+    /**
+     * Statistics of the connection pools
+     * @param total Statistics of all the pools of the blocking client together
+     * @param hosts Statistics of the pool of each host of the blocking client
+     * @param asyncTotal Statistics of all the pools of the non-blocking client together
+     * @param asyncHosts Statistics of the pool of each host of the non-blocking client
+     */
+    public record PoolMetrics(PoolStatistics total, Map<String, PoolStatistics> hosts,
+                              PoolStatistics asyncTotal, Map<String, PoolStatistics> asyncHosts) {}
+
+    /**
+     * A response of the non-blocking client, fully read, seen as a Spring response
+     */
+    private record BufferedResponse(int status, String reasonPhrase, HttpHeaders headers, byte[] body)
+            implements ClientHttpResponse, HttpInputMessage {
+
+        @Override
+        public HttpStatusCode getStatusCode() {
+            return HttpStatusCode.valueOf(status);
+        }
+
+        @Override
+        public String getStatusText() {
+            return reasonPhrase != null ? reasonPhrase : "";
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body != null ? body : new byte[0]);
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release: the body is in memory
+        }
+    }
+
+    /**
+     * Input stream failing as soon as more than a maximum number of bytes is read
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private long count;
+
+        LimitedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long n) throws ResponseTooLargeException {
+            count += n;
+            if (count > maxBytes) throw new ResponseTooLargeException(maxBytes);
+        }
+    }
+
+    /**
+     * Response of the blocking client whose body is limited in size
+     */
+    private static final class LimitedResponse implements ClientHttpResponse {
+        private final ClientHttpResponse response;
+        private final long maxBytes;
+
+        LimitedResponse(ClientHttpResponse response, long maxBytes) {
+            this.response = response;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            // Bodies that announce their size fail before being read
+            if (getHeaders().getContentLength() > maxBytes) throw new ResponseTooLargeException(maxBytes);
+            return new LimitedInputStream(response.getBody(), maxBytes);
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+    }
+
+    /**
+     * Consumer of the non-blocking client buffering the response body, up to a maximum size
+     */
+    private static final class LimitedResponseConsumer extends AbstractBinResponseConsumer<SimpleHttpResponse> {
+        private final long maxBytes;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private SimpleHttpResponse response;
+        private ContentType contentType;
+
+        LimitedResponseConsumer(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        protected void start(HttpResponse response, ContentType contentType) throws IOException {
+            Header contentLength = response.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+            if (maxBytes > 0 && contentLength != null) {
+                try {
+                    if (Long.parseLong(contentLength.getValue().trim()) > maxBytes) throw new ResponseTooLargeException(maxBytes);
+                } catch (NumberFormatException e) {
+                    // Checked while reading
+                }
+            }
+            this.response = SimpleHttpResponse.copy(response);
+            this.contentType = contentType;
+        }
+
+        @Override
+        protected int capacityIncrement() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        protected void data(ByteBuffer src, boolean endOfStream) throws IOException {
+            if (maxBytes > 0 && buffer.size() + (long) src.remaining() > maxBytes) throw new ResponseTooLargeException(maxBytes);
+            byte[] bytes = new byte[src.remaining()];
+            src.get(bytes);
+            buffer.write(bytes);
+        }
+
+        @Override
+        protected SimpleHttpResponse buildResult() {
+            if (buffer.size() > 0) response.setBody(buffer.toByteArray(), contentType);
+            return response;
+        }
+
+        @Override
+        public void releaseResources() {
+            buffer.reset();
+        }
+    }
+
+    /**
+     * Request factory of a single REST node: sends the requests through the shared client,
+     * with the timeouts of the node
+     */
+    private class NodeRequestFactory extends HttpComponentsClientHttpRequestFactory {
+        private final Supplier<RestNodeMetamodel> metamodel;
+
+        NodeRequestFactory(Supplier<RestNodeMetamodel> metamodel) {
+            super(httpClient);
+            this.metamodel = metamodel;
+        }
+
+        @Override
+        protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
+            HttpClientContext context = HttpClientContext.create();
+            context.setRequestConfig(requestConfig(metamodel.get()));
+            return context;
+        }
+
+        @Override
+        public void destroy() {
+            // The client is shared: it is closed by the manager
+        }
+    }
+}
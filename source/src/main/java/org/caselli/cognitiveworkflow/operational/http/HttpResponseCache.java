@@ -0,0 +1,335 @@
+package org.caselli.cognitiveworkflow.operational.http;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.*;
+
+/**
+ * Private HTTP cache of the responses to the GET requests of the REST nodes that opt in ({@code cacheResponses}
+ * of the REST metamodel).
+ * <p>
+ * Responses are stored following their {@code Cache-Control} ({@code no-store}, {@code no-cache}, {@code max-age})
+ * and {@code Expires} headers, keyed by the final URI, the values of the request headers named by {@code Vary} and
+ * the credentials of the request. A fresh response is served without any network access; a stale one with an
+ * {@code ETag} or a {@code Last-Modified} is revalidated with {@code If-None-Match} / {@code If-Modified-Since}, and a
+ * {@code 304 Not Modified} answer reuses the stored body.
+ * </p>
+ * <p>
+ * The cache is bounded both by number of entries ({@code http.client.cache.max-entries}) and by size
+ * ({@code http.client.cache.max-bytes}): the least recently used entries are evicted first.
+ * </p>
+ */
+@Component
+public class HttpResponseCache {
+
+    /** Request headers that always take part in the key, so responses are never shared across credentials */
+    private static final List<String> CREDENTIAL_HEADERS = List.of(HttpHeaders.AUTHORIZATION, HttpHeaders.COOKIE);
+
+    /** Headers of a 304 that describe the (empty) message rather than the cached representation */
+    private static final Set<String> MESSAGE_HEADERS = Set.of("content-length", "content-encoding", "transfer-encoding");
+
+    private final int maxEntries;
+    private final long maxBytes;
+
+    /** Entries in access order, for the LRU eviction */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Request headers named by the Vary header of the last response of each URI */
+    private final Map<String, List<String>> varyByUri = new HashMap<>();
+
+    private long bytes;
+    private long hits;
+    private long revalidations;
+    private long misses;
+    private long evictions;
+
+    public HttpResponseCache(@Value("${http.client.cache.max-entries:1000}") int maxEntries,
+                             @Value("${http.client.cache.max-bytes:52428800}") long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Creates a response cache with the default bounds, for use outside of the Spring context
+     * @return A new response cache
+     */
+    public static HttpResponseCache withDefaults() {
+        return new HttpResponseCache(1000, 52_428_800L);
+    }
+
+    /**
+     * Looks up the stored response of a GET request
+     * @param uri The final URI of the request
+     * @param requestHeaders The headers of the request
+     * @return The stored response, fresh or to be revalidated, or null if there is none (or the request forbids it)
+     */
+    public synchronized Lookup lookup(URI uri, HttpHeaders requestHeaders) {
+        Set<String> requestDirectives = directives(requestHeaders);
+        String key = key(uri, requestHeaders);
+        Entry entry = requestDirectives.contains("no-cache") || requestDirectives.contains("no-store") ? null : entries.get(key);
+
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+
+        boolean fresh = System.currentTimeMillis() < entry.expiresAt;
+        if (fresh) hits++;
+        return new Lookup(key, entry, fresh);
+    }
+
+    /**
+     * Adds the validators of a stored response to a request, so the server can answer 304 if it did not change
+     * @param lookup The stale stored response (may be null)
+     * @param requestHeaders The headers of the request
+     * @return The headers of the conditional request
+     */
+    public HttpHeaders conditionalHeaders(Lookup lookup, HttpHeaders requestHeaders) {
+        if (lookup == null || lookup.fresh) return requestHeaders;
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(requestHeaders);
+        String etag = lookup.entry.headers.getETag();
+        String lastModified = lookup.entry.headers.getFirst(HttpHeaders.LAST_MODIFIED);
+        if (etag != null) headers.setIfNoneMatch(etag);
+        if (lastModified != null) headers.set(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        return headers;
+    }
+
+    /**
+     * Handles the response of the network: a 304 refreshes the stored response and returns it, any other
+     * response is stored if its headers allow it
+     * @param uri The final URI of the request
+     * @param requestHeaders The headers of the request (without the validators)
+     * @param lookup The stale stored response the request revalidated (may be null)
+     * @param response The response of the network
+     * @return The response to use
+     */
+    public synchronized ResponseEntity<String> update(URI uri, HttpHeaders requestHeaders, Lookup lookup, ResponseEntity<String> response) {
+        long now = System.currentTimeMillis();
+
+        if (lookup != null && response.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value()) {
+            revalidations++;
+            HttpHeaders headers = new HttpHeaders();
+            headers.putAll(lookup.entry.headers);
+            response.getHeaders().forEach((name, values) -> {
+                if (!MESSAGE_HEADERS.contains(name.toLowerCase(Locale.ROOT))) headers.put(name, values);
+            });
+
+            Entry refreshed = new Entry(lookup.entry.status, headers, lookup.entry.body, now + freshnessMillis(headers, now));
+            put(lookup.key, refreshed);
+            return refreshed.toResponse();
+        }
+
+        if (lookup != null && !lookup.fresh) misses++;
+
+        if (isStorable(requestHeaders, response)) {
+            // The key depends on the Vary header of the response
+            List<String> vary = new ArrayList<>();
+            for (String name : response.getHeaders().getVary()) vary.add(name.trim().toLowerCase(Locale.ROOT));
+            Collections.sort(vary);
+            varyByUri.put(uri.toString(), vary);
+
+            Entry entry = new Entry(response.getStatusCode().value(), response.getHeaders(), response.getBody(),
+                    now + freshnessMillis(response.getHeaders(), now));
+            if (entry.size <= maxBytes) put(key(uri, requestHeaders), entry);
+        } else if (lookup != null) {
+            remove(lookup.key);
+        }
+
+        return response;
+    }
+
+    /**
+     * Returns the statistics of the cache
+     * @return The statistics
+     */
+    public synchronized CacheMetrics getMetrics() {
+        long requests = hits + revalidations + misses;
+        double hitRate = requests == 0 ? 0 : (double) (hits + revalidations) / requests;
+        return new CacheMetrics(hits, revalidations, misses, evictions, entries.size(), bytes, hitRate);
+    }
+
+    /**
+     * Removes all the stored responses
+     */
+    public synchronized void clear() {
+        entries.clear();
+        varyByUri.clear();
+        bytes = 0;
+    }
+
+    private void put(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) bytes -= previous.size;
+        bytes += entry.size;
+
+        // Evict the least recently used entries
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().size;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) bytes -= removed.size;
+    }
+
+    /**
+     * @return The key of a request: its URI, the headers its stored responses vary on and its credentials
+     */
+    private String key(URI uri, HttpHeaders requestHeaders) {
+        StringBuilder key = new StringBuilder(uri.toString());
+        List<String> names = new ArrayList<>(varyByUri.getOrDefault(uri.toString(), List.of()));
+        for (String name : CREDENTIAL_HEADERS) if (!names.contains(name.toLowerCase(Locale.ROOT))) names.add(name.toLowerCase(Locale.ROOT));
+
+        for (String name : names) {
+            List<String> values = requestHeaders.get(name);
+            key.append('\n').append(name).append('=').append(values != null ? String.join(",", values) : "");
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return True if the response can be stored: a 200 that neither the request nor the response forbid storing,
+     * either fresh for some time or with validators
+     */
+    private static boolean isStorable(HttpHeaders requestHeaders, ResponseEntity<String> response) {
+        if (response.getStatusCode().value() != HttpStatus.OK.value()) return false;
+        if (directives(requestHeaders).contains("no-store")) return false;
+
+        HttpHeaders headers = response.getHeaders();
+        if (directives(headers).contains("no-store") || headers.getVary().contains("*")) return false;
+
+        return freshnessMillis(headers, System.currentTimeMillis()) > 0
+                || headers.getETag() != null
+                || headers.getFirst(HttpHeaders.LAST_MODIFIED) != null;
+    }
+
+    /**
+     * Computes for how long a response is fresh: {@code max-age} minus its {@code Age}, or its {@code Expires}
+     * relative to its {@code Date}. Responses with {@code no-cache} or without expiration are stale at once.
+     * @param headers The headers of the response
+     * @param now The current time in milliseconds
+     * @return The freshness lifetime in milliseconds (0 if stale)
+     */
+    private static long freshnessMillis(HttpHeaders headers, long now) {
+        Set<String> directives = directives(headers);
+        if (directives.contains("no-cache")) return 0;
+
+        for (String directive : directives) {
+            if (!directive.startsWith("max-age=")) continue;
+            try {
+                long maxAge = Long.parseLong(directive.substring("max-age=".length()).replace("\"", ""));
+                long age = 0;
+                String ageHeader = headers.getFirst("Age");
+                if (ageHeader != null) age = Long.parseLong(ageHeader.trim());
+                return Math.max(0, (maxAge - age) * 1000);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        try {
+            long expires = headers.getExpires();
+            if (expires < 0) return 0;
+            long date = headers.getDate();
+            return Math.max(0, expires - (date >= 0 ? date : now));
+        } catch (IllegalArgumentException e) {
+            // Malformed dates mean the response is already expired
+            return 0;
+        }
+    }
+
+    /**
+     * @return The Cache-Control directives of a message, lower case
+     */
+    private static Set<String> directives(HttpHeaders headers) {
+        List<String> values = headers.get(HttpHeaders.CACHE_CONTROL);
+        if (values == null) return Set.of();
+
+        Set<String> directives = new HashSet<>();
+        for (String value : values)
+            for (String directive : value.split(","))
+                if (!directive.isBlank()) directives.add(directive.trim().toLowerCase(Locale.ROOT));
+        return directives;
+    }
+
+    /**
+     * A stored response
+     */
+    private static final class Entry {
+        final int status;
+        final HttpHeaders headers;
+        final String body;
+        final long expiresAt;
+        /** Approximate size in bytes: the characters of the body and of the headers */
+        final long size;
+
+        Entry(int status, HttpHeaders headers, String body, long expiresAt) {
+            this.status = status;
+            this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+            this.body = body;
+            this.expiresAt = expiresAt;
+
+            long headerSize = 0;
+            for (Map.Entry<String, List<String>> header : headers.entrySet())
+                for (String value : header.getValue()) headerSize += header.getKey().length() + value.length();
+            this.size = 2L * ((body != null ? body.length() : 0) + headerSize);
+        }
+
+        ResponseEntity<String> toResponse() {
+            return new ResponseEntity<>(body, headers, HttpStatusCode.valueOf(status));
+        }
+    }
+
+    /**
+     * A stored response found for a request
+     */
+    public static final class Lookup {
+        private final String key;
+        private final Entry entry;
+        private final boolean fresh;
+
+        private Lookup(String key, Entry entry, boolean fresh) {
+            this.key = key;
+            this.entry = entry;
+            this.fresh = fresh;
+        }
+
+        /**
+         * @return True if the response can be used without contacting the server
+         */
+        public boolean isFresh() {
+            return fresh;
+        }
+
+        /**
+         * @return The stored response
+         */
+        public ResponseEntity<String> getResponse() {
+            return entry.toResponse();
+        }
+    }
+
+    /**
+     * Statistics of the cache
+     * @param hits Requests served from the cache without network access
+     * @param revalidations Requests answered with 304 Not Modified, served with the stored body
+     * @param misses Requests whose response was transferred in full
+     * @param evictions Entries evicted to respect the bounds of the cache
+     * @param entries Stored responses
+     * @param bytes Approximate size of the stored responses
+     * @param hitRate Fraction of the requests that reused a stored body
+     */
+    public record CacheMetrics(long hits, long revalidations, long misses, long evictions, int entries, long bytes, double hitRate) {}
+}
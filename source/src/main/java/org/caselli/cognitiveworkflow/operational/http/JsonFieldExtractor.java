@@ -0,0 +1,81 @@
+package org.caselli.cognitiveworkflow.operational.http;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extracts some top-level fields of a JSON object with the streaming parser of Jackson.
+ * <p>
+ * Fields are matched by name only, as with the RES_BODY_FIELD ports of the REST nodes: nested fields (e.g. JSON
+ * pointers) are not supported, a nested value is returned whole as the value of its top-level field.
+ * </p>
+ * <p>
+ * Only the values of the requested fields are materialized: the other values are skipped token by token, so a large
+ * response body is never turned into a tree (or a String) to read a few fields of it. The object is still read up to
+ * its end, so malformed bodies are detected as with a full parse.
+ * </p>
+ */
+public final class JsonFieldExtractor {
+
+    private JsonFieldExtractor() {}
+
+    /**
+     * Extracts fields from a JSON body read from a stream (the encoding is detected by Jackson).
+     * The stream is not closed.
+     * @param objectMapper The mapper used to read the values of the fields
+     * @param body The body
+     * @param fields The names of the top-level fields to extract
+     * @return The extracted fields (the ones missing from the body are absent), or null if the body is empty or is not
+     * a JSON object
+     * @throws JsonProcessingException if the body is not valid JSON
+     * @throws IOException if the body cannot be read
+     */
+    public static Map<String, Object> extract(ObjectMapper objectMapper, InputStream body, Set<String> fields) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body).disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)) {
+            return extract(objectMapper, parser, fields);
+        }
+    }
+
+    /**
+     * Extracts fields from a JSON body read from characters (the reader is not closed)
+     * @see #extract(ObjectMapper, InputStream, Set)
+     */
+    public static Map<String, Object> extract(ObjectMapper objectMapper, Reader body, Set<String> fields) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body).disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)) {
+            return extract(objectMapper, parser, fields);
+        }
+    }
+
+    /**
+     * Extracts fields from a JSON body already in memory
+     * @see #extract(ObjectMapper, InputStream, Set)
+     */
+    public static Map<String, Object> extract(ObjectMapper objectMapper, String body, Set<String> fields) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            return extract(objectMapper, parser, fields);
+        }
+    }
+
+    private static Map<String, Object> extract(ObjectMapper objectMapper, JsonParser parser, Set<String> fields) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) return null;
+
+        Map<String, Object> extracted = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            // The last occurrence of a duplicated field wins, as with a full parse
+            if (fields.contains(name)) extracted.put(name, objectMapper.readValue(parser, Object.class));
+            else parser.skipChildren();
+        }
+        return extracted;
+    }
+}
@@ -0,0 +1,163 @@
+package org.caselli.cognitiveworkflow.operational.http;
+
+import org.caselli.cognitiveworkflow.operational.execution.Deadline;
+import org.caselli.cognitiveworkflow.operational.execution.DeadlineExceededException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight coalescing of the identical requests of the REST nodes.
+ * <p>
+ * While a request is in flight, the identical requests (same method, final URI, headers and body) sent by other
+ * executions do not go to the network: they wait for the response of the first one and share it. Bursts of executions
+ * of the same workflow thus send a single request to the backend instead of one each.
+ * </p>
+ * Only the requests that are in flight at the same time are coalesced: responses are never reused afterwards
+ * (that is the job of the {@link HttpResponseCache}).
+ */
+@Component
+public class RequestCoalescer {
+
+    private final ConcurrentHashMap<String, CompletableFuture<ResponseEntity<String>>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Computes the identity of a request
+     * @param method The HTTP method
+     * @param uri The final URI
+     * @param headers The request headers
+     * @param body The serialized body (may be null)
+     * @return The key of the request: two requests with the same key are interchangeable
+     */
+    public static String key(HttpMethod method, URI uri, HttpHeaders headers, byte[] body) {
+        StringBuilder key = new StringBuilder(method.name()).append(' ').append(uri);
+
+        // Header names are case-insensitive, the order of the values of a header is significant
+        TreeMap<String, List<String>> sortedHeaders = new TreeMap<>();
+        headers.forEach((name, values) -> sortedHeaders.put(name.toLowerCase(Locale.ROOT), values));
+        sortedHeaders.forEach((name, values) -> key.append('\n').append(name).append(": ").append(String.join(",", values)));
+
+        key.append("\n\n").append(body != null ? sha256(body) : "");
+        return key.toString();
+    }
+
+    /**
+     * Sends a request, or waits for the identical request that is already in flight.
+     * The wait is bounded by the deadline active on the current thread.
+     * @param key The key of the request
+     * @param request Sends the request and returns its response
+     * @return The response, possibly shared with other callers (it must not be modified)
+     * @throws DeadlineExceededException if the deadline passes while waiting for the shared response
+     */
+    public ResponseEntity<String> execute(String key, Supplier<ResponseEntity<String>> request) {
+        CompletableFuture<ResponseEntity<String>> leader = new CompletableFuture<>();
+        CompletableFuture<ResponseEntity<String>> shared = inFlight.putIfAbsent(key, leader);
+
+        if (shared == null) {
+            // First caller: sends the request for everyone
+            sent.incrementAndGet();
+            try {
+                ResponseEntity<String> response = request.get();
+                leader.complete(response);
+                return response;
+            } catch (RuntimeException e) {
+                leader.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, leader);
+            }
+        }
+
+        coalesced.incrementAndGet();
+        return await(shared);
+    }
+
+    /**
+     * Sends a request without blocking, or shares the identical request that is already in flight
+     * @param key The key of the request
+     * @param request Sends the request and returns its pending response
+     * @return The pending response, possibly shared with other callers (it must not be modified).
+     * Cancelling it does not affect the other callers.
+     */
+    public CompletableFuture<ResponseEntity<String>> executeAsync(String key, Supplier<CompletableFuture<ResponseEntity<String>>> request) {
+        CompletableFuture<ResponseEntity<String>> leader = new CompletableFuture<>();
+        CompletableFuture<ResponseEntity<String>> shared = inFlight.putIfAbsent(key, leader);
+
+        if (shared != null) {
+            coalesced.incrementAndGet();
+            return shared.copy();
+        }
+
+        // First caller: sends the request for everyone
+        sent.incrementAndGet();
+        try {
+            request.get().whenComplete((response, error) -> {
+                inFlight.remove(key, leader);
+                if (error != null) leader.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                else leader.complete(response);
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, leader);
+            leader.completeExceptionally(e);
+        }
+        return leader.copy();
+    }
+
+    /**
+     * Waits for a shared response, at most until the deadline of the current thread
+     */
+    private static ResponseEntity<String> await(CompletableFuture<ResponseEntity<String>> shared) {
+        Deadline deadline = Deadline.current();
+        try {
+            if (!deadline.isBounded()) return shared.get();
+            return shared.get(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("Deadline exceeded while waiting for an identical REST request", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for an identical REST request", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * @return The hex SHA-256 digest of the bytes
+     */
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Returns the statistics of the coalescing
+     * @return The statistics
+     */
+    public CoalescingMetrics getMetrics() {
+        return new CoalescingMetrics(sent.get(), coalesced.get(), inFlight.size());
+    }
+
+    /**
+     * Statistics of the coalescing
+     * @param sent Requests sent to the network
+     * @param coalesced Requests that shared the response of an identical request in flight
+     * @param inFlight Distinct requests currently in flight
+     */
+    public record CoalescingMetrics(long sent, long coalesced, int inFlight) {}
+}
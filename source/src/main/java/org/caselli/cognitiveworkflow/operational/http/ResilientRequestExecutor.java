@@ -0,0 +1,505 @@
+package org.caselli.cognitiveworkflow.operational.http;
+
+import org.caselli.cognitiveworkflow.knowledge.model.node.RestNodeMetamodel;
+import org.caselli.cognitiveworkflow.operational.execution.Deadline;
+import org.caselli.cognitiveworkflow.operational.execution.DeadlineExceededException;
+import org.caselli.cognitiveworkflow.operational.observability.RequestAttemptRecorder;
+import org.caselli.cognitiveworkflow.operational.observability.WorkflowObservabilityReport.RequestAttemptDetail;
+import org.caselli.cognitiveworkflow.operational.observability.WorkflowObservabilityReport.RequestAttemptDetail.AttemptOutcome;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Retries and hedging of the requests of the REST nodes with an idempotent method.
+ * <p>
+ * A failed request is sent again if the {@link RestNodeMetamodel.RetryPolicy} of the node allows it (response status
+ * or exception type), after an exponential backoff with jitter, or after the {@code Retry-After} of the response if
+ * it asks for longer. A request slower than the chosen percentile of the recent latencies of the node is duplicated,
+ * as the {@link RestNodeMetamodel.HedgingPolicy} of the node allows: the first response wins and the other attempts
+ * are aborted.
+ * </p>
+ * <p>
+ * Retries and duplicates are limited by a budget per target host, so they cannot multiply the load of a backend
+ * that is already failing: every request deposits {@code http.client.retry.budget-ratio} tokens, the budget refills by
+ * {@code budget-min-per-second} tokens per second up to {@code budget-max-tokens}, and each retry or duplicate takes
+ * one token. Waits never go past the {@link Deadline} of the node.
+ * </p>
+ * Every attempt is recorded with the {@link RequestAttemptRecorder} of the node.
+ */
+@Component
+public class ResilientRequestExecutor {
+
+    /** Latencies kept per node to estimate the hedging delay */
+    private static final int LATENCY_WINDOW = 256;
+
+    /** Latencies needed before the hedging delay is derived from them */
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    /** Runs the delayed retries and duplicates of the non-blocking requests */
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "http-retry-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final double budgetRatio;
+    private final double budgetPerSecond;
+    private final double budgetMaxTokens;
+
+    private final ConcurrentHashMap<String, RetryBudget> budgets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong budgetRejections = new AtomicLong();
+
+    public ResilientRequestExecutor(@Value("${http.client.retry.budget-ratio:0.2}") double budgetRatio,
+                                    @Value("${http.client.retry.budget-min-per-second:5}") double budgetPerSecond,
+                                    @Value("${http.client.retry.budget-max-tokens:50}") double budgetMaxTokens) {
+        this.budgetRatio = budgetRatio;
+        this.budgetPerSecond = budgetPerSecond;
+        this.budgetMaxTokens = budgetMaxTokens;
+    }
+
+    /**
+     * Creates an executor with the default budget, for use outside of the Spring context
+     * @return A new executor
+     */
+    public static ResilientRequestExecutor withDefaults() {
+        return new ResilientRequestExecutor(0.2, 5, 50);
+    }
+
+    /**
+     * @param metamodel The metamodel of a REST node
+     * @return True if the requests of the node are retried or hedged: only the idempotent methods are
+     */
+    public static boolean applies(RestNodeMetamodel metamodel) {
+        return metamodel.getInvocationMethod() != null && metamodel.getInvocationMethod().isIdempotent()
+                && (metamodel.getRetryPolicy() != null || metamodel.getHedgingPolicy() != null);
+    }
+
+    /**
+     * @param metamodel The metamodel of a REST node
+     * @return True if the requests of the node are hedged
+     */
+    public static boolean hedges(RestNodeMetamodel metamodel) {
+        return applies(metamodel) && metamodel.getHedgingPolicy() != null;
+    }
+
+    /**
+     * Sends a request of a node, retrying and hedging it as the policies of the node allow.
+     * Hedged requests go through the non-blocking client, so the attempts that lose can be aborted, and the caller
+     * waits for the winner at most until the deadline of the current thread.
+     * @param metamodel The metamodel of the node
+     * @param uri The final URI of the request
+     * @param recorder Records the attempts
+     * @param blockingAttempt Sends the request through the blocking client
+     * @param asyncAttempt Sends the request through the non-blocking client
+     * @return The response
+     */
+    public ResponseEntity<String> execute(RestNodeMetamodel metamodel, URI uri, RequestAttemptRecorder recorder,
+                                          Supplier<ResponseEntity<String>> blockingAttempt,
+                                          Supplier<CompletableFuture<ResponseEntity<String>>> asyncAttempt) {
+        if (hedges(metamodel)) return await(executeAsync(metamodel, uri, recorder, asyncAttempt));
+
+        RestNodeMetamodel.RetryPolicy policy = applies(metamodel) ? metamodel.getRetryPolicy() : null;
+        Deadline deadline = Deadline.current();
+        String host = deposit(uri);
+
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            Instant startTime = Instant.now();
+            try {
+                ResponseEntity<String> response = blockingAttempt.get();
+                recordAttempt(metamodel, uri, recorder, attempt, false, start, startTime, response, null);
+                return response;
+            } catch (RuntimeException e) {
+                recordAttempt(metamodel, uri, recorder, attempt, false, start, startTime, null, e);
+
+                long delay = retryDelay(policy, attempt, e, host, deadline);
+                if (delay < 0) throw e;
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends a request of a node without blocking, retrying and hedging it as the policies of the node allow
+     * @param metamodel The metamodel of the node
+     * @param uri The final URI of the request
+     * @param recorder Records the attempts
+     * @param attempt Sends the request through the non-blocking client. Called with the deadline of the node active.
+     * @return The pending response of the first successful attempt. Cancelling it aborts all the attempts.
+     */
+    public CompletableFuture<ResponseEntity<String>> executeAsync(RestNodeMetamodel metamodel, URI uri, RequestAttemptRecorder recorder,
+                                                                  Supplier<CompletableFuture<ResponseEntity<String>>> attempt) {
+        AsyncRequest request = new AsyncRequest(metamodel, uri, recorder, attempt, Deadline.current(), deposit(uri));
+        request.send(1);
+        return request.result;
+    }
+
+    /**
+     * Counts a new request in the budget of its host
+     * @return The host
+     */
+    private String deposit(URI uri) {
+        requests.incrementAndGet();
+        String host = uri.getAuthority() != null ? uri.getAuthority() : "";
+        budgets.computeIfAbsent(host, h -> new RetryBudget()).deposit();
+        return host;
+    }
+
+    /**
+     * Takes a token from the budget of a host, for a retry or a duplicate
+     * @return False if the budget is exhausted
+     */
+    private boolean withdraw(String host) {
+        if (budgets.computeIfAbsent(host, h -> new RetryBudget()).withdraw()) return true;
+        budgetRejections.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Decides if a failed attempt is retried
+     * @param policy The retry policy of the node (may be null)
+     * @param attempt The number of the failed attempt
+     * @param error The failure
+     * @param host The target host
+     * @param deadline The deadline of the node
+     * @return The wait before the retry in milliseconds, or -1 if the failure is not retried
+     */
+    private long retryDelay(RestNodeMetamodel.RetryPolicy policy, int attempt, Throwable error, String host, Deadline deadline) {
+        if (policy == null || attempt >= policy.getMaxAttempts() || !isRetryable(policy, error)) return -1;
+
+        double backoff = Math.min(policy.getMaxBackoffMillis(),
+                policy.getInitialBackoffMillis() * Math.pow(policy.getBackoffMultiplier(), attempt - 1));
+        long delay = (long) (backoff * (1 - policy.getJitter() * ThreadLocalRandom.current().nextDouble()));
+        delay = Math.max(delay, retryAfterMillis(error));
+
+        // A retry that cannot complete before the deadline is not worth sending
+        if (deadline.isBounded() && deadline.remaining().toMillis() <= delay) return -1;
+        if (!withdraw(host)) return -1;
+
+        retries.incrementAndGet();
+        return delay;
+    }
+
+    /**
+     * @return True if the policy retries the failure, by response status or by exception type
+     */
+    private static boolean isRetryable(RestNodeMetamodel.RetryPolicy policy, Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            // Running out of time or reading too much would happen again
+            if (cause instanceof DeadlineExceededException || cause instanceof ResponseTooLargeException) return false;
+        }
+
+        if (error instanceof RestClientResponseException responseException)
+            return policy.getRetryOnStatus() != null && policy.getRetryOnStatus().contains(responseException.getStatusCode().value());
+
+        if (policy.getRetryOnExceptions() == null) return false;
+        for (Throwable cause = error; cause != null; cause = cause.getCause())
+            for (Class<?> type = cause.getClass(); type != null; type = type.getSuperclass())
+                if (policy.getRetryOnExceptions().contains(type.getName()) || policy.getRetryOnExceptions().contains(type.getSimpleName()))
+                    return true;
+        return false;
+    }
+
+    /**
+     * @return The wait asked by the {@code Retry-After} header (in seconds) of an error response, or 0
+     */
+    private static long retryAfterMillis(Throwable error) {
+        if (!(error instanceof RestClientResponseException responseException)) return 0;
+        HttpHeaders headers = responseException.getResponseHeaders();
+        String retryAfter = headers != null ? headers.getFirst(HttpHeaders.RETRY_AFTER) : null;
+        if (retryAfter == null) return 0;
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            // HTTP dates are not supported
+            return 0;
+        }
+    }
+
+    /**
+     * @return The delay after which a duplicate of a request of the node is sent in milliseconds, or -1 for none
+     */
+    private long hedgeDelay(RestNodeMetamodel metamodel, URI uri) {
+        RestNodeMetamodel.HedgingPolicy policy = metamodel.getHedgingPolicy();
+        if (policy == null) return -1;
+
+        LatencyWindow window = latencies.get(latencyKey(metamodel, uri));
+        long delay;
+        if (window != null && window.size() >= MIN_LATENCY_SAMPLES) delay = window.percentileMillis(policy.getLatencyPercentile());
+        else if (policy.getInitialDelayMillis() != null) delay = policy.getInitialDelayMillis();
+        else return -1;
+
+        return Math.max(delay, policy.getMinDelayMillis());
+    }
+
+    /**
+     * @return The key of the latencies of a node: its metamodel, or its target if it is not persisted
+     */
+    private static String latencyKey(RestNodeMetamodel metamodel, URI uri) {
+        if (metamodel.getId() != null) return metamodel.getId();
+        return metamodel.getInvocationMethod() + " " + uri.getAuthority() + uri.getPath();
+    }
+
+    /**
+     * Records an attempt in the report of the node, and its latency if it received a response
+     * @param response The response, or null if the attempt failed
+     * @param error The failure, or null if the attempt succeeded
+     */
+    private void recordAttempt(RestNodeMetamodel metamodel, URI uri, RequestAttemptRecorder recorder, int attempt, boolean hedge,
+                               long startNanos, Instant startTime, ResponseEntity<String> response, Throwable error) {
+        Duration duration = Duration.ofNanos(System.nanoTime() - startNanos);
+
+        Integer status = null;
+        if (response != null) status = response.getStatusCode().value();
+        else if (error instanceof RestClientResponseException responseException) status = responseException.getStatusCode().value();
+
+        // Only the attempts that got an answer tell how fast the backend is
+        if (status != null && metamodel.getHedgingPolicy() != null)
+            latencies.computeIfAbsent(latencyKey(metamodel, uri), k -> new LatencyWindow()).add(duration.toMillis());
+
+        AttemptOutcome outcome = error == null ? AttemptOutcome.SUCCEEDED
+                : error instanceof CancellationException ? AttemptOutcome.CANCELLED : AttemptOutcome.FAILED;
+        recorder.record(new RequestAttemptDetail(attempt, hedge, outcome, status,
+                error != null && outcome == AttemptOutcome.FAILED ? error.getMessage() : null, startTime, duration));
+    }
+
+    /**
+     * Waits for a pending response, at most until the deadline of the current thread
+     */
+    private static ResponseEntity<String> await(CompletableFuture<ResponseEntity<String>> pending) {
+        Deadline deadline = Deadline.current();
+        try {
+            if (!deadline.isBounded()) return pending.get();
+            return pending.get(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            pending.cancel(true);
+            throw new DeadlineExceededException("Deadline exceeded while waiting for a hedged REST request", e);
+        } catch (InterruptedException e) {
+            pending.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a hedged REST request", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the statistics of the retries and of the hedging
+     * @return The statistics
+     */
+    public RetryMetrics getMetrics() {
+        return new RetryMetrics(requests.get(), retries.get(), hedges.get(), hedgeWins.get(), budgetRejections.get());
+    }
+
+    /**
+     * Statistics of the retries and of the hedging
+     * @param requests Requests of the nodes with a retry or hedging policy
+     * @param retries Attempts sent again after a failure
+     * @param hedges Duplicates sent for slow attempts
+     * @param hedgeWins Duplicates that answered before the attempt they duplicated
+     * @param budgetRejections Retries and duplicates not sent because the budget of the host was exhausted
+     */
+    public record RetryMetrics(long requests, long retries, long hedges, long hedgeWins, long budgetRejections) {}
+
+    /**
+     * A request sent through the non-blocking client, with its attempts
+     */
+    private final class AsyncRequest {
+        private final RestNodeMetamodel metamodel;
+        private final URI uri;
+        private final RequestAttemptRecorder recorder;
+        private final Supplier<CompletableFuture<ResponseEntity<String>>> attempt;
+        private final Deadline deadline;
+        private final String host;
+
+        private final CompletableFuture<ResponseEntity<String>> result = new CompletableFuture<>();
+        /** Set by the first successful attempt, which is counted before the caller is released */
+        private final AtomicBoolean won = new AtomicBoolean();
+
+        /** Pending attempts and scheduled tasks, aborted once the request completes */
+        private final Set<Future<?>> pending = ConcurrentHashMap.newKeySet();
+
+        AsyncRequest(RestNodeMetamodel metamodel, URI uri, RequestAttemptRecorder recorder,
+                     Supplier<CompletableFuture<ResponseEntity<String>>> attempt, Deadline deadline, String host) {
+            this.metamodel = metamodel;
+            this.uri = uri;
+            this.recorder = recorder;
+            this.attempt = attempt;
+            this.deadline = deadline;
+            this.host = host;
+            result.whenComplete((response, error) -> pending.forEach(future -> future.cancel(true)));
+        }
+
+        /**
+         * Sends an attempt of the request, and schedules its duplicates
+         * @param number The number of the attempt
+         */
+        void send(int number) {
+            if (result.isDone()) return;
+            Attempt current = new Attempt(number);
+            current.send(false);
+
+            long delay = hedgeDelay(metamodel, uri);
+            if (delay >= 0) schedule(current::hedge, delay);
+        }
+
+        void schedule(Runnable task, long delayMillis) {
+            if (result.isDone()) return;
+            pending.add(SCHEDULER.schedule(task, delayMillis, TimeUnit.MILLISECONDS));
+        }
+
+        /**
+         * An attempt of the request and its duplicates
+         */
+        private final class Attempt {
+            private final int number;
+            private int sent;
+            private int failures;
+            private boolean closed;
+
+            Attempt(int number) {
+                this.number = number;
+            }
+
+            synchronized void send(boolean hedge) {
+                sent++;
+                long start = System.nanoTime();
+                Instant startTime = Instant.now();
+
+                CompletableFuture<ResponseEntity<String>> io;
+                try (Deadline.Scope ignored = deadline.activate()) {
+                    io = attempt.get();
+                } catch (RuntimeException e) {
+                    io = CompletableFuture.failedFuture(e);
+                }
+                pending.add(io);
+                if (result.isDone()) io.cancel(true);
+
+                CompletableFuture<ResponseEntity<String>> sentIo = io;
+                io.whenComplete((response, error) -> {
+                    pending.remove(sentIo);
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    recordAttempt(metamodel, uri, recorder, number, hedge, start, startTime, response, cause);
+
+                    if (cause == null) {
+                        if (won.compareAndSet(false, true)) {
+                            if (hedge) hedgeWins.incrementAndGet();
+                            result.complete(response);
+                        }
+                    } else if (!(cause instanceof CancellationException)) {
+                        failed(cause);
+                    }
+                });
+            }
+
+            /**
+             * Sends a duplicate, if the attempt is still pending and the budget allows it
+             */
+            synchronized void hedge() {
+                if (closed || result.isDone() || sent > metamodel.getHedgingPolicy().getMaxHedges()) return;
+                if (!withdraw(host)) return;
+
+                hedges.incrementAndGet();
+                send(true);
+                long delay = hedgeDelay(metamodel, uri);
+                if (delay >= 0) schedule(this::hedge, delay);
+            }
+
+            /**
+             * Once the attempt and all its duplicates failed, retries the request or fails it
+             */
+            synchronized void failed(Throwable error) {
+                failures++;
+                if (closed || failures < sent) return;
+                closed = true;
+
+                RestNodeMetamodel.RetryPolicy policy = metamodel.getRetryPolicy();
+                long delay = retryDelay(policy, number, error, host, deadline);
+                if (delay < 0) result.completeExceptionally(error);
+                else schedule(() -> AsyncRequest.this.send(number + 1), delay);
+            }
+        }
+    }
+
+    /**
+     * Budget of the retries and duplicates sent to a host
+     */
+    private final class RetryBudget {
+        private double tokens = budgetMaxTokens;
+        private long refilledAt = System.nanoTime();
+
+        synchronized void deposit() {
+            refill();
+            tokens = Math.min(budgetMaxTokens, tokens + budgetRatio);
+        }
+
+        synchronized boolean withdraw() {
+            refill();
+            if (tokens < 1) return false;
+            tokens--;
+            return true;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(budgetMaxTokens, tokens + (now - refilledAt) / 1e9 * budgetPerSecond);
+            refilledAt = now;
+        }
+    }
+
+    /**
+     * The most recent latencies of a node
+     */
+    private static final class LatencyWindow {
+        private final long[] samples = new long[LATENCY_WINDOW];
+        private int count;
+        private int next;
+
+        synchronized void add(long millis) {
+            samples[next] = millis;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        synchronized int size() {
+            return count;
+        }
+
+        synchronized long percentileMillis(double percentile) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+}
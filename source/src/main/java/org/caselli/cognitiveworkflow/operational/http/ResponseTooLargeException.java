@@ -0,0 +1,15 @@
+package org.caselli.cognitiveworkflow.operational.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown while reading a response body that exceeds the maximum size allowed for the node.
+ * As any I/O error while reading a response, it reaches the node wrapped in a
+ * {@link org.springframework.web.client.RestClientException}.
+ */
+public class ResponseTooLargeException extends IOException {
+
+    public ResponseTooLargeException(long maxBytes) {
+        super("Response body exceeds the limit of " + maxBytes + " bytes");
+    }
+}
@@ -0,0 +1,42 @@
+package org.caselli.cognitiveworkflow.operational.instances;
+
+import org.caselli.cognitiveworkflow.operational.execution.ExecutionContext;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A node whose processing is dominated by non-blocking I/O.
+ * <p>
+ * The processing is split in two phases: {@link #startAsync} reads the inputs and starts the I/O without waiting for
+ * it, and {@link #complete} writes the result to the output ports. The executor runs the first phase on a node thread
+ * and releases it, so many nodes can wait for their I/O at the same time without holding a thread each.
+ * {@link NodeInstance#process} must still produce the same outputs by blocking.
+ * </p>
+ * @param <T> The result of the I/O
+ */
+public interface AsyncNodeInstance<T> {
+
+    /**
+     * Reads the inputs of the node and starts its I/O.
+     * Called with the deadline of the node active on the current thread.
+     * @param context The execution context
+     * @return The pending result of the I/O. Cancelling it aborts the I/O.
+     */
+    CompletableFuture<T> startAsync(ExecutionContext context);
+
+    /**
+     * Writes the result of the I/O to the output ports of the node
+     * @param context The execution context
+     * @param result The result of the I/O
+     */
+    void complete(ExecutionContext context, T result);
+
+    /**
+     * Processes the node without blocking
+     * @param context The execution context
+     * @return Completes when the outputs have been written to the context
+     */
+    default CompletableFuture<Void> processAsync(ExecutionContext context) {
+        return startAsync(context).thenAccept(result -> complete(context, result));
+    }
+}
@@ -4,7 +4,11 @@ import org.caselli.cognitiveworkflow.knowledge.model.node.EmbeddingsNodeMetamode
 import org.caselli.cognitiveworkflow.knowledge.model.node.NodeMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.EmbeddingsPort;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.Port;
+import org.caselli.cognitiveworkflow.operational.execution.BlockingCallExecutor;
+import org.caselli.cognitiveworkflow.operational.execution.Deadline;
+import org.caselli.cognitiveworkflow.operational.execution.DeadlineExceededException;
 import org.caselli.cognitiveworkflow.operational.execution.ExecutionContext;
+import org.caselli.cognitiveworkflow.operational.AI.AiClientRegistry;
 import org.caselli.cognitiveworkflow.operational.AI.factories.EmbeddingModelFactory;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.context.annotation.Scope;
@@ -16,11 +20,14 @@ import java.util.List;
 @Scope("prototype")
 public class EmbeddingsNodeInstance extends AiNodeInstance {
 
-    private EmbeddingModel embeddingModel;
+    /** Hold of the node on the shared EmbeddingModel of its configuration (acquired on the first call) */
+    private AiClientRegistry.Lease<EmbeddingModel> embeddingModelLease;
     private final EmbeddingModelFactory embeddingModelFactory;
+    private final BlockingCallExecutor blockingCallExecutor;
 
-    public EmbeddingsNodeInstance(EmbeddingModelFactory embeddingModelFactory) {
+    public EmbeddingsNodeInstance(EmbeddingModelFactory embeddingModelFactory, BlockingCallExecutor blockingCallExecutor) {
         this.embeddingModelFactory = embeddingModelFactory;
+        this.blockingCallExecutor = blockingCallExecutor;
     }
 
     @Override
@@ -46,7 +53,8 @@ public class EmbeddingsNodeInstance extends AiNodeInstance {
             processResultsToContext(context, null);
         } else {
             try {
-                float[] embedding = getEmbeddingsModel().embed(text);
+                float[] embedding = blockingCallExecutor.callWithin(Deadline.current(), "embedding call of node " + getId(),
+                        () -> getEmbeddingsModel().embed(text));
                 if (embedding != null) {
                     List<Double> embeddingList = new ArrayList<>(embedding.length);
                     for (float value : embedding) embeddingList.add((double) value);
@@ -55,6 +63,8 @@ public class EmbeddingsNodeInstance extends AiNodeInstance {
                 } else {
                     throw new RuntimeException("Spring AI EmbeddingModel returned null or empty output.");
                 }
+            } catch (DeadlineExceededException e) {
+                throw e;
             } catch (Exception e) {
                 logger.error("[Node {}]: Error processing Embedding Model response: {}", getId(), e.getMessage(), e);
                 throw new RuntimeException("Failed to generate embedding for text: " + text, e);
@@ -101,8 +111,8 @@ public class EmbeddingsNodeInstance extends AiNodeInstance {
     }
 
 
-    private EmbeddingModel getEmbeddingsModel(){
-        if (embeddingModel == null) {
+    private synchronized EmbeddingModel getEmbeddingsModel(){
+        if (embeddingModelLease == null) {
             var metamodel = getMetamodel();
 
             if (metamodel == null) {
@@ -118,18 +128,39 @@ public class EmbeddingsNodeInstance extends AiNodeInstance {
                 throw new IllegalArgumentException("LlmNodeInstance " + getId() + " initialization failed: model name is not specified in the metamodel.");
             }
 
-            this.embeddingModel = embeddingModelFactory.createEmbeddingModel(metamodel.getProvider(), metamodel.getModelName());
-            logger.info("[Node {}]: Created EmbeddingModel for provider {} and model {}", getId(), metamodel.getProvider(), metamodel.getModelName());
+            this.embeddingModelLease = embeddingModelFactory.acquireEmbeddingModel(metamodel.getProvider(), metamodel.getModelName(), null);
+            logger.info("[Node {}]: Acquired the shared EmbeddingModel for provider {} and model {}", getId(), metamodel.getProvider(), metamodel.getModelName());
+        }
+        return embeddingModelLease.get();
+    }
+
+    /**
+     * Releases the shared EmbeddingModel held by the node
+     */
+    private synchronized void releaseEmbeddingsModel() {
+        if (embeddingModelLease != null) {
+            embeddingModelLease.close();
+            embeddingModelLease = null;
         }
-        return embeddingModel;
     }
 
 
     @Override
-    public void handleRefreshNode(){
-        // Delete the current model
-        this.embeddingModel = null;
+    public synchronized void handleRefreshNode(){
+        // The model is kept if its configuration did not change
+        var metamodel = getMetamodel();
+        if (embeddingModelLease != null && metamodel.getProvider() != null
+                && embeddingModelFactory.isLeaseOf(embeddingModelLease, metamodel.getProvider(), metamodel.getModelName(), null))
+            return;
+
+        // Release the current model (the shared model is dropped if no other node holds it)
+        releaseEmbeddingsModel();
         // Build the new model
         getEmbeddingsModel();
     }
+
+    @Override
+    public void handleRemoveNode() {
+        releaseEmbeddingsModel();
+    }
 }
\ No newline at end of file
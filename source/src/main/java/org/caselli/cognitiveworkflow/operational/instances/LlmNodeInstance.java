@@ -2,13 +2,21 @@ package org.caselli.cognitiveworkflow.operational.instances;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import org.caselli.cognitiveworkflow.knowledge.model.node.LlmNodeMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.NodeMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.LlmPort;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.Port;
+import org.caselli.cognitiveworkflow.operational.execution.BlockingCallExecutor;
+import org.caselli.cognitiveworkflow.operational.execution.Deadline;
+import org.caselli.cognitiveworkflow.operational.execution.DeadlineExceededException;
 import org.caselli.cognitiveworkflow.operational.execution.ExecutionContext;
+import org.caselli.cognitiveworkflow.operational.observability.ResponseStream;
+import org.caselli.cognitiveworkflow.operational.AI.AiClientRegistry;
+import org.caselli.cognitiveworkflow.operational.AI.LlmResponseCache;
+import org.caselli.cognitiveworkflow.operational.AI.SemanticLlmCache;
 import org.caselli.cognitiveworkflow.operational.AI.factories.LLMModelFactory;
 import org.caselli.cognitiveworkflow.operational.AI.PortStructuredOutputConverter;
 import org.springframework.ai.chat.client.ChatClient;
@@ -18,10 +26,15 @@ import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.SystemPromptTemplate;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Setter
 @Getter
@@ -30,11 +43,22 @@ import java.util.Map;
 public class LlmNodeInstance extends AiNodeInstance {
 
     private static final ObjectMapper objectMapper = new ObjectMapper();
-    private ChatClient chatClient;
     private final LLMModelFactory llmModelFactory;
+    private final LlmResponseCache llmResponseCache;
+    private final SemanticLlmCache semanticLlmCache;
+    private final BlockingCallExecutor blockingCallExecutor;
 
-    public LlmNodeInstance(LLMModelFactory llmModelFactory) {
+    /** Hold of the node on the shared ChatClient of its configuration (acquired on the first call) */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private AiClientRegistry.Lease<ChatClient> chatClientLease;
+
+    public LlmNodeInstance(LLMModelFactory llmModelFactory, LlmResponseCache llmResponseCache, SemanticLlmCache semanticLlmCache,
+                           BlockingCallExecutor blockingCallExecutor) {
         this.llmModelFactory = llmModelFactory;
+        this.llmResponseCache = llmResponseCache;
+        this.semanticLlmCache = semanticLlmCache;
+        this.blockingCallExecutor = blockingCallExecutor;
     }
 
     @Override
@@ -55,7 +79,8 @@ public class LlmNodeInstance extends AiNodeInstance {
     public void process(ExecutionContext context) {
         logger.info("[Node {}]: Processing LLM Node Instance", getId());
 
-        List<Message> messages = buildPromptMessages(context);
+        String userInput = getUserInput(context);
+        List<Message> messages = buildPromptMessages(context, userInput);
         Port responsePort = getResponsePort();
 
         if(responsePort == null) {
@@ -64,12 +89,50 @@ public class LlmNodeInstance extends AiNodeInstance {
         }
 
         try {
-            // Use the helper method that handles everything
-            Object result = PortStructuredOutputConverter.processWithChatClient(getChatClient(), messages, responsePort);
+            // Identical prompts reuse the cached response if the node opted in
+            LlmNodeMetamodel metamodel = getMetamodel();
+            boolean cached = Boolean.TRUE.equals(metamodel.getCacheResponses());
+            Duration ttl = cached && metamodel.getCacheTtlSeconds() != null ? Duration.ofSeconds(metamodel.getCacheTtlSeconds()) : null;
+
+            // Streaming nodes publish the tokens of the response while it is generated
+            ResponseStream stream = ResponseStream.current();
+            TokenPublisher onToken = Boolean.TRUE.equals(metamodel.getStreamResponse()) ? new TokenPublisher(stream, responsePort.getKey()) : null;
+
+            Supplier<String> call = () -> PortStructuredOutputConverter.callWithChatClient(getChatClient(), messages, responsePort,
+                    cached ? llmResponseCache : null, getCacheModelKey(), ttl, onToken);
+
+            Object result = blockingCallExecutor.callWithin(Deadline.current(), "LLM call of node " + getId(), () -> {
+                String responseText;
+                // Paraphrases of a previous user prompt reuse its response if the node opted in
+                if (Boolean.TRUE.equals(metamodel.getSemanticCache()) && userInput != null && !userInput.isEmpty()) {
+                    SemanticLlmCache.Answer<String> answer = semanticLlmCache.getOrCall("llm-node:" + metamodel.getId(),
+                            getSemanticCacheVersion(messages, responsePort), userInput, metamodel.getSemanticCacheThreshold(), String.class,
+                            () -> {
+                                String text = call.get();
+                                // Responses that do not match the schema are not cached
+                                PortStructuredOutputConverter.processResponse(text, responsePort);
+                                return text;
+                            },
+                            (cachedText, freshText) -> Objects.equals(PortStructuredOutputConverter.processResponse(cachedText, responsePort),
+                                    PortStructuredOutputConverter.processResponse(freshText, responsePort)));
+                    if (answer.isHit()) logger.info("[Node {}]: Reused the response of a similar prompt (similarity {})", getId(), answer.similarity());
+                    responseText = answer.value();
+                }
+                else responseText = call.get();
+
+                // A cached response is published at once
+                if (onToken != null && !onToken.isStarted()) onToken.accept(responseText);
+
+                return PortStructuredOutputConverter.processResponse(responseText, responsePort);
+            });
 
             // Store the result in the context
             context.put(responsePort.getKey(), result);
+            if (onToken != null) stream.complete(responsePort.getKey(), result);
             logger.debug("[Node {}]: Stored result for port {} in context", getId(), responsePort.getKey());
+        } catch (DeadlineExceededException e) {
+            // Timeouts are reported to the executor, not swallowed
+            throw e;
         } catch (Exception e) {
             // Error handling
             logger.error("[Node {}]: Error processing LLM response: {}", getId(), e.getMessage(), e);
@@ -78,7 +141,7 @@ public class LlmNodeInstance extends AiNodeInstance {
 
 
 
-    private List<Message> buildPromptMessages(ExecutionContext context){
+    private List<Message> buildPromptMessages(ExecutionContext context, String userInput){
         List<Message> promptContents = new LinkedList<>();
 
         // SYSTEM PROMPT
@@ -92,7 +155,6 @@ public class LlmNodeInstance extends AiNodeInstance {
         }
 
         // USER PROMPT
-        String userInput = getUserInput(context);
         if(userInput != null && !userInput.isEmpty()){
             UserMessage userMessage = new UserMessage(userInput);
             promptContents.add(userMessage);
@@ -162,8 +224,8 @@ public class LlmNodeInstance extends AiNodeInstance {
 
 
 
-    private ChatClient getChatClient(){
-        if (chatClient == null) {
+    private synchronized ChatClient getChatClient(){
+        if (chatClientLease == null) {
             LlmNodeMetamodel metamodel = getMetamodel();
             if (metamodel == null) {
                 logger.error("[Node {}]: LlmNodeInstance requires a metamodel during chat client initialization", getId());
@@ -179,13 +241,71 @@ public class LlmNodeInstance extends AiNodeInstance {
             }
 
             var config = metamodel.getParameters();
-            this.chatClient = llmModelFactory.createChatClient(metamodel.getProvider(), metamodel.getModelName(), null, config);
+            this.chatClientLease = llmModelFactory.acquireChatClient(metamodel.getProvider(), metamodel.getModelName(), null, config);
 
-            logger.info("[Node {}]: Created ChatClient for provider {} and model {}", getId(), metamodel.getProvider(), metamodel.getModelName());
+            logger.info("[Node {}]: Acquired the shared ChatClient for provider {} and model {}", getId(), metamodel.getProvider(), metamodel.getModelName());
             if (config != null) logger.info("[Node {}]: LLM Parameters - Temperature: {}, TopP: {}, MaxTokens: {}", getId(), config.getTemperature(), config.getTopP(), config.getMaxTokens());
         }
 
-        return chatClient;
+        return chatClientLease.get();
+    }
+
+    /**
+     * @return The model and its options, as part of the key of the cached responses
+     */
+    private String getCacheModelKey() {
+        LlmNodeMetamodel metamodel = getMetamodel();
+        var options = metamodel.getParameters();
+        return metamodel.getProvider().toLowerCase() + "|" + metamodel.getModelName()
+                + (options != null ? "|" + options.getTemperature() + "|" + options.getTopP() + "|" + options.getMaxTokens() : "");
+    }
+
+    /**
+     * The semantic cache compares only the user prompts: everything else the response depends on is part of the version
+     * @param messages The prompt messages
+     * @param responsePort The response port
+     * @return The version of the responses of the node for these messages
+     */
+    private String getSemanticCacheVersion(List<Message> messages, Port responsePort) {
+        List<Message> systemMessages = messages.stream().filter(message -> !(message instanceof UserMessage)).toList();
+        return LlmResponseCache.key(getCacheModelKey() + "|" + getMetamodel().getVersion(), systemMessages, responsePort.getSchema());
+    }
+
+    /**
+     * Publishes the tokens of a response to the stream of the node, and records the time to its first token
+     */
+    private static final class TokenPublisher implements Consumer<String> {
+        private final ResponseStream stream;
+        private final String portKey;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        TokenPublisher(ResponseStream stream, String portKey) {
+            this.stream = stream;
+            this.portKey = portKey;
+        }
+
+        @Override
+        public void accept(String token) {
+            // Some providers start the stream with empty chunks
+            if (token == null || token.isEmpty()) return;
+            if (started.compareAndSet(false, true)) stream.recordTimeToFirstToken(Duration.ofNanos(System.nanoTime() - startNanos));
+            stream.publish(portKey, token);
+        }
+
+        boolean isStarted() {
+            return started.get();
+        }
+    }
+
+    /**
+     * Releases the shared ChatClient held by the node
+     */
+    private synchronized void releaseChatClient() {
+        if (chatClientLease != null) {
+            chatClientLease.close();
+            chatClientLease = null;
+        }
     }
 
 
@@ -206,10 +326,21 @@ public class LlmNodeInstance extends AiNodeInstance {
 
 
     @Override
-    public void handleRefreshNode(){
-        // Delete the current model
-        this.chatClient = null;
+    public synchronized void handleRefreshNode(){
+        // The client is kept if the configuration of the model did not change
+        LlmNodeMetamodel metamodel = getMetamodel();
+        if (chatClientLease != null && metamodel.getProvider() != null
+                && llmModelFactory.isLeaseOf(chatClientLease, metamodel.getProvider(), metamodel.getModelName(), null, metamodel.getParameters()))
+            return;
+
+        // Release the current model (the shared client is dropped if no other node holds it)
+        releaseChatClient();
         // Build the new model
         getChatClient();
     }
+
+    @Override
+    public void handleRemoveNode() {
+        releaseChatClient();
+    }
 }
\ No newline at end of file
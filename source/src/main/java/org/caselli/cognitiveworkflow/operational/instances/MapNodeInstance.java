@@ -0,0 +1,201 @@
+package org.caselli.cognitiveworkflow.operational.instances;
+
+import org.caselli.cognitiveworkflow.knowledge.MOP.WorkflowMetamodelService;
+import org.caselli.cognitiveworkflow.knowledge.model.node.MapNodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.NodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.Port;
+import org.caselli.cognitiveworkflow.knowledge.model.workflow.WorkflowMetamodel;
+import org.caselli.cognitiveworkflow.operational.execution.*;
+import org.caselli.cognitiveworkflow.operational.observability.ObservabilityLevel;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Fan-out node: executes a node or a sub-workflow for every item of an array, concurrently,
+ * and gathers the results in order.
+ * <p>
+ * Node instances are not thread-safe: every item runs on its own, unregistered, instances of the item node
+ * (or of the nodes of the sub-workflow), on a context holding only their inputs.
+ * </p>
+ */
+@Component
+@Scope("prototype")
+public class MapNodeInstance extends FlowNodeInstance {
+
+    private final NodeInstanceManager nodeInstanceManager;
+    private final WorkflowInstanceManager workflowInstanceManager;
+    private final WorkflowMetamodelService workflowMetamodelService;
+    private final WorkflowExecutor workflowExecutor;
+    private final FanOutExecutor fanOutExecutor;
+
+    public MapNodeInstance(NodeInstanceManager nodeInstanceManager,
+                           WorkflowInstanceManager workflowInstanceManager,
+                           WorkflowMetamodelService workflowMetamodelService,
+                           WorkflowExecutor workflowExecutor,
+                           FanOutExecutor fanOutExecutor) {
+        this.nodeInstanceManager = nodeInstanceManager;
+        this.workflowInstanceManager = workflowInstanceManager;
+        this.workflowMetamodelService = workflowMetamodelService;
+        this.workflowExecutor = workflowExecutor;
+        this.fanOutExecutor = fanOutExecutor;
+    }
+
+    @Override
+    public MapNodeMetamodel getMetamodel() {
+        return (MapNodeMetamodel) super.getMetamodel();
+    }
+
+    @Override
+    public void setMetamodel(NodeMetamodel metamodel) {
+        if (!(metamodel instanceof MapNodeMetamodel)) throw new IllegalArgumentException("MapNodeInstance requires MapNodeMetamodel");
+        super.setMetamodel(metamodel);
+    }
+
+    @Override
+    public void process(ExecutionContext context) throws Exception {
+        MapNodeMetamodel metamodel = getMetamodel();
+        logger.info("[Node {}]: Processing Map Node Instance", getId());
+
+        List<?> items = getItems(context, metamodel);
+
+        // Resolve the target once: every item runs on its own instances of the same metamodels
+        ItemProcessor processor = resolveItemProcessor(metamodel);
+
+        // Copy the inputs of the items once, on this thread: every item then gets its own copy of them
+        ExecutionContext inputs = context.copyKeys(processor.inputKeys());
+
+        // Items run on other threads: they inherit the deadline of the map node and its other execution scopes
+        ExecutionScopes scopes = ExecutionScopes.capture();
+
+        List<Callable<Object>> tasks = new ArrayList<>(items.size());
+        for (Object item : items) {
+            tasks.add(scopes.wrap(() -> {
+                scopes.deadline().check("map item");
+                ExecutionContext itemContext = inputs.copy();
+                itemContext.put(metamodel.getItemInputKey(), item);
+                processor.task().process(itemContext);
+                return itemContext.get(metamodel.getItemOutputKey());
+            }));
+        }
+
+        int parallelism = metamodel.getMaxParallelism() != null ? metamodel.getMaxParallelism() : 1;
+        MapNodeMetamodel.ItemErrorPolicy policy = metamodel.getErrorPolicy() != null ? metamodel.getErrorPolicy() : MapNodeMetamodel.ItemErrorPolicy.FAIL;
+
+        logger.info("[Node {}]: Processing {} items with parallelism {}", getId(), items.size(), parallelism);
+        List<FanOutExecutor.Outcome<Object>> outcomes = fanOutExecutor.invokeAll(tasks, parallelism, policy == MapNodeMetamodel.ItemErrorPolicy.FAIL);
+
+        // Gather the results in the order of the items
+        List<Object> results = new ArrayList<>(items.size());
+        List<Map<String, Object>> errors = new ArrayList<>();
+
+        for (int i = 0; i < outcomes.size(); i++) {
+            FanOutExecutor.Outcome<Object> outcome = outcomes.get(i);
+            if (outcome != null && outcome.isSuccess()) {
+                results.add(outcome.result());
+                continue;
+            }
+            // Items cancelled after a failure
+            if (outcome == null) continue;
+
+            Throwable error = outcome.error();
+            logger.warn("[Node {}]: Item {} failed: {}", getId(), i, error.getMessage());
+
+            if (policy == MapNodeMetamodel.ItemErrorPolicy.FAIL)
+                throw new RuntimeException("Map node " + getId() + " failed on item " + i + ": " + error.getMessage(), error);
+
+            Map<String, Object> itemError = new HashMap<>();
+            itemError.put("index", i);
+            itemError.put("error", error.getMessage());
+            errors.add(itemError);
+
+            if (policy == MapNodeMetamodel.ItemErrorPolicy.NULL) results.add(null);
+        }
+
+        context.put(metamodel.getResultsPortKey(), results);
+        if (metamodel.getErrorsPortKey() != null) context.put(metamodel.getErrorsPortKey(), errors);
+
+        logger.info("[Node {}]: Map completed: {} results, {} errors", getId(), results.size(), errors.size());
+    }
+
+    /**
+     * Reads the items from the items port
+     */
+    private List<?> getItems(ExecutionContext context, MapNodeMetamodel metamodel) {
+        Object value = context.get(metamodel.getItemsPortKey());
+        if (value == null) return List.of();
+        if (value instanceof List<?> list) return list;
+        if (value instanceof Object[] array) return Arrays.asList(array);
+        throw new IllegalArgumentException("Map node " + getId() + " requires an array in port '" + metamodel.getItemsPortKey() + "'");
+    }
+
+    /**
+     * Resolves the node or the workflow to execute for each item.
+     * Every item creates its own instances from the registered ones, and releases them when it completes.
+     */
+    private ItemProcessor resolveItemProcessor(MapNodeMetamodel metamodel) {
+        if (metamodel.getItemNodeId() != null) {
+            NodeInstance node = nodeInstanceManager.getOrCreate(metamodel.getItemNodeId());
+            NodeMetamodel itemMetamodel = node.getMetamodel();
+            return new ItemProcessor(inputKeys(List.of(node)), itemContext -> {
+                NodeInstance itemNode = nodeInstanceManager.createDetached(itemMetamodel);
+                applyInputDefaults(itemNode, itemContext);
+                nodeInstanceManager.markRunning(itemNode.getId());
+                try {
+                    itemNode.process(itemContext);
+                } finally {
+                    nodeInstanceManager.markFinished(itemNode.getId());
+                    itemNode.handleRemoveNode();
+                }
+            });
+        }
+
+        if (metamodel.getItemWorkflowId() != null) {
+            WorkflowMetamodel workflowMetamodel = workflowMetamodelService.getWorkflowById(metamodel.getItemWorkflowId())
+                    .orElseThrow(() -> new RuntimeException("Workflow metamodel not found: " + metamodel.getItemWorkflowId()));
+            WorkflowInstance workflow = workflowInstanceManager.getOrCreate(workflowMetamodel);
+            return new ItemProcessor(inputKeys(workflow.getNodeInstances()), itemContext -> {
+                WorkflowInstance itemWorkflow = workflowInstanceManager.createDetached(workflow);
+                try {
+                    workflowExecutor.execute(itemWorkflow, itemContext, ObservabilityLevel.OFF);
+                } finally {
+                    itemWorkflow.getNodeInstances().forEach(NodeInstance::handleRemoveNode);
+                }
+            });
+        }
+
+        throw new IllegalArgumentException("Map node " + getId() + " requires either itemNodeId or itemWorkflowId");
+    }
+
+    private void applyInputDefaults(NodeInstance node, ExecutionContext itemContext) {
+        for (Port port : node.getMetamodel().getInputPorts()) {
+            if (port.getDefaultValue() != null && !itemContext.containsKey(port.getKey()))
+                itemContext.put(port.getKey(), port.getDefaultValue());
+        }
+    }
+
+    /**
+     * Keys of the input ports of the nodes, the only values of the context the items can read
+     */
+    private static Set<String> inputKeys(List<NodeInstance> nodes) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (NodeInstance node : nodes) {
+            for (Port port : node.getMetamodel().getInputPorts()) keys.add(port.getKey());
+        }
+        return keys;
+    }
+
+    /**
+     * The processing of an item
+     * @param inputKeys The keys of the parent context copied into the context of every item
+     * @param task Processes the context of an item
+     */
+    private record ItemProcessor(Set<String> inputKeys, ItemTask task) {
+    }
+
+    @FunctionalInterface
+    private interface ItemTask {
+        void process(ExecutionContext itemContext) throws Exception;
+    }
+}
@@ -28,4 +28,11 @@ public abstract class NodeInstance {
     public void handleRefreshNode(){
         // To override
     }
+
+    /**
+     * Method to release the resources held by the node when its instance is discarded
+     */
+    public void handleRemoveNode(){
+        // To override
+    }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package org.caselli.cognitiveworkflow.operational.instances;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Getter;
@@ -8,23 +9,44 @@ import org.caselli.cognitiveworkflow.knowledge.model.node.NodeMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.RestNodeMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortType;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.RestPort;
+import org.caselli.cognitiveworkflow.operational.execution.Deadline;
 import org.caselli.cognitiveworkflow.operational.execution.ExecutionContext;
+import org.caselli.cognitiveworkflow.operational.http.HttpClientManager;
+import org.caselli.cognitiveworkflow.operational.http.HttpResponseCache;
+import org.caselli.cognitiveworkflow.operational.http.JsonFieldExtractor;
+import org.caselli.cognitiveworkflow.operational.http.RequestCoalescer;
+import org.caselli.cognitiveworkflow.operational.http.ResilientRequestExecutor;
+import org.caselli.cognitiveworkflow.operational.observability.RequestAttemptRecorder;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.Map.Entry;
 
@@ -32,14 +54,44 @@ import java.util.Map.Entry;
 @Getter
 @Component
 @Scope("prototype")
-public class RestNodeInstance extends ToolNodeInstance {
+public class RestNodeInstance extends ToolNodeInstance implements AsyncNodeInstance<ResponseEntity<String>> {
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    private final HttpClientManager httpClientManager;
+
+    private final HttpResponseCache responseCache;
+
+    private final RequestCoalescer requestCoalescer;
+
+    private final ResilientRequestExecutor resilientRequestExecutor;
+
     private RestTemplate restTemplate;
 
+    @Autowired
+    public RestNodeInstance(HttpClientManager httpClientManager, HttpResponseCache responseCache, RequestCoalescer requestCoalescer,
+                            ResilientRequestExecutor resilientRequestExecutor) {
+        this.httpClientManager = httpClientManager;
+        this.responseCache = responseCache;
+        this.requestCoalescer = requestCoalescer;
+        this.resilientRequestExecutor = resilientRequestExecutor;
+        // Requests go through the shared pooled client, with the timeouts of the current metamodel
+        this.restTemplate = new RestTemplate(httpClientManager.requestFactory(this::getMetamodel));
+        this.restTemplate.getInterceptors().add(httpClientManager.responseSizeGuard(this::getMetamodel));
+    }
+
+    /**
+     * Creates a REST node with its own response cache, coalescing and retry budget, for use outside of the Spring context
+     */
+    public RestNodeInstance(HttpClientManager httpClientManager) {
+        this(httpClientManager, HttpResponseCache.withDefaults(), new RequestCoalescer(), ResilientRequestExecutor.withDefaults());
+    }
+
+    /**
+     * Creates a REST node with its own HTTP client, for use outside of the Spring context
+     */
     public RestNodeInstance() {
-        this.restTemplate = new RestTemplate();
+        this(HttpClientManager.withDefaults());
     }
 
     @Override
@@ -60,6 +112,217 @@ public class RestNodeInstance extends ToolNodeInstance {
 
         logger.info("[Node {}]: Processing REST request.", getId());
 
+        // Execute request
+        RestRequest request = buildRequest(context);
+        ResponseEntity<String> response = exchange(request);
+
+        // Store response in context
+        handleOutputPorts(context, response);
+
+        logger.info("[Node {}]: REST request processed successfully.", getId());
+    }
+
+    /**
+     * Sends the same request as {@link #process} through the non-blocking client, without waiting for the response
+     * @param context The execution context.
+     * @return The pending response.
+     */
+    @Override
+    public CompletableFuture<ResponseEntity<String>> startAsync(ExecutionContext context) {
+
+        logger.info("[Node {}]: Sending REST request without blocking.", getId());
+
+        RestRequest request = buildRequest(context);
+
+        // Fresh cached responses skip the network, stale ones are revalidated
+        HttpResponseCache.Lookup cached = lookupCache(request);
+        if (cached != null && cached.isFresh()) return CompletableFuture.completedFuture(cached.getResponse());
+
+        Deadline.current().check("REST request to " + request.uri());
+
+        HttpMethod method = convertToHttpMethod(getMetamodel().getInvocationMethod());
+        HttpHeaders headers = requestHeaders(request, cached);
+        byte[] body = serializeBody(request);
+        RequestAttemptRecorder recorder = RequestAttemptRecorder.current();
+        Supplier<CompletableFuture<ResponseEntity<String>>> attempt = () -> httpClientManager
+                .executeAsync(getMetamodel(), method, request.uri(), headers, body);
+        Supplier<CompletableFuture<ResponseEntity<String>>> send = () -> (ResilientRequestExecutor.applies(getMetamodel())
+                ? resilientRequestExecutor.executeAsync(getMetamodel(), request.uri(), recorder, attempt)
+                : attempt.get())
+                .thenApply(response -> updateCache(request, cached, response));
+
+        if (!coalescesRequests()) return send.get();
+        return requestCoalescer.executeAsync(RequestCoalescer.key(method, request.uri(), headers, body), send);
+    }
+
+    /**
+     * Sends the request of the node through the blocking client, going through the HTTP cache and sharing
+     * the identical requests in flight if the node allows it. Requests are retried and hedged as the policies of
+     * the node allow.
+     * When the node only outputs fields of the body, they are extracted while the body is streamed from the
+     * connection, and the body itself is never buffered (see {@link ExtractedResponse}).
+     * @param request The request.
+     * @return The response.
+     */
+    private ResponseEntity<String> exchange(RestRequest request) {
+        // Fresh cached responses skip the network, stale ones are revalidated
+        HttpResponseCache.Lookup cached = lookupCache(request);
+        if (cached != null && cached.isFresh()) return cached.getResponse();
+
+        RestNodeMetamodel.InvocationMethod method = getMetamodel().getInvocationMethod();
+        HttpHeaders headers = requestHeaders(request, cached);
+        HttpEntity<Object> entity = new HttpEntity<>(request.body(), headers);
+
+        // The cache stores whole bodies, so cached nodes cannot stream
+        Set<String> streamedFields = cachesResponses() ? null : streamedBodyFields();
+        Supplier<ResponseEntity<String>> attempt = withRetries(request, headers, streamedFields != null
+                ? () -> executeRequest(request.uri(), method, entity, streamedFields)
+                : () -> executeRequest(request.uri(), method, entity));
+        Supplier<ResponseEntity<String>> send = streamedFields != null
+                ? attempt
+                : () -> updateCache(request, cached, attempt.get());
+
+        if (!coalescesRequests()) return send.get();
+
+        // Responses with extracted fields are shared only by the requests extracting the same fields
+        String key = RequestCoalescer.key(convertToHttpMethod(method), request.uri(), headers, serializeBody(request));
+        if (streamedFields != null) key += "\n" + new TreeSet<>(streamedFields);
+        return requestCoalescer.execute(key, send);
+    }
+
+    /**
+     * @param request The request.
+     * @param headers The headers actually sent.
+     * @param attempt Sends the request through the blocking client.
+     * @return Sends the request retrying and hedging it, if the node has a policy for it
+     */
+    private Supplier<ResponseEntity<String>> withRetries(RestRequest request, HttpHeaders headers, Supplier<ResponseEntity<String>> attempt) {
+        if (!ResilientRequestExecutor.applies(getMetamodel())) return attempt;
+
+        RequestAttemptRecorder recorder = RequestAttemptRecorder.current();
+        HttpMethod method = convertToHttpMethod(getMetamodel().getInvocationMethod());
+        return () -> resilientRequestExecutor.execute(getMetamodel(), request.uri(), recorder, attempt,
+                () -> httpClientManager.executeAsync(getMetamodel(), method, request.uri(), headers, serializeBody(request)));
+    }
+
+    @Override
+    public void complete(ExecutionContext context, ResponseEntity<String> response) {
+        // Store response in context
+        handleOutputPorts(context, response);
+
+        logger.info("[Node {}]: REST request processed successfully.", getId());
+    }
+
+    /**
+     * @return True if the responses of the node go through the HTTP cache: only GET nodes can opt in
+     */
+    private boolean cachesResponses() {
+        return Boolean.TRUE.equals(getMetamodel().getCacheResponses())
+                && getMetamodel().getInvocationMethod() == RestNodeMetamodel.InvocationMethod.GET;
+    }
+
+    /**
+     * @return True if the requests of the node share the identical requests in flight: by default only the
+     * idempotent methods do, the others must opt in
+     */
+    private boolean coalescesRequests() {
+        Boolean coalesce = getMetamodel().getCoalesceRequests();
+        return coalesce != null ? coalesce : getMetamodel().getInvocationMethod().isIdempotent();
+    }
+
+    /**
+     * @param request The request.
+     * @return The response stored in the HTTP cache, or null if there is none or the node does not use the cache
+     */
+    private HttpResponseCache.Lookup lookupCache(RestRequest request) {
+        if (!cachesResponses()) return null;
+
+        HttpResponseCache.Lookup cached = responseCache.lookup(request.uri(), request.headers());
+        if (cached != null && cached.isFresh()) logger.info("[Node {}]: Response served from the HTTP cache.", getId());
+        return cached;
+    }
+
+    /**
+     * @param request The request.
+     * @param cached The stale cached response to revalidate (may be null)
+     * @param response The response of the network.
+     * @return The response to use, after storing or revalidating it in the HTTP cache
+     */
+    private ResponseEntity<String> updateCache(RestRequest request, HttpResponseCache.Lookup cached, ResponseEntity<String> response) {
+        if (!cachesResponses()) return response;
+        return responseCache.update(request.uri(), request.headers(), cached, response);
+    }
+
+    /**
+     * @param request The request.
+     * @param cached The stale cached response to revalidate (may be null)
+     * @return The headers actually sent: the ones of the request, with the validators of the cached response and
+     * the JSON content type the RestTemplate would add
+     */
+    private HttpHeaders requestHeaders(RestRequest request, HttpResponseCache.Lookup cached) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(cachesResponses() ? responseCache.conditionalHeaders(cached, request.headers()) : request.headers());
+        if (headers.getContentType() == null) headers.setContentType(MediaType.APPLICATION_JSON);
+        return headers;
+    }
+
+    /**
+     * @param request The request.
+     * @return The body of the request, serialized as JSON
+     */
+    private byte[] serializeBody(RestRequest request) {
+        try {
+            return objectMapper.writeValueAsBytes(request.body());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize the request body of node " + getId(), e);
+        }
+    }
+
+    /**
+     * @return The keys of the RES_BODY_FIELD output ports if the node does not output the full body
+     * (so the body can be streamed), null otherwise
+     */
+    private Set<String> streamedBodyFields() {
+        List<RestPort> outputPorts = getMetamodel().getOutputPorts();
+        if (outputPorts == null) return null;
+
+        Set<String> fields = new HashSet<>();
+        for (RestPort outputPort : outputPorts) {
+            if (outputPort == null || outputPort.getRole() == null) continue;
+            if (outputPort.getRole() == RestPort.RestPortRole.RES_FULL_BODY) return null;
+            if (outputPort.getRole() == RestPort.RestPortRole.RES_BODY_FIELD) fields.add(outputPort.getKey());
+        }
+        return fields.isEmpty() ? null : fields;
+    }
+
+    /**
+     * A response whose body was not kept: only the fields needed by the RES_BODY_FIELD output ports were extracted
+     * from it while it was read
+     */
+    private static final class ExtractedResponse extends ResponseEntity<String> {
+        /** The extracted fields, or null if the body was empty or could not be parsed as a JSON object */
+        private final Map<String, Object> fields;
+
+        ExtractedResponse(HttpHeaders headers, HttpStatusCode status, Map<String, Object> fields) {
+            super(headers, status);
+            this.fields = fields;
+        }
+    }
+
+    /**
+     * A request of the node, built from the metamodel and the input ports
+     * @param uri The final URI, with the path variables and the query parameters
+     * @param headers The request headers
+     * @param body The request body
+     */
+    private record RestRequest(URI uri, HttpHeaders headers, Object body) {}
+
+    /**
+     * Builds the request of the node from the metamodel and the input ports
+     * @param context The execution context.
+     * @return The request.
+     */
+    private RestRequest buildRequest(ExecutionContext context) {
         RestNodeMetamodel metamodel = getMetamodel();
         String serviceUri = metamodel.getUri();
         RestNodeMetamodel.InvocationMethod invocationMethod = metamodel.getInvocationMethod();
@@ -96,14 +359,9 @@ public class RestNodeInstance extends ToolNodeInstance {
 
         if(body == null) body = new HashMap<>();
 
-        // Execute request
-        HttpEntity<?> httpEntity = new HttpEntity<>(body, httpHeaders);
-        ResponseEntity<String> response = executeRequest(finalUri.toString(), invocationMethod, httpEntity);
-
-        // Store response in context
-        handleOutputPorts(context, response);
-
-        logger.info("[Node {}]: REST request processed successfully.", getId());
+        // Expanded as the RestTemplate would expand the string
+        URI expandedUri = restTemplate.getUriTemplateHandler().expand(finalUri.toString());
+        return new RestRequest(expandedUri, httpHeaders, body);
     }
 
 
@@ -114,11 +372,57 @@ public class RestNodeInstance extends ToolNodeInstance {
      * @param httpEntity The HTTP entity containing the request body and headers.
      * @return The response entity from the service.
      */
-    private ResponseEntity<String> executeRequest(String serviceUri, RestNodeMetamodel.InvocationMethod method, HttpEntity<?> httpEntity) {
+    private ResponseEntity<String> executeRequest(URI serviceUri, RestNodeMetamodel.InvocationMethod method, HttpEntity<?> httpEntity) {
         HttpMethod httpMethod = convertToHttpMethod(method);
+        Deadline.current().check("REST request to " + serviceUri);
         return restTemplate.exchange(serviceUri, httpMethod, httpEntity, String.class);
     }
 
+    /**
+     * Executes the HTTP request using RestTemplate, extracting some fields of the JSON body while it is read
+     * from the connection.
+     * @param serviceUri The URI of the service to be invoked.
+     * @param method The HTTP method to be used (GET, POST, etc.).
+     * @param httpEntity The HTTP entity containing the request body and headers.
+     * @param fields The top-level fields of the body to extract.
+     * @return The response entity from the service, without its body.
+     */
+    private ResponseEntity<String> executeRequest(URI serviceUri, RestNodeMetamodel.InvocationMethod method, HttpEntity<?> httpEntity, Set<String> fields) {
+        HttpMethod httpMethod = convertToHttpMethod(method);
+        Deadline.current().check("REST request to " + serviceUri);
+        // Error statuses are handled by the RestTemplate before the extraction
+        return restTemplate.execute(serviceUri, httpMethod, restTemplate.httpEntityCallback(httpEntity, String.class),
+                response -> new ExtractedResponse(response.getHeaders(), response.getStatusCode(), extractBodyFields(response, fields)));
+    }
+
+    /**
+     * Extracts the fields of a JSON body from the stream of the response
+     * @param response The response.
+     * @param fields The top-level fields to extract.
+     * @return The extracted fields, or null if the body is empty or is not a JSON object
+     * @throws IOException if the body cannot be read (e.g. it exceeds the maximum response size)
+     */
+    private Map<String, Object> extractBodyFields(ClientHttpResponse response, Set<String> fields) throws IOException {
+        InputStream body = response.getBody();
+        Map<String, Object> extracted;
+        try {
+            // Jackson detects the UTF encodings by itself, other charsets must be decoded
+            MediaType contentType = response.getHeaders().getContentType();
+            Charset charset = contentType != null ? contentType.getCharset() : null;
+            extracted = charset != null && !charset.name().startsWith("UTF")
+                    ? JsonFieldExtractor.extract(objectMapper, new InputStreamReader(body, charset), fields)
+                    : JsonFieldExtractor.extract(objectMapper, body, fields);
+            logger.debug("[Node {}]: Successfully extracted the body fields from the response stream.", getId());
+        } catch (JsonProcessingException e) {
+            logger.warn("[Node {}]: Could not parse response body for field extraction: {}", getId(), e.getMessage());
+            extracted = null;
+        }
+
+        // Consume the rest of the body, so the connection can be reused
+        body.transferTo(OutputStream.nullOutputStream());
+        return extracted;
+    }
+
     /**
      * Converts the RestNodeMetamodel.InvocationMethod to HttpMethod.
      * @param method The invocation method from the metamodel.
@@ -335,15 +639,11 @@ public class RestNodeInstance extends ToolNodeInstance {
         int responseStatus = response.getStatusCode().value();
 
         Map<String, Object> parsedResponseBody = null;
-        if (responseBody != null && !responseBody.trim().isEmpty()) {
-            try {
-                // Parse the body as a JSON
-                parsedResponseBody = objectMapper.readValue(responseBody, new TypeReference<>() {});
-                logger.debug("[Node {}]: Successfully parsed response body.", getId());
-            } catch (Exception e) {
-                logger.warn("[Node {}]: Could not parse response body for field extraction: {}", getId(), e.getMessage());
-                parsedResponseBody = null;
-            }
+        if (response instanceof ExtractedResponse extractedResponse) {
+            // The fields were extracted while the body was streamed
+            parsedResponseBody = extractedResponse.fields;
+        } else if (responseBody != null && !responseBody.trim().isEmpty()) {
+            parsedResponseBody = parseBody(responseBody, outputPorts);
         }
 
 
@@ -388,7 +688,9 @@ public class RestNodeInstance extends ToolNodeInstance {
                         valueToSet = parsedResponseBody.get(outputPort.getKey());
                         logger.debug("[Node {}]: Extracted body field '{}' with value: {}.", getId(), outputPort.getKey(), valueToSet);
                     } else {
-                        if (responseBody == null || responseBody.trim().isEmpty())
+                        if (response instanceof ExtractedResponse)
+                            logger.debug("[Node {}]: Cannot extract body field '{}' because response body is empty or not a JSON object.", getId(), outputPort.getKey());
+                        else if (responseBody == null || responseBody.trim().isEmpty())
                             logger.debug("[Node {}]: Cannot extract body field '{}' because response body is null or empty.", getId(), outputPort.getKey());
                         else
                             logger.warn("[Node {}]: Cannot extract body field '{}' because response body was not successfully parsed into a Map-like structure.", getId(), outputPort.getKey());
@@ -404,4 +706,34 @@ public class RestNodeInstance extends ToolNodeInstance {
             logger.info("[Node {}]: Set output port '{}' with value: {}.", getId(), outputPort.getKey(), valueToSet);
         }
     }
+
+    /**
+     * Parses a JSON response body: in full if an output port needs the whole object, otherwise only the fields
+     * needed by the RES_BODY_FIELD output ports are extracted
+     * @param responseBody The response body.
+     * @param outputPorts The output ports of the node.
+     * @return The parsed body (or its needed fields), or null if it is not a JSON object or no port needs it
+     */
+    private Map<String, Object> parseBody(String responseBody, List<RestPort> outputPorts) {
+        boolean fullBody = false;
+        Set<String> fields = new HashSet<>();
+        for (RestPort outputPort : outputPorts) {
+            if (outputPort == null || outputPort.getRole() == null) continue;
+            if (outputPort.getRole() == RestPort.RestPortRole.RES_FULL_BODY && outputPort.getSchema().getType() == PortType.OBJECT) fullBody = true;
+            else if (outputPort.getRole() == RestPort.RestPortRole.RES_BODY_FIELD) fields.add(outputPort.getKey());
+        }
+        if (!fullBody && fields.isEmpty()) return null;
+
+        try {
+            // Parse the body as a JSON
+            Map<String, Object> parsed = fullBody
+                    ? objectMapper.readValue(responseBody, new TypeReference<>() {})
+                    : JsonFieldExtractor.extract(objectMapper, responseBody, fields);
+            logger.debug("[Node {}]: Successfully parsed response body.", getId());
+            return parsed;
+        } catch (Exception e) {
+            logger.warn("[Node {}]: Could not parse response body for field extraction: {}", getId(), e.getMessage());
+            return null;
+        }
+    }
 }
@@ -1,28 +1,40 @@
 package org.caselli.cognitiveworkflow.operational.instances;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.mongodb.ConnectionString;
-import com.mongodb.MongoClientSettings;
-import com.mongodb.client.MongoClient;
-import com.mongodb.client.MongoClients;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import com.mongodb.client.AggregateIterable;
+import org.bson.BsonArray;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.caselli.cognitiveworkflow.knowledge.model.node.NodeMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.VectorDbNodeMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortSchema;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortType;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.VectorDbPort;
+import org.caselli.cognitiveworkflow.operational.execution.BlockingCallExecutor;
+import org.caselli.cognitiveworkflow.operational.execution.Deadline;
+import org.caselli.cognitiveworkflow.operational.execution.DeadlineExceededException;
 import org.caselli.cognitiveworkflow.operational.execution.ExecutionContext;
+import org.caselli.cognitiveworkflow.operational.mongo.BsonSchemaMapper;
+import org.caselli.cognitiveworkflow.operational.mongo.MongoClientManager;
+import org.caselli.cognitiveworkflow.operational.vectordb.EmbeddedVectorIndexManager;
+import org.caselli.cognitiveworkflow.operational.vectordb.HnswIndex;
+import org.caselli.cognitiveworkflow.operational.vectordb.MetadataFilter;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
-import org.springframework.data.mongodb.core.aggregation.Aggregation;
-import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
-import org.springframework.data.mongodb.core.aggregation.AggregationResults;
 import org.springframework.stereotype.Component;
+import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 @Setter
 @Getter
@@ -30,9 +42,38 @@ import java.util.List;
 @Scope("prototype")
 public class VectorDbNodeInstance extends ToolNodeInstance {
 
+    /** Maximum number of candidates of a $vectorSearch accepted by Atlas */
+    static final int MAX_NUM_CANDIDATES = 10_000;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private MongoClient mongoClient;
-    private MongoTemplate mongoTemplate;
+    private final MongoClientManager mongoClientManager;
+    private final EmbeddedVectorIndexManager embeddedIndexManager;
+    private final BlockingCallExecutor blockingCallExecutor;
+
+    /** Hold of the node on the shared client of its connection string (acquired on the first search) */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private MongoClientManager.Lease clientLease;
+
+    /** Projection and result mappers compiled from the output ports of the node */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile ResultMapping resultMapping;
+
+    @Autowired
+    public VectorDbNodeInstance(MongoClientManager mongoClientManager, EmbeddedVectorIndexManager embeddedIndexManager,
+                                BlockingCallExecutor blockingCallExecutor) {
+        this.mongoClientManager = mongoClientManager;
+        this.embeddedIndexManager = embeddedIndexManager;
+        this.blockingCallExecutor = blockingCallExecutor;
+    }
+
+    /**
+     * Creates a node with its own client and index managers, for use outside of the Spring context
+     */
+    public VectorDbNodeInstance() {
+        this(MongoClientManager.withDefaults(), new EmbeddedVectorIndexManager(), BlockingCallExecutor.withDefaults());
+    }
 
     @Override
     public VectorDbNodeMetamodel getMetamodel() {
@@ -49,43 +90,150 @@ public class VectorDbNodeInstance extends ToolNodeInstance {
     public void process(ExecutionContext context) {
         logger.info("[Node {}]: Processing Vector Search request.", getId());
 
-        // INIT the DB
-        // TODO: Opening and Closing connections each time is very expensive
-        // We could implement a Connection Manager Service for caching pooled clients
-        initializeConnection();
+        if (getMetamodel().getBackend() == VectorDbNodeMetamodel.Backend.EMBEDDED) {
+            processEmbedded(context);
+            return;
+        }
 
-        try {
-            VectorDbNodeMetamodel metamodel = getMetamodel();
-            String collectionName = metamodel.getCollectionName();
-            String indexName = metamodel.getIndexName();
-            String vectorField = metamodel.getVectorField();
-
-            // Get Input Vector
-            var vector = getVectorFromContext(context);
-            if (vector == null || vector.isEmpty()) {
-                logger.error("[Node {}]: No input vector provided for search.", getId());
-                throw new IllegalArgumentException("Vector search requires an input vector");
+        MongoTemplate mongoTemplate = getMongoTemplate();
+
+        VectorDbNodeMetamodel metamodel = getMetamodel();
+        String collectionName = metamodel.getCollectionName();
+        String indexName = metamodel.getIndexName();
+        String vectorField = metamodel.getVectorField();
+
+        // Get Input Vector
+        var vector = getVectorFromContext(context);
+        if (vector == null || vector.isEmpty()) {
+            logger.error("[Node {}]: No input vector provided for search.", getId());
+            throw new IllegalArgumentException("Vector search requires an input vector");
+        }
+
+        // Get Search Params
+        var searchParameters = determineSearchParameters(context);
+
+        // Only the fields read by the output ports are fetched
+        var mapping = getResultMapping();
+
+        // Execute search
+        var searchResults = executeVectorSearch(mongoTemplate, collectionName, indexName, vectorField, vector, searchParameters, mapping.projection());
+
+        // Save results to the context
+        processResultsToContext(context, searchResults, mapping);
+
+        logger.info("[Node {}]: Vector search processed successfully.", getId());
+    }
+
+    /**
+     * Inserts into, or searches, the embedded index of the node
+     * @param context The execution context
+     */
+    private void processEmbedded(ExecutionContext context) {
+        HnswIndex index = getEmbeddedIndex();
+
+        var vector = getVectorFromContext(context);
+        if (vector == null || vector.isEmpty()) {
+            logger.error("[Node {}]: No input vector provided.", getId());
+            throw new IllegalArgumentException("Vector search requires an input vector");
+        }
+        float[] values = new float[vector.size()];
+        // The elements of a list from the context can be any kind of number
+        List<?> elements = vector;
+        for (int i = 0; i < values.length; i++) values[i] = ((Number) elements.get(i)).floatValue();
+
+        Map<String, Object> document = getDocumentFromContext(context);
+        if (document != null) {
+            String id = document.get("_id") != null ? document.get("_id").toString() : UUID.randomUUID().toString();
+            try {
+                index.insert(id, values, document);
+            } catch (IOException e) {
+                logger.error("[Node {}]: Error inserting into the embedded index: {}", getId(), e.getMessage(), e);
+                throw new RuntimeException("Embedded vector index insert failed", e);
             }
+            logger.info("[Node {}]: Vector {} inserted into the embedded index.", getId(), id);
+            return;
+        }
+
+        var searchParameters = determineSearchParameters(context);
+        Predicate<Map<String, Object>> filter = searchParameters.filter() != null ? MetadataFilter.compile(searchParameters.filter()) : null;
 
-            // Get Search Params
-            var searchConfig = determineSearchParameters();
+        Deadline.current().check("embedded vector search");
+        List<HnswIndex.SearchResult> found = index.search(values, searchParameters.limit(), searchParameters.numCandidates(), filter);
 
-            // Execute search
-            var searchResults = executeVectorSearch(collectionName, indexName, vectorField, vector, searchConfig);
+        // The results get the shape of the Atlas results, so the output ports map them in the same way
+        List<RawBsonDocument> results = new ArrayList<>(found.size());
+        for (HnswIndex.SearchResult result : found) {
+            if (searchParameters.threshold() != null && result.score() < searchParameters.threshold()) continue;
+            Document resultDocument = new Document("_id", result.id());
+            resultDocument.putAll(result.document());
+            resultDocument.append("score", result.score());
+            results.add(BsonSchemaMapper.toRawDocument(resultDocument));
+        }
+        logger.info("[Node {}]: Embedded vector search returned {} results", getId(), results.size());
 
-            // Save results to the context
-            processResultsToContext(context, searchResults);
+        processResultsToContext(context, results, getResultMapping());
+    }
 
-            logger.info("[Node {}]: Vector search processed successfully.", getId());
-        } finally {
-            closeConnection();
+    /**
+     * Gets the embedded index of the node, opening it on the first call
+     */
+    private HnswIndex getEmbeddedIndex() {
+        VectorDbNodeMetamodel metamodel = getMetamodel();
+        VectorDbNodeMetamodel.EmbeddedIndexConfig config = metamodel.getEmbeddedIndex();
+        if (config == null || config.getDimensions() == null) throw new IllegalStateException("Embedded vector index not configured for this node");
+
+        try {
+            return embeddedIndexManager.open(metamodel.getUri(), config.getDimensions(),
+                    config.getSimilarity() != null ? config.getSimilarity() : VectorDbNodeMetamodel.Similarity.COSINE,
+                    config.getM() != null ? config.getM() : 16,
+                    config.getEfConstruction() != null ? config.getEfConstruction() : 200);
+        } catch (IOException e) {
+            logger.error("[Node {}]: Failed to open the embedded vector index: {}", getId(), e.getMessage(), e);
+            throw new RuntimeException("Failed to open the embedded vector index", e);
+        }
+    }
+
+    /**
+     * Extracts the document to insert from the input port with role INPUT_DOCUMENT
+     * @param context The execution context
+     * @return The document, or null if the node has to search
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getDocumentFromContext(ExecutionContext context) {
+        for (VectorDbPort inputPort : getMetamodel().getInputPorts()) {
+            if (inputPort.getRole() != VectorDbPort.VectorDbPortRole.INPUT_DOCUMENT) continue;
+            Object value = context.get(inputPort.getKey());
+            if (value == null) continue;
+
+            if (value instanceof Map<?, ?> map) return (Map<String, Object>) map;
+            if (value instanceof String json) {
+                try {
+                    return Document.parse(json);
+                } catch (Exception e) {
+                    throw new IllegalArgumentException("Document of port '" + inputPort.getKey() + "' is not a valid JSON object: " + e.getMessage(), e);
+                }
+            }
+            throw new IllegalArgumentException("Document of port '" + inputPort.getKey() + "' must be an object or a JSON string, found " + value.getClass().getSimpleName());
         }
+        return null;
+    }
+
+    @Override
+    public synchronized void handleRefreshNode() {
+        // The client of the previous connection string is released now, not at the next search
+        if (clientLease != null && !clientLease.getConnectionString().equals(getMetamodel().getUri())) releaseConnection();
+    }
+
+    @Override
+    public void handleRemoveNode() {
+        releaseConnection();
     }
 
     /**
-     * Initializes a MongoDB connection
+     * Gets the template of the database of the node, on the shared client of its connection string.
+     * The client is acquired on the first call, and again when the connection string of the node changes.
      */
-    private void initializeConnection() {
+    private synchronized MongoTemplate getMongoTemplate() {
         try {
             VectorDbNodeMetamodel metamodel = getMetamodel();
             String connectionString = metamodel.getUri();
@@ -94,15 +242,13 @@ public class VectorDbNodeInstance extends ToolNodeInstance {
             if (connectionString == null || connectionString.isEmpty()) throw new IllegalStateException("MongoDB connection string not configured for this node");
             if (databaseName == null || databaseName.isEmpty()) throw new IllegalStateException("MongoDB database name not configured for this node");
 
+            if (clientLease != null && !clientLease.getConnectionString().equals(connectionString)) releaseConnection();
+            if (clientLease == null) {
+                clientLease = mongoClientManager.acquire(connectionString);
+                logger.info("[Node {}]: Acquired the shared MongoDB client for database: {}", getId(), databaseName);
+            }
 
-            // Create MongoDB client
-            ConnectionString connString = new ConnectionString(connectionString);
-            MongoClientSettings settings = MongoClientSettings.builder().applyConnectionString(connString).build();
-            mongoClient = MongoClients.create(settings);
-            SimpleMongoClientDatabaseFactory factory = new SimpleMongoClientDatabaseFactory(mongoClient, databaseName);
-            mongoTemplate = new MongoTemplate(factory);
-
-            logger.info("[Node {}]: Successfully initialized MongoDB connection to database: {}", getId(), databaseName);
+            return clientLease.getTemplate(databaseName);
 
         } catch (Exception e) {
             logger.error("[Node {}]: Failed to initialize MongoDB connection: {}", getId(), e.getMessage(), e);
@@ -111,19 +257,13 @@ public class VectorDbNodeInstance extends ToolNodeInstance {
     }
 
     /**
-     * Closes the MongoDB connection
+     * Releases the shared MongoDB client held by the node
      */
-    private void closeConnection() {
-        if (mongoClient != null) {
-            try {
-                mongoClient.close();
-                logger.info("[Node {}]: MongoDB connection closed.", getId());
-            } catch (Exception e) {
-                logger.warn("[Node {}]: Error while closing MongoDB connection: {}", getId(), e.getMessage());
-            } finally {
-                mongoClient = null;
-                mongoTemplate = null;
-            }
+    private synchronized void releaseConnection() {
+        if (clientLease != null) {
+            clientLease.close();
+            clientLease = null;
+            logger.info("[Node {}]: MongoDB client released.", getId());
         }
     }
 
@@ -176,61 +316,139 @@ public class VectorDbNodeInstance extends ToolNodeInstance {
     }
 
     /**
-     * Get Search parameters from the metamodel
-     * @return VectorSearchConfig with the appropriate parameters
+     * Get Search parameters from the metamodel, with the per-call overrides of the input ports
+     * @param context The execution context
+     * @return SearchParameters with the appropriate parameters
      */
-    private VectorDbNodeMetamodel.VectorSearchConfig determineSearchParameters() {
+    SearchParameters determineSearchParameters(ExecutionContext context) {
         VectorDbNodeMetamodel.VectorSearchConfig config = getMetamodel().getParameters();
         if (config == null) config = new VectorDbNodeMetamodel.VectorSearchConfig();
 
-        // TODO Look for parameter overrides in the context
+        Integer limit = config.getLimit();
+        Integer numCandidates = config.getNumCandidates();
+        Double threshold = config.getThreshold();
+
+        List<Document> filters = new ArrayList<>();
+        if (config.getFilter() != null && !config.getFilter().isBlank()) filters.add(parseFilter(config.getFilter(), "parameters.filter"));
+
+        // Overrides in the context
+        for (VectorDbPort inputPort : getMetamodel().getInputPorts()) {
+            if (inputPort.getRole() == null) continue;
+            Object value = context.get(inputPort.getKey());
+            if (value == null) continue;
+
+            switch (inputPort.getRole()) {
+                case INPUT_FILTER -> {
+                    Document filter = toFilter(value, inputPort.getKey());
+                    if (!filter.isEmpty()) filters.add(filter);
+                }
+                case INPUT_LIMIT -> limit = toNumber(value, inputPort.getKey()).intValue();
+                case INPUT_NUM_CANDIDATES -> numCandidates = toNumber(value, inputPort.getKey()).intValue();
+                case INPUT_THRESHOLD -> threshold = toNumber(value, inputPort.getKey()).doubleValue();
+                default -> {}
+            }
+        }
+
+        Document filter = switch (filters.size()) {
+            case 0 -> null;
+            case 1 -> filters.get(0);
+            default -> new Document("$and", filters);
+        };
+
+        int resolvedLimit = limit != null && limit > 0 ? limit : 10;
 
-        return config;
+        // A filtered search prunes the candidates before scoring them, so it needs fewer of them for the same recall
+        int resolvedCandidates;
+        if (numCandidates != null && numCandidates > 0) resolvedCandidates = numCandidates;
+        else {
+            Integer perResult = filter != null ? config.getFilteredCandidatesPerResult() : config.getCandidatesPerResult();
+            resolvedCandidates = resolvedLimit * (perResult != null && perResult > 0 ? perResult : 10);
+        }
+        resolvedCandidates = Math.min(MAX_NUM_CANDIDATES, Math.max(resolvedLimit, resolvedCandidates));
+
+        return new SearchParameters(resolvedLimit, resolvedCandidates, threshold, filter);
+    }
+
+    /**
+     * Converts the value of an INPUT_FILTER port to a filter document
+     */
+    @SuppressWarnings("unchecked")
+    private Document toFilter(Object value, String portKey) {
+        if (value instanceof Document document) return document;
+        if (value instanceof Map<?, ?> map) return new Document((Map<String, Object>) map);
+        if (value instanceof String json) return parseFilter(json, portKey);
+        throw new IllegalArgumentException("Filter of port '" + portKey + "' must be an object or a JSON string, found " + value.getClass().getSimpleName());
+    }
+
+    /**
+     * Parses a filter written as a JSON string
+     */
+    private Document parseFilter(String json, String source) {
+        try {
+            return Document.parse(json);
+        } catch (Exception e) {
+            // A filter that cannot be applied must not turn into an unfiltered search
+            throw new IllegalArgumentException("Invalid vector search filter in '" + source + "': " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Converts the value of a numeric override port to a number
+     */
+    private Number toNumber(Object value, String portKey) {
+        if (value instanceof Number number) return number;
+        if (value instanceof String string) {
+            try {
+                return Double.parseDouble(string.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Value of port '" + portKey + "' is not a number: " + string, e);
+            }
+        }
+        throw new IllegalArgumentException("Value of port '" + portKey + "' is not a number: " + value.getClass().getSimpleName());
     }
 
     /**
      * Executes the vector search
+     * @param mongoTemplate The template of the database
      * @param collectionName The collection to search in
      * @param indexName The vector index name
      * @param vectorField The field containing vectors
      * @param vector The query vector
-     * @param searchConfig Search configuration parameters
-     * @return List of documents matching the search criteria
+     * @param searchParameters Search parameters
+     * @param projection Fields to return (null for all the fields but the vector)
+     * @return List of raw documents matching the search criteria, decoded lazily by the result mappers
      */
-    private List<Document> executeVectorSearch(
+    private List<RawBsonDocument> executeVectorSearch(
+            MongoTemplate mongoTemplate,
             String collectionName,
             String indexName,
             String vectorField,
             List<Double> vector,
-            VectorDbNodeMetamodel.VectorSearchConfig searchConfig) {
+            SearchParameters searchParameters,
+            Document projection) {
 
         try {
-            List<AggregationOperation> pipeline = new ArrayList<>();
-
-            // Vector Search stage
-            Document vectorSearchStage = buildVectorSearchStage(indexName, vectorField, vector, searchConfig);
-            pipeline.add(context -> vectorSearchStage);
-
-            // If a threshold was provided
-            if(searchConfig.getThreshold() != null) {
-                Document metadataStage = new Document("$addFields", new Document("score", new Document("$meta", "vectorSearchScore")));
-                Document matchStage = new Document("$match", new Document("score", new Document("$gte", searchConfig.getThreshold())));
-                pipeline.add(context -> metadataStage);
-                pipeline.add(context -> matchStage);
-            }
+            List<Document> pipeline = buildPipeline(indexName, vectorField, vector, searchParameters, projection);
 
-            // Projection stage: remove in the result the embeddings field
-            Document projectStage = new Document("$project", new Document(vectorField, 0));
-            pipeline.add(context -> projectStage);
+            // The documents are kept as BSON bytes: only the fields read by the output ports get decoded
+            AggregateIterable<RawBsonDocument> search = mongoTemplate.getCollection(collectionName)
+                    .withDocumentClass(RawBsonDocument.class)
+                    .aggregate(pipeline);
 
+            // Let the server abort the query when the deadline of the node passes
+            Duration remaining = Deadline.current().remaining();
+            if (remaining != null) search = search.maxTime(Math.max(1, remaining.toMillis()), TimeUnit.MILLISECONDS);
 
-            // Execute the pipeline
-            Aggregation aggregation = Aggregation.newAggregation(pipeline);
-            AggregationResults<Document> results = mongoTemplate.aggregate(aggregation, collectionName, Document.class);
+            // The client is shared, so its timeouts cannot follow the deadline: the wait is bounded here instead
+            AggregateIterable<RawBsonDocument> boundedSearch = search;
+            List<RawBsonDocument> resultList = blockingCallExecutor.callWithin(Deadline.current(), "vector search on " + collectionName,
+                    () -> boundedSearch.into(new ArrayList<>()));
 
-            List<Document> resultList = results.getMappedResults();
             logger.info("[Node {}]: Vector search returned {} results", getId(), resultList.size());
             return resultList;
+        } catch (DeadlineExceededException e) {
+            // Timeouts are reported to the executor
+            throw e;
         } catch (Exception e) {
             logger.error("[Node {}]: Error executing vector search: {}", getId(), e.getMessage(), e);
             throw new RuntimeException("Vector search execution failed", e);
@@ -238,30 +456,124 @@ public class VectorDbNodeInstance extends ToolNodeInstance {
     }
 
     /**
-     * Builds the vector search stage document for the aggregation
+     * Builds the aggregation pipeline of the search
+     * @param projection Fields to return (null for all the fields but the vector)
+     */
+    List<Document> buildPipeline(
+            String indexName,
+            String vectorField,
+            List<Double> vector,
+            SearchParameters searchParameters,
+            Document projection) {
+
+        List<Document> pipeline = new ArrayList<>();
+
+        // Vector Search stage
+        pipeline.add(buildVectorSearchStage(indexName, vectorField, vector, searchParameters));
+
+        // If a threshold was provided
+        if (searchParameters.threshold() != null) {
+            pipeline.add(new Document("$addFields", new Document("score", new Document("$meta", "vectorSearchScore"))));
+            pipeline.add(new Document("$match", new Document("score", new Document("$gte", searchParameters.threshold()))));
+        }
+
+        // Projection stage: the fields of the output schemas, or everything but the embeddings field
+        pipeline.add(new Document("$project", projection != null ? projection : new Document(vectorField, 0)));
+
+        return pipeline;
+    }
+
+    /**
+     * Builds the vector search stage document for the aggregation.
+     * The filter is part of the stage, so Atlas discards the non-matching documents before scoring them.
      */
-    private Document buildVectorSearchStage(
+    Document buildVectorSearchStage(
         String indexName,
         String vectorField,
         List<Double> vector,
-        VectorDbNodeMetamodel.VectorSearchConfig searchConfig) {
+        SearchParameters searchParameters) {
 
-        int limit = searchConfig.getLimit() > 0 ? searchConfig.getLimit() : 10;
-
-        return new Document("$vectorSearch", new Document("queryVector", vector)
+        Document stage = new Document("queryVector", vector)
                 .append("path", vectorField)
-                .append("numCandidates", limit * 10)
-                .append("limit", limit)
-                .append("index", indexName));
+                .append("numCandidates", searchParameters.numCandidates())
+                .append("limit", searchParameters.limit())
+                .append("index", indexName);
+
+        if (searchParameters.filter() != null) stage.append("filter", searchParameters.filter());
+
+        return new Document("$vectorSearch", stage);
+    }
+
+    /**
+     * Parameters of one vector search
+     * @param limit Number of results to return
+     * @param numCandidates Number of nearest neighbors considered by the search
+     * @param threshold Minimum similarity score of the results (null for none)
+     * @param filter Metadata filter of the search (null for none)
+     */
+    record SearchParameters(int limit, int numCandidates, Double threshold, Document filter) {}
+
+    /**
+     * Gets the projection and the result mappers of the current output ports, compiling them if the ports changed
+     */
+    ResultMapping getResultMapping() {
+        List<VectorDbPort> outputPorts = getMetamodel().getOutputPorts();
+        ResultMapping mapping = resultMapping;
+        if (mapping == null || mapping.outputPorts() != outputPorts) {
+            mapping = compileResultMapping(outputPorts);
+            resultMapping = mapping;
+        }
+        return mapping;
+    }
+
+    /**
+     * Compiles a mapper for each output port, and the projection of the fields they read.
+     * There is no projection if a port needs the whole documents (e.g. RESULTS as a JSON string).
+     */
+    private ResultMapping compileResultMapping(List<VectorDbPort> outputPorts) {
+        Map<String, BsonSchemaMapper> mappers = new HashMap<>();
+        List<PortSchema> documentSchemas = new ArrayList<>();
+        boolean wholeDocuments = false;
+
+        for (VectorDbPort outputPort : outputPorts) {
+            PortSchema schema = outputPort.getSchema();
+            if (outputPort.getRole() == null || schema == null || schema.getType() == null) continue;
+
+            switch (outputPort.getRole()) {
+                case RESULTS -> {
+                    if (schema.getType() == PortType.ARRAY) {
+                        mappers.put(outputPort.getKey(), BsonSchemaMapper.compile(schema));
+                        documentSchemas.add(schema.getItems());
+                    } else wholeDocuments = true;
+                }
+                case FIRST_RESULT -> {
+                    mappers.put(outputPort.getKey(), BsonSchemaMapper.compile(schema));
+                    documentSchemas.add(schema);
+                }
+                default -> {}
+            }
+        }
+
+        Document projection = wholeDocuments ? null : BsonSchemaMapper.projection(documentSchemas);
+        return new ResultMapping(outputPorts, projection, mappers);
     }
 
+    /**
+     * Compiled mapping of the results of the node
+     * @param outputPorts The output ports it was compiled from
+     * @param projection Fields read by the output ports (null if some port needs the whole documents)
+     * @param mappers Mappers of the results by output port key
+     */
+    record ResultMapping(List<VectorDbPort> outputPorts, Document projection, Map<String, BsonSchemaMapper> mappers) {}
+
     /**
      * Processes search results and stores them in the execution context based on output port roles
      * @param context The execution context
      * @param results The search results
+     * @param mapping The compiled mapping of the output ports
      */
-    private void processResultsToContext(ExecutionContext context, List<Document> results) {
-        List<VectorDbPort> outputPorts = getMetamodel().getOutputPorts();
+    private void processResultsToContext(ExecutionContext context, List<RawBsonDocument> results, ResultMapping mapping) {
+        List<VectorDbPort> outputPorts = mapping.outputPorts();
         if (outputPorts == null || outputPorts.isEmpty()) {
             logger.info("[Node {}]: No output ports defined.", getId());
             return;
@@ -271,6 +583,7 @@ public class VectorDbNodeInstance extends ToolNodeInstance {
             Object valueToSet = null;
             VectorDbPort.VectorDbPortRole role = outputPort.getRole();
             PortSchema portSchema = outputPort.getSchema();
+            BsonSchemaMapper mapper = mapping.mappers().get(outputPort.getKey());
 
             if (role == null) {
                 logger.warn("[Node {}]: Output port '{}' has no role defined. This port will be ignored.", getId(), outputPort.getKey());
@@ -279,12 +592,12 @@ public class VectorDbNodeInstance extends ToolNodeInstance {
 
             switch (role) {
                 case RESULTS:
-                    valueToSet = mapDocumentsToSchema(results, portSchema);
+                    valueToSet = mapper != null ? mapper.map(new BsonArray(results)) : mapDocumentsToSchema(toDocuments(results), portSchema);
                     break;
 
                 case FIRST_RESULT:
                     valueToSet = (results != null && !results.isEmpty()) ?
-                            mapDocumentToSchema(results.get(0), portSchema)
+                            (mapper != null ? mapper.map(results.get(0)) : mapDocumentToSchema(BsonSchemaMapper.toDocument(results.get(0)), portSchema))
                             : null;
                     break;
 
@@ -298,6 +611,14 @@ public class VectorDbNodeInstance extends ToolNodeInstance {
         }
     }
 
+    /**
+     * Fully decodes raw documents, for the ports that need the whole documents
+     */
+    private List<Document> toDocuments(List<RawBsonDocument> results) {
+        List<Document> documents = new ArrayList<>(results.size());
+        for (RawBsonDocument result : results) documents.add(BsonSchemaMapper.toDocument(result));
+        return documents;
+    }
 
     /**
      * Helper method to map a MongoDB document to a port schema
@@ -5,6 +5,7 @@ import lombok.Getter;
 import lombok.Setter;
 import org.caselli.cognitiveworkflow.knowledge.model.workflow.WorkflowMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.workflow.WorkflowNode;
+import org.caselli.cognitiveworkflow.operational.execution.ExecutionPlan;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 import javax.validation.constraints.NotNull;
@@ -33,6 +34,9 @@ public class WorkflowInstance {
     private final Map<String, NodeInstance> nodeInstancesMap = new HashMap<>();
     private final Map<String, WorkflowNode> workflowNodesMap = new HashMap<>();
 
+    /** Precompiled execution plan, rebuilt every time the node maps are refreshed **/
+    private volatile ExecutionPlan executionPlan = ExecutionPlan.EMPTY;
+
 
     /**
      * Initializes the node maps after properties are set by Spring.
@@ -117,7 +121,8 @@ public class WorkflowInstance {
     }
 
     /**
-     * Refreshes the internal lookup maps for quick access to node instances and workflow nodes by their IDs.
+     * Refreshes the internal lookup maps for quick access to node instances and workflow nodes by their IDs,
+     * and recompiles the execution plan of the workflow.
      * This method is called automatically whenever the workflow structure changes or when the instance is initialized.
      */
     public void refreshNodeMaps() {
@@ -142,5 +147,8 @@ public class WorkflowInstance {
                 }
             }
         }
+
+        // Compile the execution plan
+        executionPlan = ExecutionPlan.compile(metamodel, node -> nodeInstancesMap.get(node.getNodeMetamodelId()));
     }
-}
\ No newline at end of file
+}
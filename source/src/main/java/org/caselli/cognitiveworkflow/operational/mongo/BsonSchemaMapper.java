@@ -0,0 +1,168 @@
+package org.caselli.cognitiveworkflow.operational.mongo;
+
+import org.bson.*;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortSchema;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortType;
+
+import java.util.*;
+
+/**
+ * Maps BSON values to a {@link PortSchema}, with the same conversions as {@link PortSchema#mapToSchema}.
+ * <p>
+ * The schema is compiled once into a tree of mappers. Mapping a {@link RawBsonDocument} reads only the fields of
+ * the schema from its bytes: the other fields are never decoded, and no intermediate {@link Document} is built.
+ * </p>
+ */
+public final class BsonSchemaMapper {
+
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+    private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build();
+
+    private final PortSchema schema;
+    private final Map<String, BsonSchemaMapper> properties;
+    private final BsonSchemaMapper items;
+
+    private BsonSchemaMapper(PortSchema schema) {
+        this.schema = schema;
+
+        if (schema.getType() == PortType.OBJECT && schema.getProperties() != null) {
+            Map<String, BsonSchemaMapper> compiled = new LinkedHashMap<>();
+            schema.getProperties().forEach((name, propertySchema) -> compiled.put(name, new BsonSchemaMapper(propertySchema)));
+            this.properties = compiled;
+        } else this.properties = Map.of();
+
+        this.items = schema.getType() == PortType.ARRAY && schema.getItems() != null ? new BsonSchemaMapper(schema.getItems()) : null;
+    }
+
+    /**
+     * Compiles the mapper of a schema
+     * @param schema The target schema
+     * @return The mapper
+     */
+    public static BsonSchemaMapper compile(PortSchema schema) {
+        if (schema == null || schema.getType() == null) throw new IllegalArgumentException("Cannot compile a mapper without a schema type");
+        return new BsonSchemaMapper(schema);
+    }
+
+    /**
+     * Maps a BSON value to the schema
+     * @param value The value (null or BsonNull map to null)
+     * @return An object that conforms to the schema (if possible)
+     */
+    public Object map(BsonValue value) {
+        if (value == null || value.isNull()) return null;
+
+        switch (schema.getType()) {
+            case OBJECT: {
+                Map<String, Object> result = new HashMap<>();
+                if (properties.isEmpty() || !value.isDocument()) return result;
+
+                BsonDocument document = value.asDocument();
+                properties.forEach((name, mapper) -> result.put(name, mapper.map(document.get(name))));
+                return result;
+            }
+            case ARRAY: {
+                if (items == null) return null;
+
+                List<Object> result = new ArrayList<>();
+                if (value.isArray()) for (BsonValue item : value.asArray()) result.add(items.map(item));
+                else result.add(items.map(value));
+                return result;
+            }
+            default:
+                return PortSchema.mapToSchema(toJava(value), schema);
+        }
+    }
+
+    /**
+     * Decodes a BSON value as the driver does when reading a {@link Document}
+     */
+    static Object toJava(BsonValue value) {
+        return switch (value.getBsonType()) {
+            case NULL -> null;
+            case STRING -> value.asString().getValue();
+            case INT32 -> value.asInt32().getValue();
+            case INT64 -> value.asInt64().getValue();
+            case DOUBLE -> value.asDouble().getValue();
+            case BOOLEAN -> value.asBoolean().getValue();
+            case OBJECT_ID -> value.asObjectId().getValue();
+            // Any other type (documents, arrays, dates, decimals, ...) goes through the Document codec
+            default -> DOCUMENT_CODEC.decode(new BsonDocumentReader(new BsonDocument("value", value)), DECODER_CONTEXT).get("value");
+        };
+    }
+
+    /**
+     * Fully decodes a raw document, as the driver does when reading a {@link Document}
+     */
+    public static Document toDocument(RawBsonDocument document) {
+        return DOCUMENT_CODEC.decode(document.asBsonReader(), DECODER_CONTEXT);
+    }
+
+    /**
+     * Encodes a document as a raw document, as the driver does when sending a {@link Document}
+     */
+    public static RawBsonDocument toRawDocument(Document document) {
+        return new RawBsonDocument(document, DOCUMENT_CODEC);
+    }
+
+    /**
+     * Derives the inclusion projection of the fields that a set of document schemas read.
+     * Nested objects are projected field by field; a field read as a whole by any schema is projected as a whole.
+     * The {@code _id} is excluded unless a schema reads it.
+     * @param documentSchemas The schemas of the documents (OBJECT schemas with properties)
+     * @return The projection, or null if some schema needs the whole documents
+     */
+    public static Document projection(Collection<PortSchema> documentSchemas) {
+        Map<String, Object> tree = new TreeMap<>();
+        for (PortSchema documentSchema : documentSchemas) {
+            if (!hasProperties(documentSchema) || !addFields(tree, documentSchema.getProperties())) return null;
+        }
+        if (tree.isEmpty()) return null;
+
+        Document projection = new Document();
+        flatten(tree, "", projection);
+        if (!tree.containsKey("_id")) projection.append("_id", 0);
+        return projection;
+    }
+
+    private static boolean hasProperties(PortSchema schema) {
+        return schema != null && schema.getType() == PortType.OBJECT && schema.getProperties() != null && !schema.getProperties().isEmpty();
+    }
+
+    /**
+     * Adds the fields of an object schema to a projection tree: a field is either {@code TRUE} (projected as a whole)
+     * or the tree of its own fields
+     * @return false if a field name cannot be used in a projection
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean addFields(Map<String, Object> tree, Map<String, PortSchema> properties) {
+        for (Map.Entry<String, PortSchema> property : properties.entrySet()) {
+            String name = property.getKey();
+            if (name.isEmpty() || name.contains(".") || name.startsWith("$")) return false;
+
+            // Objects, and arrays of objects, can be projected field by field
+            PortSchema schema = property.getValue();
+            PortSchema nested = schema != null && schema.getType() == PortType.ARRAY ? schema.getItems() : schema;
+
+            Object existing = tree.get(name);
+            if (existing == Boolean.TRUE) continue;
+
+            if (hasProperties(nested)) {
+                Map<String, Object> subtree = existing != null ? (Map<String, Object>) existing : new TreeMap<>();
+                if (!addFields(subtree, nested.getProperties())) return false;
+                tree.put(name, subtree);
+            } else tree.put(name, Boolean.TRUE);
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void flatten(Map<String, Object> tree, String prefix, Document projection) {
+        tree.forEach((name, node) -> {
+            if (node == Boolean.TRUE) projection.append(prefix + name, 1);
+            else flatten((Map<String, Object>) node, prefix + name + ".", projection);
+        });
+    }
+}
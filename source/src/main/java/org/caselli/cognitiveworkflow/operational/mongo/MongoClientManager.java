@@ -0,0 +1,287 @@
+package org.caselli.cognitiveworkflow.operational.mongo;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.event.*;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared MongoDB clients of the vector database nodes.
+ * <p>
+ * Nodes {@link #acquire} a client for their connection string instead of opening one per execution: there is a
+ * single pooled {@link MongoClient} per connection string, shared by all the nodes (and executions) using it, and
+ * closed as soon as the last node holding it releases its {@link Lease}.
+ * </p>
+ * <p>
+ * Every client gets the same pool sizing ({@code mongo.client.*}), unless the connection string sets its own
+ * options ({@code maxPoolSize}, {@code maxIdleTimeMS}, ...). Connections idle for longer than
+ * {@code mongo.client.max-idle-seconds} are closed by the pool.
+ * </p>
+ */
+@Component
+public class MongoClientManager {
+    private static final Logger logger = LoggerFactory.getLogger(MongoClientManager.class);
+
+    private final int maxPoolSize;
+    private final int minPoolSize;
+    private final int maxConnecting;
+    private final long maxWaitMillis;
+    private final long maxIdleSeconds;
+    private final long serverSelectionTimeoutMillis;
+
+    /** Clients by connection string */
+    private final Map<String, PooledClient> clients = new HashMap<>();
+    private boolean closed;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong closedClients = new AtomicLong();
+
+    public MongoClientManager(@Value("${mongo.client.max-pool-size:50}") int maxPoolSize,
+                              @Value("${mongo.client.min-pool-size:0}") int minPoolSize,
+                              @Value("${mongo.client.max-connecting:2}") int maxConnecting,
+                              @Value("${mongo.client.max-wait-millis:5000}") long maxWaitMillis,
+                              @Value("${mongo.client.max-idle-seconds:60}") long maxIdleSeconds,
+                              @Value("${mongo.client.server-selection-timeout-millis:10000}") long serverSelectionTimeoutMillis) {
+        this.maxPoolSize = maxPoolSize;
+        this.minPoolSize = minPoolSize;
+        this.maxConnecting = maxConnecting;
+        this.maxWaitMillis = maxWaitMillis;
+        this.maxIdleSeconds = maxIdleSeconds;
+        this.serverSelectionTimeoutMillis = serverSelectionTimeoutMillis;
+    }
+
+    /**
+     * Creates a client manager with the default settings, for use outside of the Spring context
+     * @return A new client manager
+     */
+    public static MongoClientManager withDefaults() {
+        return new MongoClientManager(50, 0, 2, 5000, 60, 10000);
+    }
+
+    /**
+     * Gets the shared client of a connection string, creating it if no node holds it
+     * @param connectionString The MongoDB connection string
+     * @return The lease of the client, to be closed when the node no longer needs it
+     * @throws IllegalArgumentException if the connection string is not valid
+     * @throws IllegalStateException if the manager has been closed
+     */
+    public Lease acquire(String connectionString) {
+        if (connectionString == null || connectionString.isEmpty()) throw new IllegalArgumentException("MongoDB connection string cannot be empty");
+
+        synchronized (this) {
+            if (closed) throw new IllegalStateException("The MongoDB client manager has been closed");
+
+            PooledClient pooled = clients.get(connectionString);
+            if (pooled == null) {
+                pooled = create(connectionString);
+                clients.put(connectionString, pooled);
+            }
+            pooled.references++;
+            return new Lease(pooled);
+        }
+    }
+
+    private PooledClient create(String connectionString) {
+        ConnectionString parsed = new ConnectionString(connectionString);
+        PoolListener listener = new PoolListener();
+
+        // The defaults are applied first, so the options of the connection string take precedence
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyToConnectionPoolSettings(pool -> pool
+                        .maxSize(maxPoolSize)
+                        .minSize(minPoolSize)
+                        .maxConnecting(maxConnecting)
+                        .maxWaitTime(maxWaitMillis, TimeUnit.MILLISECONDS)
+                        .maxConnectionIdleTime(maxIdleSeconds, TimeUnit.SECONDS)
+                        .addConnectionPoolListener(listener))
+                .applyToClusterSettings(cluster -> cluster.serverSelectionTimeout(serverSelectionTimeoutMillis, TimeUnit.MILLISECONDS))
+                .applyConnectionString(parsed)
+                .build();
+
+        MongoClient client = MongoClients.create(settings);
+        created.incrementAndGet();
+
+        String hosts = String.join(",", parsed.getHosts());
+        logger.info("MongoDB client created for {}: pool of {} connections", hosts, settings.getConnectionPoolSettings().getMaxSize());
+        return new PooledClient(connectionString, hosts, client, listener, settings.getConnectionPoolSettings().getMaxSize());
+    }
+
+    private void release(PooledClient pooled) {
+        synchronized (this) {
+            pooled.references--;
+            if (pooled.references > 0 || clients.get(pooled.connectionString) != pooled) return;
+            clients.remove(pooled.connectionString);
+        }
+
+        // No node references the client anymore
+        close(pooled);
+    }
+
+    private void close(PooledClient pooled) {
+        try {
+            pooled.client.close();
+            closedClients.incrementAndGet();
+            logger.info("MongoDB client for {} closed", pooled.hosts);
+        } catch (Exception e) {
+            logger.warn("Error while closing the MongoDB client for {}: {}", pooled.hosts, e.getMessage());
+        }
+    }
+
+    /**
+     * @return The metrics of the clients and of their connection pools
+     */
+    public MongoMetrics getMetrics() {
+        List<ClientMetrics> pools = new ArrayList<>();
+        synchronized (this) {
+            for (PooledClient pooled : clients.values())
+                pools.add(new ClientMetrics(pooled.hosts, pooled.references, pooled.listener.open.get(),
+                        pooled.listener.inUse.get(), pooled.listener.checkOutFailures.get(), pooled.maxPoolSize));
+        }
+        return new MongoMetrics(pools.size(), created.get(), closedClients.get(), pools);
+    }
+
+    @PreDestroy
+    public void close() {
+        List<PooledClient> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayList<>(clients.values());
+            clients.clear();
+        }
+        toClose.forEach(this::close);
+    }
+
+    /**
+     * A node's hold on a shared client.
+     * Closing the lease releases the client (closing it if no other node holds it); it can be closed more than once.
+     */
+    public final class Lease implements AutoCloseable {
+        private final PooledClient pooled;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(PooledClient pooled) {
+            this.pooled = pooled;
+        }
+
+        /**
+         * @return The connection string of the client
+         */
+        public String getConnectionString() {
+            return pooled.connectionString;
+        }
+
+        public MongoClient getClient() {
+            if (released.get()) throw new IllegalStateException("The MongoDB client lease has been released");
+            return pooled.client;
+        }
+
+        /**
+         * @param databaseName The name of the database
+         * @return The template of a database on the shared client (one per database, shared by the nodes)
+         */
+        public MongoTemplate getTemplate(String databaseName) {
+            MongoClient client = getClient();
+            return pooled.templates.computeIfAbsent(databaseName, name -> new MongoTemplate(new SimpleMongoClientDatabaseFactory(client, name)));
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) release(pooled);
+        }
+    }
+
+    /**
+     * A shared client and the number of leases on it
+     */
+    private static final class PooledClient {
+        private final String connectionString;
+        private final String hosts;
+        private final MongoClient client;
+        private final PoolListener listener;
+        private final int maxPoolSize;
+        private final Map<String, MongoTemplate> templates = new ConcurrentHashMap<>();
+
+        /** Guarded by the manager */
+        private int references;
+
+        private PooledClient(String connectionString, String hosts, MongoClient client, PoolListener listener, int maxPoolSize) {
+            this.connectionString = connectionString;
+            this.hosts = hosts;
+            this.client = client;
+            this.listener = listener;
+            this.maxPoolSize = maxPoolSize;
+        }
+    }
+
+    /**
+     * Counts the connections of the pools of a client
+     */
+    private static final class PoolListener implements ConnectionPoolListener {
+        private final AtomicInteger open = new AtomicInteger();
+        private final AtomicInteger inUse = new AtomicInteger();
+        private final AtomicLong checkOutFailures = new AtomicLong();
+
+        @Override
+        public void connectionCreated(ConnectionCreatedEvent event) {
+            open.incrementAndGet();
+        }
+
+        @Override
+        public void connectionClosed(ConnectionClosedEvent event) {
+            open.decrementAndGet();
+        }
+
+        @Override
+        public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+            inUse.incrementAndGet();
+        }
+
+        @Override
+        public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+            inUse.decrementAndGet();
+        }
+
+        @Override
+        public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+            checkOutFailures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Metrics of a shared client
+     * @param hosts The hosts of the connection string (credentials are never reported)
+     * @param references Nodes holding the client
+     * @param openConnections Connections open, across the pools of all the servers
+     * @param inUseConnections Connections in use by an operation
+     * @param checkOutFailures Operations that could not get a connection
+     * @param maxPoolSize Maximum number of connections per server
+     */
+    public record ClientMetrics(String hosts, int references, int openConnections, int inUseConnections, long checkOutFailures, int maxPoolSize) {}
+
+    /**
+     * Metrics of the client manager
+     * @param clients Clients currently open
+     * @param created Clients created since the start
+     * @param closed Clients closed since the start
+     * @param pools Metrics of each open client
+     */
+    public record MongoMetrics(int clients, long created, long closed, List<ClientMetrics> pools) {}
+}
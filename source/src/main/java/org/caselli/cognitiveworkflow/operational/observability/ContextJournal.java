@@ -0,0 +1,99 @@
+package org.caselli.cognitiveworkflow.operational.observability;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only journal of the changes made to an ExecutionContext by the nodes of a workflow execution.
+ * <p>
+ * Changes are attributed to the node running on the current thread (between {@link #beginNode(String)}
+ * and {@link #endNode()}); changes made outside a node (e.g. by the executor while propagating the outputs
+ * along the edges) are not recorded.
+ * Values are rendered when the change is recorded: a later in-place write (e.g. into a nested map of the
+ * context) does not alter the entries already recorded.
+ * </p>
+ */
+public class ContextJournal {
+
+    public enum Operation {
+        PUT,
+        REMOVE
+    }
+
+    /**
+     * A change of the context
+     * @param operation The operation
+     * @param key The (dot-notation) key that was changed
+     * @param previousValue The rendered value before the change
+     * @param value The rendered value after the change (null for removals)
+     */
+    public record Entry(Operation operation, String key, String previousValue, String value) {
+    }
+
+    private final Map<String, List<Entry>> entriesByNode = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<List<Entry>> current = new ThreadLocal<>();
+
+    /**
+     * Starts attributing the changes made on the current thread to a node
+     * @param nodeId The ID of the node
+     */
+    public void beginNode(String nodeId) {
+        List<Entry> entries = new ArrayList<>();
+        entriesByNode.put(nodeId, entries);
+        current.set(entries);
+    }
+
+    /**
+     * Stops attributing the changes made on the current thread
+     */
+    public void endNode() {
+        current.remove();
+    }
+
+    /**
+     * Resumes attributing the changes made on the current thread to a node that already began,
+     * e.g. when a non-blocking node completes on another thread
+     * @param nodeId The ID of the node
+     */
+    public void resumeNode(String nodeId) {
+        List<Entry> entries = entriesByNode.get(nodeId);
+        if (entries != null) current.set(entries);
+    }
+
+    /**
+     * @return True if the changes made on the current thread are recorded
+     */
+    public boolean isRecording() {
+        return current.get() != null;
+    }
+
+    /**
+     * Records a put on the current thread
+     */
+    public void recordPut(String key, Object previousValue, Object value) {
+        List<Entry> entries = current.get();
+        if (entries != null) entries.add(new Entry(Operation.PUT, key, render(previousValue), render(value)));
+    }
+
+    /**
+     * Records a removal on the current thread
+     */
+    public void recordRemove(String key, Object previousValue) {
+        List<Entry> entries = current.get();
+        if (entries != null) entries.add(new Entry(Operation.REMOVE, key, render(previousValue), null));
+    }
+
+    private static String render(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    /**
+     * @param nodeId The ID of the node
+     * @return The changes made by the node, in order
+     */
+    public List<Entry> getEntries(String nodeId) {
+        List<Entry> entries = entriesByNode.get(nodeId);
+        return entries != null ? Collections.unmodifiableList(entries) : List.of();
+    }
+}
@@ -21,6 +21,9 @@ public class IntentDetectionObservabilityReport extends ObservabilityReport {
 
     List<IntentMetamodel> similarIntents;
 
+    /** Similarity of the previous request whose detection was reused (null if the intent was detected by the model) */
+    Double semanticCacheSimilarity;
+
     public IntentDetectionObservabilityReport(String inputRequest) {
         this.inputRequest = inputRequest;
     }
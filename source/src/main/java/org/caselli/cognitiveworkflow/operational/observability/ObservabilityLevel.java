@@ -0,0 +1,13 @@
+package org.caselli.cognitiveworkflow.operational.observability;
+
+/**
+ * Detail level of the workflow execution report
+ */
+public enum ObservabilityLevel {
+    /** Only the outcome of the workflow execution */
+    OFF,
+    /** Node executions, timings, edge evaluations, port adaptations and metrics */
+    SUMMARY,
+    /** Summary plus the initial context and the context changes of every node */
+    FULL
+}
@@ -0,0 +1,62 @@
+package org.caselli.cognitiveworkflow.operational.observability;
+
+/**
+ * Records the attempts of the requests sent by a node (retries and hedged duplicates) in the execution report.
+ * <p>
+ * The executor activates the recorder of a node on the thread that runs it, together with its deadline: the node
+ * reads it with {@link #current()} when it starts its request, and can then record the attempts from any thread.
+ * </p>
+ */
+public final class RequestAttemptRecorder {
+
+    /** A recorder that records nothing */
+    public static final RequestAttemptRecorder NONE = new RequestAttemptRecorder(null, null);
+
+    private static final ThreadLocal<RequestAttemptRecorder> CURRENT = new ThreadLocal<>();
+
+    private final WorkflowObservabilityReport report;
+    private final String nodeId;
+
+    RequestAttemptRecorder(WorkflowObservabilityReport report, String nodeId) {
+        this.report = report;
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * @return The recorder active on the current thread, or {@link #NONE}
+     */
+    public static RequestAttemptRecorder current() {
+        RequestAttemptRecorder recorder = CURRENT.get();
+        return recorder != null ? recorder : NONE;
+    }
+
+    /**
+     * Activates this recorder on the current thread, until the returned scope is closed
+     * @return The scope, which restores the previous recorder when closed
+     */
+    public Scope activate() {
+        RequestAttemptRecorder previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous != null) CURRENT.set(previous);
+            else CURRENT.remove();
+        };
+    }
+
+    /**
+     * Records an attempt of a request of the node
+     * @param attempt The attempt
+     */
+    public void record(WorkflowObservabilityReport.RequestAttemptDetail attempt) {
+        if (report != null) report.recordRequestAttempt(nodeId, attempt);
+    }
+
+    /**
+     * Scope of an activated recorder
+     */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,100 @@
+package org.caselli.cognitiveworkflow.operational.observability;
+
+import org.caselli.cognitiveworkflow.operational.execution.ResponseStreamSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+
+/**
+ * Publishes the response of a node to the {@link ResponseStreamSink} of its execution while it is generated, and
+ * records its time to first token in the execution report.
+ * <p>
+ * The executor activates the stream of a node on the thread that runs it, together with its deadline: the node
+ * reads it with {@link #current()} before it starts its request, and can then publish from any thread.
+ * </p>
+ */
+public final class ResponseStream {
+    private static final Logger logger = LoggerFactory.getLogger(ResponseStream.class);
+
+    /** A stream that publishes and records nothing */
+    public static final ResponseStream NONE = new ResponseStream(null, null, null);
+
+    private static final ThreadLocal<ResponseStream> CURRENT = new ThreadLocal<>();
+
+    private final WorkflowObservabilityReport report;
+    private final String nodeId;
+    private final ResponseStreamSink sink;
+
+    ResponseStream(WorkflowObservabilityReport report, String nodeId, ResponseStreamSink sink) {
+        this.report = report;
+        this.nodeId = nodeId;
+        this.sink = sink;
+    }
+
+    /**
+     * @return The stream active on the current thread, or {@link #NONE}
+     */
+    public static ResponseStream current() {
+        ResponseStream stream = CURRENT.get();
+        return stream != null ? stream : NONE;
+    }
+
+    /**
+     * Activates this stream on the current thread, until the returned scope is closed
+     * @return The scope, which restores the previous stream when closed
+     */
+    public Scope activate() {
+        ResponseStream previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous != null) CURRENT.set(previous);
+            else CURRENT.remove();
+        };
+    }
+
+    /**
+     * Publishes the next part of a response
+     * @param portKey The key of the port of the response
+     * @param text The text that follows the parts already published
+     */
+    public void publish(String portKey, String text) {
+        if (sink == null || text == null || text.isEmpty()) return;
+        try {
+            sink.onPartial(nodeId, portKey, text);
+        } catch (RuntimeException e) {
+            logger.warn("[Node {}]: Response stream sink failed: {}", nodeId, e.getMessage());
+        }
+    }
+
+    /**
+     * Publishes the complete response, parsed according to the schema of the port
+     * @param portKey The key of the port of the response
+     * @param value The value stored in the port
+     */
+    public void complete(String portKey, Object value) {
+        if (sink == null) return;
+        try {
+            sink.onComplete(nodeId, portKey, value);
+        } catch (RuntimeException e) {
+            logger.warn("[Node {}]: Response stream sink failed: {}", nodeId, e.getMessage());
+        }
+    }
+
+    /**
+     * Records how long the node waited for the first token of its response
+     * @param timeToFirstToken The time from the start of the request to its first token
+     */
+    public void recordTimeToFirstToken(Duration timeToFirstToken) {
+        if (report != null) report.recordTimeToFirstToken(nodeId, timeToFirstToken);
+    }
+
+    /**
+     * Scope of an activated stream
+     */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -4,18 +4,26 @@ import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import org.caselli.cognitiveworkflow.operational.execution.ExecutionContext;
+import org.caselli.cognitiveworkflow.operational.execution.ResponseStreamSink;
 import org.caselli.cognitiveworkflow.operational.utils.DurationToMillisSerializer;
 import java.time.Instant;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
- * Workflow Execution report for observability
+ * Workflow Execution report for observability.
+ * <p>
+ * The amount of detail depends on the {@link ObservabilityLevel}. At FULL level the changes made by the nodes
+ * to the context are recorded in a {@link ContextJournal}, and the {@link ContextDifferences} of every node are
+ * derived from it only when they are read (e.g. when the report is serialized).
+ * </p>
  */
 @EqualsAndHashCode(callSuper = true)
 @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -25,6 +33,11 @@ public class WorkflowObservabilityReport extends ObservabilityReport {
     private final String workflowId;
     private final String workflowName;
 
+    private final ObservabilityLevel observabilityLevel;
+
+    /** True if the workflow failed because it exceeded a deadline */
+    private boolean timedOut;
+
     private final Map<String, NodeExecutionDetail> nodeExecutions = new ConcurrentHashMap<>();
 
     private final List<String> executionOrder = Collections.synchronizedList(new ArrayList<>());
@@ -34,16 +47,34 @@ public class WorkflowObservabilityReport extends ObservabilityReport {
     private final List<PortAdaptationDetail> portAdaptations = Collections.synchronizedList(new ArrayList<>());
 
     @JsonIgnore
-    private final Map<String, Map<String, Object>> contextSnapshots = new ConcurrentHashMap<>();
+    private final ContextJournal journal;
+
+    /** Receives the responses of the streaming nodes (not part of the report) */
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private volatile ResponseStreamSink responseStreamSink;
 
     private final WorkflowExecutionMetrics metrics = new WorkflowExecutionMetrics();
 
     private final ExecutionContext initialContext;
 
     public WorkflowObservabilityReport(String workflowId, String workflowName, ExecutionContext initialContext) {
+        this(workflowId, workflowName, initialContext, ObservabilityLevel.FULL);
+    }
+
+    public WorkflowObservabilityReport(String workflowId, String workflowName, ExecutionContext initialContext, ObservabilityLevel observabilityLevel) {
         this.workflowId = workflowId;
         this.workflowName = workflowName;
-        this.initialContext = new ExecutionContext(initialContext); // deep copy
+        this.observabilityLevel = observabilityLevel != null ? observabilityLevel : ObservabilityLevel.FULL;
+
+        if (this.observabilityLevel == ObservabilityLevel.FULL) {
+            // Deep copy, or O(1) snapshot for persistent contexts
+            this.initialContext = initialContext != null ? initialContext.copy() : new ExecutionContext();
+            this.journal = new ContextJournal();
+        } else {
+            this.initialContext = null;
+            this.journal = null;
+        }
     }
 
     /**
@@ -55,39 +86,134 @@ public class WorkflowObservabilityReport extends ObservabilityReport {
         calculateMetrics();
     }
 
+    /**
+     * Marks the workflow execution as failed because a deadline was exceeded
+     */
+    public void markTimedOut(String errorMessage, Throwable exception) {
+        this.timedOut = true;
+        markCompleted(false, errorMessage, exception);
+    }
+
     /**
      * Records the start of a node execution
      */
     public void recordNodeStart(String nodeId, String nodeName, String nodeType, ExecutionContext inputContext) {
-        NodeExecutionDetail detail = new NodeExecutionDetail(nodeId, nodeName, nodeType);
+        if (observabilityLevel == ObservabilityLevel.OFF) return;
+
+        // A node cancelled before it started keeps its cancellation
+        NodeExecutionDetail detail = nodeExecutions.computeIfAbsent(nodeId, id -> new NodeExecutionDetail(id, nodeName, nodeType));
         detail.recordStart();
-        nodeExecutions.put(nodeId, detail);
         executionOrder.add(nodeId);
 
-        // Take context snapshot before node execution
-        contextSnapshots.put("before_" + nodeId, createContextSnapshot(inputContext));
+        // Record the changes the node makes to the context (on this thread)
+        if (journal != null) {
+            if (inputContext.getJournal() != journal) inputContext.setJournal(journal);
+            journal.beginNode(nodeId);
+        }
+    }
+
+    /**
+     * Stops attributing the context changes made on the current thread to the node that is running on it,
+     * without completing the node: a non-blocking node releases its thread while it waits for its I/O
+     */
+    public void suspendNode() {
+        if (journal != null) journal.endNode();
+    }
+
+    /**
+     * Attributes the context changes made on the current thread to a node that was suspended
+     * @param nodeId The ID of the node
+     */
+    public void resumeNode(String nodeId) {
+        if (journal != null) journal.resumeNode(nodeId);
     }
 
     /**
      * Records the completion of a node execution
      */
     public void recordNodeCompletion(String nodeId, boolean success, String errorMessage, Throwable exception, ExecutionContext outputContext) {
+        if (observabilityLevel == ObservabilityLevel.OFF) return;
+        if (journal != null) journal.endNode();
+
         NodeExecutionDetail detail = nodeExecutions.get(nodeId);
         if (detail != null) {
-            // Take context snapshot after node execution
-            Map<String, Object> afterSnapshot = createContextSnapshot(outputContext);
-            contextSnapshots.put("after_" + nodeId, afterSnapshot);
-
-            // Calculate context differences and update the node detail
-            Map<String, Object> beforeSnapshot = contextSnapshots.get("before_" + nodeId);
-            detail.recordCompletion(success, errorMessage, exception, beforeSnapshot, afterSnapshot);
+            // The context differences are computed from the journal only when they are needed
+            Supplier<ContextDifferences> changes = journal != null
+                    ? () -> ContextDifferences.fromJournal(journal.getEntries(nodeId))
+                    : null;
+            detail.recordCompletion(success, errorMessage, exception, changes);
         }
     }
 
+    /**
+     * Records the completion of a node that exceeded its deadline.
+     * Timeouts are counted separately from the failures.
+     */
+    public void recordNodeTimeout(String nodeId, String errorMessage, Throwable exception) {
+        if (observabilityLevel == ObservabilityLevel.OFF) return;
+        if (journal != null) journal.endNode();
+
+        NodeExecutionDetail detail = nodeExecutions.get(nodeId);
+        if (detail != null) detail.recordTimeout(errorMessage, exception);
+    }
+
+    /**
+     * Records the cancellation of a node, either stopped while running or skipped before it started.
+     * A node that completes after its cancellation is still reported as cancelled.
+     * @param nodeId The ID of the node
+     * @param nodeName The name of the node
+     * @param nodeType The type of the node
+     * @param reason Why the node was cancelled
+     */
+    public void recordNodeCancellation(String nodeId, String nodeName, String nodeType, String reason) {
+        if (observabilityLevel == ObservabilityLevel.OFF) return;
+
+        NodeExecutionDetail detail = nodeExecutions.computeIfAbsent(nodeId, id -> new NodeExecutionDetail(id, nodeName, nodeType));
+        detail.recordCancellation(reason);
+    }
+
+    /**
+     * @param nodeId The ID of the node
+     * @return The recorder of the request attempts of the node
+     */
+    public RequestAttemptRecorder attemptRecorder(String nodeId) {
+        return observabilityLevel == ObservabilityLevel.OFF ? RequestAttemptRecorder.NONE : new RequestAttemptRecorder(this, nodeId);
+    }
+
+    /**
+     * Records an attempt of a request sent by a node: the first one, a retry or a hedged duplicate
+     */
+    public void recordRequestAttempt(String nodeId, RequestAttemptDetail attempt) {
+        if (observabilityLevel == ObservabilityLevel.OFF) return;
+
+        NodeExecutionDetail detail = nodeExecutions.get(nodeId);
+        if (detail != null) detail.recordAttempt(attempt);
+    }
+
+    /**
+     * @param nodeId The ID of the node
+     * @return The stream of the responses of the node to the sink of the execution
+     */
+    public ResponseStream responseStream(String nodeId) {
+        if (observabilityLevel == ObservabilityLevel.OFF && responseStreamSink == null) return ResponseStream.NONE;
+        return new ResponseStream(observabilityLevel == ObservabilityLevel.OFF ? null : this, nodeId, responseStreamSink);
+    }
+
+    /**
+     * Records how long a streaming node waited for the first token of its response
+     */
+    public void recordTimeToFirstToken(String nodeId, Duration timeToFirstToken) {
+        if (observabilityLevel == ObservabilityLevel.OFF) return;
+
+        NodeExecutionDetail detail = nodeExecutions.get(nodeId);
+        if (detail != null) detail.recordTimeToFirstToken(timeToFirstToken);
+    }
+
     /**
      * Records edge evaluation details
      */
     public void recordEdgeEvaluation(String sourceNodeId, String targetNodeId, String edgeId, boolean conditionPassed, String conditionDetails, Map<String, String> appliedBindings) {
+        if (observabilityLevel == ObservabilityLevel.OFF) return;
         EdgeEvaluationDetail detail = new EdgeEvaluationDetail(
                 sourceNodeId, targetNodeId, edgeId, conditionPassed, conditionDetails, appliedBindings, Instant.now()
         );
@@ -98,32 +224,22 @@ public class WorkflowObservabilityReport extends ObservabilityReport {
      * Records port adaptation attempts
      */
     public void recordPortAdaptation(String nodeId, List<String> missingInputs, Map<String, String> suggestedBindings, boolean successful) {
+        if (observabilityLevel == ObservabilityLevel.OFF) return;
         PortAdaptationDetail detail = new PortAdaptationDetail(
                 nodeId, missingInputs, suggestedBindings, successful, Instant.now()
         );
         portAdaptations.add(detail);
     }
 
-    /**
-     * Creates a safe snapshot of the execution context
-     */
-    private Map<String, Object> createContextSnapshot(ExecutionContext context) {
-        Map<String, Object> snapshot = new HashMap<>();
-        for (String key : context.keySet()) {
-            Object value = context.get(key);
-            snapshot.put(key, value != null ? value.toString() : null);
-        }
-        return snapshot;
-    }
-
-
     /**
      * Calculates various metrics
      */
     private void calculateMetrics() {
         metrics.totalNodes = nodeExecutions.size();
         metrics.successfulNodes = (int) nodeExecutions.values().stream().mapToLong(n -> n.success ? 1 : 0).sum();
-        metrics.failedNodes = metrics.totalNodes - metrics.successfulNodes;
+        metrics.cancelledNodes = (int) nodeExecutions.values().stream().mapToLong(n -> n.cancelled ? 1 : 0).sum();
+        metrics.timedOutNodes = (int) nodeExecutions.values().stream().mapToLong(n -> n.timedOut ? 1 : 0).sum();
+        metrics.failedNodes = metrics.totalNodes - metrics.successfulNodes - metrics.cancelledNodes - metrics.timedOutNodes;
 
         // Timing statistics
         List<Duration> executionTimes = nodeExecutions.values().stream()
@@ -148,6 +264,13 @@ public class WorkflowObservabilityReport extends ObservabilityReport {
                     : executionTimes.get(medianIndex);
         }
 
+        // Request attempts
+        List<RequestAttemptDetail> attempts = nodeExecutions.values().stream()
+                .flatMap(n -> n.getAttempts().stream())
+                .toList();
+        metrics.totalRetries = (int) attempts.stream().filter(a -> !a.hedge && a.attempt > 1).count();
+        metrics.totalHedges = (int) attempts.stream().filter(a -> a.hedge).count();
+
         metrics.totalEdgeEvaluations = edgeEvaluations.size();
         metrics.passedEdgeEvaluations = (int) edgeEvaluations.stream().mapToLong(e -> e.conditionPassed ? 1 : 0).sum();
         metrics.totalPortAdaptations = portAdaptations.size();
@@ -177,6 +300,34 @@ public class WorkflowObservabilityReport extends ObservabilityReport {
         public boolean isEmpty() {
             return addedKeys.isEmpty() && modifiedKeys.isEmpty() && removedKeys.isEmpty();
         }
+
+        /**
+         * Derives the differences from the journal entries of a node: for every key written by the node,
+         * the value before its first change is compared with the value after its last change
+         * @param entries The journal entries of the node, in order
+         * @return The differences
+         */
+        public static ContextDifferences fromJournal(List<ContextJournal.Entry> entries) {
+            Map<String, Object> before = new LinkedHashMap<>();
+            Map<String, Object> after = new LinkedHashMap<>();
+
+            for (ContextJournal.Entry entry : entries) {
+                if (!before.containsKey(entry.key())) before.put(entry.key(), entry.previousValue());
+                after.put(entry.key(), entry.value());
+            }
+
+            ContextDifferences diff = new ContextDifferences();
+            for (Map.Entry<String, Object> entry : after.entrySet()) {
+                String key = entry.getKey();
+                Object beforeValue = before.get(key);
+                Object afterValue = entry.getValue();
+
+                if (beforeValue == null && afterValue != null) diff.addedKeys.put(key, afterValue);
+                else if (beforeValue != null && afterValue == null) diff.removedKeys.put(key, beforeValue);
+                else if (!Objects.equals(beforeValue, afterValue)) diff.modifiedKeys.put(key, new ValueChange(beforeValue, afterValue));
+            }
+            return diff;
+        }
     }
 
     /**
@@ -201,8 +352,25 @@ public class WorkflowObservabilityReport extends ObservabilityReport {
         private String errorMessage;
         private Throwable exception;
 
-        // Context differences instead of full snapshots
+        // Cancellation (e.g. the losing branches of a race join)
+        private boolean cancelled;
+        private String cancellationReason;
+
+        // Deadline exceeded
+        private boolean timedOut;
+
+        // Context differences, derived lazily from the journal
         private ContextDifferences contextChanges;
+        @Getter(AccessLevel.NONE)
+        private Supplier<ContextDifferences> contextChangesSupplier;
+
+        // Time to the first token of a streamed response
+        @JsonSerialize(using = DurationToMillisSerializer.class)
+        private Duration timeToFirstToken;
+
+        // Attempts of the requests of the node (retries and hedged duplicates)
+        @Getter(AccessLevel.NONE)
+        private List<RequestAttemptDetail> attempts;
 
         // Resource usage (if available)
         private Long memoryUsedBytes;
@@ -215,7 +383,7 @@ public class WorkflowObservabilityReport extends ObservabilityReport {
             this.threadId = (int) Thread.currentThread().getId();
         }
 
-        public void recordStart() {
+        public synchronized void recordStart() {
             this.startTime = Instant.now();
 
             // Record memory usage before execution
@@ -223,48 +391,97 @@ public class WorkflowObservabilityReport extends ObservabilityReport {
             this.memoryUsedBytes = runtime.totalMemory() - runtime.freeMemory();
         }
 
-        public void recordCompletion(boolean success, String errorMessage, Throwable exception,
-                                     Map<String, Object> beforeSnapshot, Map<String, Object> afterSnapshot) {
+        public synchronized void recordCompletion(boolean success, String errorMessage, Throwable exception,
+                                                  Supplier<ContextDifferences> contextChangesSupplier) {
             this.endTime = Instant.now();
-            this.executionTime = Duration.between(startTime, endTime);
-            this.success = success;
+            this.executionTime = startTime != null ? Duration.between(startTime, endTime) : null;
+            this.success = success && !cancelled;
             this.errorMessage = errorMessage;
             this.exception = exception;
+            this.contextChangesSupplier = contextChangesSupplier;
+        }
+
+        public synchronized void recordTimeout(String errorMessage, Throwable exception) {
+            recordCompletion(false, errorMessage, exception, null);
+            this.timedOut = !cancelled;
+        }
+
+        public synchronized void recordCancellation(String reason) {
+            this.cancelled = true;
+            this.success = false;
+            this.cancellationReason = reason;
+            if (startTime != null && endTime == null) {
+                this.endTime = Instant.now();
+                this.executionTime = Duration.between(startTime, endTime);
+            }
+        }
+
+        public synchronized void recordTimeToFirstToken(Duration timeToFirstToken) {
+            this.timeToFirstToken = timeToFirstToken;
+        }
 
-            // Calculate context differences instead of storing full snapshots
-            this.contextChanges = calculateContextDifferences(beforeSnapshot, afterSnapshot);
+        public synchronized void recordAttempt(RequestAttemptDetail attempt) {
+            if (attempts == null) attempts = new ArrayList<>();
+            attempts.add(attempt);
         }
 
         /**
-         * Calculates the differences between two context snapshots
+         * @return The attempts of the requests of the node, in order of completion (empty if none was recorded)
          */
-        private ContextDifferences calculateContextDifferences(Map<String, Object> before, Map<String, Object> after) {
-            ContextDifferences diff = new ContextDifferences();
+        @JsonInclude(JsonInclude.Include.NON_EMPTY)
+        public synchronized List<RequestAttemptDetail> getAttempts() {
+            return attempts != null ? List.copyOf(attempts) : List.of();
+        }
 
-            if (before == null) before = new HashMap<>();
-            if (after == null) after = new HashMap<>();
+        /**
+         * @return The changes made by the node to the context (null if not recorded)
+         */
+        public synchronized ContextDifferences getContextChanges() {
+            if (contextChanges == null && contextChangesSupplier != null) {
+                contextChanges = contextChangesSupplier.get();
+                contextChangesSupplier = null;
+            }
+            return contextChanges;
+        }
+    }
 
-            // Find added and modified keys
-            for (Map.Entry<String, Object> entry : after.entrySet()) {
-                String key = entry.getKey();
-                Object afterValue = entry.getValue();
-                Object beforeValue = before.get(key);
+    /**
+     * Details about an attempt of a request sent by a node
+     */
+    @Getter
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class RequestAttemptDetail {
+        /** Number of the attempt, starting from 1 (the duplicates of a request have the number of the request) */
+        private final int attempt;
+        /** True if the attempt is a hedged duplicate */
+        private final boolean hedge;
+        private final AttemptOutcome outcome;
+        /** Status of the response, if one was received */
+        private final Integer status;
+        private final String errorMessage;
 
-                if (!before.containsKey(key)) {
-                    diff.addedKeys.put(key, afterValue);
-                } else if (!Objects.equals(beforeValue, afterValue)) {
-                    diff.modifiedKeys.put(key, new ContextDifferences.ValueChange(beforeValue, afterValue));
-                }
-            }
+        @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", timezone = "UTC")
+        private final Instant startTime;
 
-            // Find removed keys
-            for (String key : before.keySet()) {
-                if (!after.containsKey(key)) {
-                    diff.removedKeys.put(key, before.get(key));
-                }
-            }
+        @JsonSerialize(using = DurationToMillisSerializer.class)
+        private final Duration duration;
+
+        public RequestAttemptDetail(int attempt, boolean hedge, AttemptOutcome outcome, Integer status,
+                                    String errorMessage, Instant startTime, Duration duration) {
+            this.attempt = attempt;
+            this.hedge = hedge;
+            this.outcome = outcome;
+            this.status = status;
+            this.errorMessage = errorMessage;
+            this.startTime = startTime;
+            this.duration = duration;
+        }
 
-            return diff;
+        public enum AttemptOutcome {
+            SUCCEEDED,
+            FAILED,
+            /** Aborted because another attempt of the request completed first */
+            CANCELLED
         }
     }
 
@@ -334,6 +551,10 @@ public class WorkflowObservabilityReport extends ObservabilityReport {
 
         private int failedNodes;
 
+        private int cancelledNodes;
+
+        private int timedOutNodes;
+
         @JsonSerialize(using = DurationToMillisSerializer.class)
         private Duration fastestNodeTime;
 
@@ -346,6 +567,10 @@ public class WorkflowObservabilityReport extends ObservabilityReport {
         @JsonSerialize(using = DurationToMillisSerializer.class)
         private Duration medianNodeTime;
 
+        private int totalRetries;
+
+        private int totalHedges;
+
         private int totalEdgeEvaluations;
 
         private int passedEdgeEvaluations;
@@ -0,0 +1,88 @@
+package org.caselli.cognitiveworkflow.operational.vectordb;
+
+import jakarta.annotation.PreDestroy;
+import org.caselli.cognitiveworkflow.knowledge.model.node.VectorDbNodeMetamodel.Similarity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Open embedded vector indexes of the vector database nodes.
+ * <p>
+ * Each index file is opened once and shared by all the nodes (and executions) using it: an index cannot be
+ * mapped twice, and inserts of one node must be visible to the searches of the others. The indexes stay open
+ * until shutdown, when their graphs are saved.
+ * </p>
+ */
+@Component
+public class EmbeddedVectorIndexManager {
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedVectorIndexManager.class);
+
+    /** Open indexes by normalized path */
+    private final Map<Path, HnswIndex> indexes = new HashMap<>();
+    private boolean closed;
+
+    /**
+     * Gets the index stored at a location, opening (or creating) it if needed
+     * @param location Path of the index file, or a {@code file:} URI
+     * @param dimensions Dimensions of the vectors
+     * @param similarity Similarity function of the vectors
+     * @param m Maximum connections of a vector on each level of the graph
+     * @param efConstruction Size of the candidate list when inserting a vector
+     * @return The index
+     * @throws IllegalArgumentException if the location is not valid, or the index has other dimensions or similarity
+     * @throws IllegalStateException if the manager has been closed
+     * @throws IOException if the index cannot be opened
+     */
+    public synchronized HnswIndex open(String location, int dimensions, Similarity similarity, int m, int efConstruction) throws IOException {
+        if (closed) throw new IllegalStateException("The embedded vector index manager has been closed");
+
+        Path path = resolve(location);
+        HnswIndex index = indexes.get(path);
+        if (index == null) {
+            index = HnswIndex.open(path, dimensions, similarity, m, efConstruction);
+            indexes.put(path, index);
+            logger.info("Opened embedded vector index {} with {} vectors", path, index.size());
+        } else if (index.getDimensions() != dimensions || index.getSimilarity() != similarity)
+            throw new IllegalArgumentException("Vector index " + path + " is open with " + index.getDimensions() + " dimensions and "
+                    + index.getSimilarity() + " similarity");
+
+        return index;
+    }
+
+    /**
+     * Converts the location of an index to its normalized path
+     */
+    static Path resolve(String location) {
+        if (location == null || location.isBlank()) throw new IllegalArgumentException("Embedded vector index location cannot be empty");
+        try {
+            Path path = location.startsWith("file:") ? Path.of(URI.create(location)) : Path.of(location);
+            return path.toAbsolutePath().normalize();
+        } catch (IllegalArgumentException | FileSystemNotFoundException e) {
+            throw new IllegalArgumentException("Invalid embedded vector index location: " + location, e);
+        }
+    }
+
+    /**
+     * Saves and closes all the indexes
+     */
+    @PreDestroy
+    public synchronized void close() {
+        closed = true;
+        for (HnswIndex index : indexes.values()) {
+            try {
+                index.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close the embedded vector index {}: {}", index.getPath(), e.getMessage());
+            }
+        }
+        indexes.clear();
+    }
+}
@@ -0,0 +1,618 @@
+package org.caselli.cognitiveworkflow.operational.vectordb;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import org.caselli.cognitiveworkflow.knowledge.model.node.VectorDbNodeMetamodel.Similarity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Embedded approximate nearest neighbor index (HNSW) over float vectors, stored in local files.
+ * <p>
+ * The vectors are kept in a memory-mapped file and read from it during the searches. The documents (the metadata
+ * of the vectors) are appended to a JSON lines file next to it, and the graph is saved on {@link #flush()}: when
+ * the index is opened, the vectors added after the last flush are linked again, so an index that was not closed
+ * loses no vector.
+ * </p>
+ * <p>
+ * Vectors are added one at a time ({@link #insert}); adding a vector with the id of an existing one replaces it.
+ * Searches accept a metadata filter: when few documents match it, the matching vectors are compared exhaustively
+ * instead of walking the graph. Scores follow MongoDB Atlas Vector Search, so thresholds mean the same on both
+ * backends.
+ * </p>
+ */
+public class HnswIndex implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(HnswIndex.class);
+
+    private static final int MAGIC = 0x484E5357;
+    /** Magic number, dimensions, similarity and number of vectors */
+    private static final int HEADER_BYTES = 16;
+    private static final int SIZE_OFFSET = 12;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_LEVEL = 16;
+
+    @Getter private final Path path;
+    private final Path documentsPath;
+    private final Path graphPath;
+
+    @Getter private final int dimensions;
+    @Getter private final Similarity similarity;
+    private final int m;
+    private final int efConstruction;
+    private final double levelMultiplier;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Random random;
+
+    private final FileChannel channel;
+    private MappedByteBuffer vectors;
+    private int capacity;
+    private Writer documentsWriter;
+
+    /** Neighbors of each node on each of its levels: the first element of a level is the number of neighbors */
+    private final List<int[][]> graph = new ArrayList<>();
+    private final List<String> ids = new ArrayList<>();
+    private final List<Map<String, Object>> documents = new ArrayList<>();
+    private final Map<String, Integer> nodesById = new HashMap<>();
+    /** Nodes replaced by a later insert: they still route the searches, but are never returned */
+    private final BitSet replaced = new BitSet();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private boolean closed;
+
+    private HnswIndex(Path path, int dimensions, Similarity similarity, int m, int efConstruction) throws IOException {
+        this.path = path;
+        this.documentsPath = path.resolveSibling(path.getFileName() + ".docs");
+        this.graphPath = path.resolveSibling(path.getFileName() + ".graph");
+        this.dimensions = dimensions;
+        this.similarity = similarity;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.random = new Random(path.hashCode());
+
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            int storedSize = readHeader();
+            capacity = Math.max(INITIAL_CAPACITY, storedSize);
+            map();
+            vectors.putInt(0, MAGIC).putInt(4, dimensions).putInt(8, similarity.ordinal());
+
+            int size = loadDocuments(storedSize);
+            vectors.putInt(SIZE_OFFSET, size);
+            documentsWriter = Files.newBufferedWriter(documentsPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+            int linked = loadGraph(size);
+            for (int node = linked; node < size; node++) link(node, readVector(node));
+            if (linked < size) logger.info("Vector index {}: linked {} vectors added after the last flush", path, size - linked);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            if (documentsWriter != null) documentsWriter.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an index, creating its files if they do not exist
+     * @param path Path of the vectors file (the documents and the graph are stored next to it)
+     * @param dimensions Dimensions of the vectors
+     * @param similarity Similarity function of the vectors
+     * @param m Maximum connections of a node on each level of the graph (twice as many on the bottom level)
+     * @param efConstruction Size of the candidate list when linking a new vector
+     * @return The index
+     * @throws IllegalArgumentException if the existing index was created with other dimensions or similarity
+     * @throws IOException if the files cannot be read or created
+     */
+    public static HnswIndex open(Path path, int dimensions, Similarity similarity, int m, int efConstruction) throws IOException {
+        if (dimensions < 1) throw new IllegalArgumentException("Vector index dimensions must be at least 1");
+        if (m < 2) throw new IllegalArgumentException("Vector index m must be at least 2");
+        if (efConstruction < 1) throw new IllegalArgumentException("Vector index efConstruction must be at least 1");
+        return new HnswIndex(path.toAbsolutePath().normalize(), dimensions, similarity == null ? Similarity.COSINE : similarity, m, efConstruction);
+    }
+
+    /**
+     * @return The number of vectors of the index (replaced vectors excluded)
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ids.size() - replaced.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a vector to the index, replacing the vector with the same id if any
+     * @param id The id of the vector
+     * @param vector The vector
+     * @param document The metadata of the vector, returned by the searches and matched by their filters
+     * @throws IOException if the vector cannot be stored
+     */
+    public void insert(String id, float[] vector, Map<String, Object> document) throws IOException {
+        if (id == null) throw new IllegalArgumentException("Vector id cannot be null");
+        if (vector.length != dimensions) throw new IllegalArgumentException("Expected a vector of " + dimensions + " dimensions, found " + vector.length);
+        float[] stored = prepare(vector);
+        Map<String, Object> metadata = document != null ? document : Map.of();
+
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            int node = ids.size();
+            ensureCapacity(node + 1);
+
+            // The document is written first: on open, vectors without a document are dropped
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("id", id);
+            entry.put("document", metadata);
+            documentsWriter.write(objectMapper.writeValueAsString(entry));
+            documentsWriter.write('\n');
+            documentsWriter.flush();
+
+            writeVector(node, stored);
+            vectors.putInt(SIZE_OFFSET, node + 1);
+
+            addEntry(node, id, objectMapper.convertValue(metadata, new TypeReference<Map<String, Object>>() {}));
+            link(node, stored);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Searches the nearest neighbors of a vector
+     * @param vector The query vector
+     * @param limit Number of results
+     * @param numCandidates Size of the candidate list of the search (a higher value gives a better recall)
+     * @param filter Filter on the documents (null for none)
+     * @return The results, from the most similar
+     */
+    public List<SearchResult> search(float[] vector, int limit, int numCandidates, Predicate<Map<String, Object>> filter) {
+        if (vector.length != dimensions) throw new IllegalArgumentException("Expected a vector of " + dimensions + " dimensions, found " + vector.length);
+        float[] query = prepare(vector);
+        int ef = Math.max(limit, numCandidates);
+
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            if (entryPoint < 0 || limit < 1) return List.of();
+
+            IntPredicate accepted = node -> !replaced.get(node) && (filter == null || filter.test(documents.get(node)));
+
+            List<Candidate> found;
+            if (filter != null) {
+                // Matching a document costs less than comparing its vector: when few documents match the filter,
+                // comparing all of them is cheaper than walking the graph around the non-matching ones
+                int[] matching = new int[ef];
+                int matches = 0;
+                for (int node = 0; node < ids.size() && matches <= ef; node++)
+                    if (accepted.test(node) && matches++ < ef) matching[matches - 1] = node;
+
+                if (matches <= ef) {
+                    found = new ArrayList<>(matches);
+                    for (int i = 0; i < matches; i++) found.add(new Candidate(matching[i], distance(query, matching[i])));
+                    found.sort(Comparator.comparingDouble(Candidate::distance));
+                } else found = searchGraph(query, ef, accepted);
+            } else found = searchGraph(query, ef, accepted);
+
+            List<SearchResult> results = new ArrayList<>(Math.min(limit, found.size()));
+            for (Candidate candidate : found.subList(0, Math.min(limit, found.size())))
+                results.add(new SearchResult(ids.get(candidate.node()), documents.get(candidate.node()), score(candidate.distance())));
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Saves the graph, so the next open does not link the vectors again
+     * @throws IOException if the graph cannot be saved
+     */
+    public void flush() throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            vectors.force();
+            documentsWriter.flush();
+
+            Path temporary = graphPath.resolveSibling(graphPath.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(graph.size());
+                out.writeInt(entryPoint);
+                out.writeInt(maxLevel);
+                for (int[][] levels : graph) {
+                    out.writeInt(levels.length);
+                    for (int[] neighbors : levels) {
+                        out.writeInt(neighbors[0]);
+                        for (int i = 1; i <= neighbors[0]; i++) out.writeInt(neighbors[i]);
+                    }
+                }
+            }
+            Files.move(temporary, graphPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) return;
+            flush();
+            closed = true;
+            documentsWriter.close();
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) throw new IllegalStateException("Vector index " + path + " is closed");
+    }
+
+    // ------------------------------------------------------------------------------------------------------------
+    // Storage
+    // ------------------------------------------------------------------------------------------------------------
+
+    private int vectorBytes() {
+        return dimensions * Float.BYTES;
+    }
+
+    /**
+     * @return The number of vectors stored in the file
+     */
+    private int readHeader() throws IOException {
+        if (channel.size() < HEADER_BYTES) return 0;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC) throw new IOException("Not a vector index file: " + path);
+
+        int storedDimensions = header.getInt();
+        int storedSimilarity = header.getInt();
+        if (storedDimensions != dimensions || storedSimilarity != similarity.ordinal())
+            throw new IllegalArgumentException("Vector index " + path + " was created with " + storedDimensions + " dimensions and "
+                    + Similarity.values()[storedSimilarity] + " similarity");
+
+        return (int) Math.min(header.getInt(), (channel.size() - HEADER_BYTES) / vectorBytes());
+    }
+
+    private void map() throws IOException {
+        if (vectors != null) vectors.force();
+        vectors = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * vectorBytes());
+    }
+
+    private void ensureCapacity(int size) throws IOException {
+        if (size <= capacity) return;
+
+        // A mapping cannot exceed 2 GB
+        int maxCapacity = (Integer.MAX_VALUE - HEADER_BYTES) / vectorBytes();
+        if (size > maxCapacity) throw new IllegalStateException("Vector index " + path + " is full (" + maxCapacity + " vectors)");
+        capacity = (int) Math.min(maxCapacity, Math.max(size, 2L * capacity));
+        map();
+    }
+
+    private void writeVector(int node, float[] vector) {
+        int offset = HEADER_BYTES + node * vectorBytes();
+        for (int i = 0; i < dimensions; i++) vectors.putFloat(offset + i * Float.BYTES, vector[i]);
+    }
+
+    private float[] readVector(int node) {
+        float[] vector = new float[dimensions];
+        int offset = HEADER_BYTES + node * vectorBytes();
+        for (int i = 0; i < dimensions; i++) vector[i] = vectors.getFloat(offset + i * Float.BYTES);
+        return vector;
+    }
+
+    /**
+     * Reads the documents of the stored vectors, dropping the ones without a vector (or a truncated last line)
+     * @return The number of vectors of the index
+     */
+    @SuppressWarnings("unchecked")
+    private int loadDocuments(int storedSize) throws IOException {
+        List<String> lines = Files.exists(documentsPath) ? Files.readAllLines(documentsPath, StandardCharsets.UTF_8) : List.of();
+
+        int size = 0;
+        for (String line : lines) {
+            if (size == storedSize || line.isBlank()) break;
+            Map<String, Object> entry;
+            try {
+                entry = objectMapper.readValue(line, Map.class);
+            } catch (JsonProcessingException e) {
+                break;
+            }
+            Object document = entry.get("document");
+            addEntry(size++, String.valueOf(entry.get("id")), document instanceof Map ? (Map<String, Object>) document : Map.of());
+        }
+
+        if (size < lines.size()) Files.write(documentsPath, lines.subList(0, size), StandardCharsets.UTF_8);
+        return size;
+    }
+
+    private void addEntry(int node, String id, Map<String, Object> document) {
+        ids.add(id);
+        documents.add(Collections.unmodifiableMap(document));
+        Integer previous = nodesById.put(id, node);
+        if (previous != null) replaced.set(previous);
+    }
+
+    /**
+     * Reads the saved graph
+     * @return The number of nodes linked by the saved graph (0 if there is none or it does not match the vectors)
+     */
+    private int loadGraph(int size) {
+        if (!Files.exists(graphPath)) return 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(graphPath)))) {
+            if (in.readInt() != MAGIC) return 0;
+            int nodes = in.readInt();
+            int savedEntryPoint = in.readInt();
+            int savedMaxLevel = in.readInt();
+            if (nodes > size) return 0;
+
+            List<int[][]> saved = new ArrayList<>(nodes);
+            for (int node = 0; node < nodes; node++) {
+                int[][] levels = new int[in.readInt()][];
+                for (int level = 0; level < levels.length; level++) {
+                    int count = in.readInt();
+                    levels[level] = new int[maxConnections(level) + 1];
+                    levels[level][0] = count;
+                    for (int i = 1; i <= count; i++) levels[level][i] = in.readInt();
+                }
+                saved.add(levels);
+            }
+
+            graph.addAll(saved);
+            entryPoint = savedEntryPoint;
+            maxLevel = savedMaxLevel;
+            return nodes;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Vector index {}: cannot read the saved graph, linking all the vectors again: {}", path, e.getMessage());
+            return 0;
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------------------
+    // Graph
+    // ------------------------------------------------------------------------------------------------------------
+
+    private int maxConnections(int level) {
+        return level == 0 ? 2 * m : m;
+    }
+
+    private int randomLevel() {
+        return Math.min(MAX_LEVEL, (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier));
+    }
+
+    /**
+     * Links a new node to its nearest neighbors on each of its levels
+     */
+    private void link(int node, float[] vector) {
+        int level = randomLevel();
+        int[][] levels = new int[level + 1][];
+        for (int l = 0; l <= level; l++) levels[l] = new int[maxConnections(l) + 1];
+        graph.add(levels);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) current = closest(vector, current, l);
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> candidates = searchLevel(vector, current, efConstruction, l, null);
+            int[] neighbors = selectNeighbors(candidates, maxConnections(l));
+            levels[l][0] = neighbors.length;
+            System.arraycopy(neighbors, 0, levels[l], 1, neighbors.length);
+
+            for (int neighbor : neighbors) connect(neighbor, node, l);
+            current = candidates.get(0).node();
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * Adds a link from a node to a new neighbor, pruning its neighbors if it has too many
+     */
+    private void connect(int node, int neighbor, int level) {
+        int[] neighbors = graph.get(node)[level];
+        int count = neighbors[0];
+        if (count < neighbors.length - 1) {
+            neighbors[count + 1] = neighbor;
+            neighbors[0] = count + 1;
+            return;
+        }
+
+        List<Candidate> candidates = new ArrayList<>(count + 1);
+        for (int i = 1; i <= count; i++) candidates.add(new Candidate(neighbors[i], distance(node, neighbors[i])));
+        candidates.add(new Candidate(neighbor, distance(node, neighbor)));
+        candidates.sort(Comparator.comparingDouble(Candidate::distance));
+
+        int[] selected = selectNeighbors(candidates, neighbors.length - 1);
+        neighbors[0] = selected.length;
+        System.arraycopy(selected, 0, neighbors, 1, selected.length);
+    }
+
+    /**
+     * Selects the neighbors of a node among candidates sorted by distance, preferring the candidates that are closer
+     * to the node than to the neighbors already selected (so the links point in different directions), then
+     * filling up with the nearest ones
+     */
+    private int[] selectNeighbors(List<Candidate> candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.size())];
+        boolean[] taken = new boolean[candidates.size()];
+        int count = 0;
+
+        for (int i = 0; i < candidates.size() && count < selected.length; i++) {
+            Candidate candidate = candidates.get(i);
+            boolean diverse = true;
+            for (int j = 0; j < count && diverse; j++)
+                diverse = distance(candidate.node(), selected[j]) >= candidate.distance();
+            if (diverse) {
+                selected[count++] = candidate.node();
+                taken[i] = true;
+            }
+        }
+
+        for (int i = 0; i < candidates.size() && count < selected.length; i++)
+            if (!taken[i]) selected[count++] = candidates.get(i).node();
+
+        return selected;
+    }
+
+    /**
+     * Moves greedily towards the query on a level
+     * @return The closest node found
+     */
+    private int closest(float[] query, int entry, int level) {
+        int current = entry;
+        float best = distance(query, current);
+        for (boolean improved = true; improved; ) {
+            improved = false;
+            int[] neighbors = graph.get(current)[level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                float d = distance(query, neighbors[i]);
+                if (d < best) {
+                    best = d;
+                    current = neighbors[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    private List<Candidate> searchGraph(float[] query, int ef, IntPredicate accepted) {
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) current = closest(query, current, l);
+        return searchLevel(query, current, ef, 0, accepted);
+    }
+
+    /**
+     * Best-first search of the nearest neighbors on a level
+     * @param accepted The nodes that can be returned (null for all): the other nodes are only walked through
+     * @return The nearest accepted nodes found, from the nearest
+     */
+    private List<Candidate> searchLevel(float[] query, int entry, int ef, int level, IntPredicate accepted) {
+        BitSet visited = new BitSet(graph.size());
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Comparator.comparingDouble(Candidate::distance));
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Comparator.comparingDouble(Candidate::distance).reversed());
+
+        Candidate start = new Candidate(entry, distance(query, entry));
+        visited.set(entry);
+        candidates.add(start);
+        if (accepted == null || accepted.test(entry)) results.add(start);
+
+        while (!candidates.isEmpty()) {
+            Candidate candidate = candidates.poll();
+            if (results.size() >= ef && candidate.distance() > results.peek().distance()) break;
+
+            int[] neighbors = graph.get(candidate.node())[level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int neighbor = neighbors[i];
+                if (visited.get(neighbor)) continue;
+                visited.set(neighbor);
+
+                float d = distance(query, neighbor);
+                if (results.size() < ef || d < results.peek().distance()) {
+                    candidates.add(new Candidate(neighbor, d));
+                    if (accepted == null || accepted.test(neighbor)) {
+                        results.add(new Candidate(neighbor, d));
+                        if (results.size() > ef) results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparingDouble(Candidate::distance));
+        return sorted;
+    }
+
+    // ------------------------------------------------------------------------------------------------------------
+    // Distances
+    // ------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Copies a vector, normalized for the cosine similarity (which then is a dot product)
+     */
+    private float[] prepare(float[] vector) {
+        float[] prepared = vector.clone();
+        if (similarity == Similarity.COSINE) {
+            double norm = 0;
+            for (float value : prepared) norm += value * value;
+            norm = Math.sqrt(norm);
+            if (norm > 0) for (int i = 0; i < prepared.length; i++) prepared[i] /= (float) norm;
+        }
+        return prepared;
+    }
+
+    /**
+     * Distance between the query and a stored vector: the squared euclidean distance, or the opposite of the dot
+     * product (smaller is closer)
+     */
+    private float distance(float[] query, int node) {
+        int offset = HEADER_BYTES + node * vectorBytes();
+        float sum = 0;
+        if (similarity == Similarity.EUCLIDEAN) {
+            for (int i = 0; i < dimensions; i++) {
+                float difference = query[i] - vectors.getFloat(offset + i * Float.BYTES);
+                sum += difference * difference;
+            }
+            return sum;
+        }
+        for (int i = 0; i < dimensions; i++) sum += query[i] * vectors.getFloat(offset + i * Float.BYTES);
+        return -sum;
+    }
+
+    private float distance(int a, int b) {
+        return distance(readVector(a), b);
+    }
+
+    /**
+     * Converts a distance to the score of MongoDB Atlas Vector Search for the same similarity
+     */
+    private double score(float distance) {
+        return similarity == Similarity.EUCLIDEAN ? 1 / (1 + (double) distance) : (1 - (double) distance) / 2;
+    }
+
+    private record Candidate(int node, float distance) {}
+
+    /**
+     * A result of a search
+     * @param id The id of the vector
+     * @param document The metadata of the vector
+     * @param score The similarity score, between 0 and 1
+     */
+    public record SearchResult(String id, Map<String, Object> document, double score) {}
+}
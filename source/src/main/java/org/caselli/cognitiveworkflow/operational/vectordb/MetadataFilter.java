@@ -0,0 +1,194 @@
+package org.caselli.cognitiveworkflow.operational.vectordb;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Evaluates MQL filters on the documents of an embedded vector index, so the same filters work on both backends.
+ * <p>
+ * Supported: equality, {@code $eq}, {@code $ne}, {@code $gt}, {@code $gte}, {@code $lt}, {@code $lte}, {@code $in},
+ * {@code $nin}, {@code $exists}, {@code $not}, {@code $and}, {@code $or} and {@code $nor}. Fields can be dotted
+ * paths, and a condition on an array field matches if any element matches, as in MongoDB. Numbers are compared by
+ * value whatever their type.
+ * </p>
+ */
+public final class MetadataFilter {
+
+    private MetadataFilter() {}
+
+    /**
+     * Compiles a filter
+     * @param filter The filter (null or empty for none)
+     * @return The predicate of the matching documents
+     * @throws IllegalArgumentException if the filter uses an unsupported operator
+     */
+    public static Predicate<Map<String, Object>> compile(Map<String, Object> filter) {
+        if (filter == null || filter.isEmpty()) return document -> true;
+        return compileDocument(filter);
+    }
+
+    private static Predicate<Map<String, Object>> compileDocument(Map<String, Object> filter) {
+        List<Predicate<Map<String, Object>>> conditions = new ArrayList<>();
+
+        for (Map.Entry<String, Object> entry : filter.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+
+            switch (key) {
+                case "$and" -> {
+                    List<Predicate<Map<String, Object>>> clauses = compileClauses(key, value);
+                    conditions.add(document -> clauses.stream().allMatch(clause -> clause.test(document)));
+                }
+                case "$or" -> {
+                    List<Predicate<Map<String, Object>>> clauses = compileClauses(key, value);
+                    conditions.add(document -> clauses.stream().anyMatch(clause -> clause.test(document)));
+                }
+                case "$nor" -> {
+                    List<Predicate<Map<String, Object>>> clauses = compileClauses(key, value);
+                    conditions.add(document -> clauses.stream().noneMatch(clause -> clause.test(document)));
+                }
+                default -> {
+                    if (key.startsWith("$")) throw new IllegalArgumentException("Unsupported filter operator: " + key);
+                    String[] path = key.split("\\.");
+                    Predicate<List<Object>> condition = compileCondition(value);
+                    conditions.add(document -> condition.test(resolve(document, path)));
+                }
+            }
+        }
+
+        return document -> {
+            for (Predicate<Map<String, Object>> condition : conditions) if (!condition.test(document)) return false;
+            return true;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Predicate<Map<String, Object>>> compileClauses(String operator, Object value) {
+        if (!(value instanceof List<?> clauses) || clauses.isEmpty())
+            throw new IllegalArgumentException(operator + " requires a non-empty array of filters");
+
+        List<Predicate<Map<String, Object>>> compiled = new ArrayList<>(clauses.size());
+        for (Object clause : clauses) {
+            if (!(clause instanceof Map<?, ?> map)) throw new IllegalArgumentException(operator + " requires an array of filters");
+            compiled.add(compileDocument((Map<String, Object>) map));
+        }
+        return compiled;
+    }
+
+    /**
+     * Compiles the condition on a field: an operator document, or a value to be equal to.
+     * The condition receives the values of the field (empty if it is missing): the positive operators match if any
+     * value matches, and the negative ones ({@code $ne}, {@code $nin}, {@code $not}) if none does.
+     */
+    @SuppressWarnings("unchecked")
+    private static Predicate<List<Object>> compileCondition(Object condition) {
+        if (!(condition instanceof Map<?, ?> map) || map.isEmpty() || !map.keySet().iterator().next().toString().startsWith("$"))
+            return values -> equalsAny(values, condition);
+
+        List<Predicate<List<Object>>> operators = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : ((Map<String, Object>) map).entrySet()) {
+            Object operand = entry.getValue();
+            operators.add(switch (entry.getKey()) {
+                case "$eq" -> values -> equalsAny(values, operand);
+                case "$ne" -> values -> !equalsAny(values, operand);
+                case "$gt" -> values -> values.stream().anyMatch(value -> compare(value, operand).filter(c -> c > 0).isPresent());
+                case "$gte" -> values -> values.stream().anyMatch(value -> compare(value, operand).filter(c -> c >= 0).isPresent());
+                case "$lt" -> values -> values.stream().anyMatch(value -> compare(value, operand).filter(c -> c < 0).isPresent());
+                case "$lte" -> values -> values.stream().anyMatch(value -> compare(value, operand).filter(c -> c <= 0).isPresent());
+                case "$in" -> {
+                    List<?> options = operands("$in", operand);
+                    yield values -> options.stream().anyMatch(option -> equalsAny(values, option));
+                }
+                case "$nin" -> {
+                    List<?> options = operands("$nin", operand);
+                    yield values -> options.stream().noneMatch(option -> equalsAny(values, option));
+                }
+                case "$exists" -> {
+                    boolean exists = !Boolean.FALSE.equals(operand) && !(operand instanceof Number number && number.doubleValue() == 0);
+                    yield values -> !values.isEmpty() == exists;
+                }
+                case "$not" -> compileCondition(operand).negate();
+                default -> throw new IllegalArgumentException("Unsupported filter operator: " + entry.getKey());
+            });
+        }
+
+        return values -> {
+            for (Predicate<List<Object>> operator : operators) if (!operator.test(values)) return false;
+            return true;
+        };
+    }
+
+    /**
+     * @return Whether a value of a field is equal to the operand (a missing field is equal to null)
+     */
+    private static boolean equalsAny(List<Object> values, Object operand) {
+        if (values.isEmpty()) return operand == null;
+        for (Object value : values) if (equal(value, operand)) return true;
+        return false;
+    }
+
+    private static List<?> operands(String operator, Object operand) {
+        if (!(operand instanceof List<?> list)) throw new IllegalArgumentException(operator + " requires an array");
+        return list;
+    }
+
+    /**
+     * Resolves a dotted path, descending into arrays: the result holds each value found, and each element of the
+     * arrays found (so a condition on an array field matches any of its elements)
+     */
+    private static List<Object> resolve(Object current, String[] path) {
+        List<Object> values = new ArrayList<>();
+        resolve(current, path, 0, values);
+        return values;
+    }
+
+    private static void resolve(Object current, String[] path, int index, List<Object> values) {
+        if (current == null) return;
+
+        if (index == path.length) {
+            values.add(current);
+            if (current instanceof List<?> list) values.addAll(list);
+            return;
+        }
+
+        if (current instanceof Map<?, ?> map) resolve(map.get(path[index]), path, index + 1, values);
+        else if (current instanceof List<?> list) for (Object element : list) resolve(element, path, index, values);
+    }
+
+    private static boolean equal(Object value, Object operand) {
+        if (value instanceof Number a && operand instanceof Number b) {
+            BigDecimal x = toBigDecimal(a), y = toBigDecimal(b);
+            return x != null && y != null ? x.compareTo(y) == 0 : a.doubleValue() == b.doubleValue();
+        }
+        return Objects.equals(value, operand);
+    }
+
+    /**
+     * Compares two values of the same kind (numbers, strings or booleans)
+     * @return The comparison, empty if the values cannot be compared (values of different kinds never match a range
+     * condition, as in MongoDB)
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Optional<Integer> compare(Object value, Object operand) {
+        if (value == null || operand == null) return Optional.empty();
+        if (value instanceof Number a && operand instanceof Number b) {
+            BigDecimal x = toBigDecimal(a), y = toBigDecimal(b);
+            return x == null || y == null ? Optional.empty() : Optional.of(x.compareTo(y));
+        }
+        if (value instanceof Comparable comparable && value.getClass() == operand.getClass()) return Optional.of(comparable.compareTo(operand));
+        return Optional.empty();
+    }
+
+    /**
+     * @return The exact value of a number, null for NaN and infinities
+     */
+    private static BigDecimal toBigDecimal(Number number) {
+        if (number instanceof BigDecimal decimal) return decimal;
+        if (number instanceof Double || number instanceof Float) {
+            double value = number.doubleValue();
+            return Double.isFinite(value) ? new BigDecimal(value) : null;
+        }
+        return new BigDecimal(number.toString());
+    }
+}
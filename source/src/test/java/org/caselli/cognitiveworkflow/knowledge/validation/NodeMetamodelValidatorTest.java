@@ -0,0 +1,50 @@
+package org.caselli.cognitiveworkflow.knowledge.validation;
+
+import org.caselli.cognitiveworkflow.knowledge.model.node.NodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.RestNodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortSchema;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.RestPort;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("test")
+class NodeMetamodelValidatorTest {
+
+    private final NodeMetamodelValidator validator = new NodeMetamodelValidator();
+
+    private RestPort createOutputPort(String key, RestPort.RestPortRole role) {
+        return RestPort.builder()
+                .withKey(key)
+                .withRole(role)
+                .withSchema(PortSchema.builder().stringSchema().build())
+                .build();
+    }
+
+    @Test
+    void testBodyFieldPortsMustNameTopLevelFields() {
+        RestNodeMetamodel node = new RestNodeMetamodel();
+        node.setName("name");
+        node.setUri("http://localhost:8080/service");
+        node.setInvocationMethod(RestNodeMetamodel.InvocationMethod.GET);
+        node.setType(NodeMetamodel.NodeType.TOOL);
+        node.setToolType(RestNodeMetamodel.ToolType.REST);
+        node.setInputPorts(List.of());
+        node.setOutputPorts(List.of(
+                createOutputPort("name", RestPort.RestPortRole.RES_BODY_FIELD),
+                createOutputPort("/data/name", RestPort.RestPortRole.RES_BODY_FIELD),
+                createOutputPort("/body", RestPort.RestPortRole.RES_FULL_BODY)
+        ));
+
+        List<String> components = validator.validate(node).getErrors().stream()
+                .map(ValidationResult.ValidationError::component)
+                .toList();
+
+        assertTrue(components.contains("node.outputPorts[1].key"));
+        assertFalse(components.contains("node.outputPorts[0].key"));
+        assertFalse(components.contains("node.outputPorts[2].key"));
+    }
+}
@@ -0,0 +1,94 @@
+package org.caselli.cognitiveworkflow.operational.AI;
+
+import org.caselli.cognitiveworkflow.knowledge.model.node.LlmNodeMetamodel;
+import org.caselli.cognitiveworkflow.operational.AI.factories.EmbeddingModelFactory;
+import org.caselli.cognitiveworkflow.operational.AI.factories.LLMModelFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("test")
+class AiClientRegistryTest {
+
+    // Clients are built without calling the providers
+    private static final String API_KEY = "sk-test-secret";
+
+    private AiClientRegistry registry;
+    private LLMModelFactory llmModelFactory;
+
+    @BeforeEach
+    void setUp() {
+        registry = AiClientRegistry.withDefaults();
+        llmModelFactory = new LLMModelFactory(registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.close();
+    }
+
+    private static LlmNodeMetamodel.LlmModelOptions options(double temperature) {
+        var options = new LlmNodeMetamodel.LlmModelOptions();
+        options.setTemperature(temperature);
+        return options;
+    }
+
+    @Test
+    void testClientsWithTheSameConfigurationAreShared() {
+        AiClientRegistry.Lease<ChatClient> first = llmModelFactory.acquireChatClient("openai", "gpt-4o", API_KEY, options(0.2));
+        AiClientRegistry.Lease<ChatClient> second = llmModelFactory.acquireChatClient("OpenAI", "gpt-4o", API_KEY, options(0.2));
+        AiClientRegistry.Lease<ChatClient> otherOptions = llmModelFactory.acquireChatClient("openai", "gpt-4o", API_KEY, options(0.9));
+        AiClientRegistry.Lease<ChatClient> anthropic = llmModelFactory.acquireChatClient("anthropic", "claude-3-5-haiku-latest", API_KEY, null);
+
+        assertSame(first.get(), second.get());
+        assertNotSame(first.get(), otherOptions.get());
+        assertTrue(llmModelFactory.isLeaseOf(first, "openai", "gpt-4o", API_KEY, options(0.2)));
+        assertFalse(llmModelFactory.isLeaseOf(first, "openai", "gpt-4o", API_KEY, options(0.9)));
+
+        // The API client of a key is shared by all the models of the provider
+        assertSame(registry.openAiApi(API_KEY), registry.openAiApi(API_KEY));
+        assertNotSame(registry.openAiApi(API_KEY), registry.openAiApi("sk-other"));
+
+        EmbeddingModelFactory embeddingModelFactory = new EmbeddingModelFactory(registry);
+        AiClientRegistry.Lease<EmbeddingModel> embedding = embeddingModelFactory.acquireEmbeddingModel("openai", "text-embedding-3-small", API_KEY);
+        assertSame(embedding.get(), embeddingModelFactory.acquireEmbeddingModel("openai", "text-embedding-3-small", API_KEY).get());
+
+        AiClientRegistry.AiMetrics metrics = registry.getMetrics();
+        assertEquals(4, metrics.created());
+        assertEquals(4, metrics.clients().size());
+        AiClientRegistry.ClientMetrics shared = metrics.clients().stream()
+                .filter(client -> "temperature=0.2, topP=null, maxTokens=null".equals(client.options())).findFirst().orElseThrow();
+        assertEquals(2, shared.references());
+        assertEquals(2, metrics.providers().stream().filter(provider -> provider.provider().equals("openai")).findFirst().orElseThrow().apiClients());
+        assertFalse(metrics.toString().contains(API_KEY), "API keys are never reported");
+    }
+
+    @Test
+    void testClientIsDroppedWhenNobodyHoldsIt() {
+        AiClientRegistry.Lease<ChatClient> first = llmModelFactory.acquireChatClient("openai", "gpt-4o", API_KEY, null);
+        AiClientRegistry.Lease<ChatClient> second = llmModelFactory.acquireChatClient("openai", "gpt-4o", API_KEY, null);
+        ChatClient client = first.get();
+
+        first.close();
+        first.close(); // Releasing twice has no effect
+        assertThrows(IllegalStateException.class, first::get);
+        assertEquals(0, registry.getMetrics().released());
+        assertSame(client, second.get());
+
+        second.close();
+        assertEquals(1, registry.getMetrics().released());
+        assertTrue(registry.getMetrics().clients().isEmpty());
+        assertTrue(registry.getMetrics().providers().isEmpty());
+
+        // The next holder gets a new client
+        assertNotSame(client, llmModelFactory.acquireChatClient("openai", "gpt-4o", API_KEY, null).get());
+
+        registry.close();
+        assertThrows(IllegalStateException.class, () -> llmModelFactory.acquireChatClient("openai", "gpt-4o", API_KEY, null));
+    }
+}
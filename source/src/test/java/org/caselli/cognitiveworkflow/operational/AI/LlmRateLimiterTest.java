@@ -0,0 +1,181 @@
+package org.caselli.cognitiveworkflow.operational.AI;
+
+import org.caselli.cognitiveworkflow.operational.execution.Deadline;
+import org.caselli.cognitiveworkflow.operational.execution.DeadlineExceededException;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("test")
+class LlmRateLimiterTest {
+
+    @Test
+    void testTokensAreEstimatedAndReadFromTheUsage() {
+        byte[] chat = "{\"model\":\"gpt-4o\",\"messages\":[],\"max_tokens\":100}".getBytes(StandardCharsets.UTF_8);
+        assertEquals((chat.length + 3) / 4 + 100, LlmRateLimiter.estimateTokens(chat, 256));
+
+        byte[] withoutMaximum = "{\"model\":\"gpt-4o\",\"messages\":[]}".getBytes(StandardCharsets.UTF_8);
+        assertEquals((withoutMaximum.length + 3) / 4 + 256, LlmRateLimiter.estimateTokens(withoutMaximum, 256));
+
+        // Embeddings have no completion
+        byte[] embedding = "{\"model\":\"text-embedding-3-small\",\"input\":\"hello\"}".getBytes(StandardCharsets.UTF_8);
+        assertEquals((embedding.length + 3) / 4, LlmRateLimiter.estimateTokens(embedding, 256));
+
+        assertEquals(42L, LlmRateLimiter.reportedTokens("{\"usage\":{\"prompt_tokens\":30,\"total_tokens\":42}}".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(15L, LlmRateLimiter.reportedTokens("{\"usage\":{\"input_tokens\":10,\"output_tokens\":5}}".getBytes(StandardCharsets.UTF_8)));
+        assertNull(LlmRateLimiter.reportedTokens("not json".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testRetryAfterHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("retry-after-ms", "1500");
+        headers.set(HttpHeaders.RETRY_AFTER, "7");
+        assertEquals(Duration.ofMillis(1500), LlmRateLimiter.retryAfter(headers, 0));
+
+        headers.remove("retry-after-ms");
+        assertEquals(Duration.ofSeconds(7), LlmRateLimiter.retryAfter(headers, 0));
+
+        // Exponential backoff without the header, and bounded waits
+        assertEquals(Duration.ofSeconds(4), LlmRateLimiter.retryAfter(new HttpHeaders(), 2));
+        assertEquals(Duration.ofSeconds(60), LlmRateLimiter.retryAfter(new HttpHeaders(), 20));
+        headers.set(HttpHeaders.RETRY_AFTER, "3600");
+        assertEquals(Duration.ofSeconds(60), LlmRateLimiter.retryAfter(headers, 0));
+    }
+
+    @Test
+    void testRequestsWaitUntilTheLimitsAllowThem() {
+        LlmRateLimiter limiter = new LlmRateLimiter(2, 0, 0, 0, 100, 3, 256);
+
+        limiter.acquire("openai", LlmRequestOrigin.DEFAULT, Deadline.NONE, 10).complete(null);
+        limiter.acquire("openai", LlmRequestOrigin.DEFAULT, Deadline.NONE, 10).complete(null);
+
+        // The next request is admitted in 30 seconds: first the deadline, then the maximum wait fail it
+        assertThrows(DeadlineExceededException.class,
+                () -> limiter.acquire("openai", LlmRequestOrigin.DEFAULT, Deadline.after(Duration.ofMillis(20)), 10));
+        assertThrows(IllegalStateException.class, () -> limiter.acquire("openai", LlmRequestOrigin.DEFAULT, Deadline.NONE, 10));
+
+        // Providers without limits are not queued
+        limiter.acquire("anthropic", LlmRequestOrigin.DEFAULT, Deadline.NONE, 1_000_000).complete(null);
+
+        List<LlmRateLimiter.ProviderRateMetrics> metrics = limiter.getMetrics();
+        assertEquals(1, metrics.size());
+        assertEquals(2, metrics.get(0).admitted());
+        assertEquals(1, metrics.get(0).timeouts());
+        assertEquals(0, metrics.get(0).queued());
+    }
+
+    @Test
+    void testReportedUsageReconcilesTheEstimate() {
+        LlmRateLimiter limiter = new LlmRateLimiter(0, 1000, 0, 0, 100, 3, 256);
+
+        limiter.acquire("openai", LlmRequestOrigin.DEFAULT, Deadline.NONE, 600).complete(100L);
+        LlmRateLimiter.ProviderRateMetrics metrics = limiter.getMetrics().get(0);
+        assertTrue(metrics.availableTokens() >= 900, "The overestimate is refunded");
+        assertEquals(600, metrics.estimatedTokens());
+        assertEquals(100, metrics.reportedTokens());
+        assertEquals(100.0 / 600, metrics.reportedToEstimatedRatio(), 1e-9);
+
+        // An underestimate puts the bucket into debt, so the next requests wait
+        LlmRateLimiter.Permit permit = limiter.acquire("openai", LlmRequestOrigin.DEFAULT, Deadline.NONE, 100);
+        permit.complete(2000L);
+        permit.complete(0L); // Only the first completion counts
+        assertTrue(limiter.getMetrics().get(0).availableTokens() < 0);
+        assertThrows(IllegalStateException.class, () -> limiter.acquire("openai", LlmRequestOrigin.DEFAULT, Deadline.NONE, 10));
+    }
+
+    @Test
+    void testHigherPrioritiesAreAdmittedFirst() throws Exception {
+        LlmRateLimiter limiter = new LlmRateLimiter(0, 60_000, 0, 0, 10_000, 3, 256);
+        limiter.acquire("openai", LlmRequestOrigin.DEFAULT, Deadline.NONE, 60_000);
+
+        List<String> admitted = admitInOrder(limiter, List.of(
+                LlmRequestOrigin.workflow("w1"),
+                LlmRequestOrigin.service("intent-detector")));
+
+        assertEquals(List.of("service:intent-detector", "workflow:w1"), admitted);
+    }
+
+    @Test
+    void testFlowsShareTheCapacityEqually() throws Exception {
+        LlmRateLimiter limiter = new LlmRateLimiter(0, 60_000, 0, 0, 10_000, 3, 256);
+        limiter.acquire("openai", LlmRequestOrigin.DEFAULT, Deadline.NONE, 60_000);
+
+        // The second workflow queues after three requests of the first one, but does not wait for all of them
+        List<String> admitted = admitInOrder(limiter, List.of(
+                LlmRequestOrigin.workflow("w1"),
+                LlmRequestOrigin.workflow("w1"),
+                LlmRequestOrigin.workflow("w1"),
+                LlmRequestOrigin.workflow("w2")));
+
+        assertEquals(List.of("workflow:w1", "workflow:w2", "workflow:w1", "workflow:w1"), admitted);
+    }
+
+    @Test
+    void testThrottledRequestsAreRetriedAfterTheWaitOfTheProvider() throws Exception {
+        LlmRateLimiter limiter = new LlmRateLimiter(100, 0, 0, 0, 10_000, 3, 256);
+        AtomicInteger calls = new AtomicInteger();
+
+        MockClientHttpResponse throttled = new MockClientHttpResponse(new byte[0], HttpStatus.TOO_MANY_REQUESTS);
+        throttled.getHeaders().set("retry-after-ms", "20");
+        byte[] body = "{\"usage\":{\"total_tokens\":42}}".getBytes(StandardCharsets.UTF_8);
+
+        long start = System.nanoTime();
+        // The name of the provider is not case sensitive
+        ClientHttpResponse response = limiter.interceptor("OpenAI").intercept(
+                new MockClientHttpRequest(HttpMethod.POST, URI.create("https://api.openai.com/v1/chat/completions")),
+                "{\"messages\":[]}".getBytes(StandardCharsets.UTF_8),
+                (request, requestBody) -> calls.incrementAndGet() == 1 ? throttled : new MockClientHttpResponse(body, HttpStatus.OK));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals(body, response.getBody().readAllBytes(), "The buffered body is still readable");
+        assertEquals(2, calls.get());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+
+        LlmRateLimiter.ProviderRateMetrics metrics = limiter.getMetrics().get(0);
+        assertEquals(1, metrics.throttled());
+        assertEquals(1, metrics.retries());
+        assertEquals(2, metrics.admitted());
+        assertEquals(42, metrics.reportedTokens());
+    }
+
+    /**
+     * Queues a request of 300 tokens per origin, in order, and returns the order in which their flows are admitted
+     */
+    private static List<String> admitInOrder(LlmRateLimiter limiter, List<LlmRequestOrigin> origins) throws Exception {
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(origins.size());
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < origins.size(); i++) {
+                LlmRequestOrigin origin = origins.get(i);
+                results.add(executor.submit(() -> {
+                    limiter.acquire("openai", origin, Deadline.NONE, 300);
+                    admitted.add(origin.flow());
+                }));
+                // Wait for the request to be queued before the next one
+                while (limiter.getMetrics().get(0).queued() < i + 1) Thread.sleep(1);
+            }
+            for (Future<?> result : results) result.get(10, TimeUnit.SECONDS);
+            return admitted;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
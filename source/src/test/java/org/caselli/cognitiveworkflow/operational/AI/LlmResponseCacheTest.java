@@ -0,0 +1,169 @@
+package org.caselli.cognitiveworkflow.operational.AI;
+
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortSchema;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("test")
+class LlmResponseCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testIdenticalRequestsAreServedFromTheCache() {
+        LlmResponseCache cache = LlmResponseCache.withDefaults();
+        List<Message> messages = List.of(new SystemMessage("Translate to French"), new UserMessage("Hello"));
+        String key = LlmResponseCache.key("openai|gpt-4o|0.0", messages, PortSchema.builder().stringSchema().build());
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals("Bonjour", cache.getOrCall(key, null, () -> {
+            calls.incrementAndGet();
+            return "Bonjour";
+        }));
+        assertEquals("Bonjour", cache.getOrCall(key, null, () -> "Other " + calls.incrementAndGet()));
+        assertEquals(1, calls.get());
+
+        // Any difference in the model, the messages or the schema is another request
+        assertEquals(key, LlmResponseCache.key("openai|gpt-4o|0.0", List.of(new SystemMessage("Translate to French"), new UserMessage("Hello")), PortSchema.builder().stringSchema().build()));
+        assertNotEquals(key, LlmResponseCache.key("openai|gpt-4o|0.2", messages, PortSchema.builder().stringSchema().build()));
+        assertNotEquals(key, LlmResponseCache.key("openai|gpt-4o|0.0", List.of(new UserMessage("Translate to French"), new UserMessage("Hello")), PortSchema.builder().stringSchema().build()));
+        assertNotEquals(key, LlmResponseCache.key("openai|gpt-4o|0.0", List.of(new SystemMessage("Translate to French\nHello")), PortSchema.builder().stringSchema().build()));
+        assertNotEquals(key, LlmResponseCache.key("openai|gpt-4o|0.0", messages, PortSchema.builder().intSchema().build()));
+
+        LlmResponseCache.CacheMetrics metrics = cache.getMetrics();
+        assertEquals(1, metrics.hits());
+        assertEquals(1, metrics.misses());
+        assertEquals(0.5, metrics.hitRate());
+    }
+
+    @Test
+    void testExpiredAndFailedResponsesAreNotReused() throws Exception {
+        LlmResponseCache cache = LlmResponseCache.withDefaults();
+
+        cache.getOrCall("a", Duration.ofMillis(20), () -> "first");
+        Thread.sleep(40);
+        assertEquals("second", cache.getOrCall("a", null, () -> "second"));
+
+        assertThrows(IllegalStateException.class, () -> cache.getOrCall("b", null, () -> {
+            throw new IllegalStateException("Unparsable response");
+        }));
+        assertEquals("valid", cache.getOrCall("b", null, () -> "valid"));
+        assertEquals(0, cache.getMetrics().hits());
+    }
+
+    @Test
+    void testLeastRecentlyUsedResponsesAreEvicted() {
+        LlmResponseCache cache = new LlmResponseCache(2, 1000, 3600, null);
+        cache.getOrCall("a", null, () -> "A");
+        cache.getOrCall("b", null, () -> "B");
+        cache.getOrCall("a", null, () -> "not called");
+        cache.getOrCall("c", null, () -> "C"); // Evicts b
+
+        assertEquals("A", cache.getOrCall("a", null, () -> "not called"));
+        assertEquals("B2", cache.getOrCall("b", null, () -> "B2"));
+
+        assertEquals(2, cache.getMetrics().evictions());
+
+        // A response larger than the size bound is not kept
+        assertEquals(600, cache.getOrCall("large", null, () -> "x".repeat(600)).length());
+        assertEquals(0, cache.getMetrics().entries());
+        assertEquals(0, cache.getMetrics().bytes());
+    }
+
+    @Test
+    void testConcurrentIdenticalMissesCallTheProviderOnce() throws Exception {
+        LlmResponseCache cache = LlmResponseCache.withDefaults();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> cache.getOrCall("k", null, () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return "response";
+            })));
+            started.await();
+            for (int i = 0; i < 7; i++)
+                results.add(executor.submit(() -> cache.getOrCall("k", null, () -> "call " + calls.incrementAndGet())));
+
+            // Wait for the followers to join the call in progress
+            while (cache.getMetrics().coalesced() < 7) Thread.sleep(5);
+            release.countDown();
+
+            for (Future<String> result : results) assertEquals("response", result.get(5, TimeUnit.SECONDS));
+            assertEquals(1, calls.get());
+            assertEquals(1, cache.getMetrics().misses());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFailuresArePropagatedToTheCoalescedCallers() throws Exception {
+        LlmResponseCache cache = LlmResponseCache.withDefaults();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> cache.getOrCall("k", null, () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                throw new IllegalArgumentException("Provider error");
+            }));
+            started.await();
+            Future<String> follower = executor.submit(() -> cache.getOrCall("k", null, () -> "not called"));
+            while (cache.getMetrics().coalesced() < 1) Thread.sleep(5);
+            release.countDown();
+
+            ExecutionException leaderError = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+            ExecutionException followerError = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalArgumentException.class, leaderError.getCause());
+            assertInstanceOf(IllegalArgumentException.class, followerError.getCause());
+            assertEquals(0, cache.getMetrics().entries());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testResponsesAreRestoredFromTheFile() {
+        String file = directory.resolve("llm-cache.jsonl").toString();
+
+        LlmResponseCache cache = new LlmResponseCache(100, 100_000, 3600, file);
+        cache.getOrCall("kept", null, () -> "{\"answer\": 42}");
+        cache.getOrCall("expired", Duration.ZERO, () -> "old");
+        cache.save();
+
+        LlmResponseCache restored = new LlmResponseCache(100, 100_000, 3600, file);
+        assertEquals(1, restored.getMetrics().entries());
+        assertEquals("{\"answer\": 42}", restored.getOrCall("kept", null, () -> "not called"));
+        assertEquals("new", restored.getOrCall("expired", null, () -> "new"));
+    }
+}
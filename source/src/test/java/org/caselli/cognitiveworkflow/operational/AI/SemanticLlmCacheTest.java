@@ -0,0 +1,124 @@
+package org.caselli.cognitiveworkflow.operational.AI;
+
+import org.caselli.cognitiveworkflow.operational.AI.services.IntentDetectionService.IntentDetectionResponse.IntentDetectorResult;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("test")
+class SemanticLlmCacheTest {
+
+    // Embeddings of the normalized prompts: paraphrases are close, other requests are far
+    private static final Map<String, List<Double>> EMBEDDINGS = Map.of(
+            "translate hello to spanish", List.of(1.0, 0.0, 0.0),
+            "please translate hello into spanish", List.of(0.98, 0.2, 0.0),
+            "translate hello to german", List.of(0.8, 0.6, 0.0),
+            "what is the weather in rome?", List.of(0.0, 0.0, 1.0)
+    );
+
+    private static final Function<String, List<Double>> EMBEDDER = text -> {
+        List<Double> embedding = EMBEDDINGS.get(text);
+        if (embedding == null) throw new IllegalStateException("Unknown text " + text);
+        return embedding;
+    };
+
+    @Test
+    void testParaphrasesReuseTheAnswer() {
+        SemanticLlmCache cache = new SemanticLlmCache(EMBEDDER, 0.95, 100, Duration.ofHours(1), 0);
+        AtomicInteger calls = new AtomicInteger();
+
+        var first = cache.getOrCall("node", "v1", "Translate hello to Spanish", null, String.class,
+                () -> "hola " + calls.incrementAndGet(), Objects::equals);
+        assertFalse(first.isHit());
+        assertEquals("hola 1", first.value());
+
+        // Case and spacing are normalized
+        var paraphrase = cache.getOrCall("node", "v1", "  Please translate   hello into Spanish\n", null, String.class,
+                () -> "hola " + calls.incrementAndGet(), Objects::equals);
+        assertTrue(paraphrase.isHit());
+        assertEquals("hola 1", paraphrase.value());
+        assertTrue(paraphrase.similarity() > 0.95);
+
+        // Below the threshold
+        assertEquals("hallo 2", cache.getOrCall("node", "v1", "Translate hello to German", null, String.class,
+                () -> "hallo " + calls.incrementAndGet(), Objects::equals).value());
+        assertEquals("hola 3", cache.getOrCall("other-node", "v1", "translate hello to spanish", null, String.class,
+                () -> "hola " + calls.incrementAndGet(), Objects::equals).value());
+        assertEquals(3, calls.get(), "Scopes do not share answers");
+
+        SemanticLlmCache.SemanticCacheMetrics metrics = cache.getMetrics();
+        assertEquals(1, metrics.hits());
+        assertEquals(3, metrics.misses());
+        assertEquals(3, metrics.entries());
+        assertEquals(0.25, metrics.hitRate());
+    }
+
+    @Test
+    void testAnswersOfAnotherVersionAreNotReused() {
+        SemanticLlmCache cache = new SemanticLlmCache(EMBEDDER, 0.95, 100, Duration.ofHours(1), 0);
+        cache.getOrCall("node", "v1", "translate hello to spanish", null, String.class, () -> "hola", Objects::equals);
+
+        var answer = cache.getOrCall("node", "v2", "translate hello to spanish", null, String.class, () -> "¡hola!", Objects::equals);
+        assertFalse(answer.isHit());
+        assertEquals("¡hola!", answer.value());
+        assertEquals(1, cache.getMetrics().stale());
+        assertEquals(1, cache.getMetrics().entries(), "The stale answer is replaced");
+
+        // Expired answers are not reused either
+        SemanticLlmCache expiring = new SemanticLlmCache(EMBEDDER, 0.95, 100, Duration.ZERO, 0);
+        expiring.getOrCall("node", "v1", "translate hello to spanish", null, String.class, () -> "hola", Objects::equals);
+        assertFalse(expiring.getOrCall("node", "v1", "translate hello to spanish", null, String.class, () -> "hola", Objects::equals).isHit());
+    }
+
+    @Test
+    void testVerifiedHitsCountTheFalsePositives() {
+        SemanticLlmCache cache = new SemanticLlmCache(EMBEDDER, 0.7, 100, Duration.ofHours(1), 1);
+        cache.getOrCall("node", "v1", "translate hello to spanish", null, String.class, () -> "hola", Objects::equals);
+
+        // A paraphrase with the same answer
+        var confirmed = cache.getOrCall("node", "v1", "please translate hello into spanish", null, String.class, () -> "hola", Objects::equals);
+        assertEquals("hola", confirmed.value());
+
+        // A similar prompt with another answer: the model answer is returned and replaces the cached one
+        var falsePositive = cache.getOrCall("node", "v1", "translate hello to german", null, String.class, () -> "hallo", Objects::equals);
+        assertEquals("hallo", falsePositive.value());
+        assertFalse(falsePositive.isHit());
+
+        SemanticLlmCache.SemanticCacheMetrics metrics = cache.getMetrics();
+        assertEquals(2, metrics.verifications());
+        assertEquals(1, metrics.falsePositives());
+        assertEquals(0.5, metrics.falsePositiveRate());
+        assertEquals(0.8, metrics.highestFalsePositiveSimilarity(), 1e-6);
+    }
+
+    @Test
+    void testStructuredAnswersAreCopied() {
+        SemanticLlmCache cache = new SemanticLlmCache(EMBEDDER, 0.95, 1, Duration.ofHours(1), 0);
+        IntentDetectorResult detected = new IntentDetectorResult();
+        detected.setIntentName("TRANSLATE_TEXT");
+        detected.setIntentId("intent-1");
+        detected.setConfidence(0.9);
+        detected.setUserVariables(Map.of("TARGET_LANGUAGE", "Spanish"));
+
+        cache.getOrCall("intent-detector", "v1", "translate hello to spanish", null, IntentDetectorResult.class, () -> detected, Objects::equals);
+        IntentDetectorResult reused = cache.getOrCall("intent-detector", "v1", "please translate hello into spanish", null,
+                IntentDetectorResult.class, () -> fail("The model is not called"), Objects::equals).value();
+
+        assertEquals(detected, reused);
+        assertNotSame(detected, reused);
+
+        // The cache is bounded, and a prompt that cannot be embedded skips it
+        cache.getOrCall("intent-detector", "v1", "what is the weather in rome?", null, IntentDetectorResult.class, IntentDetectorResult::new, Objects::equals);
+        assertEquals(1, cache.getMetrics().entries());
+        assertEquals("unknown", cache.getOrCall("intent-detector", "v1", "unknown", null, String.class, () -> "unknown", Objects::equals).value());
+        assertEquals(1, cache.getMetrics().embeddingFailures());
+    }
+}
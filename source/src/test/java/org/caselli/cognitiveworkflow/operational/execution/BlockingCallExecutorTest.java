@@ -0,0 +1,59 @@
+package org.caselli.cognitiveworkflow.operational.execution;
+
+import org.caselli.cognitiveworkflow.operational.AI.LlmRequestOrigin;
+import org.caselli.cognitiveworkflow.operational.observability.ResponseStream;
+import org.caselli.cognitiveworkflow.operational.observability.WorkflowObservabilityReport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("test")
+class BlockingCallExecutorTest {
+
+    private final BlockingCallExecutor executor = new BlockingCallExecutor(1);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void testCallsRunWithTheScopesOfTheCaller() throws Exception {
+        Deadline deadline = Deadline.after(Duration.ofSeconds(10));
+        ResponseStream stream = new WorkflowObservabilityReport("workflow", "workflow", new ExecutionContext()).responseStream("node");
+        Thread caller = Thread.currentThread();
+
+        try (ExecutionScopes.Scope ignored = ExecutionScopes.capture().withDeadline(deadline).activate();
+             LlmRequestOrigin.Scope ignoredOrigin = LlmRequestOrigin.workflow("w1").activate();
+             ResponseStream.Scope ignoredStream = stream.activate()) {
+
+            ExecutionScopes inCall = executor.callWithin(deadline, "call", () -> {
+                assertNotSame(caller, Thread.currentThread());
+                return ExecutionScopes.capture();
+            });
+
+            assertSame(deadline, inCall.deadline());
+            assertEquals(LlmRequestOrigin.workflow("w1"), inCall.origin());
+            assertSame(stream, inCall.stream());
+        }
+
+        // The scopes are restored on the worker thread once the call completes
+        ExecutionScopes after = executor.callWithin(deadline, "call", ExecutionScopes::capture);
+        assertEquals(LlmRequestOrigin.DEFAULT, after.origin());
+        assertSame(ResponseStream.NONE, after.stream());
+    }
+
+    @Test
+    void testTheCallerStopsWaitingAtTheDeadline() {
+        long start = System.nanoTime();
+        assertThrows(DeadlineExceededException.class, () -> executor.callWithin(Deadline.after(Duration.ofMillis(50)), "slow call", () -> {
+            Thread.sleep(10_000);
+            return null;
+        }));
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+    }
+}
@@ -0,0 +1,109 @@
+package org.caselli.cognitiveworkflow.operational.execution;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("test")
+class ConcurrentExecutionContextTest {
+
+    private static final int THREADS = 8;
+    private static final int WRITES_PER_THREAD = 1_000;
+    private static final int READS_PER_THREAD = 100;
+
+    @Test
+    void testDotNotationSemantics() {
+        ConcurrentExecutionContext context = new ConcurrentExecutionContext();
+        context.put("user.details.0.name", "Alice");
+        context.put("user.details.1.name", "Bob");
+        context.put("user.id", "12345");
+
+        assertEquals("Alice", context.get("user.details.0.name"));
+        assertEquals("Bob", context.get("user.details.1.name"));
+        assertInstanceOf(List.class, context.get("user.details"));
+        assertTrue(context.containsKey("user.id"));
+        assertNull(context.get("."));
+
+        assertEquals("12345", context.remove("user.id"));
+        assertFalse(context.containsKey("user.id"));
+        assertEquals("default", context.getOrDefault("user.id", "default"));
+
+        assertEquals(Set.of("user"), context.keySet());
+        assertEquals(1, context.size());
+    }
+
+    @Test
+    void testReadsReturnCopies() {
+        ConcurrentExecutionContext context = new ConcurrentExecutionContext();
+        context.put("user.profile.name", "Marco Rossi");
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> profile = (Map<String, Object>) context.get("user.profile");
+        profile.put("name", "Changed");
+
+        assertEquals("Marco Rossi", context.get("user.profile.name"));
+
+        ConcurrentExecutionContext copy = context.copy();
+        copy.put("user.profile.name", "Copy");
+        assertEquals("Marco Rossi", context.get("user.profile.name"));
+        assertEquals(context, new ConcurrentExecutionContext(context));
+    }
+
+    @Test
+    void testConcurrentWritersOnOverlappingPaths() throws Exception {
+        ConcurrentExecutionContext context = new ConcurrentExecutionContext();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 2);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < WRITES_PER_THREAD; i++) {
+                        // Same root, same list: every thread creates and grows the same nested containers
+                        context.put("shared.items." + (i * THREADS + thread), thread);
+                        // Same root, distinct nested maps
+                        context.put("shared.byThread." + thread + ".last", i);
+                        // Distinct roots, created concurrently
+                        context.put("root" + thread + ".value", i);
+                    }
+                    return null;
+                }));
+            }
+
+            // Readers iterate over the containers while they are being modified
+            for (int r = 0; r < 2; r++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < READS_PER_THREAD; i++) {
+                        Object items = context.get("shared.items");
+                        if (items != null) for (Object ignored : (List<?>) items) { }
+                        context.forEach((key, value) -> { });
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> future : futures) future.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<?> items = (List<?>) context.get("shared.items");
+        assertEquals(THREADS * WRITES_PER_THREAD, items.size());
+        for (int i = 0; i < items.size(); i++) assertEquals(i % THREADS, items.get(i));
+
+        for (int t = 0; t < THREADS; t++) {
+            assertEquals(WRITES_PER_THREAD - 1, context.get("shared.byThread." + t + ".last"));
+            assertEquals(WRITES_PER_THREAD - 1, context.get("root" + t + ".value"));
+        }
+        assertEquals(THREADS + 1, context.size());
+    }
+}
@@ -0,0 +1,51 @@
+package org.caselli.cognitiveworkflow.operational.execution;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("test")
+class ContextPathTest {
+
+    @Test
+    void testPathsAreInterned() {
+        ContextPath path = ContextPath.of("data.users.1.name");
+
+        assertSame(path, ContextPath.of(new String("data.users.1.name")));
+        assertNotSame(path, ContextPath.of("data.users.2.name"));
+        assertEquals("data.users.1.name", path.key());
+    }
+
+    @Test
+    void testSegmentsAndIndicesArePreParsed() {
+        ContextPath path = ContextPath.of("data.users.1.name");
+
+        assertEquals(4, path.size());
+        assertFalse(path.isSimple());
+        assertEquals("data", path.root());
+        assertEquals("users", path.segment(1));
+        assertFalse(path.isIndex(0));
+        assertTrue(path.isIndex(2));
+        assertEquals(1, path.index(2));
+        assertArrayEquals(new String[]{"data", "users", "1", "name"}, path.segments());
+
+        assertTrue(ContextPath.of("outputA").isSimple());
+        assertThrows(IllegalArgumentException.class, () -> ContextPath.of(null));
+    }
+
+    @Test
+    void testCompiledPathsAndStringKeysReadTheSameValues() {
+        ExecutionContext context = new ExecutionContext();
+        context.put("data", Map.of("users", List.of(Map.of("name", "Alice"), Map.of("name", "Bob"))));
+        context.put(ContextPath.of("response.items.0.price"), 10.0);
+
+        assertEquals("Bob", context.get(ContextPath.of("data.users.1.name")));
+        assertEquals("Bob", context.get("data.users.1.name"));
+        assertEquals(10.0, context.get("response.items.0.price"));
+        assertNull(context.get(ContextPath.of("data.users.5.name")));
+    }
+}
@@ -440,4 +440,34 @@ class ExecutionContextTest {
         ExecutionContext nullCopy = new ExecutionContext(null);
         assertTrue(nullCopy.isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testContextPathAccess() {
+        ContextPath path = ContextPath.of("data.users.1.name");
+        context.put(path, "Bob");
+
+        assertTrue(context.get("data.users") instanceof List);
+        assertNull(context.get("data.users.0"));
+        assertEquals("Bob", context.get(path));
+        assertEquals("Bob", context.get("data.users.1.name"));
+        assertTrue(context.containsKey(path));
+
+        assertEquals("Bob", context.remove(path));
+        assertFalse(context.containsKey(path));
+        assertEquals("fallback", context.getOrDefault(path, "fallback"));
+    }
+
+    @Test
+    void testContextPathIsInternedAndPreDecoded() {
+        ContextPath path = ContextPath.of("orders.12.items");
+
+        assertSame(path, ContextPath.of("orders.12.items"));
+        assertEquals(3, path.size());
+        assertEquals("orders", path.root());
+        assertFalse(path.isIndex(0));
+        assertTrue(path.isIndex(1));
+        assertEquals(12, path.index(1));
+        assertTrue(ContextPath.of("simple").isSimple());
+        assertThrows(IllegalArgumentException.class, () -> ContextPath.of(null));
+    }
+}
@@ -0,0 +1,181 @@
+package org.caselli.cognitiveworkflow.operational.execution;
+
+import org.caselli.cognitiveworkflow.knowledge.model.node.GatewayNodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.RestNodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortSchema;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.RestPort;
+import org.caselli.cognitiveworkflow.knowledge.model.workflow.WorkflowEdge;
+import org.caselli.cognitiveworkflow.knowledge.model.workflow.WorkflowMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.workflow.WorkflowNode;
+import org.caselli.cognitiveworkflow.operational.instances.GatewayNodeInstance;
+import org.caselli.cognitiveworkflow.operational.instances.NodeInstance;
+import org.caselli.cognitiveworkflow.operational.instances.RestNodeInstance;
+import org.caselli.cognitiveworkflow.operational.instances.WorkflowInstance;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Tag("test")
+class ExecutionPlanTest {
+
+    private NodeInstance createNode(String id, String inputKey, String outputKey) {
+        RestNodeMetamodel metamodel = new RestNodeMetamodel();
+        metamodel.setId(id);
+        metamodel.setInputPorts(List.of(RestPort.builder().withKey(inputKey).withSchema(PortSchema.builder().stringSchema().build()).build()));
+        metamodel.setOutputPorts(List.of(RestPort.builder().withKey(outputKey).withSchema(PortSchema.builder().stringSchema().build()).build()));
+
+        RestNodeInstance node = mock(RestNodeInstance.class);
+        when(node.getId()).thenReturn(id);
+        when(node.getMetamodel()).thenReturn(metamodel);
+        return node;
+    }
+
+    private WorkflowInstance createDiamond() {
+        List<NodeInstance> instances = new ArrayList<>();
+        List<WorkflowNode> nodes = new ArrayList<>();
+        for (String id : List.of("A", "B", "C", "D")) {
+            instances.add(createNode("node" + id, "in" + id, "out" + id));
+            WorkflowNode node = new WorkflowNode();
+            node.setId(id);
+            node.setNodeMetamodelId("node" + id);
+            nodes.add(node);
+        }
+
+        List<WorkflowEdge> edges = new ArrayList<>();
+        for (String[] pair : new String[][]{{"A", "B"}, {"A", "C"}, {"B", "D"}, {"C", "D"}}) {
+            WorkflowEdge edge = new WorkflowEdge();
+            edge.setId(pair[0] + pair[1]);
+            edge.setSourceNodeId(pair[0]);
+            edge.setTargetNodeId(pair[1]);
+            edges.add(edge);
+        }
+
+        WorkflowMetamodel metamodel = new WorkflowMetamodel();
+        metamodel.setId("workflow");
+        metamodel.setNodes(nodes);
+        metamodel.setEdges(edges);
+
+        WorkflowInstance instance = new WorkflowInstance();
+        instance.setMetamodel(metamodel);
+        instance.setNodeInstances(instances);
+        return instance;
+    }
+
+    @Test
+    void compile_shouldIndexTopology() {
+        ExecutionPlan plan = createDiamond().getExecutionPlan();
+
+        assertEquals(4, plan.getNodeCount());
+        assertEquals(Set.of("A"), plan.getEntryNodeIds());
+        assertEquals(Set.of("D"), plan.getExitNodeIds());
+
+        int a = plan.indexOf("A");
+        int d = plan.indexOf("D");
+        assertEquals(2, plan.getOutgoingEdges(a).length);
+        assertEquals(0, plan.getOutgoingEdges(d).length);
+        assertEquals(0, plan.getIncomingEdges(a).length);
+        assertEquals(2, plan.getIncomingEdges(d).length);
+        for (int edge : plan.getIncomingEdges(d)) assertEquals(d, plan.getEdgeTarget(edge));
+        assertEquals(-1, plan.indexOf("missing"));
+
+        int[] inDegree = plan.newInDegreeCounters();
+        assertEquals(0, inDegree[a]);
+        assertEquals(2, inDegree[d]);
+    }
+
+    @Test
+    void compile_shouldMatchMetamodelEntryAndExitNodes() {
+        WorkflowInstance instance = createDiamond();
+        assertEquals(instance.getMetamodel().getEntryNodes(), instance.getExecutionPlan().getEntryNodeIds());
+        assertEquals(instance.getMetamodel().getExitNodes(), instance.getExecutionPlan().getExitNodeIds());
+    }
+
+    @Test
+    void newInDegreeCounters_shouldReturnIndependentCopies() {
+        ExecutionPlan plan = createDiamond().getExecutionPlan();
+        int d = plan.indexOf("D");
+
+        int[] first = plan.newInDegreeCounters();
+        first[d] = 0;
+
+        assertEquals(2, plan.newInDegreeCounters()[d]);
+    }
+
+    @Test
+    void ports_shouldBePreResolvedAndFollowHotSwap() {
+        WorkflowInstance instance = createDiamond();
+        ExecutionPlan plan = instance.getExecutionPlan();
+        int b = plan.indexOf("B");
+
+        assertEquals("inB", plan.getInputPorts(b).get(0).port().getKey());
+        assertEquals(ContextPath.of("inB"), plan.getInputPorts(b).get(0).path());
+
+        // Hot-swap of the node metamodel after compilation
+        NodeInstance node = plan.getNodeInstance(b);
+        RestNodeMetamodel swapped = new RestNodeMetamodel();
+        swapped.setInputPorts(List.of(RestPort.builder().withKey("swapped").withSchema(PortSchema.builder().stringSchema().build()).build()));
+        swapped.setOutputPorts(List.of());
+        when(node.getMetamodel()).thenReturn(swapped);
+
+        assertEquals("swapped", plan.getInputPorts(b).get(0).port().getKey());
+        assertEquals(ContextPath.of("swapped"), plan.getInputPorts(b).get(0).path());
+    }
+
+    @Test
+    void refreshNodeMaps_shouldRecompileThePlan() {
+        WorkflowInstance instance = createDiamond();
+        ExecutionPlan before = instance.getExecutionPlan();
+
+        instance.getMetamodel().setEdges(List.of());
+        instance.refreshNodeMaps();
+
+        assertNotSame(before, instance.getExecutionPlan());
+        assertEquals(4, instance.getExecutionPlan().getEntryNodeIds().size());
+    }
+
+    @Test
+    void compile_shouldFindRaceBranchesOfJoinGateways() {
+        WorkflowInstance instance = createDiamond();
+
+        // C also feeds the exit node E, so it is needed regardless of the join
+        instance.getNodeInstances().add(createNode("nodeE", "inE", "outE"));
+        WorkflowNode nodeE = new WorkflowNode();
+        nodeE.setId("E");
+        nodeE.setNodeMetamodelId("nodeE");
+        instance.getMetamodel().getNodes().add(nodeE);
+        WorkflowEdge edgeCE = new WorkflowEdge();
+        edgeCE.setSourceNodeId("C");
+        edgeCE.setTargetNodeId("E");
+        instance.getMetamodel().getEdges().add(edgeCE);
+
+        GatewayNodeMetamodel gateway = new GatewayNodeMetamodel();
+        gateway.setJoinMode(GatewayNodeMetamodel.JoinMode.ANY_OF);
+        GatewayNodeInstance nodeD = new GatewayNodeInstance();
+        nodeD.setId("nodeD");
+        nodeD.setMetamodel(gateway);
+        instance.getNodeInstances().set(3, nodeD);
+        instance.refreshNodeMaps();
+
+        ExecutionPlan plan = instance.getExecutionPlan();
+        int b = plan.indexOf("B");
+        int d = plan.indexOf("D");
+
+        assertEquals(1, plan.newInDegreeCounters()[d]);
+        assertArrayEquals(new int[]{b}, plan.getRaceBranches(d));
+        assertEquals(0, plan.getRaceBranches(b).length);
+
+        // FIRST_N with N equal to the in-degree behaves as ALL
+        gateway.setJoinMode(GatewayNodeMetamodel.JoinMode.FIRST_N);
+        gateway.setJoinCount(2);
+        instance.refreshNodeMaps();
+        assertEquals(2, instance.getExecutionPlan().newInDegreeCounters()[d]);
+        assertEquals(0, instance.getExecutionPlan().getRaceBranches(d).length);
+    }
+}
@@ -0,0 +1,49 @@
+package org.caselli.cognitiveworkflow.operational.execution;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("test")
+class FanOutExecutorTest {
+
+    @Test
+    void testNestedBatchesDoNotWaitForThePool() {
+        FanOutExecutor executor = new FanOutExecutor(1);
+        try {
+            // The only thread of the pool runs the outer task, which starts a batch of its own
+            Callable<Integer> outer = () -> executor.invokeAll(List.<Callable<Integer>>of(() -> 1, () -> 2), 2, true).stream()
+                    .mapToInt(FanOutExecutor.Outcome::result)
+                    .sum();
+
+            List<FanOutExecutor.Outcome<Integer>> outcomes = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                    () -> executor.invokeAll(List.of(outer), 1, true));
+
+            assertEquals(3, outcomes.get(0).result());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testNestedBatchesStopOnFailure() throws Exception {
+        FanOutExecutor executor = new FanOutExecutor(1);
+        try {
+            Callable<List<FanOutExecutor.Outcome<Integer>>> outer = () -> executor.invokeAll(List.<Callable<Integer>>of(
+                    () -> { throw new IllegalStateException("failed"); },
+                    () -> 2), 2, true);
+
+            List<FanOutExecutor.Outcome<Integer>> nested = executor.invokeAll(List.of(outer), 1, true).get(0).result();
+
+            assertInstanceOf(IllegalStateException.class, nested.get(0).error());
+            assertNull(nested.get(1), "The tasks after the failure are skipped");
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
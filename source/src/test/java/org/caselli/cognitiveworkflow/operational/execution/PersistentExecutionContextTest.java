@@ -0,0 +1,238 @@
+package org.caselli.cognitiveworkflow.operational.execution;
+
+import org.caselli.cognitiveworkflow.operational.execution.persistent.PersistentHashMap;
+import org.caselli.cognitiveworkflow.operational.execution.persistent.PersistentVector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("test")
+class PersistentExecutionContextTest {
+
+    private PersistentExecutionContext context;
+
+    @BeforeEach
+    void setUp() {
+        context = new PersistentExecutionContext();
+    }
+
+    @Test
+    void testSimpleAndNestedKeys() {
+        context.put("name", "Test User");
+        context.put("data.user.name", "Nested User");
+
+        assertEquals("Test User", context.get("name"));
+        assertEquals("Nested User", context.get("data.user.name"));
+        assertNull(context.get("data.nonExistent.name"));
+        assertNull(context.get("nonExistent.user.name"));
+
+        Object data = context.get("data");
+        assertInstanceOf(Map.class, data);
+        assertEquals("Nested User", ((Map<?, ?>) ((Map<?, ?>) data).get("user")).get("name"));
+    }
+
+    @Test
+    void testIntermediateKeyNotMap_overwrites() {
+        context.put("data", "not a map");
+        context.put("data.user.name", "Value After Overwrite");
+
+        assertInstanceOf(Map.class, context.get("data"));
+        assertEquals("Value After Overwrite", context.get("data.user.name"));
+    }
+
+    @Test
+    void testPutAndReadDotNotationArrays() {
+        context.put("user.details.0.name", "Alice");
+        context.put("user.details.1.name", "Bob");
+        context.put("tags.1", "second");
+
+        assertEquals("Alice", context.get("user.details.0.name"));
+        assertEquals("Bob", context.get("user.details.1.name"));
+
+        Object details = context.get("user.details");
+        assertInstanceOf(List.class, details);
+        assertEquals(2, ((List<?>) details).size());
+
+        // Missing indices are padded with nulls
+        assertEquals(Arrays.asList(null, "second"), context.get("tags"));
+    }
+
+    @Test
+    void testRemoveAndGetOrDefault() {
+        context.put("user.profile.name", "Marco Rossi");
+        context.put("user.profile.email", "marco@example.com");
+        context.put("user.id", "12345");
+        context.put("user.phone", null);
+
+        assertEquals("marco@example.com", context.remove("user.profile.email"));
+        assertFalse(context.containsKey("user.profile.email"));
+        assertEquals("Marco Rossi", context.get("user.profile.name"));
+        assertNull(context.remove("user.profile.nonexistent"));
+
+        assertInstanceOf(Map.class, context.remove("user.profile"));
+        assertNull(context.get("user.profile.name"));
+        assertEquals("12345", context.get("user.id"));
+
+        // As in ExecutionContext, null values are treated as missing
+        assertFalse(context.containsKey("user.phone"));
+        assertEquals("Default", context.getOrDefault("user.phone", "Default"));
+        assertEquals("Default", context.getOrDefault("user.age", "Default"));
+    }
+
+    @Test
+    void testCopyIsIsolatedSnapshot() {
+        context.put("user.profile.name", "Marco Rossi");
+        context.put("items.0", "first");
+
+        PersistentExecutionContext snapshot = context.copy();
+
+        context.put("user.profile.name", "Changed");
+        context.put("items.1", "second");
+        context.remove("user.profile");
+        context.put("extra", 1);
+
+        assertEquals("Marco Rossi", snapshot.get("user.profile.name"));
+        assertEquals(List.of("first"), snapshot.get("items"));
+        assertFalse(snapshot.containsKey("extra"));
+
+        snapshot.put("user.id", "snapshot only");
+        assertNull(context.get("user.id"));
+        assertEquals(List.of("first", "second"), context.get("items"));
+    }
+
+    @Test
+    void testValuesAreFrozenAtPut() {
+        Map<String, Object> profile = new HashMap<>();
+        profile.put("name", "Marco Rossi");
+        List<Object> tags = new ArrayList<>(List.of("a"));
+
+        context.put("profile", profile);
+        context.put("tags", tags);
+
+        // Later changes of the caller's objects do not leak into the context
+        profile.put("name", "Changed");
+        tags.add("b");
+
+        assertEquals("Marco Rossi", context.get("profile.name"));
+        assertEquals(List.of("a"), context.get("tags"));
+    }
+
+    @Test
+    void testReturnedContainersWriteBackToTheContext() {
+        context.put("data.profile.name", "Marco Rossi");
+        context.put("data.tags", List.of("a"));
+        PersistentExecutionContext snapshot = context.copy();
+
+        // As in ExecutionContext, nodes can modify the containers they read
+        Map<String, Object> data = asMap(context.get("data"));
+        asMap(data.get("profile")).put("email", "marco@example.com");
+        asList(data.get("tags")).add("b");
+        data.remove("missing");
+        asList(context.get("data.tags")).add(0, "first");
+
+        assertEquals("marco@example.com", context.get("data.profile.email"));
+        assertEquals(List.of("first", "a", "b"), context.get("data.tags"));
+
+        Map<String, Object> top = asMap(context.get("data"));
+        top.put("count", 2);
+        top.entrySet().removeIf(entry -> entry.getKey().equals("profile"));
+        assertEquals(2, context.get("data.count"));
+        assertNull(context.get("data.profile"));
+
+        // The snapshots taken before are not affected
+        assertEquals(Map.of("name", "Marco Rossi"), snapshot.get("data.profile"));
+        assertEquals(List.of("a"), snapshot.get("data.tags"));
+
+        // Detached copies, e.g. the removed values, do not write back
+        asMap(context.remove("data")).put("after", true);
+        assertNull(context.get("data"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object value) {
+        return (Map<String, Object>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> asList(Object value) {
+        return (List<Object>) value;
+    }
+
+    @Test
+    void testFromAndMapEquality() {
+        ExecutionContext plain = new ExecutionContext();
+        plain.put("user.profile.name", "Marco Rossi");
+        plain.put("user.details.0", "Alice");
+        plain.put("flag", true);
+
+        PersistentExecutionContext persistent = PersistentExecutionContext.from(plain);
+
+        assertEquals(plain, persistent);
+        assertEquals(plain.keySet(), persistent.keySet());
+        assertEquals(plain.size(), persistent.size());
+        assertEquals("Alice", persistent.get("user.details.0"));
+
+        // The deep copy of a persistent context is still a persistent context
+        assertInstanceOf(PersistentExecutionContext.class, persistent.copy());
+        assertEquals(plain, new ExecutionContext(persistent));
+    }
+
+    @Test
+    void testHashMapManyKeysAndCollisions() {
+        PersistentHashMap<Object, Object> map = PersistentHashMap.empty();
+        for (int i = 0; i < 5000; i++) map = map.put("key" + i, i);
+
+        // "Aa" and "BB" have the same hash code
+        map = map.put("Aa", "first").put("BB", "second");
+        PersistentHashMap<Object, Object> snapshot = map;
+
+        assertEquals(5002, map.size());
+        assertEquals(1234, map.get("key1234"));
+        assertEquals("first", map.get("Aa"));
+        assertEquals("second", map.get("BB"));
+
+        for (int i = 0; i < 5000; i += 2) map = map.remove("key" + i);
+        map = map.remove("Aa");
+
+        assertEquals(2501, map.size());
+        assertNull(map.get("key0"));
+        assertEquals(1, map.get("key1"));
+        assertEquals("second", map.get("BB"));
+        assertFalse(map.containsKey("Aa"));
+
+        int count = 0;
+        for (Map.Entry<Object, Object> ignored : map) count++;
+        assertEquals(2501, count);
+
+        // Untouched by the updates
+        assertEquals(5002, snapshot.size());
+        assertEquals(0, snapshot.get("key0"));
+        assertEquals("first", snapshot.get("Aa"));
+    }
+
+    @Test
+    void testVectorGrowsPastSeveralLevels() {
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        for (int i = 0; i < 40_000; i++) vector = vector.append(i);
+        PersistentVector<Integer> snapshot = vector;
+
+        vector = vector.set(33_000, -1).setPadded(40_002, 7);
+
+        assertEquals(40_003, vector.size());
+        assertEquals(-1, vector.get(33_000));
+        assertNull(vector.get(40_001));
+        assertEquals(7, vector.get(40_002));
+        assertEquals(1025, vector.get(1025));
+
+        assertEquals(40_000, snapshot.size());
+        assertEquals(33_000, snapshot.get(33_000));
+        assertThrows(IndexOutOfBoundsException.class, () -> snapshot.get(40_000));
+
+        PersistentVector<Integer> removed = PersistentVector.of(List.of(1, 2, 3)).remove(1);
+        assertEquals(List.of(1, 3), List.of(removed.get(0), removed.get(1)));
+    }
+}
@@ -1,28 +1,39 @@
 package org.caselli.cognitiveworkflow.operational.execution;
 
 import org.caselli.cognitiveworkflow.knowledge.MOP.WorkflowMetamodelService;
+import org.caselli.cognitiveworkflow.knowledge.model.node.GatewayNodeMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.NodeMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.RestNodeMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortSchema;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.RestPort;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.StandardPort;
 import org.caselli.cognitiveworkflow.knowledge.model.workflow.WorkflowEdge;
 import org.caselli.cognitiveworkflow.knowledge.model.workflow.WorkflowMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.workflow.WorkflowNode;
 import org.caselli.cognitiveworkflow.operational.AI.services.PortAdapterService;
+import org.caselli.cognitiveworkflow.operational.instances.GatewayNodeInstance;
 import org.caselli.cognitiveworkflow.operational.instances.NodeInstance;
 import org.caselli.cognitiveworkflow.operational.instances.RestNodeInstance;
 import org.caselli.cognitiveworkflow.operational.instances.WorkflowInstance;
+import org.caselli.cognitiveworkflow.operational.observability.ObservabilityLevel;
+import org.caselli.cognitiveworkflow.operational.observability.WorkflowObservabilityReport;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 @Tag("test")
@@ -270,4 +281,650 @@ class WorkflowExecutorTest {
         // the adapter service should be engaged to find a solution.
         verify(portAdapterService).adaptPorts(anyList(), anyList());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testExecute_parallel_independentBranchesRunConcurrently() throws Exception {
+        ReflectionTestUtils.setField(executor, "parallelExecution", true);
+        ReflectionTestUtils.setField(executor, "parallelism", 4);
+
+        // A -> (B, C) -> D
+        NodeInstance nodeA = createNodeInstanceA("nodeA", List.of(createStringPort("inputA")), List.of(createStringPort("outputA")));
+        NodeInstance nodeB = createNodeInstanceA("nodeB", List.of(createStringPort("outputA")), List.of(createStringPort("outputB")));
+        NodeInstance nodeC = createNodeInstanceA("nodeC", List.of(createStringPort("outputA")), List.of(createStringPort("outputC")));
+        NodeInstance nodeD = createNodeInstanceA("nodeD", List.of(createStringPort("outputB"), createStringPort("outputC")), List.of(createStringPort("outputD")));
+
+        List<WorkflowNode> nodes = new java.util.ArrayList<>();
+        for (String id : List.of("A", "B", "C", "D")) {
+            WorkflowNode node = new WorkflowNode();
+            node.setId(id);
+            node.setNodeMetamodelId("node" + id);
+            nodes.add(node);
+        }
+
+        List<WorkflowEdge> edges = new java.util.ArrayList<>();
+        for (String[] pair : new String[][]{{"A", "B"}, {"A", "C"}, {"B", "D"}, {"C", "D"}}) {
+            WorkflowEdge edge = new WorkflowEdge();
+            edge.setId(pair[0] + pair[1]);
+            edge.setSourceNodeId(pair[0]);
+            edge.setTargetNodeId(pair[1]);
+            edges.add(edge);
+        }
+
+        WorkflowInstance workflowInstance = createWorkflowInstance("workflow1", List.of(nodeA, nodeB, nodeC, nodeD), nodes, edges);
+
+        ExecutionContext context = new ExecutionContext();
+        context.put("inputA", "valueA");
+
+        // B and C only complete if they are both running at the same time
+        CountDownLatch bothBranchesRunning = new CountDownLatch(2);
+
+        doAnswer(invocation -> {
+            ExecutionContext currentContext = invocation.getArgument(0);
+            currentContext.put("outputA", "valueA");
+            return null;
+        }).when(nodeA).process(any(ExecutionContext.class));
+
+        doAnswer(invocation -> {
+            bothBranchesRunning.countDown();
+            assertTrue(bothBranchesRunning.await(5, TimeUnit.SECONDS));
+            ExecutionContext currentContext = invocation.getArgument(0);
+            currentContext.put("outputB", "valueB");
+            return null;
+        }).when(nodeB).process(any(ExecutionContext.class));
+
+        doAnswer(invocation -> {
+            bothBranchesRunning.countDown();
+            assertTrue(bothBranchesRunning.await(5, TimeUnit.SECONDS));
+            ExecutionContext currentContext = invocation.getArgument(0);
+            currentContext.put("outputC", "valueC");
+            return null;
+        }).when(nodeC).process(any(ExecutionContext.class));
+
+        doAnswer(invocation -> {
+            ExecutionContext currentContext = invocation.getArgument(0);
+            currentContext.put("outputD", currentContext.get("outputB") + "+" + currentContext.get("outputC"));
+            return null;
+        }).when(nodeD).process(any(ExecutionContext.class));
+
+        // EXECUTE
+        var report = executor.execute(workflowInstance, context);
+
+        // The outputs of every branch are merged back into the shared context
+        assertTrue(report.isSuccess());
+        assertEquals("valueB+valueC", context.get("outputD"));
+        assertEquals(4, report.getNodeExecutions().size());
+        assertEquals("D", report.getExecutionOrder().get(3));
+        verify(portAdapterService, never()).adaptPorts(anyList(), anyList());
+
+        executor.shutdown();
+    }
+
+    @Test
+    void testExecute_parallel_failingNodeFailsWorkflow() throws Exception {
+        ReflectionTestUtils.setField(executor, "parallelExecution", true);
+
+        NodeInstance nodeA = createNodeInstanceA("nodeA", List.of(createStringPort("inputA")), List.of(createStringPort("outputA")));
+        NodeInstance nodeB = createNodeInstanceA("nodeB", List.of(createStringPort("outputA")), List.of(createStringPort("outputB")));
+
+        WorkflowNode wNodeA = new WorkflowNode();
+        wNodeA.setId("A");
+        wNodeA.setNodeMetamodelId("nodeA");
+
+        WorkflowNode wNodeB = new WorkflowNode();
+        wNodeB.setId("B");
+        wNodeB.setNodeMetamodelId("nodeB");
+
+        WorkflowEdge edge = new WorkflowEdge();
+        edge.setSourceNodeId("A");
+        edge.setTargetNodeId("B");
+
+        WorkflowInstance workflowInstance = createWorkflowInstance("workflow1", List.of(nodeA, nodeB), List.of(wNodeA, wNodeB), List.of(edge));
+
+        ExecutionContext context = new ExecutionContext();
+        context.put("inputA", "valueA");
+
+        doThrow(new IllegalStateException("boom")).when(nodeA).process(any(ExecutionContext.class));
+
+        assertThrows(RuntimeException.class, () -> executor.execute(workflowInstance, context));
+        verify(nodeB, never()).process(any(ExecutionContext.class));
+
+        executor.shutdown();
+    }
+
+    /**
+     * A -> (B, C): A writes a key that is not one of its ports, B removes a key, B and C write the same output port
+     */
+    private ExecutionContext executeOverlappingBranches() throws Exception {
+        NodeInstance nodeA = createNodeInstanceA("nodeA", List.of(createStringPort("inputA")), List.of(createStringPort("outputA")));
+        NodeInstance nodeB = createNodeInstanceA("nodeB", List.of(createStringPort("outputA")), List.of(createStringPort("shared")));
+        NodeInstance nodeC = createNodeInstanceA("nodeC", List.of(createStringPort("outputA")), List.of(createStringPort("shared")));
+
+        List<WorkflowNode> nodes = new java.util.ArrayList<>();
+        for (String id : List.of("A", "B", "C")) {
+            WorkflowNode node = new WorkflowNode();
+            node.setId(id);
+            node.setNodeMetamodelId("node" + id);
+            nodes.add(node);
+        }
+
+        List<WorkflowEdge> edges = new java.util.ArrayList<>();
+        for (String[] pair : new String[][]{{"A", "B"}, {"A", "C"}}) {
+            WorkflowEdge edge = new WorkflowEdge();
+            edge.setId(pair[0] + pair[1]);
+            edge.setSourceNodeId(pair[0]);
+            edge.setTargetNodeId(pair[1]);
+            edges.add(edge);
+        }
+
+        WorkflowInstance workflowInstance = createWorkflowInstance("workflow1", List.of(nodeA, nodeB, nodeC), nodes, edges);
+
+        ExecutionContext context = new ExecutionContext();
+        context.put("inputA", "valueA");
+
+        doAnswer(invocation -> {
+            ExecutionContext currentContext = invocation.getArgument(0);
+            currentContext.put("outputA", "valueA");
+            currentContext.put("scratch", "fromA");
+            return null;
+        }).when(nodeA).process(any(ExecutionContext.class));
+
+        doAnswer(invocation -> {
+            ExecutionContext currentContext = invocation.getArgument(0);
+            currentContext.remove("inputA");
+            currentContext.put("shared", "fromB");
+            return null;
+        }).when(nodeB).process(any(ExecutionContext.class));
+
+        doAnswer(invocation -> {
+            ExecutionContext currentContext = invocation.getArgument(0);
+            currentContext.put("shared", "fromC");
+            return null;
+        }).when(nodeC).process(any(ExecutionContext.class));
+
+        assertTrue(executor.execute(workflowInstance, context).isSuccess());
+        return context;
+    }
+
+    @Test
+    void testExecute_sequential_nodesShareTheContext() throws Exception {
+        ExecutionContext context = executeOverlappingBranches();
+
+        assertEquals("fromA", context.get("scratch"));
+        assertFalse(context.containsKey("inputA"));
+        // C runs after B
+        assertEquals("fromC", context.get("shared"));
+    }
+
+    @Test
+    void testExecute_parallel_onlyThePortsOfTheNodesAreMerged() throws Exception {
+        ReflectionTestUtils.setField(executor, "parallelExecution", true);
+        // A single node thread: B and C are dispatched together, and B completes first
+        ReflectionTestUtils.setField(executor, "parallelism", 1);
+
+        ExecutionContext context = executeOverlappingBranches();
+
+        // Writes and removals of keys that are not ports of the node are discarded
+        assertFalse(context.containsKey("scratch"));
+        assertEquals("valueA", context.get("inputA"));
+        // The node that completes last wins
+        assertEquals("fromC", context.get("shared"));
+
+        executor.shutdown();
+    }
+
+    private WorkflowInstance createSingleNodeWorkflow(NodeInstance node) {
+        WorkflowNode wNode = new WorkflowNode();
+        wNode.setId("A");
+        wNode.setNodeMetamodelId(node.getMetamodel().getId());
+        return createWorkflowInstance("workflow1", List.of(node), List.of(wNode), List.of());
+    }
+
+    @Test
+    void testExecute_fullObservability_journalsNodeChanges() throws Exception {
+        NodeInstance nodeA = createNodeInstanceA("nodeA", List.of(createStringPort("inputA")), List.of(createStringPort("outputA")));
+        WorkflowInstance workflowInstance = createSingleNodeWorkflow(nodeA);
+
+        ExecutionContext context = new ExecutionContext();
+        context.put("inputA", "valueA");
+        context.put("stale", "old");
+        context.put("counter", 1);
+
+        doAnswer(invocation -> {
+            ExecutionContext currentContext = invocation.getArgument(0);
+            currentContext.put("outputA", "first");
+            currentContext.put("outputA", "result");
+            currentContext.put("counter", 2);
+            currentContext.remove("stale");
+            currentContext.put("profile", new HashMap<>(Map.of("name", "Ada")));
+            // Written in place into the map already stored
+            currentContext.put("profile.name", "Grace");
+            return null;
+        }).when(nodeA).process(any(ExecutionContext.class));
+
+        WorkflowObservabilityReport report = executor.execute(workflowInstance, context, ObservabilityLevel.FULL);
+
+        assertTrue(report.isSuccess());
+        assertEquals("valueA", report.getInitialContext().get("inputA"));
+
+        WorkflowObservabilityReport.ContextDifferences changes = report.getNodeExecutions().get("A").getContextChanges();
+        assertEquals(Map.of("outputA", "result", "profile", "{name=Ada}"), changes.getAddedKeys(), "Later nested writes do not alter earlier entries");
+        assertEquals(Map.of("stale", "old"), changes.getRemovedKeys());
+        assertEquals("1", changes.getModifiedKeys().get("counter").beforeValue());
+        assertEquals("2", changes.getModifiedKeys().get("counter").afterValue());
+        assertEquals("Ada", changes.getModifiedKeys().get("profile.name").beforeValue());
+        assertEquals("Grace", changes.getModifiedKeys().get("profile.name").afterValue());
+
+        String json = report.toJson();
+        assertTrue(json.contains("\"contextChanges\""), json);
+        assertTrue(json.contains("\"observabilityLevel\" : \"FULL\""), json);
+
+        // Writes made by the executor outside of the node are not attributed to it
+        context.put("afterwards", true);
+        assertFalse(report.getNodeExecutions().get("A").getContextChanges().getAddedKeys().containsKey("afterwards"));
+    }
+
+    @Test
+    void testExecute_observabilityOffAndSummary() throws Exception {
+        NodeInstance nodeA = createNodeInstanceA("nodeA", List.of(createStringPort("inputA")), List.of(createStringPort("outputA")));
+        WorkflowInstance workflowInstance = createSingleNodeWorkflow(nodeA);
+
+        doAnswer(invocation -> {
+            ExecutionContext currentContext = invocation.getArgument(0);
+            currentContext.put("outputA", "result");
+            return null;
+        }).when(nodeA).process(any(ExecutionContext.class));
+
+        ExecutionContext offContext = new ExecutionContext();
+        offContext.put("inputA", "valueA");
+        WorkflowObservabilityReport off = executor.execute(workflowInstance, offContext, ObservabilityLevel.OFF);
+
+        assertTrue(off.isSuccess());
+        assertEquals("result", offContext.get("outputA"));
+        assertTrue(off.getNodeExecutions().isEmpty());
+        assertNull(off.getInitialContext());
+        assertNull(offContext.getJournal());
+
+        ExecutionContext summaryContext = new ExecutionContext();
+        summaryContext.put("inputA", "valueA");
+        WorkflowObservabilityReport summary = executor.execute(workflowInstance, summaryContext, ObservabilityLevel.SUMMARY);
+
+        assertTrue(summary.isSuccess());
+        assertEquals(List.of("A"), summary.getExecutionOrder());
+        assertTrue(summary.getNodeExecutions().get("A").isSuccess());
+        assertNull(summary.getNodeExecutions().get("A").getContextChanges());
+        assertNull(summary.getInitialContext());
+    }
+
+    /**
+     * S -> (F, L) -> J, where J is a race join gateway, F writes the answer at once and L only after a long wait
+     */
+    private WorkflowInstance createRaceWorkflow(NodeInstance nodeF, NodeInstance nodeL) throws Exception {
+        NodeInstance nodeS = createNodeInstanceA("nodeS", List.of(createStringPort("question")), List.of(createStringPort("question")));
+
+        GatewayNodeMetamodel gatewayMetamodel = new GatewayNodeMetamodel();
+        gatewayMetamodel.setId("nodeJ");
+        gatewayMetamodel.setName("race");
+        gatewayMetamodel.setInputPorts(List.of(StandardPort.builder().withKey("answer").withSchema(PortSchema.builder().stringSchema().build()).build()));
+        gatewayMetamodel.setJoinMode(GatewayNodeMetamodel.JoinMode.ANY_OF);
+        GatewayNodeInstance nodeJ = new GatewayNodeInstance();
+        nodeJ.setId("nodeJ");
+        nodeJ.setMetamodel(gatewayMetamodel);
+
+        List<WorkflowNode> nodes = new java.util.ArrayList<>();
+        for (String id : List.of("S", "F", "L", "J")) {
+            WorkflowNode node = new WorkflowNode();
+            node.setId(id);
+            node.setNodeMetamodelId("node" + id);
+            nodes.add(node);
+        }
+
+        List<WorkflowEdge> edges = new java.util.ArrayList<>();
+        for (String[] pair : new String[][]{{"S", "F"}, {"S", "L"}, {"F", "J"}, {"L", "J"}}) {
+            WorkflowEdge edge = new WorkflowEdge();
+            edge.setId(pair[0] + pair[1]);
+            edge.setSourceNodeId(pair[0]);
+            edge.setTargetNodeId(pair[1]);
+            edges.add(edge);
+        }
+
+        doAnswer(invocation -> {
+            ExecutionContext currentContext = invocation.getArgument(0);
+            currentContext.put("answer", "fast");
+            return null;
+        }).when(nodeF).process(any(ExecutionContext.class));
+
+        doAnswer(invocation -> {
+            Thread.sleep(10_000);
+            ExecutionContext currentContext = invocation.getArgument(0);
+            currentContext.put("answer", "slow");
+            return null;
+        }).when(nodeL).process(any(ExecutionContext.class));
+
+        return createWorkflowInstance("workflow1", List.of(nodeS, nodeF, nodeL, nodeJ), nodes, edges);
+    }
+
+    @Test
+    void testExecute_parallel_raceJoinCancelsSlowerBranch() throws Exception {
+        ReflectionTestUtils.setField(executor, "parallelExecution", true);
+        ReflectionTestUtils.setField(executor, "parallelism", 4);
+
+        NodeInstance nodeF = createNodeInstanceA("nodeF", List.of(createStringPort("question")), List.of(createStringPort("answer")));
+        NodeInstance nodeL = createNodeInstanceA("nodeL", List.of(createStringPort("question")), List.of(createStringPort("answer")));
+        WorkflowInstance workflowInstance = createRaceWorkflow(nodeF, nodeL);
+
+        ExecutionContext context = new ExecutionContext();
+        context.put("question", "q");
+
+        long start = System.nanoTime();
+        WorkflowObservabilityReport report = executor.execute(workflowInstance, context);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(report.isSuccess());
+        assertTrue(elapsedMillis < 5_000, "The join must not wait for the slower branch (" + elapsedMillis + " ms)");
+        assertEquals("fast", context.get("answer"));
+        assertTrue(report.getNodeExecutions().get("J").isSuccess());
+
+        WorkflowObservabilityReport.NodeExecutionDetail slow = report.getNodeExecutions().get("L");
+        assertTrue(slow.isCancelled());
+        assertFalse(slow.isSuccess());
+        assertTrue(slow.getCancellationReason().contains("J"), slow.getCancellationReason());
+        assertEquals(1, report.getMetrics().getCancelledNodes());
+        assertEquals(0, report.getMetrics().getFailedNodes());
+
+        executor.shutdown();
+    }
+
+    @Test
+    void testExecute_sequential_raceJoinSkipsOtherBranches() throws Exception {
+        NodeInstance nodeF = createNodeInstanceA("nodeF", List.of(createStringPort("question")), List.of(createStringPort("answer")));
+        NodeInstance nodeL = createNodeInstanceA("nodeL", List.of(createStringPort("question")), List.of(createStringPort("answer")));
+        WorkflowInstance workflowInstance = createRaceWorkflow(nodeF, nodeL);
+
+        ExecutionContext context = new ExecutionContext();
+        context.put("question", "q");
+
+        WorkflowObservabilityReport report = executor.execute(workflowInstance, context);
+
+        assertTrue(report.isSuccess());
+        assertEquals(List.of("S", "F", "J"), report.getExecutionOrder());
+        assertTrue(report.getNodeExecutions().get("L").isCancelled());
+        verify(nodeL, never()).process(any(ExecutionContext.class));
+    }
+
+    /**
+     * A -> B, where A takes longer than its timeout
+     */
+    private WorkflowInstance createSlowNodeWorkflow(NodeInstance nodeA, NodeInstance nodeB, long sleepMillis) throws Exception {
+        nodeA.getMetamodel().setTimeoutMillis(100L);
+
+        WorkflowNode wNodeA = new WorkflowNode();
+        wNodeA.setId("A");
+        wNodeA.setNodeMetamodelId("nodeA");
+
+        WorkflowNode wNodeB = new WorkflowNode();
+        wNodeB.setId("B");
+        wNodeB.setNodeMetamodelId("nodeB");
+
+        WorkflowEdge edge = new WorkflowEdge();
+        edge.setSourceNodeId("A");
+        edge.setTargetNodeId("B");
+
+        doAnswer(invocation -> {
+            Thread.sleep(sleepMillis);
+            ExecutionContext currentContext = invocation.getArgument(0);
+            currentContext.put("outputA", "late");
+            return null;
+        }).when(nodeA).process(any(ExecutionContext.class));
+
+        return createWorkflowInstance("workflow1", List.of(nodeA, nodeB), List.of(wNodeA, wNodeB), List.of(edge));
+    }
+
+    @Test
+    void testExecute_sequential_nodeExceedingItsDeadlineTimesOut() throws Exception {
+        NodeInstance nodeA = createNodeInstanceA("nodeA", List.of(createStringPort("inputA")), List.of(createStringPort("outputA")));
+        NodeInstance nodeB = createNodeInstanceA("nodeB", List.of(createStringPort("outputA")), List.of(createStringPort("outputB")));
+        WorkflowInstance workflowInstance = createSlowNodeWorkflow(nodeA, nodeB, 300);
+
+        ExecutionContext context = new ExecutionContext();
+        context.put("inputA", "valueA");
+
+        // Sequential mode is cooperative: the late outputs of the node are discarded
+        assertThrows(DeadlineExceededException.class, () -> executor.execute(workflowInstance, context));
+        verify(nodeB, never()).process(any(ExecutionContext.class));
+        verify(nodeInstanceManager).markFinished("nodeA");
+    }
+
+    @Test
+    void testExecute_parallel_nodeExceedingItsDeadlineIsInterrupted() throws Exception {
+        ReflectionTestUtils.setField(executor, "parallelExecution", true);
+        ReflectionTestUtils.setField(executor, "parallelism", 4);
+
+        NodeInstance nodeA = createNodeInstanceA("nodeA", List.of(createStringPort("inputA")), List.of(createStringPort("outputA")));
+        NodeInstance nodeB = createNodeInstanceA("nodeB", List.of(createStringPort("outputA")), List.of(createStringPort("outputB")));
+        WorkflowInstance workflowInstance = createSlowNodeWorkflow(nodeA, nodeB, 30_000);
+
+        ExecutionContext context = new ExecutionContext();
+        context.put("inputA", "valueA");
+
+        long start = System.nanoTime();
+        DeadlineExceededException exception = assertThrows(DeadlineExceededException.class, () -> executor.execute(workflowInstance, context));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis < 5_000, "The coordinator must not wait for the node past its deadline (" + elapsedMillis + " ms)");
+        assertTrue(exception.getMessage().contains("A"), exception.getMessage());
+        verify(nodeB, never()).process(any(ExecutionContext.class));
+
+        executor.shutdown();
+    }
+
+    @Test
+    void testExecute_workflowDeadlineBoundsItsNodes() throws Exception {
+        NodeInstance nodeA = createNodeInstanceA("nodeA", List.of(createStringPort("inputA")), List.of(createStringPort("outputA")));
+        NodeInstance nodeB = createNodeInstanceA("nodeB", List.of(createStringPort("outputA")), List.of(createStringPort("outputB")));
+        WorkflowInstance workflowInstance = createSlowNodeWorkflow(nodeA, nodeB, 300);
+        nodeA.getMetamodel().setTimeoutMillis(null);
+        workflowInstance.getMetamodel().setTimeoutMillis(100L);
+
+        ExecutionContext context = new ExecutionContext();
+        context.put("inputA", "valueA");
+
+        assertThrows(DeadlineExceededException.class, () -> executor.execute(workflowInstance, context));
+        verify(nodeB, never()).process(any(ExecutionContext.class));
+    }
+
+    /**
+     * S -> (Y, X) -> J, where the edge Y -> J passes only if Y routes to "yes" and X takes a long time
+     */
+    private WorkflowInstance createConditionalJoinWorkflow(NodeInstance nodeX, NodeInstance nodeJ) throws Exception {
+        NodeInstance nodeS = createNodeInstanceA("nodeS", List.of(createStringPort("question")), List.of(createStringPort("question")));
+        NodeInstance nodeY = createNodeInstanceA("nodeY", List.of(createStringPort("question")), List.of(createStringPort("route")));
+
+        List<WorkflowNode> nodes = new java.util.ArrayList<>();
+        for (String id : List.of("S", "Y", "X", "J")) {
+            WorkflowNode node = new WorkflowNode();
+            node.setId(id);
+            node.setNodeMetamodelId("node" + id);
+            nodes.add(node);
+        }
+
+        List<WorkflowEdge> edges = new java.util.ArrayList<>();
+        for (String[] pair : new String[][]{{"S", "Y"}, {"S", "X"}, {"Y", "J"}, {"X", "J"}}) {
+            WorkflowEdge edge = new WorkflowEdge();
+            edge.setId(pair[0] + pair[1]);
+            edge.setSourceNodeId(pair[0]);
+            edge.setTargetNodeId(pair[1]);
+            edges.add(edge);
+        }
+        WorkflowEdge.Condition condition = new WorkflowEdge.Condition();
+        condition.setPort("route");
+        condition.setTargetValue("yes");
+        edges.get(2).setCondition(condition);
+
+        doAnswer(invocation -> {
+            ExecutionContext currentContext = invocation.getArgument(0);
+            currentContext.put("route", "no");
+            return null;
+        }).when(nodeY).process(any(ExecutionContext.class));
+
+        doAnswer(invocation -> {
+            Thread.sleep(10_000);
+            ExecutionContext currentContext = invocation.getArgument(0);
+            currentContext.put("answer", "late");
+            return null;
+        }).when(nodeX).process(any(ExecutionContext.class));
+
+        return createWorkflowInstance("workflow1", List.of(nodeS, nodeY, nodeX, nodeJ), nodes, edges);
+    }
+
+    @Test
+    void testExecute_sequential_earlyTerminationSkipsUnneededNodes() throws Exception {
+        ReflectionTestUtils.setField(executor, "earlyTermination", true);
+
+        NodeInstance nodeX = createNodeInstanceA("nodeX", List.of(createStringPort("question")), List.of(createStringPort("answer")));
+        NodeInstance nodeJ = createNodeInstanceA("nodeJ", List.of(createStringPort("answer")), List.of(createStringPort("result")));
+        WorkflowInstance workflowInstance = createConditionalJoinWorkflow(nodeX, nodeJ);
+
+        ExecutionContext context = new ExecutionContext();
+        context.put("question", "q");
+
+        WorkflowObservabilityReport report = executor.execute(workflowInstance, context);
+
+        assertTrue(report.isSuccess());
+        assertEquals(List.of("S", "Y"), report.getExecutionOrder());
+        verify(nodeX, never()).process(any(ExecutionContext.class));
+        verify(nodeJ, never()).process(any(ExecutionContext.class));
+
+        // J can no longer become ready, so nothing needs X
+        assertTrue(report.getNodeExecutions().get("J").getCancellationReason().contains("unreachable"));
+        assertTrue(report.getNodeExecutions().get("X").isCancelled());
+        assertEquals(2, report.getMetrics().getCancelledNodes());
+        assertEquals(0, report.getMetrics().getFailedNodes());
+    }
+
+    @Test
+    void testExecute_parallel_earlyTerminationCancelsPrunedNodes() throws Exception {
+        ReflectionTestUtils.setField(executor, "parallelExecution", true);
+        ReflectionTestUtils.setField(executor, "parallelism", 4);
+        ReflectionTestUtils.setField(executor, "earlyTermination", true);
+
+        NodeInstance nodeX = createNodeInstanceA("nodeX", List.of(createStringPort("question")), List.of(createStringPort("answer")));
+        NodeInstance nodeJ = createNodeInstanceA("nodeJ", List.of(createStringPort("answer")), List.of(createStringPort("result")));
+        WorkflowInstance workflowInstance = createConditionalJoinWorkflow(nodeX, nodeJ);
+
+        ExecutionContext context = new ExecutionContext();
+        context.put("question", "q");
+
+        long start = System.nanoTime();
+        WorkflowObservabilityReport report = executor.execute(workflowInstance, context);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(report.isSuccess());
+        assertTrue(elapsedMillis < 5_000, "The pruned node must not be waited for (" + elapsedMillis + " ms)");
+        assertNull(context.get("answer"));
+        verify(nodeJ, never()).process(any(ExecutionContext.class));
+
+        WorkflowObservabilityReport.NodeExecutionDetail pruned = report.getNodeExecutions().get("X");
+        assertTrue(pruned.isCancelled());
+        assertTrue(pruned.getCancellationReason().startsWith("Cancelled while running"), pruned.getCancellationReason());
+
+        executor.shutdown();
+    }
+
+    @Test
+    void testExecute_workflowCanOptOutOfEarlyTermination() throws Exception {
+        ReflectionTestUtils.setField(executor, "earlyTermination", true);
+
+        NodeInstance nodeX = createNodeInstanceA("nodeX", List.of(createStringPort("question")), List.of(createStringPort("answer")));
+        NodeInstance nodeJ = createNodeInstanceA("nodeJ", List.of(createStringPort("answer")), List.of(createStringPort("result")));
+        WorkflowInstance workflowInstance = createConditionalJoinWorkflow(nodeX, nodeJ);
+        workflowInstance.getMetamodel().setEarlyTermination(false);
+        doNothing().when(nodeX).process(any(ExecutionContext.class));
+
+        ExecutionContext context = new ExecutionContext();
+        context.put("question", "q");
+
+        WorkflowObservabilityReport report = executor.execute(workflowInstance, context);
+
+        assertTrue(report.isSuccess());
+        assertEquals(List.of("S", "Y", "X"), report.getExecutionOrder());
+        verify(nodeJ, never()).process(any(ExecutionContext.class));
+        assertEquals(0, report.getMetrics().getCancelledNodes());
+    }
+
+    private void stubAsyncNode(NodeInstance node, CompletableFuture<ResponseEntity<String>> io, String outputKey) {
+        RestNodeInstance restNode = (RestNodeInstance) node;
+        when(restNode.startAsync(any(ExecutionContext.class))).thenReturn(io);
+        doAnswer(invocation -> {
+            ExecutionContext currentContext = invocation.getArgument(0);
+            ResponseEntity<String> response = invocation.getArgument(1);
+            currentContext.put(outputKey, response.getBody());
+            return null;
+        }).when(restNode).complete(any(ExecutionContext.class), any());
+    }
+
+    @Test
+    void testExecute_parallel_asyncNodesDoNotHoldThreads() throws Exception {
+        ReflectionTestUtils.setField(executor, "parallelExecution", true);
+        ReflectionTestUtils.setField(executor, "parallelism", 1);
+        ReflectionTestUtils.setField(executor, "asyncIo", true);
+
+        // A -> (B, C) -> D
+        NodeInstance nodeA = createNodeInstanceA("nodeA", List.of(createStringPort("inputA")), List.of(createStringPort("outputA")));
+        NodeInstance nodeB = createNodeInstanceA("nodeB", List.of(createStringPort("outputA")), List.of(createStringPort("outputB")));
+        NodeInstance nodeC = createNodeInstanceA("nodeC", List.of(createStringPort("outputA")), List.of(createStringPort("outputC")));
+        NodeInstance nodeD = createNodeInstanceA("nodeD", List.of(createStringPort("outputB"), createStringPort("outputC")), List.of(createStringPort("outputD")));
+
+        List<WorkflowNode> nodes = new java.util.ArrayList<>();
+        for (String id : List.of("A", "B", "C", "D")) {
+            WorkflowNode node = new WorkflowNode();
+            node.setId(id);
+            node.setNodeMetamodelId("node" + id);
+            nodes.add(node);
+        }
+
+        List<WorkflowEdge> edges = new java.util.ArrayList<>();
+        for (String[] pair : new String[][]{{"A", "B"}, {"A", "C"}, {"B", "D"}, {"C", "D"}}) {
+            WorkflowEdge edge = new WorkflowEdge();
+            edge.setId(pair[0] + pair[1]);
+            edge.setSourceNodeId(pair[0]);
+            edge.setTargetNodeId(pair[1]);
+            edges.add(edge);
+        }
+
+        WorkflowInstance workflowInstance = createWorkflowInstance("workflow1", List.of(nodeA, nodeB, nodeC, nodeD), nodes, edges);
+        // Fails instead of hanging if a pending node holds the only thread
+        workflowInstance.getMetamodel().setTimeoutMillis(5_000L);
+
+        // B only gets its response once C has sent its request, on the only node thread
+        CompletableFuture<ResponseEntity<String>> responseB = new CompletableFuture<>();
+        stubAsyncNode(nodeA, CompletableFuture.completedFuture(ResponseEntity.ok("valueA")), "outputA");
+        stubAsyncNode(nodeB, responseB, "outputB");
+        stubAsyncNode(nodeC, CompletableFuture.completedFuture(ResponseEntity.ok("valueC")), "outputC");
+        when(((RestNodeInstance) nodeC).startAsync(any(ExecutionContext.class))).thenAnswer(invocation -> {
+            CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS).execute(() -> responseB.complete(ResponseEntity.ok("valueB")));
+            return CompletableFuture.completedFuture(ResponseEntity.ok("valueC"));
+        });
+        stubAsyncNode(nodeD, CompletableFuture.completedFuture(ResponseEntity.ok("")), "outputD");
+        doAnswer(invocation -> {
+            ExecutionContext currentContext = invocation.getArgument(0);
+            currentContext.put("outputD", currentContext.get("outputB") + "+" + currentContext.get("outputC"));
+            return null;
+        }).when((RestNodeInstance) nodeD).complete(any(ExecutionContext.class), any());
+
+        ExecutionContext context = new ExecutionContext();
+        context.put("inputA", "valueA");
+
+        WorkflowObservabilityReport report = executor.execute(workflowInstance, context);
+
+        assertTrue(report.isSuccess());
+        assertEquals("valueB+valueC", context.get("outputD"));
+        assertEquals("D", report.getExecutionOrder().get(3));
+        verify(nodeB, never()).process(any(ExecutionContext.class));
+
+        // The outputs written when the response arrived are still attributed to the node
+        assertEquals(Map.of("outputB", "valueB"), report.getNodeExecutions().get("B").getContextChanges().getAddedKeys());
+        verify(nodeInstanceManager).markFinished("nodeB");
+
+        executor.shutdown();
+    }
+}
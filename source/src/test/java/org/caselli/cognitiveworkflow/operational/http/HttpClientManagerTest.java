@@ -0,0 +1,241 @@
+package org.caselli.cognitiveworkflow.operational.http;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import org.caselli.cognitiveworkflow.knowledge.model.node.RestNodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortSchema;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.RestPort;
+import org.caselli.cognitiveworkflow.operational.execution.ExecutionContext;
+import org.caselli.cognitiveworkflow.operational.instances.RestNodeInstance;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("test")
+class HttpClientManagerTest {
+
+    @RegisterExtension
+    static WireMockExtension wireMockServer = WireMockExtension.newInstance().build();
+
+    private HttpClientManager httpClientManager;
+    private RestNodeInstance restNodeInstance;
+    private RestNodeMetamodel metamodel;
+
+    @BeforeEach
+    void setUp() {
+        httpClientManager = HttpClientManager.withDefaults();
+
+        metamodel = new RestNodeMetamodel();
+        metamodel.setInvocationMethod(RestNodeMetamodel.InvocationMethod.GET);
+
+        RestPort outputPort = new RestPort();
+        outputPort.setKey("body");
+        outputPort.setRole(RestPort.RestPortRole.RES_FULL_BODY);
+        outputPort.setSchema(PortSchema.builder().stringSchema().build());
+        metamodel.setOutputPorts(List.of(outputPort));
+
+        restNodeInstance = new RestNodeInstance(httpClientManager);
+        restNodeInstance.setId("restNode");
+        restNodeInstance.setMetamodel(metamodel);
+    }
+
+    @AfterEach
+    void tearDown() {
+        httpClientManager.close();
+    }
+
+    @Test
+    void testConnectionsAreKeptAliveAndReused() {
+        metamodel.setUri(wireMockServer.baseUrl() + "/resource");
+        wireMockServer.stubFor(get(urlEqualTo("/resource")).willReturn(aResponse().withStatus(200).withBody("ok")));
+
+        for (int i = 0; i < 3; i++) {
+            ExecutionContext context = new ExecutionContext();
+            restNodeInstance.process(context);
+            assertEquals("ok", context.get("body"));
+        }
+
+        HttpClientManager.PoolMetrics metrics = httpClientManager.getPoolMetrics();
+        assertEquals(0, metrics.total().leased());
+        assertEquals(0, metrics.total().pending());
+        // The three requests went through the same connection, which is now idle in the pool of the host
+        assertEquals(1, metrics.total().idle());
+        assertEquals(1, metrics.hosts().size());
+        assertEquals(1, metrics.hosts().values().iterator().next().idle());
+    }
+
+    @Test
+    void testGzipResponsesAreDecompressed() throws Exception {
+        metamodel.setUri(wireMockServer.baseUrl() + "/compressed");
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write("compressed body".getBytes(StandardCharsets.UTF_8));
+        }
+        wireMockServer.stubFor(get(urlEqualTo("/compressed")).willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Encoding", "gzip")
+                .withBody(compressed.toByteArray())));
+
+        ExecutionContext context = new ExecutionContext();
+        restNodeInstance.process(context);
+
+        assertEquals("compressed body", context.get("body"));
+        wireMockServer.verify(getRequestedFor(urlEqualTo("/compressed")).withHeader("Accept-Encoding", containing("gzip")));
+    }
+
+    @Test
+    void testReadTimeoutComesFromTheMetamodel() {
+        metamodel.setUri(wireMockServer.baseUrl() + "/slow");
+        metamodel.setReadTimeoutMillis(200);
+        wireMockServer.stubFor(get(urlEqualTo("/slow")).willReturn(aResponse().withStatus(200).withFixedDelay(3_000)));
+
+        long start = System.nanoTime();
+        assertThrows(RuntimeException.class, () -> restNodeInstance.process(new ExecutionContext()));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis < 2_000, "The request must time out after the read timeout of the node (" + elapsedMillis + " ms)");
+    }
+
+    @Test
+    void testAsyncRequestsFillTheOutputPortsLikeBlockingOnes() throws Exception {
+        metamodel.setUri(wireMockServer.baseUrl() + "/items/{id}");
+        metamodel.setInvocationMethod(RestNodeMetamodel.InvocationMethod.POST);
+
+        RestPort idPort = RestPort.builder().withKey("id").withRole(RestPort.RestPortRole.REQ_PATH_VARIABLE)
+                .withSchema(PortSchema.builder().stringSchema().build()).build();
+        RestPort namePort = RestPort.builder().withKey("name").withRole(RestPort.RestPortRole.REQ_BODY_FIELD)
+                .withSchema(PortSchema.builder().stringSchema().build()).build();
+        metamodel.setInputPorts(List.of(idPort, namePort));
+
+        RestPort fullBody = RestPort.builder().withKey("body").withRole(RestPort.RestPortRole.RES_FULL_BODY)
+                .withSchema(PortSchema.builder().objectSchema(Map.of()).build()).build();
+        RestPort field = RestPort.builder().withKey("status").withRole(RestPort.RestPortRole.RES_BODY_FIELD)
+                .withSchema(PortSchema.builder().stringSchema().build()).build();
+        RestPort code = RestPort.builder().withKey("code").withRole(RestPort.RestPortRole.RES_STATUS)
+                .withSchema(PortSchema.builder().intSchema().build()).build();
+        RestPort headers = RestPort.builder().withKey("headers").withRole(RestPort.RestPortRole.RES_HEADERS)
+                .withSchema(PortSchema.builder().objectSchema(Map.of()).build()).build();
+        metamodel.setOutputPorts(List.of(fullBody, field, code, headers));
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write("{\"status\":\"créé\",\"id\":7}".getBytes(StandardCharsets.UTF_8));
+        }
+        wireMockServer.stubFor(post(urlEqualTo("/items/7")).willReturn(aResponse()
+                .withStatus(201)
+                .withHeader("Content-Type", "application/json")
+                .withHeader("Content-Encoding", "gzip")
+                .withHeader("X-Request-Id", "abc")
+                .withBody(compressed.toByteArray())));
+
+        ExecutionContext blockingContext = new ExecutionContext();
+        blockingContext.put("id", "7");
+        blockingContext.put("name", "item");
+        restNodeInstance.process(blockingContext);
+
+        ExecutionContext asyncContext = new ExecutionContext();
+        asyncContext.put("id", "7");
+        asyncContext.put("name", "item");
+        restNodeInstance.processAsync(asyncContext).get(5, TimeUnit.SECONDS);
+
+        assertEquals("créé", asyncContext.get("status"));
+        assertEquals(201, asyncContext.get("code"));
+        assertEquals(blockingContext.get("body"), asyncContext.get("body"));
+        assertEquals(blockingContext.get("status"), asyncContext.get("status"));
+        assertEquals(blockingContext.get("code"), asyncContext.get("code"));
+        assertEquals(blockingContext.get("headers"), asyncContext.get("headers"));
+
+        // Both clients send the same request
+        wireMockServer.verify(2, postRequestedFor(urlEqualTo("/items/7"))
+                .withHeader("Content-Type", containing("application/json"))
+                .withRequestBody(equalToJson("{\"name\":\"item\"}")));
+        assertEquals(0, httpClientManager.getPoolMetrics().asyncTotal().leased());
+    }
+
+    @Test
+    void testAsyncErrorStatusesFailLikeBlockingOnes() {
+        metamodel.setUri(wireMockServer.baseUrl() + "/missing");
+        wireMockServer.stubFor(get(urlEqualTo("/missing")).willReturn(aResponse().withStatus(404).withBody("not found")));
+
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> restNodeInstance.processAsync(new ExecutionContext()).get(5, TimeUnit.SECONDS));
+        HttpClientErrorException.NotFound notFound = assertInstanceOf(HttpClientErrorException.NotFound.class, exception.getCause());
+        assertEquals("not found", notFound.getResponseBodyAsString());
+        assertThrows(HttpClientErrorException.NotFound.class, () -> restNodeInstance.process(new ExecutionContext()));
+    }
+
+    @Test
+    void testBodyFieldsAreExtractedWhileStreaming() {
+        metamodel.setUri(wireMockServer.baseUrl() + "/report");
+        RestPort total = RestPort.builder().withKey("total").withRole(RestPort.RestPortRole.RES_BODY_FIELD)
+                .withSchema(PortSchema.builder().intSchema().build()).build();
+        RestPort owner = RestPort.builder().withKey("owner").withRole(RestPort.RestPortRole.RES_BODY_FIELD)
+                .withSchema(PortSchema.builder().objectSchema(Map.of()).build()).build();
+        RestPort missing = RestPort.builder().withKey("missing").withRole(RestPort.RestPortRole.RES_BODY_FIELD)
+                .withSchema(PortSchema.builder().stringSchema().build()).build();
+        metamodel.setOutputPorts(List.of(total, owner, missing));
+
+        // A large array the node does not need comes before the fields
+        String rows = "{\"id\":1,\"tags\":[\"a\",\"b\"]},".repeat(20_000);
+        wireMockServer.stubFor(get(urlEqualTo("/report")).willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"rows\":[" + rows + "{}],\"total\":20000,\"owner\":{\"name\":\"ops\"}}")));
+
+        for (int i = 0; i < 2; i++) {
+            ExecutionContext context = new ExecutionContext();
+            restNodeInstance.process(context);
+            assertEquals(20000, context.get("total"));
+            assertEquals(Map.of("name", "ops"), context.get("owner"));
+            assertNull(context.get("missing"));
+        }
+        // The body was consumed to the end, so the connection went back to the pool
+        assertEquals(0, httpClientManager.getPoolMetrics().total().leased());
+        assertEquals(1, httpClientManager.getPoolMetrics().total().idle());
+    }
+
+    @Test
+    void testResponsesLargerThanTheLimitFail() {
+        metamodel.setUri(wireMockServer.baseUrl() + "/large");
+        metamodel.setMaxResponseBytes(1_000L);
+        wireMockServer.stubFor(get(urlEqualTo("/large")).willReturn(aResponse().withStatus(200).withBody("x".repeat(5_000))));
+        wireMockServer.stubFor(get(urlEqualTo("/chunked")).willReturn(aResponse().withStatus(200)
+                .withBody("x".repeat(5_000)).withChunkedDribbleDelay(5, 50)));
+
+        RestClientException blocking = assertThrows(RestClientException.class, () -> restNodeInstance.process(new ExecutionContext()));
+        assertInstanceOf(ResponseTooLargeException.class, blocking.getCause());
+
+        ExecutionException async = assertThrows(ExecutionException.class,
+                () -> restNodeInstance.processAsync(new ExecutionContext()).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ResponseTooLargeException.class, assertInstanceOf(RestClientException.class, async.getCause()).getCause());
+
+        // Bodies without a Content-Length fail while they are read
+        metamodel.setUri(wireMockServer.baseUrl() + "/chunked");
+        blocking = assertThrows(RestClientException.class, () -> restNodeInstance.process(new ExecutionContext()));
+        assertInstanceOf(ResponseTooLargeException.class, blocking.getCause());
+        async = assertThrows(ExecutionException.class,
+                () -> restNodeInstance.processAsync(new ExecutionContext()).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ResponseTooLargeException.class, async.getCause().getCause());
+
+        // Bodies within the limit are read as usual
+        metamodel.setMaxResponseBytes(10_000L);
+        ExecutionContext context = new ExecutionContext();
+        restNodeInstance.process(context);
+        assertEquals("x".repeat(5_000), context.get("body"));
+    }
+}
@@ -0,0 +1,165 @@
+package org.caselli.cognitiveworkflow.operational.http;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import org.caselli.cognitiveworkflow.knowledge.model.node.RestNodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortSchema;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.RestPort;
+import org.caselli.cognitiveworkflow.operational.execution.ExecutionContext;
+import org.caselli.cognitiveworkflow.operational.instances.RestNodeInstance;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("test")
+class HttpResponseCacheTest {
+
+    @RegisterExtension
+    static WireMockExtension wireMockServer = WireMockExtension.newInstance().build();
+
+    private HttpClientManager httpClientManager;
+    private HttpResponseCache responseCache;
+    private RestNodeInstance restNodeInstance;
+    private RestNodeMetamodel metamodel;
+
+    @BeforeEach
+    void setUp() {
+        httpClientManager = HttpClientManager.withDefaults();
+        responseCache = HttpResponseCache.withDefaults();
+
+        metamodel = new RestNodeMetamodel();
+        metamodel.setInvocationMethod(RestNodeMetamodel.InvocationMethod.GET);
+        metamodel.setCacheResponses(true);
+
+        RestPort outputPort = new RestPort();
+        outputPort.setKey("body");
+        outputPort.setRole(RestPort.RestPortRole.RES_FULL_BODY);
+        outputPort.setSchema(PortSchema.builder().stringSchema().build());
+        metamodel.setOutputPorts(List.of(outputPort));
+
+        restNodeInstance = new RestNodeInstance(httpClientManager, responseCache, new RequestCoalescer(), ResilientRequestExecutor.withDefaults());
+        restNodeInstance.setId("restNode");
+        restNodeInstance.setMetamodel(metamodel);
+    }
+
+    @AfterEach
+    void tearDown() {
+        httpClientManager.close();
+    }
+
+    private String call() {
+        ExecutionContext context = new ExecutionContext();
+        restNodeInstance.process(context);
+        return (String) context.get("body");
+    }
+
+    @Test
+    void testFreshResponsesSkipTheNetwork() throws Exception {
+        metamodel.setUri(wireMockServer.baseUrl() + "/countries");
+        wireMockServer.stubFor(get(urlEqualTo("/countries")).willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Cache-Control", "public, max-age=60")
+                .withBody("IT,FR")));
+
+        assertEquals("IT,FR", call());
+        assertEquals("IT,FR", call());
+
+        // The non-blocking path shares the cache
+        ExecutionContext context = new ExecutionContext();
+        restNodeInstance.processAsync(context).get(5, TimeUnit.SECONDS);
+        assertEquals("IT,FR", context.get("body"));
+
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/countries")));
+        HttpResponseCache.CacheMetrics metrics = responseCache.getMetrics();
+        assertEquals(2, metrics.hits());
+        assertEquals(1, metrics.misses());
+        assertEquals(1, metrics.entries());
+    }
+
+    @Test
+    void testStaleResponsesAreRevalidatedWithTheirETag() {
+        metamodel.setUri(wireMockServer.baseUrl() + "/topology");
+        wireMockServer.stubFor(get(urlEqualTo("/topology")).willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Cache-Control", "no-cache")
+                .withHeader("ETag", "\"v1\"")
+                .withBody("full topology")));
+        wireMockServer.stubFor(get(urlEqualTo("/topology")).withHeader("If-None-Match", equalTo("\"v1\""))
+                .willReturn(aResponse().withStatus(304).withHeader("ETag", "\"v1\"")));
+
+        assertEquals("full topology", call());
+        assertEquals("full topology", call());
+
+        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/topology")));
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/topology")).withHeader("If-None-Match", equalTo("\"v1\"")));
+        assertEquals(1, responseCache.getMetrics().revalidations());
+    }
+
+    @Test
+    void testNonCacheableResponsesAndNodesAreNotStored() {
+        metamodel.setUri(wireMockServer.baseUrl() + "/private");
+        wireMockServer.stubFor(get(urlEqualTo("/private")).willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Cache-Control", "no-store")
+                .withBody("secret")));
+
+        call();
+        call();
+        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/private")));
+        assertEquals(0, responseCache.getMetrics().entries());
+
+        // Nodes that do not opt in never use the cache
+        metamodel.setCacheResponses(false);
+        metamodel.setUri(wireMockServer.baseUrl() + "/public");
+        wireMockServer.stubFor(get(urlEqualTo("/public")).willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Cache-Control", "max-age=60")
+                .withBody("public")));
+        call();
+        call();
+        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/public")));
+    }
+
+    @Test
+    void testCredentialsAreKeptApart() {
+        HttpHeaders alice = new HttpHeaders();
+        alice.setBearerAuth("alice");
+        HttpHeaders bob = new HttpHeaders();
+        bob.setBearerAuth("bob");
+        URI uri = URI.create("http://example.com/me");
+
+        HttpHeaders responseHeaders = new HttpHeaders();
+        responseHeaders.setCacheControl("max-age=60");
+        responseCache.update(uri, alice, null, new ResponseEntity<>("alice's profile", responseHeaders, 200));
+
+        assertNotNull(responseCache.lookup(uri, alice));
+        assertNull(responseCache.lookup(uri, bob));
+    }
+
+    @Test
+    void testCacheIsBoundedByEntriesAndBytes() {
+        HttpResponseCache smallCache = new HttpResponseCache(2, 1_000);
+        HttpHeaders responseHeaders = new HttpHeaders();
+        responseHeaders.setCacheControl("max-age=60");
+
+        for (int i = 0; i < 3; i++)
+            smallCache.update(URI.create("http://example.com/" + i), new HttpHeaders(), null, new ResponseEntity<>("small", responseHeaders, 200));
+        assertEquals(2, smallCache.getMetrics().entries());
+        assertNull(smallCache.lookup(URI.create("http://example.com/0"), new HttpHeaders()), "The least recently used entry is evicted");
+
+        smallCache.update(URI.create("http://example.com/big"), new HttpHeaders(), null, new ResponseEntity<>("x".repeat(450), responseHeaders, 200));
+        assertEquals(1, smallCache.getMetrics().entries());
+        assertTrue(smallCache.getMetrics().bytes() <= 1_000);
+        assertEquals(3, smallCache.getMetrics().evictions());
+    }
+}
@@ -0,0 +1,50 @@
+package org.caselli.cognitiveworkflow.operational.http;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("test")
+class JsonFieldExtractorTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testOnlyTheRequestedTopLevelFieldsAreExtracted() throws Exception {
+        String body = "{\"skip\":{\"name\":\"nested\",\"list\":[1,{\"name\":\"deep\"}]},\"name\":\"top\",\"list\":[1,2],\"empty\":null}";
+
+        Map<String, Object> fields = JsonFieldExtractor.extract(objectMapper,
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), Set.of("name", "list", "empty", "absent"));
+
+        assertEquals("top", fields.get("name"));
+        assertEquals(List.of(1, 2), fields.get("list"));
+        assertTrue(fields.containsKey("empty"));
+        assertFalse(fields.containsKey("absent"));
+        assertFalse(fields.containsKey("skip"));
+    }
+
+    @Test
+    void testSameResultAsAFullParse() throws Exception {
+        String body = "{\"a\":1,\"b\":{\"c\":[true,1.5,\"x\"]},\"a\":2}";
+
+        Map<String, Object> full = objectMapper.readValue(body, new TypeReference<>() {});
+        assertEquals(full, JsonFieldExtractor.extract(objectMapper, body, Set.of("a", "b")));
+    }
+
+    @Test
+    void testEmptyNonObjectAndMalformedBodies() throws Exception {
+        assertNull(JsonFieldExtractor.extract(objectMapper, "", Set.of("a")));
+        assertNull(JsonFieldExtractor.extract(objectMapper, "[{\"a\":1}]", Set.of("a")));
+        assertThrows(JsonProcessingException.class, () -> JsonFieldExtractor.extract(objectMapper, "{\"a\":1,\"b\":[}", Set.of("a")));
+    }
+}
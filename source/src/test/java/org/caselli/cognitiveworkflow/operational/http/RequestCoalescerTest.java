@@ -0,0 +1,148 @@
+package org.caselli.cognitiveworkflow.operational.http;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import org.caselli.cognitiveworkflow.knowledge.model.node.RestNodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortSchema;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.RestPort;
+import org.caselli.cognitiveworkflow.operational.execution.ExecutionContext;
+import org.caselli.cognitiveworkflow.operational.instances.RestNodeInstance;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("test")
+class RequestCoalescerTest {
+
+    @RegisterExtension
+    static WireMockExtension wireMockServer = WireMockExtension.newInstance().build();
+
+    private HttpClientManager httpClientManager;
+    private RequestCoalescer requestCoalescer;
+    private RestNodeMetamodel metamodel;
+    private ExecutorService callers;
+
+    @BeforeEach
+    void setUp() {
+        httpClientManager = HttpClientManager.withDefaults();
+        requestCoalescer = new RequestCoalescer();
+        callers = Executors.newFixedThreadPool(5);
+
+        metamodel = new RestNodeMetamodel();
+        metamodel.setUri(wireMockServer.baseUrl() + "/slow");
+
+        RestPort outputPort = new RestPort();
+        outputPort.setKey("body");
+        outputPort.setRole(RestPort.RestPortRole.RES_FULL_BODY);
+        outputPort.setSchema(PortSchema.builder().stringSchema().build());
+        metamodel.setOutputPorts(List.of(outputPort));
+
+        wireMockServer.stubFor(any(urlEqualTo("/slow")).willReturn(aResponse().withStatus(200).withBody("shared").withFixedDelay(500)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+        httpClientManager.close();
+    }
+
+    /**
+     * Runs the node from 5 threads at the same time (each execution has its own node instance)
+     */
+    private List<Object> processConcurrently() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Object>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            RestNodeInstance node = new RestNodeInstance(httpClientManager, HttpResponseCache.withDefaults(), requestCoalescer, ResilientRequestExecutor.withDefaults());
+            node.setId("restNode");
+            node.setMetamodel(metamodel);
+            results.add(callers.submit(() -> {
+                start.await();
+                ExecutionContext context = new ExecutionContext();
+                node.process(context);
+                return context.get("body");
+            }));
+        }
+        start.countDown();
+
+        List<Object> bodies = new ArrayList<>();
+        for (Future<Object> result : results) bodies.add(result.get(10, TimeUnit.SECONDS));
+        return bodies;
+    }
+
+    @Test
+    void testIdenticalIdempotentRequestsShareOneCall() throws Exception {
+        metamodel.setInvocationMethod(RestNodeMetamodel.InvocationMethod.GET);
+
+        assertEquals(List.of("shared", "shared", "shared", "shared", "shared"), processConcurrently());
+
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/slow")));
+        RequestCoalescer.CoalescingMetrics metrics = requestCoalescer.getMetrics();
+        assertEquals(1, metrics.sent());
+        assertEquals(4, metrics.coalesced());
+        assertEquals(0, metrics.inFlight());
+    }
+
+    @Test
+    void testNonIdempotentRequestsAreNotCoalescedUnlessTheNodeOptsIn() throws Exception {
+        metamodel.setInvocationMethod(RestNodeMetamodel.InvocationMethod.POST);
+        processConcurrently();
+        wireMockServer.verify(5, postRequestedFor(urlEqualTo("/slow")));
+
+        wireMockServer.resetRequests();
+        metamodel.setCoalesceRequests(true);
+        processConcurrently();
+        wireMockServer.verify(1, postRequestedFor(urlEqualTo("/slow")));
+    }
+
+    @Test
+    void testAsyncRequestsAreCoalescedAndFollowersCanCancel() throws Exception {
+        metamodel.setInvocationMethod(RestNodeMetamodel.InvocationMethod.GET);
+        RestNodeInstance node = new RestNodeInstance(httpClientManager, HttpResponseCache.withDefaults(), requestCoalescer, ResilientRequestExecutor.withDefaults());
+        node.setId("restNode");
+        node.setMetamodel(metamodel);
+
+        CompletableFuture<ResponseEntity<String>> leader = node.startAsync(new ExecutionContext());
+        CompletableFuture<ResponseEntity<String>> cancelledFollower = node.startAsync(new ExecutionContext());
+        CompletableFuture<ResponseEntity<String>> follower = node.startAsync(new ExecutionContext());
+        cancelledFollower.cancel(true);
+
+        assertEquals("shared", leader.get(5, TimeUnit.SECONDS).getBody());
+        assertEquals("shared", follower.get(5, TimeUnit.SECONDS).getBody());
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/slow")));
+    }
+
+    @Test
+    void testKeyDependsOnEveryPartOfTheRequest() {
+        URI uri = URI.create("http://example.com/items");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("X-Tenant", "a");
+        byte[] body = "{\"q\":1}".getBytes(StandardCharsets.UTF_8);
+
+        String key = RequestCoalescer.key(HttpMethod.GET, uri, headers, body);
+
+        HttpHeaders sameHeaders = new HttpHeaders();
+        sameHeaders.add("x-tenant", "a");
+        assertEquals(key, RequestCoalescer.key(HttpMethod.GET, uri, sameHeaders, body.clone()));
+
+        HttpHeaders otherHeaders = new HttpHeaders();
+        otherHeaders.add("X-Tenant", "b");
+        assertNotEquals(key, RequestCoalescer.key(HttpMethod.GET, uri, otherHeaders, body));
+        assertNotEquals(key, RequestCoalescer.key(HttpMethod.HEAD, uri, headers, body));
+        assertNotEquals(key, RequestCoalescer.key(HttpMethod.GET, URI.create("http://example.com/items?page=2"), headers, body));
+        assertNotEquals(key, RequestCoalescer.key(HttpMethod.GET, uri, headers, "{\"q\":2}".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,214 @@
+package org.caselli.cognitiveworkflow.operational.http;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import org.caselli.cognitiveworkflow.knowledge.model.node.RestNodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortSchema;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.RestPort;
+import org.caselli.cognitiveworkflow.operational.execution.ExecutionContext;
+import org.caselli.cognitiveworkflow.operational.instances.RestNodeInstance;
+import org.caselli.cognitiveworkflow.operational.observability.RequestAttemptRecorder;
+import org.caselli.cognitiveworkflow.operational.observability.WorkflowObservabilityReport;
+import org.caselli.cognitiveworkflow.operational.observability.WorkflowObservabilityReport.RequestAttemptDetail;
+import org.caselli.cognitiveworkflow.operational.observability.WorkflowObservabilityReport.RequestAttemptDetail.AttemptOutcome;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("test")
+class ResilientRequestExecutorTest {
+
+    @RegisterExtension
+    static WireMockExtension wireMockServer = WireMockExtension.newInstance().build();
+
+    private HttpClientManager httpClientManager;
+    private ResilientRequestExecutor executor;
+    private RestNodeMetamodel metamodel;
+    private WorkflowObservabilityReport report;
+
+    @BeforeEach
+    void setUp() {
+        httpClientManager = HttpClientManager.withDefaults();
+        executor = ResilientRequestExecutor.withDefaults();
+
+        metamodel = new RestNodeMetamodel();
+        metamodel.setUri(wireMockServer.baseUrl() + "/replica");
+        metamodel.setInvocationMethod(RestNodeMetamodel.InvocationMethod.GET);
+        metamodel.setCoalesceRequests(false);
+
+        RestPort outputPort = new RestPort();
+        outputPort.setKey("body");
+        outputPort.setRole(RestPort.RestPortRole.RES_FULL_BODY);
+        outputPort.setSchema(PortSchema.builder().stringSchema().build());
+        metamodel.setOutputPorts(List.of(outputPort));
+
+        report = new WorkflowObservabilityReport("workflow", "Workflow", new ExecutionContext());
+    }
+
+    @AfterEach
+    void tearDown() {
+        httpClientManager.close();
+    }
+
+    private RestNodeInstance node(ResilientRequestExecutor executor) {
+        RestNodeInstance node = new RestNodeInstance(httpClientManager, HttpResponseCache.withDefaults(), new RequestCoalescer(), executor);
+        node.setId("restNode");
+        node.setMetamodel(metamodel);
+        return node;
+    }
+
+    /**
+     * Runs the node as the executor does, with the attempt recorder of the node active
+     */
+    private ExecutionContext process(RestNodeInstance node) {
+        ExecutionContext context = new ExecutionContext();
+        report.recordNodeStart("restNode", "REST", "RestNodeMetamodel", context);
+        try (RequestAttemptRecorder.Scope ignored = report.attemptRecorder("restNode").activate()) {
+            node.process(context);
+        }
+        return context;
+    }
+
+    private List<RequestAttemptDetail> attempts() {
+        return report.getNodeExecutions().get("restNode").getAttempts();
+    }
+
+    private void stubFailuresThenSuccess(int failures) {
+        String state = Scenario.STARTED;
+        for (int i = 1; i <= failures; i++) {
+            wireMockServer.stubFor(get(urlEqualTo("/replica")).inScenario("flaky").whenScenarioStateIs(state)
+                    .willReturn(aResponse().withStatus(503)).willSetStateTo("failed " + i));
+            state = "failed " + i;
+        }
+        wireMockServer.stubFor(get(urlEqualTo("/replica")).inScenario("flaky").whenScenarioStateIs(state)
+                .willReturn(aResponse().withStatus(200).withBody("ok")));
+    }
+
+    @Test
+    void testRetryableStatusesAreRetriedWithBackoff() {
+        stubFailuresThenSuccess(2);
+        RestNodeMetamodel.RetryPolicy policy = new RestNodeMetamodel.RetryPolicy();
+        policy.setInitialBackoffMillis(50);
+        policy.setJitter(0);
+        metamodel.setRetryPolicy(policy);
+
+        long start = System.nanoTime();
+        assertEquals("ok", process(node(executor)).get("body"));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Waits of 50 and 100 ms
+        assertTrue(elapsedMillis >= 150, "The retries must wait for their backoff (" + elapsedMillis + " ms)");
+        wireMockServer.verify(3, getRequestedFor(urlEqualTo("/replica")));
+
+        List<RequestAttemptDetail> attempts = attempts();
+        assertEquals(List.of(1, 2, 3), attempts.stream().map(RequestAttemptDetail::getAttempt).toList());
+        assertEquals(List.of(503, 503, 200), attempts.stream().map(RequestAttemptDetail::getStatus).toList());
+        assertEquals(AttemptOutcome.SUCCEEDED, attempts.get(2).getOutcome());
+        assertEquals(2, executor.getMetrics().retries());
+    }
+
+    @Test
+    void testFailuresOutsideThePolicyOrTheAttemptsAreNotRetried() {
+        stubFailuresThenSuccess(5);
+        RestNodeMetamodel.RetryPolicy policy = new RestNodeMetamodel.RetryPolicy();
+        policy.setInitialBackoffMillis(1);
+        metamodel.setRetryPolicy(policy);
+
+        // Three attempts at most
+        assertThrows(HttpServerErrorException.ServiceUnavailable.class, () -> process(node(executor)));
+        wireMockServer.verify(3, getRequestedFor(urlEqualTo("/replica")));
+
+        // Statuses the policy does not name
+        wireMockServer.resetRequests();
+        policy.setRetryOnStatus(List.of(429));
+        assertThrows(HttpServerErrorException.ServiceUnavailable.class, () -> process(node(executor)));
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/replica")));
+
+        // Non-idempotent methods
+        wireMockServer.resetRequests();
+        wireMockServer.stubFor(post(urlEqualTo("/replica")).willReturn(aResponse().withStatus(503)));
+        policy.setRetryOnStatus(List.of(503));
+        metamodel.setInvocationMethod(RestNodeMetamodel.InvocationMethod.POST);
+        assertThrows(HttpServerErrorException.ServiceUnavailable.class, () -> process(node(executor)));
+        wireMockServer.verify(1, postRequestedFor(urlEqualTo("/replica")));
+    }
+
+    @Test
+    void testRetriesStopWhenTheBudgetIsExhausted() {
+        stubFailuresThenSuccess(1);
+        RestNodeMetamodel.RetryPolicy policy = new RestNodeMetamodel.RetryPolicy();
+        policy.setInitialBackoffMillis(1);
+        metamodel.setRetryPolicy(policy);
+
+        ResilientRequestExecutor noBudget = new ResilientRequestExecutor(0, 0, 0);
+        assertThrows(HttpServerErrorException.ServiceUnavailable.class, () -> process(node(noBudget)));
+
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/replica")));
+        assertEquals(1, noBudget.getMetrics().budgetRejections());
+    }
+
+    @Test
+    void testSlowRequestsAreHedged() throws Exception {
+        // The first request hits the slow replica
+        wireMockServer.stubFor(get(urlEqualTo("/replica")).inScenario("slow").whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(200).withBody("slow").withFixedDelay(3_000)).willSetStateTo("fast"));
+        wireMockServer.stubFor(get(urlEqualTo("/replica")).inScenario("slow").whenScenarioStateIs("fast")
+                .willReturn(aResponse().withStatus(200).withBody("fast")));
+
+        RestNodeMetamodel.HedgingPolicy policy = new RestNodeMetamodel.HedgingPolicy();
+        policy.setInitialDelayMillis(100L);
+        metamodel.setHedgingPolicy(policy);
+
+        long start = System.nanoTime();
+        assertEquals("fast", process(node(executor)).get("body"));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMillis < 2_000, "The duplicate must answer before the slow request (" + elapsedMillis + " ms)");
+
+        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/replica")));
+        assertEquals(1, executor.getMetrics().hedges());
+        assertEquals(1, executor.getMetrics().hedgeWins());
+        // The slow request is aborted: its connection and its attempt are released asynchronously
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while ((httpClientManager.getPoolMetrics().asyncTotal().leased() > 0 || attempts().size() < 2) && System.nanoTime() < until)
+            Thread.sleep(10);
+        assertEquals(0, httpClientManager.getPoolMetrics().asyncTotal().leased());
+
+        List<RequestAttemptDetail> attempts = attempts();
+        assertEquals(2, attempts.size());
+        RequestAttemptDetail hedge = attempts.stream().filter(RequestAttemptDetail::isHedge).findFirst().orElseThrow();
+        assertEquals(AttemptOutcome.SUCCEEDED, hedge.getOutcome());
+        assertTrue(attempts.stream().anyMatch(a -> !a.isHedge() && a.getOutcome() == AttemptOutcome.CANCELLED));
+
+        // The non-blocking path hedges the same way
+        wireMockServer.resetAll();
+        wireMockServer.stubFor(get(urlEqualTo("/replica")).inScenario("slow").whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(200).withBody("slow").withFixedDelay(3_000)).willSetStateTo("fast"));
+        wireMockServer.stubFor(get(urlEqualTo("/replica")).inScenario("slow").whenScenarioStateIs("fast")
+                .willReturn(aResponse().withStatus(200).withBody("fast")));
+        assertEquals("fast", node(executor).startAsync(new ExecutionContext()).get(2, TimeUnit.SECONDS).getBody());
+    }
+
+    @Test
+    void testHedgingDelayFollowsTheRecentLatencies() {
+        wireMockServer.stubFor(get(urlEqualTo("/replica")).willReturn(aResponse().withStatus(200).withBody("ok").withFixedDelay(150)));
+        metamodel.setHedgingPolicy(new RestNodeMetamodel.HedgingPolicy());
+
+        // Without an initial delay, nothing is hedged until enough latencies are known
+        RestNodeInstance node = node(executor);
+        for (int i = 0; i < 20; i++) process(node);
+        assertEquals(0, executor.getMetrics().hedges());
+
+        // Requests as slow as usual stay below the 95th percentile
+        for (int i = 0; i < 5; i++) process(node);
+        assertTrue(executor.getMetrics().hedges() <= 2, "Hedges: " + executor.getMetrics().hedges());
+    }
+}
@@ -3,6 +3,7 @@ package org.caselli.cognitiveworkflow.operational.instances;
 import org.caselli.cognitiveworkflow.knowledge.model.node.EmbeddingsNodeMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.EmbeddingsPort;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortSchema;
+import org.caselli.cognitiveworkflow.operational.execution.BlockingCallExecutor;
 import org.caselli.cognitiveworkflow.operational.execution.ExecutionContext;
 import org.caselli.cognitiveworkflow.operational.AI.factories.EmbeddingModelFactory;
 import org.junit.jupiter.api.*;
@@ -26,7 +27,7 @@ public class EmbeddingsNodeInstanceIT {
 
     @BeforeEach
     void setUp() {
-        nodeInstance = new EmbeddingsNodeInstance(llmEmbeddingsFactory);
+        nodeInstance = new EmbeddingsNodeInstance(llmEmbeddingsFactory, BlockingCallExecutor.withDefaults());
         metamodel = new EmbeddingsNodeMetamodel();
         metamodel.setProvider("openai");
         metamodel.setModelName("text-embedding-3-small");
@@ -3,7 +3,10 @@ package org.caselli.cognitiveworkflow.operational.instances;
 import org.caselli.cognitiveworkflow.knowledge.model.node.LlmNodeMetamodel;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.LlmPort;
 import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortSchema;
+import org.caselli.cognitiveworkflow.operational.execution.BlockingCallExecutor;
 import org.caselli.cognitiveworkflow.operational.execution.ExecutionContext;
+import org.caselli.cognitiveworkflow.operational.AI.LlmResponseCache;
+import org.caselli.cognitiveworkflow.operational.AI.SemanticLlmCache;
 import org.caselli.cognitiveworkflow.operational.AI.factories.LLMModelFactory;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -27,13 +30,16 @@ public class LlmNodeInstanceIT {
     @Autowired
     private LLMModelFactory llmModelFactory;
 
+    @Autowired
+    private SemanticLlmCache semanticLlmCache;
+
     private LlmNodeInstance llmNodeInstance;
     private ExecutionContext context;
     private LlmNodeMetamodel metamodel;
 
     @BeforeEach
     void setUp() {
-        llmNodeInstance = new LlmNodeInstance(llmModelFactory);
+        llmNodeInstance = new LlmNodeInstance(llmModelFactory, LlmResponseCache.withDefaults(), semanticLlmCache, BlockingCallExecutor.withDefaults());
         metamodel = new LlmNodeMetamodel();
         metamodel.setProvider("openai");
         metamodel.setModelName("gpt-4o");
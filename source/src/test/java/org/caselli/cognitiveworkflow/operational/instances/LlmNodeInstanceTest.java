@@ -0,0 +1,145 @@
+package org.caselli.cognitiveworkflow.operational.instances;
+
+import org.caselli.cognitiveworkflow.knowledge.model.node.LlmNodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.LlmPort;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortSchema;
+import org.caselli.cognitiveworkflow.operational.AI.AiClientRegistry;
+import org.caselli.cognitiveworkflow.operational.AI.LlmResponseCache;
+import org.caselli.cognitiveworkflow.operational.AI.SemanticLlmCache;
+import org.caselli.cognitiveworkflow.operational.AI.factories.LLMModelFactory;
+import org.caselli.cognitiveworkflow.operational.execution.BlockingCallExecutor;
+import org.caselli.cognitiveworkflow.operational.execution.ExecutionContext;
+import org.caselli.cognitiveworkflow.operational.execution.ResponseStreamSink;
+import org.caselli.cognitiveworkflow.operational.observability.ResponseStream;
+import org.caselli.cognitiveworkflow.operational.observability.WorkflowObservabilityReport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@Tag("test")
+class LlmNodeInstanceTest {
+
+    private static final String NODE_ID = "llm-node";
+
+    private ChatClient chatClient;
+    private LlmNodeInstance llmNodeInstance;
+    private LlmNodeMetamodel metamodel;
+    private ExecutionContext context;
+
+    private WorkflowObservabilityReport report;
+    private final List<String> partials = Collections.synchronizedList(new ArrayList<>());
+    private final List<Object> completed = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        chatClient = mock(ChatClient.class, RETURNS_DEEP_STUBS);
+        AiClientRegistry.Lease<ChatClient> lease = mock(AiClientRegistry.Lease.class);
+        when(lease.get()).thenReturn(chatClient);
+        LLMModelFactory llmModelFactory = mock(LLMModelFactory.class);
+        when(llmModelFactory.acquireChatClient(any(), any(), any(), any())).thenReturn(lease);
+
+        llmNodeInstance = new LlmNodeInstance(llmModelFactory, LlmResponseCache.withDefaults(), mock(SemanticLlmCache.class), BlockingCallExecutor.withDefaults());
+        metamodel = new LlmNodeMetamodel();
+        metamodel.setProvider("openai");
+        metamodel.setModelName("gpt-4o");
+        metamodel.setSystemPromptTemplate("What is the color of the sky? Answer in uppercase.");
+        metamodel.setStreamResponse(true);
+        llmNodeInstance.setMetamodel(metamodel);
+        llmNodeInstance.setId(NODE_ID);
+        context = new ExecutionContext();
+
+        report = new WorkflowObservabilityReport("workflow", "workflow", context);
+        report.setResponseStreamSink(new ResponseStreamSink() {
+            @Override
+            public void onPartial(String nodeId, String portKey, String text) {
+                assertEquals(NODE_ID, nodeId);
+                partials.add(text);
+            }
+
+            @Override
+            public void onComplete(String nodeId, String portKey, Object value) {
+                completed.add(value);
+            }
+        });
+        report.recordNodeStart(NODE_ID, "llm", "LLM", context);
+    }
+
+    private void setResponsePort(PortSchema schema) {
+        metamodel.setOutputPorts(List.of(LlmPort.builder()
+                .withKey("answer")
+                .withRole(LlmPort.LlmPortRole.RESPONSE)
+                .withSchema(schema)
+                .build()));
+    }
+
+    private void process() {
+        try (ResponseStream.Scope ignored = report.responseStream(NODE_ID).activate()) {
+            llmNodeInstance.process(context);
+        }
+    }
+
+    @Test
+    void testStreamedTokensArePublishedAndTheTimeToFirstTokenIsRecorded() {
+        setResponsePort(PortSchema.builder().stringSchema().build());
+        when(chatClient.prompt(any(Prompt.class)).stream().content()).thenReturn(Flux.just("", "The sky ", "is ", "BLUE"));
+
+        process();
+
+        assertEquals(List.of("The sky ", "is ", "BLUE"), partials, "Empty chunks are not published");
+        assertEquals("The sky is BLUE", context.get("answer"));
+        assertEquals(List.of("The sky is BLUE"), completed);
+        assertNotNull(report.getNodeExecutions().get(NODE_ID).getTimeToFirstToken());
+        verify(chatClient.prompt(any(Prompt.class)), never()).call();
+    }
+
+    @Test
+    void testStructuredResponsesAreParsedWhenComplete() {
+        setResponsePort(PortSchema.builder().intSchema().build());
+        when(chatClient.prompt(any(Prompt.class)).stream().content()).thenReturn(Flux.just("4", "2"));
+
+        process();
+
+        assertEquals(List.of("4", "2"), partials);
+        assertEquals(42, context.get("answer"));
+        assertEquals(List.of(42), completed);
+    }
+
+    @Test
+    void testCachedResponsesArePublishedAtOnce() {
+        setResponsePort(PortSchema.builder().stringSchema().build());
+        metamodel.setCacheResponses(true);
+        when(chatClient.prompt(any(Prompt.class)).stream().content()).thenReturn(Flux.just("BL", "UE"));
+
+        process();
+        partials.clear();
+        process();
+
+        assertEquals(List.of("BLUE"), partials);
+        assertEquals("BLUE", context.get("answer"));
+    }
+
+    @Test
+    void testNodesWithoutStreamingWaitForTheWholeResponse() {
+        setResponsePort(PortSchema.builder().stringSchema().build());
+        metamodel.setStreamResponse(null);
+        when(chatClient.prompt(any(Prompt.class)).call().content()).thenReturn("BLUE");
+
+        process();
+
+        assertEquals("BLUE", context.get("answer"));
+        assertTrue(partials.isEmpty());
+        assertNull(report.getNodeExecutions().get(NODE_ID).getTimeToFirstToken());
+    }
+}
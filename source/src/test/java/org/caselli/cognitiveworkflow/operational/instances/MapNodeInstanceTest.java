@@ -0,0 +1,185 @@
+package org.caselli.cognitiveworkflow.operational.instances;
+
+import org.caselli.cognitiveworkflow.knowledge.MOP.WorkflowMetamodelService;
+import org.caselli.cognitiveworkflow.knowledge.model.node.GatewayNodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.MapNodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.NodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortSchema;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.StandardPort;
+import org.caselli.cognitiveworkflow.operational.execution.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@Tag("test")
+class MapNodeInstanceTest {
+
+    @Mock private NodeInstanceManager nodeInstanceManager;
+    @Mock private WorkflowInstanceManager workflowInstanceManager;
+    @Mock private WorkflowMetamodelService workflowMetamodelService;
+    @Mock private WorkflowExecutor workflowExecutor;
+
+    private AutoCloseable mocks;
+    private FanOutExecutor fanOutExecutor;
+    private MapNodeInstance mapNode;
+    private MapNodeMetamodel metamodel;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final Set<NodeInstance> itemNodes = ConcurrentHashMap.newKeySet();
+    private final List<ExecutionContext> itemContexts = Collections.synchronizedList(new ArrayList<>());
+    private GatewayNodeMetamodel itemMetamodel;
+
+    @BeforeEach
+    void setUp() {
+        mocks = MockitoAnnotations.openMocks(this);
+        fanOutExecutor = FanOutExecutor.withDefaults();
+
+        metamodel = new MapNodeMetamodel();
+        metamodel.setItemsPortKey("items");
+        metamodel.setResultsPortKey("results");
+        metamodel.setItemNodeId("item-node");
+        metamodel.setItemInputKey("item");
+        metamodel.setItemOutputKey("output");
+
+        mapNode = new MapNodeInstance(nodeInstanceManager, workflowInstanceManager, workflowMetamodelService, workflowExecutor, fanOutExecutor);
+        mapNode.setId("map-node");
+        mapNode.setMetamodel(metamodel);
+
+        itemMetamodel = new GatewayNodeMetamodel();
+        when(nodeInstanceManager.getOrCreate("item-node")).thenReturn(createItemNode(itemMetamodel));
+        when(nodeInstanceManager.createDetached(any())).thenAnswer(invocation -> {
+            NodeInstance itemNode = createItemNode(invocation.getArgument(0));
+            itemNodes.add(itemNode);
+            return itemNode;
+        });
+    }
+
+    /**
+     * Item node: doubles the item, fails on negative items
+     */
+    private NodeInstance createItemNode(NodeMetamodel nodeMetamodel) {
+        NodeInstance itemNode = new GatewayNodeInstance() {
+            @Override
+            public void process(ExecutionContext context) {
+                itemContexts.add(context);
+                int current = running.incrementAndGet();
+                maxRunning.accumulateAndGet(current, Math::max);
+                try {
+                    int item = (Integer) context.get("item");
+                    Thread.sleep(20L * Math.abs(item % 3));
+                    if (item < 0) throw new IllegalStateException("negative item " + item);
+                    context.put("output", item * 2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        };
+        itemNode.setId("item-node");
+        itemNode.setMetamodel(nodeMetamodel);
+        return itemNode;
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        fanOutExecutor.shutdown();
+        mocks.close();
+    }
+
+    @Test
+    void testResultsKeepOrderAndRespectParallelism() throws Exception {
+        metamodel.setMaxParallelism(3);
+        ExecutionContext context = new ExecutionContext();
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 12; i++) items.add(i);
+        context.put("items", items);
+        context.put("shared", "untouched");
+
+        mapNode.process(context);
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 12; i++) expected.add(i * 2);
+        assertEquals(expected, context.get("results"));
+        assertTrue(maxRunning.get() <= 3, "At most 3 items must run at the same time");
+
+        // Item contexts are isolated from the parent context
+        assertNull(context.get("item"));
+        assertNull(context.get("output"));
+        assertEquals("untouched", context.get("shared"));
+        verify(nodeInstanceManager, times(12)).markRunning("item-node");
+        verify(nodeInstanceManager, times(12)).markFinished("item-node");
+
+        // Every item runs on its own node instance
+        assertEquals(12, itemNodes.size());
+    }
+
+    @Test
+    void testItemsReceiveOnlyTheInputsOfTheItemNode() throws Exception {
+        itemMetamodel.setInputPorts(List.of(StandardPort.builder()
+                .withKey("settings")
+                .withSchema(PortSchema.builder().objectSchema(Map.of("factor", PortSchema.builder().intSchema().build())).build())
+                .build()));
+
+        ExecutionContext context = new ExecutionContext();
+        context.put("items", List.of(1, 2));
+        context.put("settings", new HashMap<>(Map.of("factor", 2)));
+        context.put("unrelated", "not copied");
+
+        mapNode.process(context);
+
+        assertEquals(List.of(2, 4), context.get("results"));
+        assertEquals(2, itemContexts.size());
+        for (ExecutionContext itemContext : itemContexts) {
+            assertEquals(2, itemContext.get("settings.factor"));
+            assertNull(itemContext.get("unrelated"));
+        }
+        // Each item has its own copy of the inputs
+        assertNotSame(itemContexts.get(0).get("settings"), itemContexts.get(1).get("settings"));
+        assertNotSame(context.get("settings"), itemContexts.get(0).get("settings"));
+    }
+
+    @Test
+    void testErrorPolicies() throws Exception {
+        metamodel.setErrorsPortKey("errors");
+
+        metamodel.setErrorPolicy(MapNodeMetamodel.ItemErrorPolicy.SKIP);
+        ExecutionContext skipContext = new ExecutionContext();
+        skipContext.put("items", List.of(1, -1, 2));
+        mapNode.process(skipContext);
+        assertEquals(List.of(2, 4), skipContext.get("results"));
+        assertEquals(1, skipContext.get("errors.0.index"));
+
+        metamodel.setErrorPolicy(MapNodeMetamodel.ItemErrorPolicy.NULL);
+        ExecutionContext nullContext = new ExecutionContext();
+        nullContext.put("items", List.of(1, -1, 2));
+        mapNode.process(nullContext);
+        assertEquals(Arrays.asList(2, null, 4), nullContext.get("results"));
+
+        metamodel.setErrorPolicy(MapNodeMetamodel.ItemErrorPolicy.FAIL);
+        ExecutionContext failContext = new ExecutionContext();
+        failContext.put("items", List.of(1, -1, 2));
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> mapNode.process(failContext));
+        assertInstanceOf(IllegalStateException.class, exception.getCause());
+        assertNull(failContext.get("results"));
+    }
+
+    @Test
+    void testItemsMustBeAnArray() {
+        ExecutionContext context = new ExecutionContext();
+        context.put("items", "not an array");
+        assertThrows(IllegalArgumentException.class, () -> mapNode.process(context));
+    }
+}
@@ -0,0 +1,219 @@
+package org.caselli.cognitiveworkflow.operational.instances;
+
+import org.bson.Document;
+import org.caselli.cognitiveworkflow.knowledge.model.node.VectorDbNodeMetamodel;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortSchema;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.VectorDbPort;
+import org.caselli.cognitiveworkflow.operational.execution.BlockingCallExecutor;
+import org.caselli.cognitiveworkflow.operational.execution.ExecutionContext;
+import org.caselli.cognitiveworkflow.operational.mongo.MongoClientManager;
+import org.caselli.cognitiveworkflow.operational.vectordb.EmbeddedVectorIndexManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("test")
+class VectorDbNodeInstanceTest {
+
+    private VectorDbNodeInstance nodeInstance;
+    private VectorDbNodeMetamodel metamodel;
+
+    @BeforeEach
+    void setUp() {
+        metamodel = new VectorDbNodeMetamodel();
+        metamodel.setCollectionName("embedded_movies");
+        metamodel.setIndexName("embedded_movies_vector_index");
+        metamodel.setDatabaseName("sample_mflix");
+        metamodel.setVectorField("plot_embedding");
+        metamodel.setParameters(new VectorDbNodeMetamodel.VectorSearchConfig());
+        metamodel.setInputPorts(List.of(
+                port("vector", VectorDbPort.VectorDbPortRole.INPUT_VECTOR, PortSchema.builder().arraySchema(PortSchema.builder().floatSchema().build()).build()),
+                port("filter", VectorDbPort.VectorDbPortRole.INPUT_FILTER, PortSchema.builder().objectSchema(Map.of()).build()),
+                port("limit", VectorDbPort.VectorDbPortRole.INPUT_LIMIT, PortSchema.builder().intSchema().build()),
+                port("candidates", VectorDbPort.VectorDbPortRole.INPUT_NUM_CANDIDATES, PortSchema.builder().intSchema().build()),
+                port("threshold", VectorDbPort.VectorDbPortRole.INPUT_THRESHOLD, PortSchema.builder().floatSchema().build())
+        ));
+
+        nodeInstance = new VectorDbNodeInstance(MongoClientManager.withDefaults(), new EmbeddedVectorIndexManager(), BlockingCallExecutor.withDefaults());
+        nodeInstance.setId("vector-node");
+        nodeInstance.setMetamodel(metamodel);
+    }
+
+    private static VectorDbPort port(String key, VectorDbPort.VectorDbPortRole role, PortSchema schema) {
+        return VectorDbPort.builder().withKey(key).withRole(role).withSchema(schema).build();
+    }
+
+    @Test
+    void testUnfilteredSearchUsesTheParametersOfTheNode() {
+        metamodel.getParameters().setLimit(3);
+        metamodel.getParameters().setThreshold(0.7);
+
+        VectorDbNodeInstance.SearchParameters parameters = nodeInstance.determineSearchParameters(new ExecutionContext());
+        assertEquals(3, parameters.limit());
+        assertEquals(30, parameters.numCandidates());
+        assertEquals(0.7, parameters.threshold());
+        assertNull(parameters.filter());
+
+        Document stage = (Document) nodeInstance.buildVectorSearchStage("index", "plot_embedding", List.of(0.1, 0.2), parameters).get("$vectorSearch");
+        assertEquals(30, stage.get("numCandidates"));
+        assertEquals(3, stage.get("limit"));
+        assertFalse(stage.containsKey("filter"));
+    }
+
+    @Test
+    void testFiltersArePushedIntoTheVectorSearchStage() {
+        metamodel.getParameters().setLimit(4);
+        metamodel.getParameters().setFilter("{\"year\": {\"$gte\": 2000}}");
+
+        ExecutionContext context = new ExecutionContext();
+        context.put("filter", Map.of("genres", "Drama"));
+
+        VectorDbNodeInstance.SearchParameters parameters = nodeInstance.determineSearchParameters(context);
+        // Filtered searches need fewer candidates
+        assertEquals(20, parameters.numCandidates());
+
+        Document stage = (Document) nodeInstance.buildVectorSearchStage("index", "plot_embedding", List.of(0.1, 0.2), parameters).get("$vectorSearch");
+        Document filter = (Document) stage.get("filter");
+        assertEquals(List.of(new Document("year", new Document("$gte", 2000)), new Document("genres", "Drama")), filter.get("$and"));
+    }
+
+    @Test
+    void testPortsOverrideTheParametersForOneCall() {
+        ExecutionContext context = new ExecutionContext();
+        context.put("limit", 5);
+        context.put("candidates", "200");
+        context.put("threshold", 0.9f);
+
+        VectorDbNodeInstance.SearchParameters parameters = nodeInstance.determineSearchParameters(context);
+        assertEquals(5, parameters.limit());
+        assertEquals(200, parameters.numCandidates());
+        assertEquals(0.9, parameters.threshold(), 1e-6);
+
+        // The metamodel is not changed by the overrides
+        assertEquals(10, metamodel.getParameters().getLimit());
+        assertEquals(100, nodeInstance.determineSearchParameters(new ExecutionContext()).numCandidates());
+
+        // The number of candidates stays between the limit and the maximum accepted by Atlas
+        context.put("candidates", 2);
+        assertEquals(5, nodeInstance.determineSearchParameters(context).numCandidates());
+        context.put("candidates", 50_000);
+        assertEquals(VectorDbNodeInstance.MAX_NUM_CANDIDATES, nodeInstance.determineSearchParameters(context).numCandidates());
+    }
+
+    @Test
+    void testInvalidFiltersFailTheSearch() {
+        ExecutionContext context = new ExecutionContext();
+        context.put("filter", "{not json");
+        assertThrows(IllegalArgumentException.class, () -> nodeInstance.determineSearchParameters(context));
+
+        context.put("filter", 42);
+        assertThrows(IllegalArgumentException.class, () -> nodeInstance.determineSearchParameters(context));
+    }
+
+    @Test
+    void testPipelineProjectsTheFieldsOfTheOutputPorts() {
+        metamodel.setOutputPorts(List.of(
+                VectorDbPort.builder().withKey("results").withRole(VectorDbPort.VectorDbPortRole.RESULTS)
+                        .withSchema(PortSchema.builder().arraySchema(PortSchema.builder().objectSchema(Map.of(
+                                "title", PortSchema.builder().stringSchema().build(),
+                                "score", PortSchema.builder().floatSchema().build())).build()).build())
+                        .build()
+        ));
+        metamodel.getParameters().setThreshold(0.5);
+
+        VectorDbNodeInstance.ResultMapping mapping = nodeInstance.getResultMapping();
+        assertSame(mapping, nodeInstance.getResultMapping(), "The mapping is compiled once");
+
+        List<Document> pipeline = nodeInstance.buildPipeline("index", "plot_embedding", List.of(0.1),
+                nodeInstance.determineSearchParameters(new ExecutionContext()), mapping.projection());
+        assertEquals(4, pipeline.size());
+        assertEquals(new Document("score", 1).append("title", 1).append("_id", 0), pipeline.get(3).get("$project"));
+
+        // Ports that need the whole documents keep the previous projection
+        metamodel.setOutputPorts(List.of(
+                VectorDbPort.builder().withKey("json").withRole(VectorDbPort.VectorDbPortRole.RESULTS)
+                        .withSchema(PortSchema.builder().stringSchema().build()).build()
+        ));
+        assertNotSame(mapping, nodeInstance.getResultMapping());
+        pipeline = nodeInstance.buildPipeline("index", "plot_embedding", List.of(0.1),
+                nodeInstance.determineSearchParameters(new ExecutionContext()), nodeInstance.getResultMapping().projection());
+        assertEquals(new Document("plot_embedding", 0), pipeline.get(3).get("$project"));
+    }
+
+    @Test
+    void testEmbeddedBackendInsertsAndSearchesDocuments(@TempDir Path directory) {
+        EmbeddedVectorIndexManager indexManager = new EmbeddedVectorIndexManager();
+        VectorDbNodeInstance embeddedNode = new VectorDbNodeInstance(MongoClientManager.withDefaults(), indexManager, BlockingCallExecutor.withDefaults());
+        embeddedNode.setId("embedded-node");
+
+        VectorDbNodeMetamodel.EmbeddedIndexConfig index = new VectorDbNodeMetamodel.EmbeddedIndexConfig();
+        index.setDimensions(3);
+        VectorDbNodeMetamodel embedded = new VectorDbNodeMetamodel();
+        embedded.setBackend(VectorDbNodeMetamodel.Backend.EMBEDDED);
+        embedded.setUri(directory.resolve("movies.idx").toUri().toString());
+        embedded.setEmbeddedIndex(index);
+        embedded.setParameters(new VectorDbNodeMetamodel.VectorSearchConfig());
+        embedded.getParameters().setLimit(2);
+        embedded.setInputPorts(List.of(
+                port("vector", VectorDbPort.VectorDbPortRole.INPUT_VECTOR, PortSchema.builder().arraySchema(PortSchema.builder().floatSchema().build()).build()),
+                port("document", VectorDbPort.VectorDbPortRole.INPUT_DOCUMENT, PortSchema.builder().objectSchema(Map.of()).build()),
+                port("filter", VectorDbPort.VectorDbPortRole.INPUT_FILTER, PortSchema.builder().objectSchema(Map.of()).build())
+        ));
+        PortSchema movieSchema = PortSchema.builder().objectSchema(Map.of(
+                "_id", PortSchema.builder().stringSchema().build(),
+                "title", PortSchema.builder().stringSchema().build(),
+                "score", PortSchema.builder().floatSchema().build())).build();
+        embedded.setOutputPorts(List.of(
+                VectorDbPort.builder().withKey("results").withRole(VectorDbPort.VectorDbPortRole.RESULTS)
+                        .withSchema(PortSchema.builder().arraySchema(movieSchema).build()).build(),
+                VectorDbPort.builder().withKey("best").withRole(VectorDbPort.VectorDbPortRole.FIRST_RESULT).withSchema(movieSchema).build()
+        ));
+        embeddedNode.setMetamodel(embedded);
+
+        // Inserts (documents without an _id get a random one)
+        Map<Object, List<Double>> movies = new LinkedHashMap<>();
+        movies.put(Map.of("_id", "m1", "title", "Metropolis", "year", 1927), List.of(1.0, 0.0, 0.0));
+        movies.put(Map.of("_id", "m2", "title", "Nosferatu", "year", 1922), List.of(0.9, 0.1, 0.0));
+        movies.put("{\"title\": \"Solaris\", \"year\": 1972}", List.of(0.0, 0.0, 1.0));
+        movies.forEach((document, vector) -> {
+            ExecutionContext context = new ExecutionContext();
+            context.put("vector", vector);
+            context.put("document", document);
+            embeddedNode.process(context);
+            assertNull(context.get("results"), "Inserts do not search");
+        });
+
+        // Search, with the same result ports as Atlas
+        ExecutionContext context = new ExecutionContext();
+        context.put("vector", List.of(1.0f, 0.05f, 0.0f));
+        embeddedNode.process(context);
+
+        List<?> results = (List<?>) context.get("results");
+        assertEquals(2, results.size());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> best = (Map<String, Object>) context.get("best");
+        assertEquals("m1", best.get("_id"));
+        assertEquals("Metropolis", best.get("title"));
+        assertTrue(((Number) best.get("score")).doubleValue() > 0.99);
+
+        // Filters are evaluated by the index
+        context = new ExecutionContext();
+        context.put("vector", List.of(1.0, 0.0, 0.0));
+        context.put("filter", Map.of("year", Map.of("$gt", 1950)));
+        embeddedNode.process(context);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> filtered = (Map<String, Object>) context.get("best");
+        assertEquals("Solaris", filtered.get("title"));
+        assertEquals(1, ((List<?>) context.get("results")).size());
+
+        indexManager.close();
+    }
+}
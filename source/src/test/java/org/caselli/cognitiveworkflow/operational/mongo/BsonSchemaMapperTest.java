@@ -0,0 +1,93 @@
+package org.caselli.cognitiveworkflow.operational.mongo;
+
+import org.bson.BsonArray;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.caselli.cognitiveworkflow.knowledge.model.node.port.PortSchema;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("test")
+class BsonSchemaMapperTest {
+
+    private final PortSchema movieSchema = PortSchema.builder().objectSchema(Map.of(
+            "_id", PortSchema.builder().stringSchema().build(),
+            "title", PortSchema.builder().stringSchema().build(),
+            "released", PortSchema.builder().stringSchema().build(),
+            "imdb", PortSchema.builder().objectSchema(Map.of(
+                    "rating", PortSchema.builder().floatSchema().build(),
+                    "votes", PortSchema.builder().intSchema().build())).build(),
+            "genres", PortSchema.builder().arraySchema(PortSchema.builder().stringSchema().build()).build(),
+            "non_existing_prop", PortSchema.builder().stringSchema().build()
+    )).build();
+
+    private final Document movie = new Document("_id", new ObjectId())
+            .append("title", "Metropolis")
+            .append("released", new Date(0))
+            .append("imdb", new Document("rating", 8.3).append("votes", 150000L))
+            .append("genres", List.of("Drama", "Sci-Fi"))
+            .append("plot", "x".repeat(10_000))
+            .append("plot_embedding", List.of(0.1, 0.2, 0.3));
+
+    private RawBsonDocument raw(Document document) {
+        return RawBsonDocument.parse(document.toJson());
+    }
+
+    @Test
+    void testMappingMatchesTheMappingOfDocuments() {
+        RawBsonDocument rawMovie = new RawBsonDocument(movie, new DocumentCodec());
+
+        BsonSchemaMapper mapper = BsonSchemaMapper.compile(movieSchema);
+        assertEquals(PortSchema.mapToSchema(movie, movieSchema), mapper.map(rawMovie));
+
+        PortSchema resultsSchema = PortSchema.builder().arraySchema(movieSchema).build();
+        assertEquals(PortSchema.mapToSchema(List.of(movie, movie), resultsSchema),
+                BsonSchemaMapper.compile(resultsSchema).map(new BsonArray(List.of(rawMovie, rawMovie))));
+
+        PortSchema stringSchema = PortSchema.builder().stringSchema().build();
+        assertEquals(PortSchema.mapToSchema(movie.get("imdb"), stringSchema), BsonSchemaMapper.compile(stringSchema).map(rawMovie.get("imdb")));
+        assertNull(mapper.map(null));
+    }
+
+    @Test
+    void testProjectionReadsOnlyTheFieldsOfTheSchemas() {
+        Document projection = BsonSchemaMapper.projection(List.of(movieSchema));
+        assertEquals(new Document("_id", 1).append("genres", 1).append("imdb.rating", 1).append("imdb.votes", 1)
+                .append("non_existing_prop", 1).append("released", 1).append("title", 1), projection);
+
+        // A field read as a whole by one schema is projected as a whole, and the _id is excluded unless read
+        PortSchema wholeImdb = PortSchema.builder().objectSchema(Map.of(
+                "imdb", PortSchema.builder().stringSchema().build(),
+                "title", PortSchema.builder().stringSchema().build())).build();
+        PortSchema ratingOnly = PortSchema.builder().objectSchema(Map.of(
+                "imdb", PortSchema.builder().objectSchema(Map.of("rating", PortSchema.builder().floatSchema().build())).build())).build();
+        assertEquals(new Document("imdb", 1).append("title", 1).append("_id", 0), BsonSchemaMapper.projection(List.of(ratingOnly, wholeImdb)));
+
+        // Schemas without properties need the whole documents
+        assertNull(BsonSchemaMapper.projection(List.of(movieSchema, PortSchema.builder().stringSchema().build())));
+        assertNull(BsonSchemaMapper.projection(List.of()));
+    }
+
+    @Test
+    void testProjectedDocumentsMapLikeWholeDocuments() {
+        Document projection = BsonSchemaMapper.projection(List.of(movieSchema));
+        // What the server returns for the projection (the movie has no other fields under imdb)
+        Document projected = new Document();
+        movie.forEach((key, value) -> {
+            if (projection.keySet().stream().anyMatch(path -> path.split("\\.")[0].equals(key))) projected.append(key, value);
+        });
+        assertFalse(projected.containsKey("plot"));
+
+        BsonSchemaMapper mapper = BsonSchemaMapper.compile(movieSchema);
+        assertEquals(mapper.map(raw(movie)), mapper.map(raw(projected)));
+        assertEquals(movie.get("title"), BsonSchemaMapper.toDocument(raw(movie)).get("title"));
+    }
+}
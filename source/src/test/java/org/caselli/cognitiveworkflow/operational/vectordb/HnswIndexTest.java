@@ -0,0 +1,188 @@
+package org.caselli.cognitiveworkflow.operational.vectordb;
+
+import org.bson.Document;
+import org.caselli.cognitiveworkflow.knowledge.model.node.VectorDbNodeMetamodel.Similarity;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("test")
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 16;
+
+    @TempDir
+    Path directory;
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) vector[i] = (float) random.nextGaussian();
+        return vector;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    private static List<String> exactNearest(Map<String, float[]> vectors, float[] query, int k) {
+        return vectors.entrySet().stream()
+                .sorted(Comparator.comparingDouble(entry -> -cosine(entry.getValue(), query)))
+                .limit(k).map(Map.Entry::getKey).toList();
+    }
+
+    @Test
+    void testSearchFindsTheExactNeighbors() throws Exception {
+        Random random = new Random(42);
+        Map<String, float[]> vectors = new LinkedHashMap<>();
+
+        try (HnswIndex index = HnswIndex.open(directory.resolve("vectors.idx"), DIMENSIONS, Similarity.COSINE, 8, 100)) {
+            for (int i = 0; i < 2000; i++) {
+                float[] vector = randomVector(random);
+                vectors.put("v" + i, vector);
+                index.insert("v" + i, vector, Map.of("n", i));
+            }
+            assertEquals(2000, index.size());
+
+            int found = 0;
+            for (int q = 0; q < 20; q++) {
+                float[] query = randomVector(random);
+                Set<String> expected = new HashSet<>(exactNearest(vectors, query, 10));
+                List<HnswIndex.SearchResult> results = index.search(query, 10, 100, null);
+
+                assertEquals(10, results.size());
+                for (HnswIndex.SearchResult result : results) if (expected.contains(result.id())) found++;
+
+                // Scores are the Atlas cosine scores, from the most similar
+                HnswIndex.SearchResult best = results.get(0);
+                assertEquals((1 + cosine(vectors.get(best.id()), query)) / 2, best.score(), 1e-4);
+                for (int i = 1; i < results.size(); i++) assertTrue(results.get(i - 1).score() >= results.get(i).score());
+            }
+            assertTrue(found >= 190, "Recall@10 was " + found / 200.0);
+        }
+    }
+
+    @Test
+    void testFilteredSearchReturnsOnlyMatchingDocuments() throws Exception {
+        Random random = new Random(7);
+        Map<String, float[]> vectors = new LinkedHashMap<>();
+
+        try (HnswIndex index = HnswIndex.open(directory.resolve("vectors.idx"), DIMENSIONS, Similarity.EUCLIDEAN, 8, 100)) {
+            for (int i = 0; i < 1000; i++) {
+                float[] vector = randomVector(random);
+                vectors.put("v" + i, vector);
+                index.insert("v" + i, vector, Map.of("year", 1900 + i % 120, "genres", List.of(i % 2 == 0 ? "Drama" : "Comedy", "Sci-Fi")));
+            }
+            float[] query = randomVector(random);
+
+            // Selective filters are answered exactly
+            var rare = MetadataFilter.compile(Document.parse("{\"year\": {\"$in\": [1950, 1951]}}"));
+            List<HnswIndex.SearchResult> results = index.search(query, 5, 20, rare);
+            assertEquals(5, results.size());
+            results.forEach(result -> assertTrue(List.of(1950, 1951).contains(result.document().get("year"))));
+
+            // Broad filters walk the graph, skipping the non-matching vectors
+            var drama = MetadataFilter.compile(Document.parse("{\"genres\": \"Drama\", \"year\": {\"$gte\": 1950.5}}"));
+            results = index.search(query, 10, 100, drama);
+            assertEquals(10, results.size());
+            results.forEach(result -> {
+                assertTrue(((List<?>) result.document().get("genres")).contains("Drama"));
+                assertTrue(((Number) result.document().get("year")).intValue() >= 1951);
+            });
+            assertTrue(results.get(0).score() > 0 && results.get(0).score() <= 1);
+
+            var noMatch = MetadataFilter.compile(Document.parse("{\"genres\": {\"$nin\": [\"Drama\", \"Comedy\"]}}"));
+            assertTrue(index.search(query, 10, 100, noMatch).isEmpty());
+        }
+    }
+
+    @Test
+    void testFilterFollowsTheMongoSemantics() {
+        Map<String, Object> movie = Map.of("title", "Metropolis", "year", 1927L,
+                "imdb", Map.of("rating", 8.3), "genres", List.of("Drama", "Sci-Fi"));
+
+        assertTrue(MetadataFilter.compile(Document.parse("{\"year\": 1927, \"imdb.rating\": {\"$gt\": 8}}")).test(movie));
+        assertTrue(MetadataFilter.compile(Document.parse("{\"genres\": \"Sci-Fi\", \"missing\": {\"$exists\": false}}")).test(movie));
+        assertTrue(MetadataFilter.compile(Document.parse("{\"$or\": [{\"year\": {\"$lt\": 1900}}, {\"title\": {\"$ne\": \"M\"}}]}")).test(movie));
+        // A negative condition on an array holds only if no element matches
+        assertFalse(MetadataFilter.compile(Document.parse("{\"genres\": {\"$ne\": \"Drama\"}}")).test(movie));
+        assertFalse(MetadataFilter.compile(Document.parse("{\"title\": {\"$gt\": 5}}")).test(movie));
+        assertFalse(MetadataFilter.compile(Document.parse("{\"$nor\": [{\"imdb.rating\": {\"$not\": {\"$lt\": 5}}}]}")).test(movie));
+
+        assertThrows(IllegalArgumentException.class, () -> MetadataFilter.compile(Document.parse("{\"title\": {\"$regex\": \"^M\"}}")));
+    }
+
+    @Test
+    void testIndexIsRestoredWhenReopened() throws Exception {
+        Path path = directory.resolve("vectors.idx");
+        Random random = new Random(3);
+        Map<String, float[]> vectors = new LinkedHashMap<>();
+
+        try (HnswIndex index = HnswIndex.open(path, DIMENSIONS, Similarity.COSINE, 8, 50)) {
+            for (int i = 0; i < 300; i++) {
+                float[] vector = randomVector(random);
+                vectors.put("v" + i, vector);
+                index.insert("v" + i, vector, Map.of("n", i));
+            }
+        }
+        assertTrue(Files.exists(path.resolveSibling("vectors.idx.graph")));
+
+        // Vectors inserted after the last saved graph are linked again when the index is opened
+        HnswIndex index = HnswIndex.open(path, DIMENSIONS, Similarity.COSINE, 8, 50);
+        for (int i = 300; i < 400; i++) {
+            float[] vector = randomVector(random);
+            vectors.put("v" + i, vector);
+            index.insert("v" + i, vector, Map.of("n", i));
+        }
+        index.insert("v0", vectors.get("v0"), Map.of("n", -1)); // Replaces v0
+        Files.delete(path.resolveSibling("vectors.idx.graph"));
+
+        // The index was never closed: the graph is lost, the vectors and documents are not
+        HnswIndex reopened = HnswIndex.open(path, DIMENSIONS, Similarity.COSINE, 8, 50);
+        assertEquals(400, reopened.size());
+
+        float[] query = vectors.get("v350");
+        List<HnswIndex.SearchResult> results = reopened.search(query, 1, 50, null);
+        assertEquals("v350", results.get(0).id());
+        assertEquals(350, ((Number) results.get(0).document().get("n")).intValue());
+
+        List<HnswIndex.SearchResult> replaced = reopened.search(vectors.get("v0"), 3, 50, null);
+        assertEquals(1, replaced.stream().filter(result -> result.id().equals("v0")).count(), "Replaced vectors are not returned");
+        assertEquals(-1, ((Number) replaced.get(0).document().get("n")).intValue());
+
+        assertThrows(IllegalArgumentException.class, () -> HnswIndex.open(directory.resolve("vectors.idx"), DIMENSIONS + 1, Similarity.COSINE, 8, 50));
+        index.close();
+        reopened.close();
+    }
+
+    @Test
+    void testUpsertReplacesTheDocument() throws Exception {
+        try (HnswIndex index = HnswIndex.open(directory.resolve("vectors.idx"), 2, Similarity.DOT_PRODUCT, 4, 10)) {
+            index.insert("a", new float[]{1, 0}, Map.of("title", "first"));
+            index.insert("b", new float[]{0, 1}, Map.of("title", "other"));
+            index.insert("a", new float[]{0.6f, 0.8f}, Map.of("title", "second"));
+
+            assertEquals(2, index.size());
+            List<HnswIndex.SearchResult> results = index.search(new float[]{0.6f, 0.8f}, 5, 10, null);
+            assertEquals(List.of("a", "b"), results.stream().map(HnswIndex.SearchResult::id).toList());
+            assertEquals("second", results.get(0).document().get("title"));
+            assertEquals(1.0, results.get(0).score(), 1e-6);
+
+            Set<String> titles = index.search(new float[]{1, 0}, 5, 10, null).stream()
+                    .map(result -> (String) result.document().get("title")).collect(Collectors.toSet());
+            assertEquals(Set.of("second", "other"), titles);
+        }
+    }
+}